@@ -0,0 +1,46 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.List;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.generator.AdversarialSearch;
+
+/**
+ * Runs {@link AdversarialSearch} with parameters read from system properties and prints its findings to stdout:
+ * <ul>
+ *   <li>adversarial.rule        -- fully qualified name of the root grammar rule (required)</li>
+ *   <li>adversarial.iterations  -- number of mutants to evaluate (default 1000)</li>
+ *   <li>adversarial.maxLength   -- maximal length of evaluated sources (default 256)</li>
+ *   <li>adversarial.maxSteps    -- parser steps after which parsing of a candidate is aborted (default 500000)</li>
+ *   <li>adversarial.seed        -- random seed (default 0)</li>
+ *   <li>adversarial.results     -- number of reported findings (default 5)</li>
+ * </ul>
+ * Command line arguments are used as seed sources.
+ */
+public final class AdversarialRunner {
+
+  private AdversarialRunner() {
+  }
+
+  public static void main(String... args) throws ClassNotFoundException {
+    String rule = System.getProperty("adversarial.rule");
+    if (rule == null) {
+      throw new IllegalArgumentException("adversarial.rule system property is required");
+    }
+    BenchmarkSupport.quietLogging();
+    Class<? extends Rule> type = Class.forName(rule).asSubclass(Rule.class);
+    List<AdversarialSearch.Finding> findings = AdversarialSearch.forClass(type)
+        .iterations(Integer.getInteger("adversarial.iterations", 1000))
+        .maxLength(Integer.getInteger("adversarial.maxLength", 256))
+        .maxSteps(Long.getLong("adversarial.maxSteps", 500_000L))
+        .seed(Long.getLong("adversarial.seed", 0L))
+        .results(Integer.getInteger("adversarial.results", 5))
+        .seeds(args)
+        .run();
+
+    for (AdversarialSearch.Finding finding : findings) {
+      System.out.println(finding);
+      System.out.println();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.onkiup.linker.parser.benchmark;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Shared helpers for parser benchmarks
+ */
+final class BenchmarkSupport {
+
+  private BenchmarkSupport() {
+  }
+
+  /**
+   * Switches parser logging off so that benchmarks measure parsing and not log formatting
+   */
+  static void quietLogging() {
+    Logger.getRootLogger().setLevel(Level.WARN);
+  }
+
+  /**
+   * @param length the number of characters to generate
+   * @return a string of lowercase letters of given length
+   */
+  static String letters(int length) {
+    StringBuilder result = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      result.append((char) ('a' + i % 26));
+    }
+    return result.toString();
+  }
+
+  /**
+   * @param length minimal length of the document
+   * @return JSON array of records that is at least as long as requested
+   */
+  static String json(int length) {
+    StringBuilder result = new StringBuilder(length + 128).append('[');
+    for (int i = 0; result.length() < length - 1; i++) {
+      if (i > 0) {
+        result.append(",\n  ");
+      }
+      result.append("{\"id\": ").append(i)
+          .append(", \"name\": \"record ").append(i).append('"')
+          .append(", \"tags\": [true, null, -1.5e3]")
+          .append(", \"nested\": {}}");
+    }
+    return result.append(']').toString();
+  }
+
+  /**
+   * @param length minimal length of the expression
+   * @return a chain of parenthesized arithmetic expressions that is at least as long as requested
+   */
+  static String arithmetic(int length) {
+    StringBuilder result = new StringBuilder(length + 32);
+    for (int i = 0; result.length() < length; i++) {
+      if (i > 0) {
+        result.append(i % 2 == 0 ? " + " : " * ");
+      }
+      result.append('(').append(i).append(" - ").append(i + 1).append(')');
+    }
+    return result.toString();
+  }
+
+  /**
+   * @param length minimal length of the comment
+   * @return multiline comment that is at least as long as requested
+   */
+  static String comment(int length) {
+    return "/* " + letters(Math.max(0, length - 6)) + " */";
+  }
+
+  /**
+   * @param length minimal length of the source
+   * @return balanced square brackets nested length / 2 levels deep
+   */
+  static String nested(int length) {
+    int depth = (length + 1) / 2;
+    StringBuilder result = new StringBuilder(depth * 2);
+    for (int i = 0; i < depth; i++) {
+      result.append('[');
+    }
+    for (int i = 0; i < depth; i++) {
+      result.append(']');
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,47 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+
+/**
+ * Parses balanced brackets nested up to 1M levels deep; time per nesting level (ms/op divided by depth) should stay flat
+ * and parsing should not need a larger thread stack as the depth grows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DepthBenchmark {
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  private int depth;
+
+  private TokenGrammar<NestedBrackets> parser;
+  private String source;
+
+  @Setup
+  public void setup() {
+    BenchmarkSupport.quietLogging();
+    parser = TokenGrammar.forClass(NestedBrackets.class);
+    source = BenchmarkSupport.nested(depth * 2);
+  }
+
+  @Benchmark
+  public NestedBrackets parse() {
+    NestedBrackets result = parser.parse(source);
+    TokenGrammar.release(result);
+    return result;
+  }
+}
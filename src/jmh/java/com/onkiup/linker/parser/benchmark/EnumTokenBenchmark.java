@@ -0,0 +1,57 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.onkiup.linker.parser.ParserLocation;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.token.CompoundToken;
+import com.onkiup.linker.parser.token.ConsumingToken;
+import com.onkiup.linker.parser.token.EnumToken;
+
+/**
+ * Measures {@link EnumToken} matching an enum constant against parser input
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EnumTokenBenchmark {
+
+  public enum Keyword {
+    ABSTRACT, BOOLEAN, BREAK, CLASS, CONTINUE, DEFAULT, EXTENDS, FINAL, FINALLY, IMPLEMENTS, INTERFACE, PRIVATE,
+    PROTECTED, PUBLIC, RETURN, STATIC, SYNCHRONIZED, THROWS, TRANSIENT, VOLATILE
+  }
+
+  public static class KeywordHolder implements Rule {
+    private Keyword keyword;
+  }
+
+  @Param({"ABSTRACT", "VOLATILE", "VOID"})
+  private String source;
+
+  @Setup
+  public void setup() {
+    BenchmarkSupport.quietLogging();
+  }
+
+  @Benchmark
+  public Object match() {
+    CompoundToken root = CompoundToken.forClass(KeywordHolder.class, new ParserLocation("benchmark", 0, 0, 0));
+    ConsumingToken.ConsumptionState.rootBuffer(root, source);
+    try {
+      ConsumingToken<?> token = (ConsumingToken<?>) root.nextChild().get();
+      while (token.consume()) {
+        // consuming characters
+      }
+      return token.token().orElse(null);
+    } finally {
+      TokenGrammar.release((Rule) root.token().get());
+    }
+  }
+}
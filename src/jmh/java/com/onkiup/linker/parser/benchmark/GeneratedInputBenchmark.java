@@ -0,0 +1,68 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.generator.InputGenerator;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.MultilineComment;
+
+/**
+ * End-to-end parsing of randomly generated (with a fixed seed) documents of various shapes
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeneratedInputBenchmark {
+
+  private static final int DOCUMENTS = 16;
+  private static final long SEED = 42;
+
+  @Param({"json", "comment"})
+  private String grammar;
+
+  @Param({"1024", "16384"})
+  private int size;
+
+  private TokenGrammar<?> parser;
+  private String[] sources;
+  private int next;
+
+  @Setup
+  public void setup() {
+    BenchmarkSupport.quietLogging();
+    switch (grammar) {
+      case "json":
+        setup(JsonGrammar.JsonValue.class);
+        break;
+      case "comment":
+        setup(MultilineComment.class);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown grammar: " + grammar);
+    }
+  }
+
+  private <X extends Rule> void setup(Class<X> type) {
+    parser = TokenGrammar.forClass(type);
+    InputGenerator<X> generator = InputGenerator.forClass(type).seed(SEED);
+    sources = new String[DOCUMENTS];
+    for (int i = 0; i < DOCUMENTS; i++) {
+      sources[i] = generator.generate(size);
+    }
+  }
+
+  @Benchmark
+  public Rule parse() {
+    Rule result = parser.parse(sources[next++ % DOCUMENTS]);
+    TokenGrammar.release(result);
+    return result;
+  }
+}
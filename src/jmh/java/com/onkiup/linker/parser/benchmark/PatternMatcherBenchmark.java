@@ -0,0 +1,81 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.onkiup.linker.parser.PatternMatcher;
+import com.onkiup.linker.parser.TokenTestResult;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+
+/**
+ * Measures {@link PatternMatcher} on value patterns and on "until" patterns applied to buffers of growing sizes,
+ * which is how ConsumingTokens invoke matchers while consuming characters
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatternMatcherBenchmark {
+
+  @Param({"16", "256", "4096"})
+  private int length;
+
+  private PatternMatcher identifier;
+  private PatternMatcher until;
+  private CharSequence identifierMatch;
+  private CharSequence identifierContinue;
+  private CharSequence commentBody;
+  private CharSequence commentEnd;
+
+  @Setup
+  public void setup() {
+    identifier = new PatternMatcher("[a-z]+");
+    until = new PatternMatcher(UntilHolder.pattern());
+    String letters = BenchmarkSupport.letters(length);
+    identifierMatch = new StringBuilder(letters).append(' ');
+    identifierContinue = new StringBuilder(letters);
+    commentBody = new StringBuilder(letters);
+    commentEnd = new StringBuilder(letters).append("*/");
+  }
+
+  @Benchmark
+  public TokenTestResult valueMatch() {
+    return identifier.apply(identifierMatch);
+  }
+
+  @Benchmark
+  public TokenTestResult valueContinue() {
+    return identifier.apply(identifierContinue);
+  }
+
+  @Benchmark
+  public TokenTestResult untilContinue() {
+    return until.apply(commentBody);
+  }
+
+  @Benchmark
+  public TokenTestResult untilMatch() {
+    return until.apply(commentEnd);
+  }
+
+  /**
+   * Provides a CapturePattern instance with "until" limiter
+   */
+  private static class UntilHolder {
+    @CapturePattern(until = "\\*/")
+    private String comment;
+
+    private static CapturePattern pattern() {
+      try {
+        return UntilHolder.class.getDeclaredField("comment")
+            .getAnnotation(CapturePattern.class);
+      } catch (NoSuchFieldException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,246 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import com.onkiup.linker.parser.ParserEngine;
+import com.onkiup.linker.parser.ParserLimitExceeded;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.MultilineComment;
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+
+/**
+ * Input-size scaling suite: parses generated inputs of doubling sizes for every reference grammar and parser engine,
+ * fits parse time against input size on a log-log scale and fails when the fitted exponent exceeds the bound configured
+ * for the engine or when less than three input sizes take long enough to fit it.
+ * Configured with system properties:
+ * <ul>
+ *   <li>scaling.minSize  -- first input size in characters (default 1KB)</li>
+ *   <li>scaling.maxSize  -- last input size in characters (default 64MB)</li>
+ *   <li>scaling.bound    -- maximal allowed complexity exponent of the backtracking engine (default 1.2)</li>
+ *   <li>scaling.earleyBound -- maximal allowed complexity exponent of the Earley engine (default 3, the cubic bound
+ *                           documented by {@link ParserEngine#EARLEY})</li>
+ *   <li>scaling.budget   -- seconds a single parse may take before the suite stops doubling the input (default 30);
+ *                           a case fails when a single parse takes more than ten budgets</li>
+ *   <li>scaling.cases    -- comma-separated list of cases to run (default: all)</li>
+ * </ul>
+ */
+public final class ScalingSuite {
+
+  /**
+   * Timings below this value are dominated by noise and are not used for fitting
+   */
+  private static final double MIN_FITTED_SECONDS = 0.005;
+  /**
+   * Every size is parsed repeatedly until this much time is spent on it
+   */
+  private static final double MEASUREMENT_SECONDS = 0.5;
+
+  private final List<Case> cases = new ArrayList<>();
+  private final int minSize;
+  private final int maxSize;
+  private final double budget;
+
+  public ScalingSuite(int minSize, int maxSize, double budget) {
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.budget = budget;
+  }
+
+  public static void main(String... args) {
+    BenchmarkSupport.quietLogging();
+    ScalingSuite suite = new ScalingSuite(
+        Integer.getInteger("scaling.minSize", 1 << 10),
+        Integer.getInteger("scaling.maxSize", 64 << 20),
+        Double.parseDouble(System.getProperty("scaling.budget", "30"))
+    );
+    double bound = Double.parseDouble(System.getProperty("scaling.bound", "1.2"));
+    double earleyBound = Double.parseDouble(System.getProperty("scaling.earleyBound", "3"));
+    suite.add("json", JsonGrammar.JsonValue.class, ParserEngine.BACKTRACKING, bound, BenchmarkSupport::json);
+    suite.add("comment", MultilineComment.class, ParserEngine.BACKTRACKING, bound, BenchmarkSupport::comment);
+    suite.add("nesting", NestedBrackets.class, ParserEngine.BACKTRACKING, bound, BenchmarkSupport::nested);
+    suite.add("arithmetic", ArithmeticGrammar.Expression.class, ParserEngine.BACKTRACKING, bound,
+        BenchmarkSupport::arithmetic);
+    suite.add("json-earley", JsonGrammar.JsonValue.class, ParserEngine.EARLEY, earleyBound, BenchmarkSupport::json);
+    suite.add("arithmetic-earley", ArithmeticGrammar.Expression.class, ParserEngine.EARLEY, earleyBound,
+        BenchmarkSupport::arithmetic);
+
+    String selected = System.getProperty("scaling.cases");
+    if (selected != null && !selected.trim().isEmpty()) {
+      suite.retain(Arrays.asList(selected.split("\\s*,\\s*")));
+    }
+
+    if (!suite.run()) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Registers a grammar/engine/input generator combination
+   * @param name the name of the case
+   * @param grammar the root token of the grammar
+   * @param engine parser engine to measure
+   * @param bound maximal allowed complexity exponent
+   * @param generator function that accepts a size in characters and returns at least that long source
+   */
+  public <X extends Rule> void add(String name, Class<X> grammar, ParserEngine engine, double bound,
+      IntFunction<String> generator) {
+    TokenGrammar<X> parser = TokenGrammar.forClass(grammar).engine(engine)
+        .timeout((long) (budget * 10_000), TimeUnit.MILLISECONDS);
+    cases.add(new Case(name, parser, bound, generator));
+  }
+
+  /**
+   * Removes all cases with names not in the given list
+   */
+  public void retain(List<String> names) {
+    cases.removeIf(testCase -> !names.contains(testCase.name));
+  }
+
+  /**
+   * Runs all registered cases and prints a report to stdout
+   * @return true if all cases parsed their inputs and did not exceed the bound
+   */
+  public boolean run() {
+    boolean passed = true;
+    for (Case testCase : cases) {
+      passed &= run(testCase);
+    }
+    return passed;
+  }
+
+  private boolean run(Case testCase) {
+    System.out.printf(Locale.ROOT, "%n%s%n%12s %14s %12s%n", testCase.name, "size", "ms/parse", "local exp");
+
+    String warmup = testCase.generator.apply(minSize);
+    try {
+      measure(testCase.grammar, warmup, MEASUREMENT_SECONDS * 4);
+    } catch (RuntimeException e) {
+      System.out.printf(Locale.ROOT, "FAILED: unable to warm up on %d characters: %s%n", warmup.length(), e);
+      return false;
+    }
+
+    List<double[]> points = new ArrayList<>();
+    String failure = null;
+    for (long size = minSize; size <= maxSize; size *= 2) {
+      String source;
+      try {
+        source = testCase.generator.apply((int) size);
+      } catch (OutOfMemoryError e) {
+        break;
+      }
+
+      double seconds;
+      try {
+        seconds = measure(testCase.grammar, source, MEASUREMENT_SECONDS);
+      } catch (ParserLimitExceeded e) {
+        failure = String.format(Locale.ROOT, "parsing %d characters did not finish in %.0f seconds: %s", source.length(),
+            budget * 10, e.getMessage());
+        break;
+      } catch (OutOfMemoryError e) {
+        System.out.printf(Locale.ROOT, "%12d %14s%n", source.length(), "out of memory");
+        break;
+      } catch (RuntimeException e) {
+        failure = String.format(Locale.ROOT, "unable to parse %d characters: %s", source.length(), e);
+        break;
+      }
+
+      String local = "";
+      if (!points.isEmpty()) {
+        double[] previous = points.get(points.size() - 1);
+        local = String.format(Locale.ROOT, "%.2f",
+            Math.log(seconds / previous[1]) / Math.log(source.length() / previous[0]));
+      }
+      points.add(new double[] {source.length(), seconds});
+      System.out.printf(Locale.ROOT, "%12d %14.3f %12s%n", source.length(), seconds * 1000, local);
+
+      if (seconds > budget) {
+        break;
+      }
+    }
+
+    if (failure != null) {
+      System.out.println("FAILED: " + failure);
+      return false;
+    }
+
+    double exponent = exponent(points);
+    if (Double.isNaN(exponent)) {
+      // either the parser is too fast to be measured on sizes up to maxSize or it exceeded the budget too early
+      System.out.println("FAILED: not enough measurable sizes to fit the exponent (adjust scaling.maxSize or scaling.budget)");
+      return false;
+    }
+    boolean passed = exponent <= testCase.bound;
+    System.out.printf(Locale.ROOT, "%s: fitted exponent %.3f (bound %.2f)%n", passed ? "PASSED" : "FAILED", exponent,
+        testCase.bound);
+    return passed;
+  }
+
+  /**
+   * Parses given source repeatedly until given time is spent
+   * @return the best observed time of a single parse in seconds
+   */
+  private static double measure(TokenGrammar<?> grammar, String source, double seconds) {
+    long spent = 0;
+    long best = Long.MAX_VALUE;
+    do {
+      long start = System.nanoTime();
+      parse(grammar, source);
+      long took = System.nanoTime() - start;
+      best = Math.min(best, took);
+      spent += took;
+    } while (spent < seconds * 1e9);
+    return best / 1e9;
+  }
+
+  private static void parse(TokenGrammar<?> grammar, String source) {
+    TokenGrammar.release(grammar.parse(source));
+  }
+
+  /**
+   * Least-squares fit of log(time) against log(size)
+   * @param points pairs of input sizes and parse times
+   * @return slope of the fitted line or NaN if less than three points are long enough to be fitted
+   */
+  static double exponent(List<double[]> points) {
+    double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+    int count = 0;
+    for (double[] point : points) {
+      if (point[1] < MIN_FITTED_SECONDS) {
+        continue;
+      }
+      double x = Math.log(point[0]);
+      double y = Math.log(point[1]);
+      sumX += x;
+      sumY += y;
+      sumXX += x * x;
+      sumXY += x * y;
+      count++;
+    }
+    if (count < 3) {
+      return Double.NaN;
+    }
+    return (count * sumXY - sumX * sumY) / (count * sumXX - sumX * sumX);
+  }
+
+  private static final class Case {
+    private final String name;
+    private final TokenGrammar<?> grammar;
+    private final double bound;
+    private final IntFunction<String> generator;
+
+    private Case(String name, TokenGrammar<?> grammar, double bound, IntFunction<String> generator) {
+      this.name = name;
+      this.grammar = grammar;
+      this.bound = bound;
+      this.generator = generator;
+    }
+  }
+}
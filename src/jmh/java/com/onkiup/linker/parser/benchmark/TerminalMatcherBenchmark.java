@@ -0,0 +1,48 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.onkiup.linker.parser.TerminalMatcher;
+import com.onkiup.linker.parser.TokenTestResult;
+
+/**
+ * Measures {@link TerminalMatcher} against full matches, incomplete inputs and mismatches
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TerminalMatcherBenchmark {
+
+  private TerminalMatcher matcher;
+  private CharSequence match;
+  private CharSequence partial;
+  private CharSequence mismatch;
+
+  @Setup
+  public void setup() {
+    matcher = new TerminalMatcher("function");
+    match = new StringBuilder("function main() {}");
+    partial = new StringBuilder("funct");
+    mismatch = new StringBuilder("funky");
+  }
+
+  @Benchmark
+  public TokenTestResult match() {
+    return matcher.apply(match);
+  }
+
+  @Benchmark
+  public TokenTestResult partial() {
+    return matcher.apply(partial);
+  }
+
+  @Benchmark
+  public TokenTestResult mismatch() {
+    return matcher.apply(mismatch);
+  }
+}
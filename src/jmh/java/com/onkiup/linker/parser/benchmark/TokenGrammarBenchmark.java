@@ -0,0 +1,58 @@
+package com.onkiup.linker.parser.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.MultilineComment;
+
+/**
+ * End-to-end {@link TokenGrammar#parse(String)} benchmarks over reference grammars
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TokenGrammarBenchmark {
+
+  @Param({"arithmetic", "json", "comment"})
+  private String grammar;
+
+  private TokenGrammar<?> parser;
+  private String source;
+
+  @Setup
+  public void setup() {
+    BenchmarkSupport.quietLogging();
+    switch (grammar) {
+      case "arithmetic":
+        parser = TokenGrammar.forClass(ArithmeticGrammar.Expression.class);
+        source = "(1 + 2 * 3) - 4 / (5 * 6 + 7) + 10 * (2 + 3 * (4 - 1)) / 7";
+        break;
+      case "json":
+        parser = TokenGrammar.forClass(JsonGrammar.JsonValue.class);
+        source = BenchmarkSupport.json(2048);
+        break;
+      case "comment":
+        parser = TokenGrammar.forClass(MultilineComment.class);
+        source = BenchmarkSupport.comment(1024);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown grammar: " + grammar);
+    }
+  }
+
+  @Benchmark
+  public Rule parse() {
+    Rule result = parser.parse(source);
+    TokenGrammar.release(result);
+    return result;
+  }
+}
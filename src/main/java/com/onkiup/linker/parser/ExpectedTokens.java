@@ -0,0 +1,156 @@
+package com.onkiup.linker.parser;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.onkiup.linker.parser.analysis.FirstSet;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.util.LoggerLayout;
+
+/**
+ * Fields that parser tried to match at the furthest position where matching failed.
+ * Updated in constant time by every failed consuming token, so that syntax errors can be reported without re-parsing the source.
+ * Instances are not thread-safe and should not be shared between concurrent parses.
+ */
+public class ExpectedTokens implements Serializable {
+  /**
+   * the furthest location at which a token failed to match
+   */
+  private ParserLocation location;
+  /**
+   * fields which tokens failed to match at that location
+   */
+  private final Set<Field> fields = new LinkedHashSet<>();
+
+  /**
+   * Invoked every time a consuming token fails to match the source
+   * @param location location of the first non-ignored character that the token failed to match
+   * @param field the field for which the token was created
+   */
+  public void onFail(ParserLocation location, Field field) {
+    if (field == null) {
+      return;
+    }
+    if (this.location == null || location.position() > this.location.position()) {
+      this.location = location;
+      fields.clear();
+      fields.add(field);
+    } else if (location.position() == this.location.position()) {
+      fields.add(field);
+    }
+  }
+
+  /**
+   * @return the furthest location at which a token failed to match or null if no tokens failed
+   */
+  public ParserLocation location() {
+    return location;
+  }
+
+  /**
+   * @return the furthest position at which a token failed to match or -1 if no tokens failed
+   */
+  public int position() {
+    return location == null ? -1 : location.position();
+  }
+
+  /**
+   * @return human-readable descriptions of the tokens that parser expected at {@link #location()}: quoted terminals,
+   * capture patterns between slashes, enum names or (for other fields) field names; fields that hold rules are described
+   * by the terminals that can start those rules
+   */
+  public List<String> terminals() {
+    Set<String> result = new LinkedHashSet<>();
+    Set<Class<?>> visited = new HashSet<>();
+    for (Field field : fields) {
+      describe(field, result, visited);
+    }
+    return Collections.unmodifiableList(new ArrayList<>(result));
+  }
+
+  /**
+   * @return rules which fields parser tried to match at {@link #location()}
+   */
+  public Set<Class<?>> rules() {
+    Set<Class<?>> result = new LinkedHashSet<>();
+    for (Field field : fields) {
+      result.add(field.getDeclaringClass());
+    }
+    return Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Adds descriptions of the terminals that can start values of the given field
+   * @param visited rules which first terminals were already added
+   */
+  private static void describe(Field field, Set<String> result, Set<Class<?>> visited) {
+    Class<?> type = field.getType().isArray() ? field.getType().getComponentType() : field.getType();
+    if (!Rule.class.isAssignableFrom(type) || type.isEnum() || field.isAnnotationPresent(ContextAware.class)) {
+      result.add(describe(field));
+    } else {
+      describe(type, result, visited);
+    }
+  }
+
+  /**
+   * Adds descriptions of the terminals that can start given rule or grammar junction
+   * @param visited rules which first terminals were already added
+   */
+  @SuppressWarnings("unchecked")
+  private static void describe(Class<?> rule, Set<String> result, Set<Class<?>> visited) {
+    if (!visited.add(rule)) {
+      return;
+    }
+    if (TokenGrammar.isConcrete(rule)) {
+      for (Field field : RuleIntrospector.fields(rule)) {
+        describe(field, result, visited);
+        if (!FirstSet.of(field).isNullable()) {
+          break;
+        }
+      }
+    } else {
+      for (Class<?> variant : RuleIntrospector.variants((Class<? extends Rule>) rule)) {
+        describe(variant, result, visited);
+      }
+    }
+  }
+
+  private static String describe(Field field) {
+    try {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+        field.setAccessible(true);
+        return "'" + LoggerLayout.sanitize((String) field.get(null)) + "'";
+      }
+    } catch (IllegalAccessException e) {
+      return field.getName();
+    }
+    if (field.isAnnotationPresent(CapturePattern.class)) {
+      String regex = RuleIntrospector.regex(field.getAnnotation(CapturePattern.class));
+      if (regex.length() > 0) {
+        return "/" + regex + "/";
+      }
+    }
+    if (field.getType().isEnum()) {
+      return field.getType().getSimpleName();
+    }
+    return field.getName();
+  }
+
+  @Override
+  public String toString() {
+    if (location == null) {
+      return "no tokens expected";
+    }
+    List<String> terminals = terminals();
+    return (terminals.size() == 1 ? "expected " : "expected one of ") + String.join(", ", terminals) + " at " + location;
+  }
+}
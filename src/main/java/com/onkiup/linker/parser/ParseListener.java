@@ -0,0 +1,52 @@
+package com.onkiup.linker.parser;
+
+import java.lang.reflect.Field;
+
+/**
+ * Receives parser events for matched source without materializing the AST.
+ * Events are emitted in source order and only for tokens that the parser can no longer trace back, so they always belong
+ * to the final parse; for a source with a syntax error, events may be emitted for the source before the error.
+ * All methods do nothing by default.
+ * @see TokenGrammar#parse(String, java.io.Reader, ParseListener)
+ */
+public interface ParseListener {
+
+  /**
+   * Invoked before any events for the fields of a matched rule
+   * @param rule matched rule
+   * @param field the field populated with the rule or null for the root rule
+   * @param start position of the first character matched by the rule
+   */
+  default void enterRule(Class<? extends Rule> rule, Field field, int start) {
+  }
+
+  /**
+   * Invoked after events for all fields of a matched rule
+   * @param rule matched rule
+   * @param field the field populated with the rule or null for the root rule
+   * @param start position of the first character matched by the rule
+   * @param end position immediately after the last character matched by the rule
+   */
+  default void exitRule(Class<? extends Rule> rule, Field field, int start, int end) {
+  }
+
+  /**
+   * Invoked for a matched static (grammar-defined) terminal
+   * @param field static field that defines the terminal
+   * @param text matched text
+   * @param start position of the first character of the terminal
+   * @param end position immediately after the last character of the terminal
+   */
+  default void terminal(Field field, CharSequence text, int start, int end) {
+  }
+
+  /**
+   * Invoked for a value that the parser would assign to a non-static String or enum field
+   * @param field target field
+   * @param value captured String or enum constant
+   * @param start position of the first character of the value
+   * @param end position immediately after the last character of the value
+   */
+  default void capture(Field field, Object value, int start, int end) {
+  }
+}
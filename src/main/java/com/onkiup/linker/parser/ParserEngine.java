@@ -0,0 +1,20 @@
+package com.onkiup.linker.parser;
+
+/**
+ * Parsing algorithms that {@link TokenGrammar} can use
+ * @see TokenGrammar#engine(ParserEngine)
+ */
+public enum ParserEngine {
+  /**
+   * Default depth-first parser that tests grammar junction variants one by one and backtracks on failures.
+   * Supports all grammar features and is the fastest on grammars that rarely need to backtrack, but may take
+   * exponential time on highly ambiguous grammars
+   */
+  BACKTRACKING,
+  /**
+   * Earley parser that matches all grammar junction variants simultaneously and shares their results in a packed parse
+   * forest ({@link com.onkiup.linker.parser.forest.ForestParser}). Takes at most cubic time on any grammar, but does not
+   * support context-sensitive grammar features and error recovery
+   */
+  EARLEY
+}
@@ -0,0 +1,66 @@
+package com.onkiup.linker.parser;
+
+/**
+ * Thrown when parser stops before completing the AST because one of limits configured on {@link TokenGrammar} was
+ * reached or because parsing thread was interrupted
+ */
+public class ParserLimitExceeded extends RuntimeException {
+
+  /**
+   * Parser limits
+   */
+  public enum Limit {
+    /**
+     * parsing took longer than configured with {@link TokenGrammar#timeout(long, java.util.concurrent.TimeUnit)}
+     */
+    TIMEOUT,
+    /**
+     * parser performed more loop iterations than configured with {@link TokenGrammar#maxSteps(long)}
+     */
+    STEPS,
+    /**
+     * parser consumed more characters after backtracking than configured with {@link TokenGrammar#maxReconsumed(long)}
+     */
+    RECONSUMED,
+    /**
+     * parser created more tokens than configured with {@link TokenGrammar#maxTokens(long)}
+     */
+    TOKENS,
+    /**
+     * parsing thread was interrupted
+     */
+    INTERRUPTED
+  }
+
+  private final Limit limit;
+  private final ParserStatistics statistics;
+  private final int position;
+
+  public ParserLimitExceeded(Limit limit, ParserStatistics statistics, int position) {
+    super("Parser limit exceeded: " + limit + " at position " + position + " (" + statistics + ")");
+    this.limit = limit;
+    this.statistics = statistics;
+    this.position = position;
+  }
+
+  /**
+   * @return the limit that stopped the parser
+   */
+  public Limit limit() {
+    return limit;
+  }
+
+  /**
+   * @return parser counters at the moment when parser was stopped
+   */
+  public ParserStatistics statistics() {
+    return statistics;
+  }
+
+  /**
+   * @return the furthest position in the source that parser reached before it was stopped
+   */
+  public int position() {
+    return position;
+  }
+}
@@ -0,0 +1,231 @@
+package com.onkiup.linker.parser;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counters that parser updates while populating an AST.
+ * Can be used to detect sources that make the parser backtrack excessively: compare {@link #work()} with source length.
+ * Instances are not thread-safe and should not be shared between concurrent parses.
+ */
+public class ParserStatistics implements Serializable {
+  private long steps, consumed, tokens, variants, tracebacks, failures, autoCommits, predictions, adaptivePredictions, prunedVariants,
+      reusedFields;
+  /**
+   * Per-rule counters: number of tokens created for the rule and number of failed tokens
+   */
+  private final Map<Class<?>, long[]> rules = new HashMap<>();
+
+  /**
+   * Invoked on every iteration of the parser loop
+   */
+  public void onStep() {
+    steps++;
+  }
+
+  /**
+   * Invoked every time a character is consumed from parser's buffer, including characters that are consumed again after backtracking
+   */
+  public void onConsume() {
+    consumed++;
+  }
+
+  /**
+   * Invoked every time a PartialToken is created
+   */
+  public void onToken() {
+    tokens++;
+  }
+
+  /**
+   * Invoked every time parser starts matching a rule
+   * @param rule the rule being matched
+   */
+  public void onRule(Class<?> rule) {
+    rules.computeIfAbsent(rule, type -> new long[2])[0]++;
+  }
+
+  /**
+   * Invoked every time a grammar junction starts testing one of its variants
+   */
+  public void onVariant() {
+    variants++;
+  }
+
+  /**
+   * Invoked every time parser traces back from a failed token
+   */
+  public void onTraceback() {
+    tracebacks++;
+  }
+
+  /**
+   * Invoked every time a token fails to match the source
+   * @param type type of the failed token
+   */
+  public void onFail(Class<?> type) {
+    failures++;
+    long[] counters = rules.get(type);
+    if (counters != null) {
+      counters[1]++;
+    }
+  }
+
+  /**
+   * Invoked every time an array member is automatically committed because neither it nor previous members have alternatives left
+   */
+  public void onAutoCommit() {
+    autoCommits++;
+  }
+
+  /**
+   * Invoked every time a grammar junction selects its variants with a prediction table instead of testing all of them
+   */
+  public void onPrediction() {
+    predictions++;
+  }
+
+  /**
+   * Invoked every time a grammar junction tests first the variant that previously matched the source after the same
+   * lookahead characters
+   */
+  public void onAdaptivePrediction() {
+    adaptivePredictions++;
+  }
+
+  /**
+   * Invoked every time a grammar junction drops variants that cannot start with the next source character
+   * @param count number of dropped variants
+   */
+  public void onPrunedVariants(int count) {
+    prunedVariants += count;
+  }
+
+  /**
+   * Invoked every time a grammar junction variant takes over fields matched by a failed variant that starts with the same fields
+   * @param count number of fields that were not matched again
+   */
+  public void onReusedFields(int count) {
+    reusedFields += count;
+  }
+
+  /**
+   * @return number of parser loop iterations
+   */
+  public long steps() {
+    return steps;
+  }
+
+  /**
+   * @return number of consumed characters, including repeatedly consumed ones
+   */
+  public long consumed() {
+    return consumed;
+  }
+
+  /**
+   * @return number of created PartialTokens
+   */
+  public long tokens() {
+    return tokens;
+  }
+
+  /**
+   * @return number of tested grammar junction variants
+   */
+  public long variants() {
+    return variants;
+  }
+
+  /**
+   * @return number of tracebacks
+   */
+  public long tracebacks() {
+    return tracebacks;
+  }
+
+  /**
+   * @return number of failed tokens
+   */
+  public long failures() {
+    return failures;
+  }
+
+  /**
+   * @return number of automatically committed array members
+   */
+  public long autoCommits() {
+    return autoCommits;
+  }
+
+  /**
+   * @return number of grammar junctions resolved with prediction tables
+   */
+  public long predictions() {
+    return predictions;
+  }
+
+  /**
+   * @return number of grammar junctions that reordered their variants using learned lookahead
+   */
+  public long adaptivePredictions() {
+    return adaptivePredictions;
+  }
+
+  /**
+   * @return number of junction variants that were not tested because they cannot start with the next source character
+   */
+  public long prunedVariants() {
+    return prunedVariants;
+  }
+
+  /**
+   * @return number of fields that junction variants took over from failed variants instead of matching them again
+   */
+  public long reusedFields() {
+    return reusedFields;
+  }
+
+  /**
+   * @return total amount of work performed by the parser: parser loop iterations, consumed characters, created tokens and tracebacks
+   */
+  public long work() {
+    return steps + consumed + tokens + tracebacks;
+  }
+
+  /**
+   * @return number of tokens created for each matched rule, most frequently matched rules first
+   */
+  public Map<Class<?>, Long> ruleAttempts() {
+    return ruleCounters(0);
+  }
+
+  /**
+   * @return number of failed tokens for each matched rule, most frequently failing rules first
+   */
+  public Map<Class<?>, Long> ruleFailures() {
+    return ruleCounters(1);
+  }
+
+  private Map<Class<?>, Long> ruleCounters(int index) {
+    Map<Class<?>, Long> result = new LinkedHashMap<>();
+    rules.entrySet().stream()
+        .filter(entry -> entry.getValue()[index] > 0)
+        .sorted((a, b) -> {
+          int order = Long.compare(b.getValue()[index], a.getValue()[index]);
+          return order != 0 ? order : a.getKey().getName().compareTo(b.getKey().getName());
+        })
+        .forEach(entry -> result.put(entry.getKey(), entry.getValue()[index]));
+    return Collections.unmodifiableMap(result);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("steps: %d, consumed: %d, tokens: %d, variants: %d, tracebacks: %d, failures: %d, auto-commits: %d, predictions: %d, adaptive predictions: %d, pruned variants: %d, reused fields: %d",
+        steps, consumed, tokens, variants, tracebacks, failures, autoCommits, predictions, adaptivePredictions,
+        prunedVariants, reusedFields);
+  }
+}
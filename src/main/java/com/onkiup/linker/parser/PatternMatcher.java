@@ -47,7 +47,13 @@ public class PatternMatcher implements TokenMatcher {
 
     if (until.length() == 0) {
       if(hitEnd && lookingAt && matches) {
-        return TestResult.matchContinue(buffer.length(), buffer.toString());
+        return TestResult.matchContinue(buffer.length(), buffer);
+      } else if (hitEnd && !matches) {
+        // buffer may still match after more characters are consumed; until then, only its longest matching prefix matches
+        if (lookingAt) {
+          return TestResult.matchContinue(matcher.end(), buffer.subSequence(0, matcher.end()));
+        }
+        return TestResult.continueNoMatch();
       } else if (lookingAt) {
         if (replacement != null && replacement.length() > 0) {
           StringBuffer result = new StringBuffer();
@@ -72,7 +78,7 @@ public class PatternMatcher implements TokenMatcher {
           return TestResult.match(matcher.start(), token);
         }
       } else {
-        return TestResult.matchContinue(buffer.length(), buffer.toString());
+        return TestResult.matchContinue(buffer.length(), buffer);
       }
     }
   }
@@ -0,0 +1,69 @@
+package com.onkiup.linker.parser;
+
+import java.io.Serializable;
+
+import com.onkiup.linker.parser.util.LoggerLayout;
+
+/**
+ * A syntax error that parser skipped while parsing with error recovery (see {@link com.onkiup.linker.parser.annotation.SyncPoint}).
+ * Unlike {@link SyntaxError}, it does not hold a stack trace, the AST or the whole source: only the error location and a short source excerpt
+ */
+public class RecoveredSyntaxError implements Serializable {
+  /**
+   * Maximum number of source characters kept in the excerpt
+   */
+  public static final int EXCERPT_LENGTH = 40;
+
+  private final Class<?> rule;
+  private final ParserLocation location;
+  private final int resumed;
+  private final String excerpt;
+
+  /**
+   * Main constructor
+   * @param rule the type of array member that failed to match
+   * @param location location of the furthest character the parser reached inside the failed member
+   * @param resumed position in the source at which parser resumed matching
+   * @param source parser's buffer
+   */
+  public RecoveredSyntaxError(Class<?> rule, ParserLocation location, int resumed, CharSequence source) {
+    this.rule = rule;
+    this.location = location;
+    this.resumed = resumed;
+    int position = Math.min(location.position(), source.length());
+    this.excerpt = source.subSequence(position, Math.min(source.length(), position + EXCERPT_LENGTH)).toString();
+  }
+
+  /**
+   * @return the type of array member that failed to match
+   */
+  public Class<?> rule() {
+    return rule;
+  }
+
+  /**
+   * @return location of the furthest character the parser reached inside the failed member
+   */
+  public ParserLocation location() {
+    return location;
+  }
+
+  /**
+   * @return position in the source at which parser resumed matching (immediately after the skipped sync terminal)
+   */
+  public int resumed() {
+    return resumed;
+  }
+
+  /**
+   * @return up to {@link #EXCERPT_LENGTH} source characters starting at error location
+   */
+  public String excerpt() {
+    return excerpt;
+  }
+
+  @Override
+  public String toString() {
+    return location + ": failed to match " + rule.getSimpleName() + " at '" + LoggerLayout.sanitize(excerpt) + "'";
+  }
+}
@@ -6,6 +6,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.onkiup.linker.parser.token.CollectionToken;
@@ -25,6 +26,10 @@ public interface Rule {
 
   static class Metadata {
     private static ConcurrentHashMap<Rule, PartialToken> metadata = new ConcurrentHashMap<>();
+    /**
+     * Rules registered for each AST root, used to release metadata for the whole AST at once
+     */
+    private static ConcurrentHashMap<PartialToken, Set<Rule>> registered = new ConcurrentHashMap<>();
 
     public static Optional<PartialToken> metadata(Rule rule) {
       return Optional.ofNullable(metadata.get(rule));
@@ -32,11 +37,23 @@ public interface Rule {
 
     public static void metadata(Rule rule, PartialToken token) {
       metadata.put(rule, token);
+      registered.computeIfAbsent(token.root(), root -> ConcurrentHashMap.newKeySet()).add(rule);
     }
 
     static void remove(Rule rule) {
       metadata.remove(rule);
     }
+
+    /**
+     * Removes metadata for all rules that were created while populating the AST with given root
+     * @param root AST root token
+     */
+    static void release(PartialToken<?> root) {
+      Set<Rule> rules = registered.remove(root);
+      if (rules != null) {
+        rules.forEach(Metadata::remove);
+      }
+    }
   }
 
   static <X extends Rule> X load(InputStream is) throws IOException, ClassNotFoundException {
@@ -8,31 +8,61 @@ import java.util.List;
 import com.onkiup.linker.parser.token.PartialToken;
 import com.onkiup.linker.parser.token.RuleToken;
 import com.onkiup.linker.parser.token.VariantToken;
+import com.onkiup.linker.parser.util.LoggerLayout;
 
 public class SyntaxError extends RuntimeException {
 
   private PartialToken<?> expected;
   private CharSequence source;
   private String message;
+  private ExpectedTokens expectedTokens;
 
   public SyntaxError(String message, PartialToken expected, CharSequence source) {
+    this(message, expected, source, null);
+  }
+
+  /**
+   * @param message error message
+   * @param expected the token that parser failed to match
+   * @param source parser's buffer
+   * @param expectedTokens tokens that failed to match at the furthest position reached by the parser
+   */
+  public SyntaxError(String message, PartialToken expected, CharSequence source, ExpectedTokens expectedTokens) {
     this.message = message;
     this.expected = expected;
     this.source = source;
+    this.expectedTokens = expectedTokens;
+  }
+
+  /**
+   * @return tokens that failed to match at the furthest position reached by the parser or null if unknown
+   */
+  public ExpectedTokens expectedTokens() {
+    return expectedTokens;
+  }
+
+  /**
+   * @return error message followed by the list of tokens expected at the furthest reached position, without traceback
+   * and source text
+   */
+  @Override
+  public String getMessage() {
+    return expectedTokens == null || expectedTokens.location() == null ? message : message + ": " + expectedTokens;
   }
 
   @Override
   public String toString() {
+    int position = expectedTokens != null && expectedTokens.location() != null ? expectedTokens.position() :
+        expected != null ? expected.position() : 0;
     StringBuilder result = new StringBuilder("Parser error:")
-      .append(message)
+      .append(getMessage())
       .append("\n")
       .append("\tExpected ")
       .append(expected)
       .append(" but got: '")
-      .append(expected != null && source != null && expected.position() < source.length() ? source.subSequence(expected.position(), source.length()) : source)
-      .append("'\n\tSource:\n\t\t")
-      .append(source)
-      .append("\n\n\tTraceback:\n");
+      .append(source != null && position < source.length() ?
+          LoggerLayout.head(source.subSequence(position, source.length()), RecoveredSyntaxError.EXCERPT_LENGTH) : "")
+      .append("'\n\n\tTraceback:\n");
 
     if (expected != null) {
       expected.path().stream()
@@ -5,7 +5,9 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.Modifier;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
@@ -14,9 +16,19 @@ import org.apache.log4j.Layout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.onkiup.linker.parser.analysis.PredictionTable;
+import com.onkiup.linker.parser.forest.ForestParser;
+import com.onkiup.linker.parser.forest.PackedForest;
+import com.onkiup.linker.parser.generator.InputGenerator;
 import com.onkiup.linker.parser.token.CompoundToken;
 import com.onkiup.linker.parser.token.ConsumingToken;
+import com.onkiup.linker.parser.token.JunctionCache;
+import com.onkiup.linker.parser.token.ParseContext;
 import com.onkiup.linker.parser.token.PartialToken;
+import com.onkiup.linker.parser.token.Recovery;
+import com.onkiup.linker.parser.token.Replay;
+import com.onkiup.linker.parser.token.VariantPredictor;
+import com.onkiup.linker.parser.token.VariantToken;
 import com.onkiup.linker.parser.util.LoggerLayout;
 import com.onkiup.linker.parser.util.ParserError;
 import com.onkiup.linker.parser.util.SelfPopulatingBuffer;
@@ -32,6 +44,23 @@ public class TokenGrammar<X extends Rule> {
   private Class<X> type;
   private Class metaType;
   private String ignoreTrail;
+  /**
+   * Parser limits (zero means no limit)
+   */
+  private long timeout, maxSteps, maxReconsumed, maxTokens;
+  private ParserEngine engine = ParserEngine.BACKTRACKING;
+  /**
+   * compiled grammar for the Earley engine, created on first use
+   */
+  private volatile ForestParser<X> forestParser;
+  /**
+   * learned junction variant predictor shared by all parses or null
+   */
+  private volatile VariantPredictor variantPredictor;
+  /**
+   * junction data shared by all parses
+   */
+  private final JunctionCache junctions = new JunctionCache();
 
   /**
    * Default constructor
@@ -80,6 +109,95 @@ public class TokenGrammar<X extends Rule> {
     this.ignoreTrail = chars;
   }
 
+  /**
+   * Limits wall-clock time that this parser may spend on a single source
+   * @param timeout maximum parsing time or zero to disable the limit
+   * @param unit time unit of the timeout
+   * @return this parser
+   */
+  public TokenGrammar<X> timeout(long timeout, TimeUnit unit) {
+    this.timeout = unit.toNanos(timeout);
+    return this;
+  }
+
+  /**
+   * Limits the number of parser loop iterations (see {@link ParserStatistics#steps()}) per source
+   * @param maxSteps maximum number of iterations or zero to disable the limit
+   * @return this parser
+   */
+  public TokenGrammar<X> maxSteps(long maxSteps) {
+    this.maxSteps = maxSteps;
+    return this;
+  }
+
+  /**
+   * Limits the number of characters that parser may consume again after backtracking
+   * (consumed characters in excess of the furthest reached source position)
+   * @param maxReconsumed maximum number of re-consumed characters or zero to disable the limit
+   * @return this parser
+   */
+  public TokenGrammar<X> maxReconsumed(long maxReconsumed) {
+    this.maxReconsumed = maxReconsumed;
+    return this;
+  }
+
+  /**
+   * Limits the number of tokens that parser may create per source. Since parser never holds more tokens than it
+   * created, this also limits memory occupied by partially populated ASTs
+   * @param maxTokens maximum number of created tokens or zero to disable the limit
+   * @return this parser
+   */
+  public TokenGrammar<X> maxTokens(long maxTokens) {
+    this.maxTokens = maxTokens;
+    return this;
+  }
+
+  /**
+   * Selects the parsing algorithm used by this parser
+   * @param engine parsing algorithm
+   * @return this parser
+   */
+  public TokenGrammar<X> engine(ParserEngine engine) {
+    this.engine = engine;
+    return this;
+  }
+
+  /**
+   * @return the parsing algorithm used by this parser
+   */
+  public ParserEngine engine() {
+    return engine;
+  }
+
+  /**
+   * Makes grammar junctions that cannot be predicted with {@link PredictionTable}s and do not list their variants with
+   * {@link com.onkiup.linker.parser.annotation.Alternatives} test first the variant that most often matched the source
+   * after the same characters in previous parses with this parser. Replaces lookahead automata of this parser
+   * @param variantPredictor predictor to learn from and update or null to disable learned prediction
+   * @return this parser
+   */
+  public TokenGrammar<X> variantPredictor(VariantPredictor variantPredictor) {
+    this.variantPredictor = variantPredictor;
+    return this;
+  }
+
+  /**
+   * @return learned junction variant predictor used by this parser or null
+   */
+  public VariantPredictor variantPredictor() {
+    return variantPredictor;
+  }
+
+  /**
+   * Tests whether every grammar junction reachable from the resulting token type is LL(1), so that the parser selects
+   * junction variants from the next source character instead of testing them one by one (see {@link PredictionTable}).
+   * Junctions without prediction tables are still resolved by testing their variants, so this is only a performance hint
+   * @return true if all junctions of this grammar have prediction tables
+   */
+  public boolean isPredictive() {
+    return PredictionTable.isPredictive(type);
+  }
+
   /**
    * Parses a string into resulting token
    * @param source string to parse
@@ -119,7 +237,19 @@ public class TokenGrammar<X extends Rule> {
    * @throws SyntaxError
    */
   public X parse(String name, Reader source)  throws SyntaxError {
-    X result = tokenize(name, source);
+    return parse(name, source, new ParserStatistics());
+  }
+
+  /**
+   * Parses named text from a Reader, reporting parser events to provided counters
+   * @param name name of the source
+   * @param source reader to get contents from
+   * @param statistics counters to update while parsing
+   * @return parsed token
+   * @throws SyntaxError
+   */
+  public X parse(String name, Reader source, ParserStatistics statistics) throws SyntaxError {
+    X result = tokenize(name, source, statistics);
     StringBuilder tail = new StringBuilder();
     try {
       int nextChar;
@@ -136,6 +266,55 @@ public class TokenGrammar<X extends Rule> {
     return result;
   }
 
+  /**
+   * Parses named text from a Reader, recovering from syntax errors inside array members at sync points declared with
+   * {@link com.onkiup.linker.parser.annotation.SyncPoint}. Failed array members are left out of the result and
+   * reported to the provided list, so that a single pass reports all recoverable errors in the source.
+   * @param name name of the source
+   * @param source reader to get contents from
+   * @param errors list to which recovered syntax errors will be added
+   * @return parsed token
+   * @throws SyntaxError when parser fails to recover from an error
+   * @throws ParserLimitExceeded when one of configured parser limits is reached or parsing thread is interrupted
+   */
+  public X parse(String name, Reader source, List<RecoveredSyntaxError> errors) throws SyntaxError {
+    if (engine == ParserEngine.EARLEY) {
+      throw new UnsupportedOperationException("Error recovery is not supported by " + engine + " parser engine");
+    }
+    return populate(name, source, new Limits(this, new ParserStatistics()), false, new Recovery(errors), null).tokenOrNull();
+  }
+
+  /**
+   * Parses contents from a Reader into parser events
+   * @see #parse(String, Reader, ParseListener)
+   * @param source reader to get contents from
+   * @param listener events receiver
+   * @throws SyntaxError
+   */
+  public void parse(Reader source, ParseListener listener) throws SyntaxError {
+    parse("unknown", source, listener);
+  }
+
+  /**
+   * Parses named text from a Reader into parser events without materializing the AST (see {@link #validate(String, Reader, ParserStatistics)}
+   * for the list of skipped operations). Events for the source that the parser has committed to (see
+   * {@link com.onkiup.linker.parser.annotation.Commit}) are emitted while the source is being parsed, as soon as the parser
+   * can no longer trace back matched tokens; events for the rest of the source are emitted after the source is accepted.
+   * When the source contains a syntax error, the listener may receive events for the source before the error.
+   * @param name name of the source
+   * @param source reader to get contents from
+   * @param listener events receiver
+   * @throws SyntaxError
+   * @throws ParserLimitExceeded when one of configured parser limits is reached or parsing thread is interrupted
+   */
+  public void parse(String name, Reader source, ParseListener listener) throws SyntaxError {
+    if (engine == ParserEngine.EARLEY) {
+      forest(name, source, new Limits(this, new ParserStatistics())).walk(listener);
+      return;
+    }
+    release(populate(name, source, new Limits(this, new ParserStatistics()), true, null, listener));
+  }
+
   /**
    * Parses contents from the reader
    * @param source reader to get contents from
@@ -154,6 +333,122 @@ public class TokenGrammar<X extends Rule> {
    * @throws SyntaxError
    */
   public X tokenize(String sourceName, Reader source) throws SyntaxError {
+    return tokenize(sourceName, source, new ParserStatistics());
+  }
+
+  /**
+   * Main parser entrance that reports parser events to provided counters
+   * @param sourceName the name of the source that will be parsed
+   * @param source reader to get contents from
+   * @param statistics counters to update while parsing
+   * @return parsed token
+   * @throws SyntaxError
+   * @throws ParserLimitExceeded when one of configured parser limits is reached or parsing thread is interrupted
+   */
+  public X tokenize(String sourceName, Reader source, ParserStatistics statistics) throws SyntaxError {
+    if (engine == ParserEngine.EARLEY) {
+      return forest(sourceName, source, new Limits(this, statistics)).tree();
+    }
+    return populate(sourceName, source, new Limits(this, statistics), false, null, null).tokenOrNull();
+  }
+
+  /**
+   * Tests whether a string matches this grammar
+   * @see #validate(String, Reader, ParserStatistics)
+   * @param source string to test
+   * @return -1 if the source matches this grammar or the furthest position parser reached before failing
+   */
+  public int validate(String source) {
+    return validate("unknown", new StringReader(source));
+  }
+
+  /**
+   * Tests whether named text from a Reader matches this grammar
+   * @see #validate(String, Reader, ParserStatistics)
+   * @param name name of the source
+   * @param source reader to get contents from
+   * @return -1 if the source matches this grammar or the furthest position parser reached before failing
+   */
+  public int validate(String name, Reader source) {
+    return validate(name, source, new ParserStatistics());
+  }
+
+  /**
+   * Tests whether named text from a Reader matches this grammar. Uses the same parser as {@link #parse(String, Reader, ParserStatistics)},
+   * but does not build the AST: Rule instances are created only for rules which fields are needed to match the source
+   * (see {@link com.onkiup.linker.parser.annotation.ContextAware} and {@link com.onkiup.linker.parser.annotation.OptionalToken} conditions),
+   * Rule callbacks are not invoked and collection fields are not converted into arrays.
+   * @param name name of the source
+   * @param source reader to get contents from
+   * @param statistics counters to update while parsing
+   * @return -1 if the source matches this grammar or the furthest position parser reached before failing
+   * @throws ParserLimitExceeded when one of configured parser limits is reached or parsing thread is interrupted
+   */
+  public int validate(String name, Reader source, ParserStatistics statistics) {
+    Limits limits = new Limits(this, statistics);
+    try {
+      if (engine == ParserEngine.EARLEY) {
+        forest(name, source, limits);
+      } else {
+        release(populate(name, source, limits, true, null, null));
+      }
+      return -1;
+    } catch (ParserLimitExceeded e) {
+      throw e;
+    } catch (RuntimeException e) {
+      if (e.getCause() instanceof SyntaxError) {
+        return limits.furthest;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Parses named text from a Reader into a packed forest of all possible parse trees using {@link ParserEngine#EARLEY}
+   * engine, regardless of the engine selected for this parser
+   * @param name name of the source
+   * @param source reader to get contents from
+   * @return parse forest
+   * @throws SyntaxError
+   * @throws ParserLimitExceeded when one of configured parser limits is reached or parsing thread is interrupted
+   * @throws IllegalArgumentException when the grammar uses features not supported by the Earley engine
+   */
+  public PackedForest<X> forest(String name, Reader source) throws SyntaxError {
+    return forest(name, source, new Limits(this, new ParserStatistics()));
+  }
+
+  private PackedForest<X> forest(String name, Reader source, Limits limits) {
+    ForestParser<X> parser = forestParser;
+    if (parser == null) {
+      // compiled grammars are immutable, so a concurrent duplicate compilation is harmless
+      forestParser = parser = new ForestParser<>(type);
+    }
+    SelfPopulatingBuffer buffer;
+    try {
+      buffer = new SelfPopulatingBuffer(name, source);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read source " + name, e);
+    }
+    try {
+      return parser.parse(name, buffer, ignoreTrail, limits.statistics, limits::check, limits::reached);
+    } catch (SyntaxError se) {
+      throw new RuntimeException("Syntax error at position " + limits.furthest + ": " + se.getMessage(), se);
+    }
+  }
+
+  /**
+   * Populates an AST from the reader
+   * @param sourceName the name of the source that will be parsed
+   * @param source reader to get contents from
+   * @param limits limits of this parse (also holds parser counters)
+   * @param recognizer when true, the AST will not create Rule instances unless they are needed to match the source
+   * @param recovery error recovery state or null to fail on the first syntax error
+   * @param listener receiver of events for the tokens that parser can no longer trace back or null
+   * @return populated root token
+   */
+  private CompoundToken<X> populate(String sourceName, Reader source, Limits limits, boolean recognizer, Recovery recovery,
+      ParseListener listener) throws SyntaxError {
+    ParserStatistics statistics = limits.statistics;
     AtomicInteger position = new AtomicInteger(0);
     SelfPopulatingBuffer buffer = null;
     try {
@@ -161,14 +456,27 @@ public class TokenGrammar<X extends Rule> {
     } catch (IOException e) {
       throw new RuntimeException("Failed to read source " + sourceName, e);
     }
+    CompoundToken<X> rootToken = null;
     try {
-      CompoundToken<X> rootToken = CompoundToken.forClass(type, new ParserLocation(sourceName, 0, 0, 0));
+      ParseContext context = new ParseContext()
+          .statistics(statistics)
+          .recognizer(recognizer)
+          .recovery(recovery)
+          .variantPredictor(variantPredictor)
+          .junctions(junctions);
+      rootToken = CompoundToken.forClass(type, new ParserLocation(sourceName, 0, 0, 0), context);
       ConsumingToken.ConsumptionState.rootBuffer(rootToken, buffer);
-      CompoundToken parent = rootToken;
-      ConsumingToken<?> consumer = nextConsumingToken(parent).orElseThrow(() -> new ParserError("No possible consuming tokens found", parent));
+      Replay events = listener == null ? null : rootToken.stream(listener);
+      final CompoundToken parent = rootToken;
+      ConsumingToken<?> consumer = advance(Transition.NEXT, parent, false, limits);
+      if (consumer == null) {
+        throw new ParserError("No possible consuming tokens found", parent);
+      }
       ConsumingToken<?> bestFail = consumer;
       setupLoggingLayouts(buffer, position::get);
       do {
+        statistics.onStep();
+        limits.check();
         if (logger.isDebugEnabled()) {
           System.out.print("\u001B[H\u001Bc");
           System.out.println("|----------------------------------------------------------------------------------------");
@@ -194,19 +502,23 @@ public class TokenGrammar<X extends Rule> {
         ConsumingToken lastConsumer = consumer;
 
         processConsumingToken(consumer, position);
+        limits.reached(position.get());
         boolean hitEnd = position.get() >= buffer.length();
 
         if (consumer.isFailed()) {
           logger.debug("!!! CONSUMER FAILED !!! {}", consumer.tag());
           bestFail = bestFail.position() > consumer.position() ? bestFail : consumer;
-          consumer = processTraceback(consumer).orElse(null);
+          consumer = processTraceback(consumer, limits);
         } else if (consumer.isPopulated()) {
           logger.debug("consumer populated: {}", consumer.tag());
-          consumer = onPopulated(consumer, hitEnd).orElse(null);
+          consumer = onPopulated(consumer, hitEnd, limits);
+          if (events != null) {
+            events.flush();
+          }
         } else if (hitEnd) {
           logger.debug("Hit end while processing {}", consumer.tag());
           consumer.atEnd();
-          consumer = nextConsumingToken(consumer).orElse(null);
+          consumer = nextConsumingToken(consumer, limits);
         }
 
         if (consumer != null) {
@@ -218,75 +530,141 @@ public class TokenGrammar<X extends Rule> {
           if (rootToken.isPopulated()) {
             if (!hitEnd) {
               if (!validateTrailingCharacters(buffer, position.get())) {
-                consumer = processEarlyPopulation(rootToken, buffer, position.get()).orElseThrow(
-                    () -> new ParserError("Failed to recover from early population", lastConsumer));
+                consumer = processEarlyPopulation(rootToken, buffer, position.get(), limits);
+                if (consumer == null) {
+                  throw new SyntaxError("Failed to match trailing characters", lastConsumer, buffer, rootToken.expectedTokens());
+                }
                 logger.debug("Recovered to {}", consumer.tag());
               } else {
                 logger.debug("Successfully parsed (with valid trailing characters '{}') into: {}", buffer.subSequence(position.get(), buffer.length()), rootToken.tag());
-                return rootToken.token().orElse(null);
+                return accept(rootToken, events);
               }
             } else {
               logger.debug("Perfectly parsed into: {}", rootToken.tag());
-              return rootToken.token().get();
+              return accept(rootToken, events);
             }
           } else if (consumer != null) {
             logger.debug("Hit end and root token is not populated -- trying to traceback...");
             do {
-              consumer.onFail();
-              consumer = processTraceback(consumer).orElse(null);
+              consumer.failAtEnd();
+              consumer = processTraceback(consumer, limits);
             } while (buffer.length() == 0 && consumer != null);
 
             if (consumer != null && rootToken.isPopulated()) {
-              consumer = processEarlyPopulation(rootToken, buffer, position.get()).orElseThrow(() ->
-                  new ParserError("Failed to recover from null consumer", lastConsumer));
+              consumer = processEarlyPopulation(rootToken, buffer, position.get(), limits);
+              if (consumer == null) {
+                throw new SyntaxError("Failed to match trailing characters", lastConsumer, buffer, rootToken.expectedTokens());
+              }
               logger.debug("Recovered to {}", consumer.tag());
             } else if (rootToken.isPopulated()) {
-              return rootToken.token().get();
+              return accept(rootToken, events);
             }
           } else {
-            throw new SyntaxError("Advanced up to this token and then failed", bestFail, buffer);
+            throw new SyntaxError("Advanced up to this token and then failed", bestFail, buffer, rootToken.expectedTokens());
           }
         }
 
-      } while(consumer != null && position.get() < buffer.length());
+      } while(consumer != null && (position.get() < buffer.length() || !rootToken.isPopulated()));
 
       if (rootToken.isPopulated()) {
-        return rootToken.token().orElse(null);
+        return accept(rootToken, events);
       }
 
-      throw new SyntaxError("Unexpected end of input", consumer, buffer);
+      throw new SyntaxError("Unexpected end of input", consumer, buffer, rootToken.expectedTokens());
     } catch (SyntaxError se) {
-      throw new RuntimeException("Syntax error at position " + position.get(), se);
+      release(rootToken);
+      throw new RuntimeException("Syntax error at position " + position.get() + ": " + se.getMessage(), se);
+    } catch (ParserLimitExceeded ple) {
+      release(rootToken);
+      throw ple;
     } catch (Exception e) {
+      release(rootToken);
       throw new RuntimeException(e);
     } finally {
       restoreLoggingLayouts();
     }
   }
 
+  /**
+   * Reports events for the tokens of an accepted AST that were not reported while the AST was being populated
+   * @param rootToken populated root token
+   * @param events replay of the AST or null if events were not requested
+   * @return the root token
+   */
+  private static <X> CompoundToken<X> accept(CompoundToken<X> rootToken, Replay events) {
+    if (events != null) {
+      events.finish();
+    }
+    return rootToken;
+  }
+
+  /**
+   * Detaches an AST produced by this parser from parser registries (token metadata, source buffers, position tags)
+   * so that the AST can be garbage collected. Metadata-dependent methods like {@link Rule#source()} or
+   * {@link Rule#parent()} will not work on the AST tokens after this call.
+   * @param token any rule from a previously parsed AST
+   */
+  public static void release(Rule token) {
+    Rule.Metadata.metadata(token)
+        .map(PartialToken::root)
+        .ifPresent(TokenGrammar::release);
+  }
+
+  /**
+   * Parses random documents generated from this grammar (see {@link InputGenerator}) so that JIT compiler
+   * optimizes parser hot paths before real sources arrive. Parsing failures are logged and ignored.
+   * @param documents number of documents to parse
+   * @param size approximate size of each document in characters
+   */
+  public void warmup(int documents, int size) {
+    InputGenerator<X> generator = InputGenerator.forClass(type).seed(type.getName().hashCode());
+    for (int i = 0; i < documents; i++) {
+      String source = generator.generate(size);
+      try {
+        release(parse("warmup", source));
+      } catch (Exception e) {
+        logger.debug("Failed to parse warmup document #{}", i, e);
+      }
+    }
+  }
+
+  /**
+   * Releases registered AST state
+   * @param root the root token of the AST to release
+   */
+  private static void release(PartialToken<?> root) {
+    if (root == null) {
+      return;
+    }
+    Rule.Metadata.release(root);
+    ConsumingToken.ConsumptionState.release(root);
+    VariantToken.releaseTags(root);
+  }
+
   /**
    * Tries to recover from a situation where parser populates AST before the whole source is processed by either
    * validating all trailing characters, rotating root token, or tracing back to the next umtested grammar junction
    * @param rootToken the root token of failing AST
    * @param buffer a reference to a buffer with source contents
    * @param position position in the buffer at which early population occured
-   * @return empty optional if failed to recover, or next consuming token after successfull recovery
+   * @param limits limits of the current parse
+   * @return null if failed to recover, or next consuming token after successfull recovery
    */
-  private Optional<ConsumingToken<?>> processEarlyPopulation(CompoundToken<?> rootToken, CharSequence buffer, int position) {
+  private ConsumingToken<?> processEarlyPopulation(CompoundToken<?> rootToken, CharSequence buffer, int position, Limits limits) {
     logger.debug("Early population detected...");
     if (validateTrailingCharacters(buffer, position)) {
       logger.debug("Successfully parsed (with valid trailing characters '{}') into: {}", buffer, rootToken.tag());
-      return Optional.empty();
+      return null;
     } else if (rootToken.rotatable()) {
       logger.debug("Rotating root token");
       rootToken.rotate();
-      return nextConsumingToken(rootToken);
+      return advance(Transition.NEXT, rootToken, false, limits);
     } else if (rootToken.alternativesLeft()) {
       logger.info("Root token populated too early, failing it... (Buffer left: '{}'", LoggerLayout.sanitize(buffer.subSequence(position, buffer.length())));
       rootToken.traceback();
-      return nextConsumingToken(rootToken);
+      return advance(Transition.NEXT, rootToken, false, limits);
     } else {
-      return Optional.empty();
+      return null;
     }
   }
 
@@ -294,130 +672,273 @@ public class TokenGrammar<X extends Rule> {
    * Propagates population event from child token to its parents until parent tokens report they are populated
    * @param child populated token
    * @param hitEnd a flag that indicates that parent tokens should not expect any future characters to be consume and should be either populated or failed after receiving this event (not unfailed and unpopulated)
-   * @return next consuming token from the AST or empty when all parents are populated of one of the parents reported to fail and there is no alternatives left
+   * @param limits limits of the current parse
+   * @return next consuming token from the AST or null when all parents are populated of one of the parents reported to fail and there is no alternatives left
    */
-  private static Optional<ConsumingToken<?>> onPopulated(PartialToken<?> child, boolean hitEnd) {
-    return child.parent().flatMap(parent -> {
-      parent.onChildPopulated();
-      if (hitEnd) {
-        parent.atEnd();
-      }
-      if (parent.isPopulated()) {
-        return onPopulated(parent, hitEnd);
-      } else if (parent.isFailed()) {
-        return processTraceback(parent);
-      }
-      return nextConsumingToken(parent);
-    });
+  private static ConsumingToken<?> onPopulated(PartialToken<?> child, boolean hitEnd, Limits limits) {
+    return advance(Transition.POPULATED, child, hitEnd, limits);
   }
 
   /**
    * Traces back from a failed token to its first parent with left alternatives, then advances to the next available alternative
    * @param child failed token
-   * @return consuming token from the next available alternative or empty
-   */
-  private static Optional<ConsumingToken<?>> processTraceback(PartialToken<?> child) {
-    return child.parent().flatMap(parent -> {
-      if (child.isFailed()) {
-        logger.debug("^^^--- TRACEBACK: {} <- {}", parent.tag(), child.tag());
-        parent.onChildFailed();
-        if (parent.isFailed() || parent.isPopulated()) {
-          if (parent.isPopulated()) {
-            return onPopulated(parent, false);
-          }
-          return processTraceback(parent);
-        }
+   * @param limits limits of the current parse
+   * @return consuming token from the next available alternative or null
+   */
+  private static ConsumingToken<?> processTraceback(PartialToken<?> child, Limits limits) {
+    return advance(Transition.TRACEBACK, child, false, limits);
+  }
 
-        if (!child.isOptional()) {
-          parent.traceback();
-        } else {
-          child.traceback();
-        }
-        return firstUnfilledParent(parent).flatMap(TokenGrammar::nextConsumingToken);
-      } else {
-        logger.debug("|||--- TRACEBACK: (self) <- {}", child.tag());
-        return firstUnfilledParent(child).flatMap(TokenGrammar::nextConsumingToken);
-      }
-    });
+  /**
+   * Advances to the next available consuming token after passed token; traces back any failed tokens it finds while advancing
+   * @param from token to advance from
+   * @return next consuming token
+   */
+  public static Optional<ConsumingToken<?>> nextConsumingToken(CompoundToken<?> from) {
+    return Optional.ofNullable(advance(Transition.NEXT, from, false, null));
   }
 
   /**
-   * traces back to a first unpopulated parent
-   * @param child token to trace back from
-   * @return the first unpopulated parent
+   * Parser driver transitions between two consuming tokens
    */
-  private static Optional<CompoundToken<?>> firstUnfilledParent(PartialToken<?> child) {
-    logger.debug("traversing back to first unfilled parent from {}", child.tag());
-    if (child instanceof CompoundToken && !child.isFailed() && ((CompoundToken<?>)child).unfilledChildren() > 0) {
-      logger.debug("<<<--- NEXT UNFILLED: (self) <--- {}", child.tag());
-      return Optional.of((CompoundToken<?>)child);
-    }
+  private enum Transition {
+    /**
+     * propagate population of the token to its parents
+     */
+    POPULATED,
+    /**
+     * trace back from the token to its first parent with untested alternatives
+     */
+    TRACEBACK,
+    /**
+     * search for the next consuming token in the (compound) token's children
+     */
+    NEXT
+  }
 
-    return Optional.ofNullable(
-        child.parent().flatMap(parent -> {
-          logger.debug("parent: {}", parent.tag());
+  /**
+   * Moves through the AST from the given token to the next consuming token, propagating population and failure events
+   * to parent tokens on its way. Implemented as a loop over {@link Transition} states (rather than mutually recursive
+   * methods), so that stack depth does not grow with nesting of parsed source.
+   * @param transition the first transition to perform
+   * @param token the token to start from
+   * @param hitEnd a flag that indicates that populated parent tokens should not expect any future characters
+   * @param limits limits of the current parse (checked on every transition) or null
+   * @return the next consuming token or null if there is none
+   */
+  private static ConsumingToken<?> advance(Transition transition, PartialToken<?> token, boolean hitEnd, Limits limits) {
+    boolean debug = logger.isDebugEnabled();
+    while (token != null) {
+      if (limits != null) {
+        limits.check();
+      }
+      switch (transition) {
+        case POPULATED: {
+          CompoundToken<?> parent = token.parentOrNull();
+          if (parent == null) {
+            return null;
+          }
           parent.onChildPopulated();
-          if (parent.isPopulated()) {
-            logger.debug("^^^--- NEXT UNFILLED: {} <-?- {}", parent.tag(), child.tag());
-            return firstUnfilledParent(parent);
+          if (hitEnd) {
+            parent.atEnd();
+          }
+          if (!parent.isPopulated()) {
+            transition = parent.isFailed() ? Transition.TRACEBACK : Transition.NEXT;
+          }
+          token = parent;
+          break;
+        }
+        case TRACEBACK: {
+          CompoundToken<?> parent = token.parentOrNull();
+          if (parent == null) {
+            return null;
+          }
+          if (token.isFailed()) {
+            if (debug) {
+              logger.debug("^^^--- TRACEBACK: {} <- {}", parent.tag(), token.tag());
+            }
+            token.statistics().onTraceback();
+            if (parent.recoverChild()) {
+              token = parent;
+              transition = Transition.NEXT;
+              break;
+            }
+            parent.onChildFailed();
+            if (parent.isPopulated()) {
+              transition = Transition.POPULATED;
+              hitEnd = false;
+              token = parent;
+              break;
+            } else if (parent.isFailed()) {
+              token = parent;
+              break;
+            }
+
+            if (!token.isOptional()) {
+              parent.traceback();
+            } else {
+              token.traceback();
+            }
+            token = firstUnfilledParent(parent);
           } else {
-            logger.debug("<<<--- NEXT UNFILLED: {} <--- {}", parent.tag(), child.tag());
-            return Optional.of(parent);
+            if (debug) {
+              logger.debug("|||--- TRACEBACK: (self) <- {}", token.tag());
+            }
+            token = firstUnfilledParent(token);
           }
-        }).orElseGet(() -> {
-          if (child instanceof CompoundToken) {
-            logger.debug("XXX NO NEXT UNFILLED: XXX <--- {} (compound: true, unfilled children: {}", child, ((CompoundToken<?>)child).unfilledChildren());
+          transition = Transition.NEXT;
+          break;
+        }
+        case NEXT: {
+          CompoundToken<?> from = (CompoundToken<?>) token;
+          PartialToken<?> child = from.nextChildOrNull();
+          if (debug) {
+            logger.debug("Searching for next consumer in child {}", child == null ? null : child.tag());
+          }
+          if (child instanceof ConsumingToken) {
+            if (debug) {
+              logger.debug("--->>> NEXT CONSUMER: {} ---> {}", from.tag(), child.tag());
+            }
+            return (ConsumingToken<?>) child;
+          } else if (child instanceof CompoundToken) {
+            if (debug) {
+              logger.debug("--->>> searching for next consumer in {} --> {}", from.tag(), child.tag());
+            }
+            token = child;
+          } else if (child == null) {
+            if (debug) {
+              logger.debug("^^^--- searching for next consumer in parent of {}", from.tag());
+            }
+            if (from.isFailed()) {
+              logger.debug("notifying parent about child failure");
+              transition = Transition.TRACEBACK;
+            } else if (from.isPopulated()) {
+              logger.debug("notifying parent about child population");
+              transition = Transition.POPULATED;
+              hitEnd = false;
+            } else {
+              throw new ParserError("next child == null but from is neither failed or populated", from);
+            }
           } else {
-            logger.debug("XXX NO NEXT UNFILLED: XXX <--- {}", child);
+            throw new RuntimeException("Unknown child type: " + child.getClass());
           }
-          return null;
-        })
-    );
+          break;
+        }
+        default:
+          throw new IllegalStateException("Unknown transition: " + transition);
+      }
+    }
+    logger.debug("---XXX NEXT CONSUMER: XXX (not found)");
+    return null;
   }
 
   /**
-   * Advances to the next available consuming token after passed token; traces back any failed tokens it finds while advancing
-   * @param from token to advance from
-   * @return next consuming token
+   * traces back to a first unpopulated parent
+   * @param child token to trace back from
+   * @return the first unpopulated parent or null
    */
-  public static Optional<ConsumingToken<?>> nextConsumingToken(CompoundToken<?> from) {
-    while (from != null) {
-      PartialToken<?> child = from.nextChild().orElse(null);
-      logger.debug("Searching for next consumer in child {}", child == null ? null : child.tag());
-      if (child instanceof ConsumingToken) {
-        logger.debug("--->>> NEXT CONSUMER: {} ---> {}", from.tag(), child.tag());
-        return Optional.of((ConsumingToken<?>)child);
-      } else if (child instanceof CompoundToken) {
-        logger.debug("--->>> searching for next consumer in {} --> {}", from.tag(), child.tag());
-        from = (CompoundToken)child;
-      } else if (child == null) {
-        CompoundToken<?> parent = from.parent().orElse(null);
-        logger.debug("^^^--- searching for next consumer in parent {} <--- {}", parent == null ? null : parent.tag(), from.tag());
-        if (from.isFailed()) {
-          logger.debug("notifying parent about child failure");
-          return processTraceback(from);
-        } else if (from.isPopulated()) {
-          logger.debug("notifying parent about child population");
-          return onPopulated(from, false);
-        } else {
-          throw new ParserError("next child == null but from is neither failed or populated", from);
+  private static CompoundToken<?> firstUnfilledParent(PartialToken<?> child) {
+    boolean debug = logger.isDebugEnabled();
+    if (debug) {
+      logger.debug("traversing back to first unfilled parent from {}", child.tag());
+    }
+    while (true) {
+      if (child instanceof CompoundToken && !child.isFailed() && ((CompoundToken<?>)child).unfilledChildren() > 0) {
+        if (debug) {
+          logger.debug("<<<--- NEXT UNFILLED: (self) <--- {}", child.tag());
         }
-      } else {
-        throw new RuntimeException("Unknown child type: " + child.getClass());
+        return (CompoundToken<?>)child;
+      }
+
+      CompoundToken<?> parent = child.parentOrNull();
+      if (parent == null) {
+        logger.debug("XXX NO NEXT UNFILLED: XXX <--- {}", child);
+        return null;
+      }
+      if (debug) {
+        logger.debug("parent: {}", parent.tag());
+      }
+      parent.onChildPopulated();
+      if (!parent.isPopulated()) {
+        if (debug) {
+          logger.debug("<<<--- NEXT UNFILLED: {} <--- {}", parent.tag(), child.tag());
+        }
+        return parent;
       }
+      if (debug) {
+        logger.debug("^^^--- NEXT UNFILLED: {} <-?- {}", parent.tag(), child.tag());
+      }
+      child = parent;
     }
-    logger.debug("---XXX NEXT CONSUMER: {} ---> XXX (not found)", from == null ? null : from.tag());
-    return Optional.empty();
   }
 
   /**
    * Advances to the next available consuming token in the parent of provided consuming token
    * @see #nextConsumingToken(CompoundToken)
    * @param from consuming token to advance from
-   * @return next consuming token in the AST
+   * @param limits limits of the current parse
+   * @return next consuming token in the AST or null
    */
-  private static Optional<ConsumingToken<?>> nextConsumingToken(ConsumingToken<?> from) {
-    return from.parent().flatMap(TokenGrammar::nextConsumingToken);
+  private static ConsumingToken<?> nextConsumingToken(ConsumingToken<?> from, Limits limits) {
+    CompoundToken<?> parent = from.parentOrNull();
+    return parent == null ? null : advance(Transition.NEXT, parent, false, limits);
+  }
+
+  /**
+   * Parser limits applied to a single source
+   */
+  private static final class Limits {
+    private final ParserStatistics statistics;
+    private final long maxSteps, maxReconsumed, maxTokens;
+    /**
+     * {@link System#nanoTime()} value after which parsing should be stopped or zero
+     */
+    private final long deadline;
+    /**
+     * the furthest position in the source reached by the parser
+     */
+    private int furthest;
+
+    private Limits(TokenGrammar<?> grammar, ParserStatistics statistics) {
+      this.statistics = statistics;
+      this.maxSteps = grammar.maxSteps;
+      this.maxReconsumed = grammar.maxReconsumed;
+      this.maxTokens = grammar.maxTokens;
+      this.deadline = grammar.timeout > 0 ? System.nanoTime() + grammar.timeout : 0;
+    }
+
+    /**
+     * Records parser position
+     * @param position position in the source that parser has reached
+     */
+    private void reached(int position) {
+      furthest = Math.max(furthest, position);
+    }
+
+    /**
+     * Stops the parser if any of configured limits is reached or if parsing thread was interrupted.
+     * Interruption status of the thread is preserved.
+     * @throws ParserLimitExceeded when parser should be stopped
+     */
+    private void check() {
+      ParserLimitExceeded.Limit exceeded = null;
+      if (maxSteps > 0 && statistics.steps() > maxSteps) {
+        exceeded = ParserLimitExceeded.Limit.STEPS;
+      } else if (maxReconsumed > 0 && statistics.consumed() - furthest > maxReconsumed) {
+        exceeded = ParserLimitExceeded.Limit.RECONSUMED;
+      } else if (maxTokens > 0 && statistics.tokens() > maxTokens) {
+        exceeded = ParserLimitExceeded.Limit.TOKENS;
+      } else if (deadline != 0 && System.nanoTime() - deadline > 0) {
+        exceeded = ParserLimitExceeded.Limit.TIMEOUT;
+      } else if (Thread.currentThread().isInterrupted()) {
+        exceeded = ParserLimitExceeded.Limit.INTERRUPTED;
+      }
+
+      if (exceeded != null) {
+        logger.debug("Parser limit exceeded: {} ({})", exceeded, statistics);
+        throw new ParserLimitExceeded(exceeded, statistics, furthest);
+      }
+    }
   }
 
   /**
@@ -0,0 +1,347 @@
+package com.onkiup.linker.parser.analysis;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.annotation.CaptureLimit;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+import com.onkiup.linker.parser.annotation.SkipIfFollowedBy;
+
+/**
+ * Characters that can start a token of a grammar rule or field (FIRST set), not counting ignored characters.
+ * Sets are exact for ASCII characters matched by literal terminals and conservative for everything else: capture patterns
+ * are probed character by character and may start with any non-ASCII character, while context-aware, custom and
+ * "until" terminals may start with any character
+ */
+public final class FirstSet {
+
+  /**
+   * Number of characters tracked individually
+   */
+  public static final int ASCII = 128;
+
+  private static final ConcurrentHashMap<Class<?>, FirstSet> rules = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Field, FirstSet> terminals = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, String> ignored = new ConcurrentHashMap<>();
+
+  private long low, high;
+  private boolean other, nullable;
+
+  private FirstSet() {
+  }
+
+  /**
+   * @param type rule, grammar junction, array, enum or String
+   * @return FIRST set of given type (for Strings: an empty nullable set)
+   */
+  public static FirstSet of(Class<?> type) {
+    if (type.isArray()) {
+      FirstSet result = copy(of(type.getComponentType()));
+      result.nullable = true;
+      return result;
+    } else if (type.isEnum()) {
+      return enumFirst(type);
+    } else if (!Rule.class.isAssignableFrom(type)) {
+      FirstSet result = new FirstSet();
+      result.nullable = true;
+      return result;
+    }
+    FirstSet result = rules.get(type);
+    if (result == null) {
+      compute(type);
+      result = rules.get(type);
+    }
+    return result;
+  }
+
+  /**
+   * @param field rule field
+   * @return FIRST set of values matched by the field, including the empty value for optional fields
+   */
+  @SuppressWarnings("deprecation")
+  public static FirstSet of(Field field) {
+    Class<?> type = field.getType();
+    FirstSet result;
+    if (field.isAnnotationPresent(ContextAware.class)
+        || field.isAnnotationPresent(com.onkiup.linker.parser.annotation.CustomMatcher.class)) {
+      result = any();
+    } else if (type == String.class) {
+      result = terminals.computeIfAbsent(field, FirstSet::terminal);
+    } else if (type.isArray()) {
+      result = copy(of(type.getComponentType()));
+      CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+      result.nullable = limit == null || limit.min() == 0;
+    } else {
+      result = of(type);
+    }
+    if (!result.nullable && (field.isAnnotationPresent(OptionalToken.class) || field.isAnnotationPresent(SkipIfFollowedBy.class))) {
+      result = copy(result);
+      result.nullable = true;
+    }
+    return result;
+  }
+
+  /**
+   * @param rule a rule or a grammar junction
+   * @return all characters ignored by rules and junctions reachable from given rule (see {@link IgnoreCharacters})
+   */
+  public static String ignoredCharacters(Class<?> rule) {
+    String result = ignored.get(rule);
+    if (result == null) {
+      compute(rule);
+      result = ignored.get(rule);
+    }
+    return result;
+  }
+
+  /**
+   * @param character character to test
+   * @return true if a token may start with given character
+   */
+  public boolean contains(char character) {
+    if (character >= ASCII) {
+      return other;
+    }
+    return character < 64 ? (low & 1L << character) != 0 : (high & 1L << character - 64) != 0;
+  }
+
+  /**
+   * @param other another set
+   * @return true if a character can start tokens from both sets
+   */
+  public boolean intersects(FirstSet other) {
+    return intersectsAscii(other) || this.other && other.other;
+  }
+
+  /**
+   * @param other another set
+   * @return true if an ASCII character can start tokens from both sets
+   */
+  public boolean intersectsAscii(FirstSet other) {
+    return (low & other.low) != 0 || (high & other.high) != 0;
+  }
+
+  /**
+   * @return true if a token may start with a non-ASCII character
+   */
+  public boolean containsOther() {
+    return other;
+  }
+
+  /**
+   * @return true if a token may match an empty string
+   */
+  public boolean isNullable() {
+    return nullable;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof FirstSet)) {
+      return false;
+    }
+    FirstSet set = (FirstSet) other;
+    return set.low == low && set.high == high && set.other == this.other && set.nullable == nullable;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(low) * 31 + Long.hashCode(high) + (other ? 2 : 0) + (nullable ? 1 : 0);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder("[");
+    for (char character = 0; character < ASCII; character++) {
+      if (contains(character)) {
+        result.append(character < 32 ? String.format("\\u%04x", (int) character) : String.valueOf(character));
+      }
+    }
+    if (other) {
+      result.append("...");
+    }
+    result.append(']');
+    if (nullable) {
+      result.append('?');
+    }
+    return result.toString();
+  }
+
+  /**
+   * Computes FIRST sets of all rules reachable from given one at once, since rules may refer to each other
+   */
+  private static void compute(Class<?> root) {
+    List<Class<?>> closure = RuleIntrospector.reachable(root);
+    Map<Class<?>, FirstSet> result = new HashMap<>();
+    for (Class<?> rule : closure) {
+      result.put(rule, new FirstSet());
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Class<?> rule : closure) {
+        FirstSet next = new FirstSet();
+        if (TokenGrammar.isConcrete(rule)) {
+          next.nullable = true;
+          for (Field field : RuleIntrospector.fields(rule)) {
+            FirstSet first = fieldFirst(field, result);
+            next.add(first);
+            if (!first.nullable) {
+              next.nullable = false;
+              break;
+            }
+          }
+        } else {
+          for (Class<?> variant : (List<Class<?>>) (List) RuleIntrospector.variants((Class) rule)) {
+            FirstSet first = result.get(variant);
+            next.add(first);
+            next.nullable |= first.nullable;
+          }
+        }
+        if (!next.equals(result.get(rule))) {
+          result.put(rule, next);
+          changed = true;
+        }
+      }
+    }
+    for (Class<?> rule : closure) {
+      rules.putIfAbsent(rule, result.get(rule));
+      ignored.putIfAbsent(rule, reachableIgnored(rule));
+    }
+  }
+
+  /**
+   * @return FIRST set of a field using FIRST sets of rules computed so far
+   */
+  private static FirstSet fieldFirst(Field field, Map<Class<?>, FirstSet> computed) {
+    Class<?> type = field.getType();
+    Class<?> member = type.isArray() ? type.getComponentType() : type;
+    if (!Rule.class.isAssignableFrom(member) || member.isEnum() || field.isAnnotationPresent(ContextAware.class)) {
+      return of(field);
+    }
+    FirstSet result = copy(computed.get(member));
+    if (type.isArray()) {
+      CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+      result.nullable |= limit == null || limit.min() == 0;
+    }
+    result.nullable |= field.isAnnotationPresent(OptionalToken.class) || field.isAnnotationPresent(SkipIfFollowedBy.class);
+    return result;
+  }
+
+  private static String reachableIgnored(Class<?> root) {
+    StringBuilder result = new StringBuilder();
+    for (Class<?> rule : RuleIntrospector.reachable(root)) {
+      IgnoreCharacters annotation = rule.getAnnotation(IgnoreCharacters.class);
+      if (annotation != null) {
+        for (char character : annotation.value().toCharArray()) {
+          if (result.indexOf(String.valueOf(character)) < 0) {
+            result.append(character);
+          }
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  private static FirstSet terminal(Field field) {
+    try {
+      if (Modifier.isStatic(field.getModifiers())) {
+        field.setAccessible(true);
+        return literal((String) field.get(null));
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Failed to read terminal field " + field, e);
+    }
+    CapturePattern pattern = field.getAnnotation(CapturePattern.class);
+    return pattern == null ? any() : pattern(pattern);
+  }
+
+  private static FirstSet enumFirst(Class<?> type) {
+    FirstSet result = new FirstSet();
+    for (Object constant : type.getEnumConstants()) {
+      CapturePattern pattern;
+      try {
+        pattern = type.getDeclaredField(((Enum<?>) constant).name()).getAnnotation(CapturePattern.class);
+      } catch (NoSuchFieldException e) {
+        throw new IllegalArgumentException("Failed to read field for enum value " + constant, e);
+      }
+      FirstSet first = pattern == null ? literal(constant.toString()) : pattern(pattern);
+      result.add(first);
+      result.nullable |= first.nullable;
+    }
+    return result;
+  }
+
+  private static FirstSet literal(String literal) {
+    FirstSet result = new FirstSet();
+    if (literal == null || literal.isEmpty()) {
+      result.nullable = true;
+    } else {
+      result.add(literal.charAt(0));
+    }
+    return result;
+  }
+
+  /**
+   * Probes a capture pattern with every ASCII character: the character can start a token if the pattern matches it or
+   * needs more characters to decide
+   */
+  private static FirstSet pattern(CapturePattern annotation) {
+    String regex = RuleIntrospector.regex(annotation);
+    if (regex.length() == 0) {
+      // "until" patterns capture everything before the stop token
+      return any();
+    }
+    Pattern pattern = Pattern.compile(regex);
+    FirstSet result = new FirstSet();
+    result.other = true;
+    Matcher matcher = pattern.matcher("");
+    result.nullable = matcher.lookingAt();
+    for (char character = 0; character < ASCII; character++) {
+      matcher.reset(String.valueOf(character));
+      if (matcher.lookingAt() && matcher.end() > 0 || matcher.hitEnd()) {
+        result.add(character);
+      }
+    }
+    return result;
+  }
+
+  private static FirstSet any() {
+    FirstSet result = new FirstSet();
+    result.low = result.high = -1L;
+    result.other = result.nullable = true;
+    return result;
+  }
+
+  private static FirstSet copy(FirstSet source) {
+    FirstSet result = new FirstSet();
+    result.add(source);
+    result.nullable = source.nullable;
+    return result;
+  }
+
+  private void add(char character) {
+    if (character < 64) {
+      low |= 1L << character;
+    } else {
+      high |= 1L << character - 64;
+    }
+  }
+
+  private void add(FirstSet other) {
+    low |= other.low;
+    high |= other.high;
+    this.other |= other.other;
+  }
+}
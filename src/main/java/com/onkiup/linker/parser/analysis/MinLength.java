@@ -0,0 +1,187 @@
+package com.onkiup.linker.parser.analysis;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.annotation.CaptureLimit;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+import com.onkiup.linker.parser.annotation.SkipIfFollowedBy;
+
+/**
+ * Minimum number of characters that grammar rules and fields can match, not counting ignored characters.
+ * Literal terminals match their own length, capture patterns match at least one character unless they match an empty
+ * string, arrays match at least {@link CaptureLimit#min()} members and optional, context-aware and custom fields may
+ * match nothing. Since ignored characters only add to the matched length, a token cannot match the source if its
+ * minimum length exceeds the number of characters left in the buffer
+ */
+public final class MinLength {
+
+  /**
+   * Minimum length of rules that cannot match any source (like junctions without variants)
+   */
+  public static final int INFINITE = Integer.MAX_VALUE;
+
+  private static final ConcurrentHashMap<Class<?>, Integer> rules = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Field, Integer> fields = new ConcurrentHashMap<>();
+
+  private MinLength() {
+  }
+
+  /**
+   * @param type rule, grammar junction, array, enum or String
+   * @return the minimum number of characters matched by a token of given type or {@link #INFINITE}
+   */
+  public static int of(Class<?> type) {
+    if (type.isArray()) {
+      return 0;
+    } else if (type.isEnum()) {
+      return enumLength(type);
+    } else if (!Rule.class.isAssignableFrom(type)) {
+      return 0;
+    }
+    Integer result = rules.get(type);
+    if (result == null) {
+      compute(type);
+      result = rules.get(type);
+    }
+    return result;
+  }
+
+  /**
+   * @param field rule field
+   * @return the minimum number of characters matched by the field, zero for optional fields
+   */
+  public static int of(Field field) {
+    if (field.isAnnotationPresent(OptionalToken.class) || field.isAnnotationPresent(SkipIfFollowedBy.class)) {
+      return 0;
+    }
+    Integer result = fields.get(field);
+    if (result == null) {
+      result = fieldLength(field, null);
+      fields.putIfAbsent(field, result);
+    }
+    return result;
+  }
+
+  /**
+   * Computes minimum lengths of all rules reachable from given one at once, since rules may refer to each other
+   */
+  private static void compute(Class<?> root) {
+    List<Class<?>> closure = RuleIntrospector.reachable(root);
+    Map<Class<?>, Integer> result = new HashMap<>();
+    for (Class<?> rule : closure) {
+      result.put(rule, INFINITE);
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Class<?> rule : closure) {
+        int next;
+        if (TokenGrammar.isConcrete(rule)) {
+          next = 0;
+          for (Field field : RuleIntrospector.fields(rule)) {
+            if (field.isAnnotationPresent(OptionalToken.class) || field.isAnnotationPresent(SkipIfFollowedBy.class)) {
+              continue;
+            }
+            next = add(next, fieldLength(field, result));
+          }
+        } else {
+          next = INFINITE;
+          for (Class<?> variant : (List<Class<?>>) (List) RuleIntrospector.variants((Class) rule)) {
+            next = Math.min(next, result.get(variant));
+          }
+        }
+        if (next < result.get(rule)) {
+          result.put(rule, next);
+          changed = true;
+        }
+      }
+    }
+    for (Class<?> rule : closure) {
+      rules.putIfAbsent(rule, result.get(rule));
+    }
+  }
+
+  /**
+   * @param computed lengths of rules computed so far or null to use cached lengths
+   * @return minimum length of the field ignoring its optionality
+   */
+  @SuppressWarnings("deprecation")
+  private static int fieldLength(Field field, Map<Class<?>, Integer> computed) {
+    Class<?> type = field.getType();
+    if (field.isAnnotationPresent(ContextAware.class)
+        || field.isAnnotationPresent(com.onkiup.linker.parser.annotation.CustomMatcher.class)) {
+      return 0;
+    } else if (type == String.class) {
+      return terminalLength(field);
+    } else if (type.isArray()) {
+      CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+      if (limit == null || limit.min() == 0) {
+        return 0;
+      }
+      int member = ruleLength(type.getComponentType(), computed);
+      return member == INFINITE ? INFINITE : (int) Math.min((long) member * limit.min(), INFINITE);
+    }
+    return ruleLength(type, computed);
+  }
+
+  private static int ruleLength(Class<?> type, Map<Class<?>, Integer> computed) {
+    if (computed != null && computed.containsKey(type)) {
+      return computed.get(type);
+    }
+    return of(type);
+  }
+
+  private static int terminalLength(Field field) {
+    try {
+      if (Modifier.isStatic(field.getModifiers())) {
+        field.setAccessible(true);
+        String literal = (String) field.get(null);
+        return literal == null ? 0 : literal.length();
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Failed to read terminal field " + field, e);
+    }
+    CapturePattern pattern = field.getAnnotation(CapturePattern.class);
+    return pattern == null ? 0 : patternLength(pattern);
+  }
+
+  private static int enumLength(Class<?> type) {
+    int result = INFINITE;
+    for (Object constant : type.getEnumConstants()) {
+      CapturePattern pattern;
+      try {
+        pattern = type.getDeclaredField(((Enum<?>) constant).name()).getAnnotation(CapturePattern.class);
+      } catch (NoSuchFieldException e) {
+        throw new IllegalArgumentException("Failed to read field for enum value " + constant, e);
+      }
+      result = Math.min(result, pattern == null ? constant.toString().length() : patternLength(pattern));
+    }
+    return result;
+  }
+
+  /**
+   * @return one for patterns that do not match an empty string, zero otherwise
+   */
+  private static int patternLength(CapturePattern annotation) {
+    String regex = RuleIntrospector.regex(annotation);
+    if (regex.length() == 0) {
+      // "until" patterns capture everything before the stop token
+      return 0;
+    }
+    return Pattern.compile(regex).matcher("").lookingAt() ? 0 : 1;
+  }
+
+  private static int add(int a, int b) {
+    return a == INFINITE || b == INFINITE ? INFINITE : (int) Math.min((long) a + b, INFINITE);
+  }
+}
@@ -0,0 +1,149 @@
+package com.onkiup.linker.parser.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+
+/**
+ * LL(1) prediction table of a grammar junction: maps the next non-ignored ASCII character to the only junction variant
+ * that can start with it. Tables exist only for junctions which variants never match an empty string and start with
+ * distinct characters (see {@link FirstSet}); characters that may be ignored by one of the reachable rules or may start
+ * several variants are left unpredicted, so the parser tests junction variants as usual when it meets them
+ */
+public final class PredictionTable {
+
+  /**
+   * Returned by {@link #predict(CharSequence, int, String)} when none of the junction variants can match the source
+   */
+  public static final int NONE = -1;
+  /**
+   * Returned by {@link #predict(CharSequence, int, String)} when the next character does not determine junction variant
+   */
+  public static final int UNKNOWN = -2;
+
+  private final Class<?>[] variants;
+  /**
+   * indexes of predicted variants per ASCII character or {@link #NONE}
+   */
+  private final byte[] entries = new byte[FirstSet.ASCII];
+  /**
+   * characters that may be ignored by the junction's variants or by rules reachable from them
+   */
+  private final String ignored;
+
+  private PredictionTable(Class<?>[] variants, FirstSet[] firsts, String ignored) {
+    this.variants = variants;
+    this.ignored = ignored;
+    for (char character = 0; character < FirstSet.ASCII; character++) {
+      int entry = NONE;
+      for (int i = 0; i < firsts.length; i++) {
+        if (firsts[i].contains(character)) {
+          if (entry != NONE) {
+            throw new IllegalArgumentException("Character " + (int) character + " starts both " + variants[entry].getName()
+                + " and " + variants[i].getName());
+          }
+          entry = i;
+        }
+      }
+      entries[character] = (byte) entry;
+    }
+  }
+
+  /**
+   * Builds a prediction table for the junction; parsers keep built tables for the junctions of their grammar
+   * (see {@link com.onkiup.linker.parser.token.JunctionCache})
+   * @param junction grammar junction
+   * @param operands when true, the table predicts only non left-recursive variants (see {@link RuleIntrospector#leftRecursive(Class)})
+   * @return prediction table for the junction or null if the junction is not LL(1)
+   */
+  public static PredictionTable forJunction(Class<? extends Rule> junction, boolean operands) {
+    List<Class<?>> candidates = new ArrayList<>((List) RuleIntrospector.variants((Class) junction));
+    if (operands) {
+      candidates.removeAll(RuleIntrospector.leftRecursive((Class) junction));
+    }
+    if (candidates.isEmpty() || candidates.size() > Byte.MAX_VALUE) {
+      return null;
+    }
+    FirstSet[] firsts = new FirstSet[candidates.size()];
+    for (int i = 0; i < firsts.length; i++) {
+      firsts[i] = FirstSet.of(candidates.get(i));
+      if (firsts[i].isNullable()) {
+        return null;
+      }
+      for (int j = 0; j < i; j++) {
+        if (firsts[i].intersectsAscii(firsts[j])) {
+          return null;
+        }
+      }
+    }
+    return new PredictionTable(candidates.toArray(new Class<?>[0]), firsts, FirstSet.ignoredCharacters(junction));
+  }
+
+  /**
+   * Tests whether the parser can resolve all grammar junctions reachable from given rule with prediction tables
+   * (without testing junction variants that do not match the source)
+   * @param rule the root rule of the grammar
+   * @return true if every reachable grammar junction has a prediction table
+   */
+  public static boolean isPredictive(Class<? extends Rule> rule) {
+    for (Class<?> type : RuleIntrospector.reachable(rule)) {
+      if (TokenGrammar.isConcrete(type)) {
+        continue;
+      }
+      boolean operands = !RuleIntrospector.leftRecursive((Class) type).isEmpty();
+      if (forJunction((Class) type, operands) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Predicts the junction variant that should be used to match the source at given position
+   * @param source parser buffer
+   * @param position junction position in the buffer
+   * @param ignored characters ignored by the junction
+   * @return index of the predicted variant in {@link #variants()}, {@link #NONE} if no variants can match the source,
+   * or {@link #UNKNOWN} if the variant cannot be predicted
+   */
+  public int predict(CharSequence source, int position, String ignored) {
+    for (int i = position; i < source.length(); i++) {
+      char character = source.charAt(i);
+      if (character >= FirstSet.ASCII) {
+        return UNKNOWN;
+      }
+      int entry = entries[character];
+      if (ignored.indexOf(character) > -1) {
+        if (entry != NONE) {
+          // an ignored character that may also start one of the variants
+          return UNKNOWN;
+        }
+      } else if (this.ignored.indexOf(character) > -1) {
+        // variants may skip the character
+        return UNKNOWN;
+      } else {
+        return entry;
+      }
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * @return variants predicted by this table
+   */
+  public List<Class<?>> variants() {
+    return Collections.unmodifiableList(Arrays.asList(variants));
+  }
+
+  /**
+   * @param index variant index returned by {@link #predict(CharSequence, int, String)}
+   * @return predicted variant
+   */
+  public Class<?> variant(int index) {
+    return variants[index];
+  }
+}
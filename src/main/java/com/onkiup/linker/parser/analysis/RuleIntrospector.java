@@ -0,0 +1,328 @@
+package com.onkiup.linker.parser.analysis;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.annotation.AdjustPriority;
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.Commit;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.IgnoreVariant;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+import com.onkiup.linker.parser.annotation.SkipIfFollowedBy;
+
+/**
+ * Cached reflective view of grammar rules shared by parser tokens and grammar analysis tools
+ */
+public final class RuleIntrospector {
+
+  private static final Map<Package, Reflections> reflectionsCache = Collections.synchronizedMap(new WeakHashMap<>());
+  private static final ConcurrentHashMap<Class<?>, Field[]> fields = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, List<Class<?>>> subTypes = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, List<Class<?>>> variants = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, Set<Field>> contextFields = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, List<Class<?>>> leftRecursive = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, List<Class<?>>> operators = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, List<Class<?>>> reachable = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, Boolean> commits = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Class<?>, Integer>> sharedPrefixes = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Class<?>, Integer> ruleIds = new ConcurrentHashMap<>();
+  private static final AtomicInteger nextRuleId = new AtomicInteger();
+  /**
+   * Context fields of all rules passed to {@link #contextFields(Class)}
+   */
+  private static final Set<Field> contextReferences = ConcurrentHashMap.newKeySet();
+
+  private RuleIntrospector() {
+  }
+
+  /**
+   * Returns fields that are matched by the parser when populating given rule, in declaration order
+   * @param rule rule class
+   * @return cached array of non-transient declared fields; callers must not modify it
+   */
+  public static Field[] fields(Class<?> rule) {
+    return fields.computeIfAbsent(rule, type -> Arrays.stream(type.getDeclaredFields())
+        .filter(field -> !Modifier.isTransient(field.getModifiers()))
+        .toArray(Field[]::new));
+  }
+
+  /**
+   * Returns all known subtypes of given grammar junction found in junction's package, sorted by name
+   * @param junction grammar junction (an interface or an abstract class)
+   * @return cached unmodifiable list of subtypes
+   */
+  public static <X> List<Class<? extends X>> subTypes(Class<X> junction) {
+    return (List) subTypes.computeIfAbsent(junction, type -> Collections.unmodifiableList(
+        reflections(type).getSubTypesOf(type).stream()
+            .sorted(Comparator.comparing(Class::getName))
+            .collect(Collectors.toList())));
+  }
+
+  /**
+   * Returns concrete variants that can be used to resolve given grammar junction: either classes listed in
+   * {@link Alternatives} annotation or all concrete subtypes of the junction not marked with {@link IgnoreVariant}
+   * @param junction grammar junction
+   * @return cached unmodifiable list of junction variants
+   */
+  public static <X extends Rule> List<Class<? extends X>> variants(Class<X> junction) {
+    return (List) variants.computeIfAbsent(junction, type -> {
+      if (type.isAnnotationPresent(Alternatives.class)) {
+        return Collections.unmodifiableList(Arrays.<Class<?>>asList(type.getAnnotation(Alternatives.class).value()));
+      }
+      return Collections.unmodifiableList(subTypes(type).stream()
+          .filter(TokenGrammar::isConcrete)
+          .filter(variant -> !variant.isAnnotationPresent(IgnoreVariant.class))
+          .collect(Collectors.toList()));
+    });
+  }
+
+  /**
+   * Returns left-recursive variants of given grammar junction: rules with at least two fields whose first (operand) field
+   * accepts any variant of the junction. Such variants are not tested as junction variants: the parser first matches
+   * a non-recursive variant and then grows it with left-recursive ones (see {@link com.onkiup.linker.parser.token.OperatorToken}).
+   * Returns an empty list when the junction has no other (operand) variants
+   * @param junction grammar junction
+   * @return cached unmodifiable list of left-recursive variants
+   */
+  public static <X extends Rule> List<Class<? extends X>> leftRecursive(Class<X> junction) {
+    return (List) leftRecursive.computeIfAbsent(junction, type -> {
+      List<Class<?>> variants = (List) variants((Class) type);
+      List<Class<?>> result = variants.stream()
+          .filter(variant -> fields(variant).length > 1 && isOperand(type, fields(variant)[0]))
+          .collect(Collectors.toList());
+      if (result.size() == variants.size()) {
+        return Collections.emptyList();
+      }
+      return Collections.unmodifiableList(result);
+    });
+  }
+
+  /**
+   * Returns binary operator variants of given grammar junction: left-recursive variants with at least three fields whose
+   * last (operand) field also accepts any variant of the junction -- the same shape that
+   * {@link com.onkiup.linker.parser.token.Rotatable} tokens are rotated on. Operators are matched with precedence climbing
+   * (see {@link AdjustPriority}) instead of being tested as junction variants
+   * @param junction grammar junction
+   * @return cached unmodifiable list of binary operator variants
+   */
+  public static <X extends Rule> List<Class<? extends X>> operators(Class<X> junction) {
+    return (List) operators.computeIfAbsent(junction, type -> Collections.unmodifiableList(
+        ((List<Class<?>>) (List) leftRecursive((Class) type)).stream()
+            .filter(variant -> {
+              Field[] fields = fields(variant);
+              return fields.length > 2 && isOperand(type, fields[fields.length - 1]);
+            })
+            .collect(Collectors.toList())));
+  }
+
+  /**
+   * Returns rules and grammar junctions that the parser may need to match given rule: the rule itself, types of its rule
+   * fields (or array members) and variants of grammar junctions, transitively
+   * @param rule a rule or a grammar junction
+   * @return cached unmodifiable list of reachable rules and junctions
+   */
+  public static List<Class<?>> reachable(Class<?> rule) {
+    return reachable.computeIfAbsent(rule, root -> {
+      List<Class<?>> result = new ArrayList<>();
+      Set<Class<?>> visited = new HashSet<>();
+      result.add(root);
+      visited.add(root);
+      for (int i = 0; i < result.size(); i++) {
+        Class<?> type = result.get(i);
+        if (TokenGrammar.isConcrete(type)) {
+          for (Field field : fields(type)) {
+            Class<?> fieldType = field.getType().isArray() ? field.getType().getComponentType() : field.getType();
+            if (Rule.class.isAssignableFrom(fieldType) && !fieldType.isEnum() && visited.add(fieldType)) {
+              result.add(fieldType);
+            }
+          }
+        } else {
+          for (Class<?> variant : variants((Class<? extends Rule>) type)) {
+            if (visited.add(variant)) {
+              result.add(variant);
+            }
+          }
+        }
+      }
+      return Collections.unmodifiableList(result);
+    });
+  }
+
+  /**
+   * @param rule a rule or a grammar junction
+   * @return small non-negative number that identifies given type, so that sets of rules can be stored as bit sets
+   */
+  public static int ruleId(Class<?> rule) {
+    return ruleIds.computeIfAbsent(rule, type -> nextRuleId.getAndIncrement());
+  }
+
+  /**
+   * @param rule a rule or a grammar junction
+   * @return true if any rule reachable from given one has a {@link Commit} field, so that a token of given type may fail
+   * the whole grammar path after matching only a part of the source
+   */
+  public static boolean commits(Class<?> rule) {
+    return commits.computeIfAbsent(rule, type -> reachable(type).stream()
+        .filter(TokenGrammar::isConcrete)
+        .anyMatch(reached -> Arrays.stream(fields(reached)).anyMatch(field -> field.isAnnotationPresent(Commit.class))));
+  }
+
+  /**
+   * Returns the number of leading fields that two concrete rules match in the same way: fields of the same type with equal
+   * annotations and, for terminals, equal values. The prefix ends at the first optional, context-aware, custom-matched or
+   * committing field and at fields which values are read while matching other fields; rules with different ignored characters
+   * and left-recursive rules share no prefix
+   * @param rule a concrete rule
+   * @param other another concrete rule
+   * @return the number of shared leading fields
+   */
+  public static int sharedPrefix(Class<?> rule, Class<?> other) {
+    return sharedPrefixes.computeIfAbsent(rule, type -> new ConcurrentHashMap<>())
+        .computeIfAbsent(other, type -> computeSharedPrefix(rule, other));
+  }
+
+  private static int computeSharedPrefix(Class<?> rule, Class<?> other) {
+    if (!Objects.equals(rule.getAnnotation(IgnoreCharacters.class), other.getAnnotation(IgnoreCharacters.class))) {
+      return 0;
+    }
+    Field[] fields = fields(rule);
+    Field[] otherFields = fields(other);
+    Set<Field> context = contextFields(rule);
+    Set<Field> otherContext = contextFields(other);
+    int result = 0;
+    while (result < fields.length && result < otherFields.length) {
+      Field field = fields[result];
+      Field otherField = otherFields[result];
+      if (context.contains(field) || otherContext.contains(otherField) || !isShareable(field)
+          || !field.getGenericType().equals(otherField.getGenericType())
+          || Modifier.isStatic(field.getModifiers()) != Modifier.isStatic(otherField.getModifiers())
+          || !new HashSet<>(Arrays.asList(field.getAnnotations())).equals(new HashSet<>(Arrays.asList(otherField.getAnnotations())))
+          || Modifier.isStatic(field.getModifiers()) && !Objects.equals(literal(field), literal(otherField))) {
+        break;
+      }
+      if (result == 0 && !Modifier.isStatic(field.getModifiers())
+          && (field.getType().isAssignableFrom(rule) || field.getType().isAssignableFrom(other))) {
+        // left-recursive rules are rotated after matching
+        return 0;
+      }
+      result++;
+    }
+    return result;
+  }
+
+  @SuppressWarnings("deprecation")
+  private static boolean isShareable(Field field) {
+    return !field.isAnnotationPresent(OptionalToken.class) && !field.isAnnotationPresent(SkipIfFollowedBy.class)
+        && !field.isAnnotationPresent(ContextAware.class) && !field.isAnnotationPresent(Commit.class)
+        && !field.isAnnotationPresent(com.onkiup.linker.parser.annotation.CustomMatcher.class);
+  }
+
+  private static Object literal(Field field) {
+    try {
+      field.setAccessible(true);
+      return field.get(null);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Failed to read terminal field " + field, e);
+    }
+  }
+
+  private static boolean isOperand(Class<?> junction, Field field) {
+    return !Modifier.isStatic(field.getModifiers()) && field.getType().isAssignableFrom(junction)
+        && !field.isAnnotationPresent(OptionalToken.class) && !field.isAnnotationPresent(SkipIfFollowedBy.class);
+  }
+
+  /**
+   * @param operator binary operator or other left-recursive rule
+   * @return operator precedence: operators with higher {@link AdjustPriority} values bind tighter; other left-recursive
+   * variants wrap everything matched before them that binds at least as tight
+   */
+  public static int precedence(Class<?> operator) {
+    AdjustPriority priority = operator.getAnnotation(AdjustPriority.class);
+    return priority == null ? 0 : priority.value();
+  }
+
+  /**
+   * Resolves the regular expression of a capture pattern the same way as {@link com.onkiup.linker.parser.PatternMatcher}
+   * does: the deprecated {@link CapturePattern#pattern()} takes precedence over {@link CapturePattern#value()}
+   * @param capture capture pattern annotation
+   * @return the regular expression or an empty string for patterns that only specify {@link CapturePattern#until()}
+   */
+  @SuppressWarnings("deprecation")
+  public static String regex(CapturePattern capture) {
+    return capture.pattern().length() > 0 ? capture.pattern() : capture.value();
+  }
+
+  /**
+   * Returns fields of given rule which values are read by the parser while matching other fields of the same rule
+   * (referenced by {@link ContextAware#matchField()}, {@link OptionalToken#whenFieldIsNull()} or
+   * {@link OptionalToken#whenFieldNotNull()})
+   * @param rule rule class
+   * @return cached unmodifiable set of context fields
+   */
+  public static Set<Field> contextFields(Class<?> rule) {
+    return contextFields.computeIfAbsent(rule, type -> {
+      Set<Field> result = new HashSet<>();
+      for (Field field : fields(type)) {
+        if (field.isAnnotationPresent(ContextAware.class)) {
+          addContextField(result, type, field.getAnnotation(ContextAware.class).matchField());
+        }
+        if (field.isAnnotationPresent(OptionalToken.class)) {
+          OptionalToken optional = field.getAnnotation(OptionalToken.class);
+          addContextField(result, type, optional.whenFieldIsNull());
+          addContextField(result, type, optional.whenFieldNotNull());
+        }
+      }
+      contextReferences.addAll(result);
+      return Collections.unmodifiableSet(result);
+    });
+  }
+
+  /**
+   * @param field rule field
+   * @return true if the field was reported as a context field by {@link #contextFields(Class)} for any rule
+   */
+  public static boolean isContextField(Field field) {
+    return field != null && contextReferences.contains(field);
+  }
+
+  private static void addContextField(Set<Field> result, Class<?> rule, String name) {
+    if (name.length() == 0) {
+      return;
+    }
+    try {
+      result.add(rule.getDeclaredField(name));
+    } catch (NoSuchFieldException e) {
+      try {
+        result.add(rule.getField(name));
+      } catch (NoSuchFieldException e2) {
+        // the parser will report missing field when it tries to read it
+      }
+    }
+  }
+
+  private static Reflections reflections(Class<?> from) {
+    return reflectionsCache.computeIfAbsent(from.getPackage(),
+        pkg -> new Reflections(from.getPackageName(), new SubTypesScanner()));
+  }
+}
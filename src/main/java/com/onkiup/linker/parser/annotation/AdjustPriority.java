@@ -7,7 +7,9 @@ import java.lang.annotation.Target;
 
 /**
  * Adjusts concrete token priority that affects token testing order for grammar junctions ({@link com.onkiup.linker.parser.token.VariantToken})
- * (tokens tested in ascending order of their priority: token with priority 0 will be tested prior to token with priority 9999)
+ * (tokens tested in ascending order of their priority: token with priority 0 will be tested prior to token with priority 9999).
+ * For binary operator rules (see {@link com.onkiup.linker.parser.token.OperatorToken}) it also sets operator precedence:
+ * operators with higher priorities bind tighter
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
@@ -0,0 +1,18 @@
+package com.onkiup.linker.parser.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Commits the parser to the current grammar path once the annotated field is populated (similar to cut in PEG parsers):
+ * the enclosing rule and all its parents drop untested alternatives for everything matched up to (and including) the field.
+ * If the parser fails after that point, it reports a syntax error instead of trying other grammar junction variants
+ * or re-matching previous fields.
+ * Use it on fields that unambiguously identify a construct, like keywords.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Commit {
+}
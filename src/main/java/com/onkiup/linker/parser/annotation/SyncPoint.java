@@ -0,0 +1,22 @@
+package com.onkiup.linker.parser.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares terminals at which the parser can resume after a syntax error when parsing with error recovery
+ * (see {@link com.onkiup.linker.parser.TokenGrammar#parse(String, java.io.Reader, java.util.List)}).
+ * Can be placed on an array field or on a rule class; in the latter case it applies to every array field which members are of that rule.
+ * When an array member fails after matching some characters, the parser records the error, skips the source up to and including
+ * the next occurrence of any of the terminals and continues matching array members after it.
+ */
+@Target({ElementType.FIELD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SyncPoint {
+  /**
+   * @return terminals that end skipped source fragments
+   */
+  String[] value();
+}
@@ -0,0 +1,477 @@
+package com.onkiup.linker.parser.forest;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.onkiup.linker.parser.PatternMatcher;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TerminalMatcher;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.TokenMatcher;
+import com.onkiup.linker.parser.TokenTestResult;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CaptureLimit;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+import com.onkiup.linker.parser.annotation.SkipIfFollowedBy;
+
+/**
+ * Context-free view of a Rule-class grammar used by {@link ForestParser}: every rule, grammar junction and collection field
+ * is compiled into a nonterminal with a list of productions, and every String or enum field into a terminal.
+ * Since characters ignored before a token depend on the rules that contain it, nonterminals are created per
+ * (rule, ignored characters) pair.
+ * Compiled grammars are immutable and can be shared between threads.
+ */
+final class ForestGrammar {
+
+  /**
+   * Kinds of nonterminals
+   */
+  enum Kind {
+    /**
+     * a concrete rule with a single production that lists rule fields
+     */
+    RULE,
+    /**
+     * a grammar junction with a single-symbol production per junction variant
+     */
+    JUNCTION,
+    /**
+     * members of a collection field: a left-recursive list that counts members up to {@link CaptureLimit} bounds
+     */
+    LIST
+  }
+
+  /**
+   * Grammar element that can be predicted and completed by the parser
+   */
+  static final class Nonterminal {
+    final Kind kind;
+    /**
+     * rule, junction or collection member type
+     */
+    final Class<?> type;
+    /**
+     * collection field (only for lists and junctions of lists with different member counts)
+     */
+    final Field field;
+    /**
+     * number of matched collection members (only for lists): lists with {@code count} members or, for the last counted
+     * list of an unbounded collection, with at least that many members
+     */
+    final int count;
+    /**
+     * characters ignored before the tokens of this nonterminal
+     */
+    final String ignored;
+    final List<Production> productions = new ArrayList<>();
+    /**
+     * true if this nonterminal can match an empty string
+     */
+    boolean nullable;
+
+    private Nonterminal(Kind kind, Class<?> type, Field field, int count, String ignored) {
+      this.kind = kind;
+      this.type = type;
+      this.field = field;
+      this.count = count;
+      this.ignored = ignored;
+    }
+
+    @Override
+    public String toString() {
+      switch (kind) {
+        case LIST:
+          return field.getName() + "[" + count + "]";
+        default:
+          return type.getSimpleName();
+      }
+    }
+  }
+
+  /**
+   * A String or enum field matched directly against the source
+   */
+  static final class Terminal {
+    final Field field;
+    /**
+     * the type of matched values (String or enum type)
+     */
+    final Class<?> type;
+    final String ignored;
+    /**
+     * true for static (grammar-defined) terminals
+     */
+    final boolean literal;
+    /**
+     * enum constants (one per matcher) or null for String fields
+     */
+    private final Object[] constants;
+    /**
+     * capture patterns of enum constants (null for constants matched by their names)
+     */
+    private final CapturePattern[] patterns;
+
+    private Terminal(Field field, Class<?> type, String ignored) {
+      this.field = field;
+      this.type = type;
+      this.ignored = ignored;
+      this.literal = Modifier.isStatic(field.getModifiers());
+      if (type.isEnum()) {
+        constants = type.getEnumConstants();
+        patterns = new CapturePattern[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+          Enum<?> constant = (Enum<?>) constants[i];
+          try {
+            patterns[i] = type.getDeclaredField(constant.name()).getAnnotation(CapturePattern.class);
+          } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("Failed to read field for enum value " + constant, e);
+          }
+        }
+      } else {
+        constants = null;
+        patterns = null;
+      }
+    }
+
+    /**
+     * Creates matchers for this terminal; matchers are stateful, so every parse should use its own instances
+     * @return one matcher for String fields or a matcher per constant for enum fields
+     */
+    TokenMatcher[] matchers() {
+      if (constants == null) {
+        if (literal) {
+          try {
+            field.setAccessible(true);
+            return new TokenMatcher[] { new TerminalMatcher((String) field.get(null)) };
+          } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Failed to read terminal field " + field, e);
+          }
+        }
+        return new TokenMatcher[] { new PatternMatcher(field.getAnnotation(CapturePattern.class)) };
+      }
+      TokenMatcher[] result = new TokenMatcher[constants.length];
+      for (int i = 0; i < constants.length; i++) {
+        result[i] = patterns[i] == null ? new TerminalMatcher(constants[i].toString()) : new PatternMatcher(patterns[i]);
+      }
+      return result;
+    }
+
+    /**
+     * @param matcher index of the matcher returned by {@link #matchers()}
+     * @param result successful matcher result
+     * @return the value that should be assigned to the field
+     */
+    Object value(int matcher, TokenTestResult result) {
+      if (constants != null) {
+        return constants[matcher];
+      }
+      // matchers may return views of parser source
+      Object token = result.getToken();
+      return token instanceof CharSequence ? token.toString() : token;
+    }
+
+    @Override
+    public String toString() {
+      return field.getDeclaringClass().getSimpleName() + "$" + field.getName();
+    }
+  }
+
+  /**
+   * A sequence of symbols (nonterminals and terminals) that a nonterminal can match
+   */
+  static final class Production {
+    final Nonterminal owner;
+    final Object[] symbols;
+    /**
+     * fields populated by the symbols (for rules) or null
+     */
+    final Field[] fields;
+    /**
+     * for each symbol: null if the symbol cannot be skipped, an empty string if it is optional or
+     * the text that should follow the skipped symbol
+     */
+    final String[] skippable;
+    /**
+     * preference of this production among the productions of the owner (lower values are preferred when choosing a tree)
+     */
+    final int rank;
+
+    private Production(Nonterminal owner, Object[] symbols, Field[] fields, String[] skippable, int rank) {
+      this.owner = owner;
+      this.symbols = symbols;
+      this.fields = fields;
+      this.skippable = skippable;
+      this.rank = rank;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder(owner.toString()).append(" ->");
+      for (Object symbol : symbols) {
+        result.append(' ').append(symbol);
+      }
+      return result.toString();
+    }
+  }
+
+  private final Map<List<Object>, Nonterminal> nonterminals = new HashMap<>();
+  private final Map<List<Object>, Terminal> terminals = new HashMap<>();
+  private final Nonterminal root;
+
+  /**
+   * Compiles all rules reachable from given root rule
+   * @param root the root rule of the grammar
+   * @throws IllegalArgumentException when the grammar uses context-sensitive features
+   */
+  ForestGrammar(Class<? extends Rule> root) {
+    Deque<Nonterminal> queue = new ArrayDeque<>();
+    this.root = nonterminal(root, "", queue);
+    while (!queue.isEmpty()) {
+      compile(queue.pop(), queue);
+    }
+    computeNullable();
+  }
+
+  /**
+   * @return the nonterminal for the root rule
+   */
+  Nonterminal root() {
+    return root;
+  }
+
+  /**
+   * @return the number of compiled nonterminals
+   */
+  int size() {
+    return nonterminals.size();
+  }
+
+  private void compile(Nonterminal nonterminal, Deque<Nonterminal> queue) {
+    switch (nonterminal.kind) {
+      case RULE:
+        compileRule(nonterminal, queue);
+        break;
+      case JUNCTION:
+        compileJunction(nonterminal, queue);
+        break;
+      case LIST:
+        compileList(nonterminal, queue);
+        break;
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private void compileRule(Nonterminal rule, Deque<Nonterminal> queue) {
+    Field[] fields = RuleIntrospector.fields(rule.type);
+    Object[] symbols = new Object[fields.length];
+    String[] skippable = new String[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      Field field = fields[i];
+      if (field.isAnnotationPresent(ContextAware.class)
+          || field.isAnnotationPresent(com.onkiup.linker.parser.annotation.CustomMatcher.class)) {
+        throw new IllegalArgumentException("Field " + field + " cannot be matched by a context-free parser");
+      }
+      skippable[i] = skippable(field);
+      symbols[i] = symbol(field, field.getType(), rule.ignored, queue);
+    }
+    rule.productions.add(new Production(rule, symbols, fields, skippable, 0));
+  }
+
+  private void compileJunction(Nonterminal junction, Deque<Nonterminal> queue) {
+    List<Class<?>> variants = new ArrayList<>((List) RuleIntrospector.variants((Class<? extends Rule>) junction.type));
+    if (!junction.type.isAnnotationPresent(Alternatives.class)) {
+      // the same order in which VariantToken tests variants
+      variants.sort(Comparator.<Class<?>>comparingInt(RuleIntrospector::precedence).thenComparing(Class::getName));
+    }
+    for (int i = 0; i < variants.size(); i++) {
+      Object[] symbols = { nonterminal(variants.get(i), junction.ignored, queue) };
+      junction.productions.add(new Production(junction, symbols, null, new String[1], i));
+    }
+  }
+
+  private void compileList(Nonterminal list, Deque<Nonterminal> queue) {
+    int max = maxMembers(list.field);
+    boolean last = list.count == lastCount(list.field);
+    if (list.count == 0) {
+      list.productions.add(new Production(list, new Object[0], null, new String[0], 0));
+      return;
+    }
+    Object member = symbol(list.field, list.type, list.ignored, queue);
+    Nonterminal previous = list(list.field, list.count - 1, list.ignored, queue);
+    list.productions.add(new Production(list, new Object[] { previous, member }, null, new String[2], 0));
+    if (last && max == Integer.MAX_VALUE) {
+      list.productions.add(new Production(list, new Object[] { list, member }, null, new String[2], 1));
+    }
+  }
+
+  /**
+   * Creates a symbol that matches values of given field
+   * @param field the field to match
+   * @param type the type of matched values (differs from field type for collection members)
+   * @param ignored characters ignored by the rule that contains the field
+   */
+  private Object symbol(Field field, Class<?> type, String ignored, Deque<Nonterminal> queue) {
+    if (type.isArray()) {
+      return collection(field, ignored, queue);
+    } else if (Rule.class.isAssignableFrom(type)) {
+      return nonterminal(type, ignored, queue);
+    } else if (type == String.class) {
+      if (!Modifier.isStatic(field.getModifiers()) && !field.isAnnotationPresent(CapturePattern.class)) {
+        throw new IllegalArgumentException("Non-static String fields MUST have CapturePattern annotation: " + field);
+      }
+      return terminals.computeIfAbsent(key(field, ignored), key -> new Terminal(field, type, ignored));
+    } else if (type.isEnum()) {
+      return terminals.computeIfAbsent(key(field, ignored), key -> new Terminal(field, type, ignored));
+    }
+    throw new IllegalArgumentException("Unsupported field type: " + type);
+  }
+
+  /**
+   * @param parentIgnored characters ignored by the parent rule, junction or collection
+   * @return the nonterminal for given rule or junction
+   */
+  private Nonterminal nonterminal(Class<?> type, String parentIgnored, Deque<Nonterminal> queue) {
+    String ignored = parentIgnored;
+    IgnoreCharacters annotation = type.getAnnotation(IgnoreCharacters.class);
+    Kind kind = TokenGrammar.isConcrete(type) ? Kind.RULE : Kind.JUNCTION;
+    if (annotation != null) {
+      ignored = union(kind == Kind.JUNCTION || annotation.inherit() ? ignored : "", annotation.value());
+    }
+    return create(kind, type, null, 0, ignored, queue);
+  }
+
+  /**
+   * @return characters from both sets, without duplicates (so that recursive junctions do not create new nonterminals)
+   */
+  private static String union(String ignored, String added) {
+    StringBuilder result = new StringBuilder(ignored);
+    for (int i = 0; i < added.length(); i++) {
+      char character = added.charAt(i);
+      if (result.indexOf(String.valueOf(character)) < 0) {
+        result.append(character);
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * @param ignored characters ignored by the rule that contains the collection (and by collection members)
+   * @return a nonterminal that matches any allowed number of collection members
+   */
+  private Nonterminal collection(Field field, String ignored, Deque<Nonterminal> queue) {
+    int min = minMembers(field);
+    if (min == lastCount(field) && maxMembers(field) != Integer.MAX_VALUE) {
+      return list(field, min, ignored, queue);
+    }
+    // a junction of lists with allowed member counts
+    return create(Kind.JUNCTION, field.getType(), field, -1, ignored, queue);
+  }
+
+  private Nonterminal list(Field field, int count, String ignored, Deque<Nonterminal> queue) {
+    return create(Kind.LIST, field.getType().getComponentType(), field, count, ignored, queue);
+  }
+
+  private Nonterminal create(Kind kind, Class<?> type, Field field, int count, String ignored, Deque<Nonterminal> queue) {
+    List<Object> key = key(kind, type, field, count, ignored);
+    Nonterminal result = nonterminals.get(key);
+    if (result == null) {
+      result = new Nonterminal(kind, type, field, count, ignored);
+      nonterminals.put(key, result);
+      if (kind == Kind.JUNCTION && field != null) {
+        // collection junction: compiled immediately as its productions only refer to lists
+        for (int i = minMembers(field); i <= lastCount(field); i++) {
+          Object[] symbols = { list(field, i, ignored, queue) };
+          result.productions.add(new Production(result, symbols, null, new String[1], i));
+        }
+      } else {
+        queue.add(result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Marks nonterminals that can match an empty string
+   */
+  private void computeNullable() {
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (Nonterminal nonterminal : nonterminals.values()) {
+        if (nonterminal.nullable) {
+          continue;
+        }
+        for (Production production : nonterminal.productions) {
+          if (nullable(production)) {
+            nonterminal.nullable = true;
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean nullable(Production production) {
+    for (int i = 0; i < production.symbols.length; i++) {
+      Object symbol = production.symbols[i];
+      if (!Objects.equals(production.skippable[i], "") && !(symbol instanceof Nonterminal && ((Nonterminal) symbol).nullable)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return null if the field cannot be skipped, an empty string if the field is optional or the text that should follow
+   * the skipped field
+   */
+  private static String skippable(Field field) {
+    OptionalToken optional = field.getAnnotation(OptionalToken.class);
+    if (optional != null) {
+      if (optional.whenFieldIsNull().length() > 0 || optional.whenFieldNotNull().length() > 0) {
+        throw new IllegalArgumentException("Field " + field + " cannot be matched by a context-free parser");
+      }
+      return optional.whenFollowedBy();
+    }
+    SkipIfFollowedBy skip = field.getAnnotation(SkipIfFollowedBy.class);
+    return skip == null ? null : skip.value();
+  }
+
+  /**
+   * @return the largest member count tracked by separate list nonterminals for given collection field
+   */
+  private static int lastCount(Field field) {
+    int max = maxMembers(field);
+    return max == Integer.MAX_VALUE ? Math.max(1, minMembers(field)) : max;
+  }
+
+  private static int minMembers(Field field) {
+    CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+    return limit == null ? 0 : limit.min();
+  }
+
+  private static int maxMembers(Field field) {
+    CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+    return limit == null ? Integer.MAX_VALUE : limit.max();
+  }
+
+  private static List<Object> key(Object... parts) {
+    List<Object> result = new ArrayList<>(parts.length);
+    Collections.addAll(result, parts);
+    return result;
+  }
+}
@@ -0,0 +1,180 @@
+package com.onkiup.linker.parser.forest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.onkiup.linker.parser.forest.ForestGrammar.Nonterminal;
+import com.onkiup.linker.parser.forest.ForestGrammar.Production;
+import com.onkiup.linker.parser.forest.ForestGrammar.Terminal;
+
+/**
+ * A node of a shared packed parse forest (SPPF). Symbol nodes hold all derivations of a nonterminal over a source range,
+ * intermediate nodes hold all derivations of a production prefix (so that every derivation is a binary packed node),
+ * terminal and skip nodes are leaves.
+ */
+final class ForestNode {
+
+  /**
+   * One derivation of a symbol or intermediate node: the node for the production prefix without its last symbol
+   * (or null if that prefix is empty) and the node for the last symbol (or null for empty productions)
+   */
+  static final class Packed {
+    final Production production;
+    final ForestNode left, right;
+
+    private Packed(Production production, ForestNode left, ForestNode right) {
+      this.production = production;
+      this.left = left;
+      this.right = right;
+    }
+
+    /**
+     * @return position at which the last symbol of the derivation starts
+     */
+    int pivot(ForestNode owner) {
+      return right == null ? owner.end : right.start;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Packed && ((Packed) other).left == left && ((Packed) other).right == right;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(left) + System.identityHashCode(right);
+    }
+  }
+
+  /**
+   * the number of derivations after which an index is used to find duplicate derivations
+   */
+  private static final int INDEX_THRESHOLD = 8;
+
+  /**
+   * Nonterminal (symbol nodes), Production (intermediate nodes), Terminal (terminal leaves) or null (skipped fields)
+   */
+  final Object label;
+  /**
+   * the number of matched production symbols for intermediate nodes
+   */
+  final int dot;
+  final int start, end;
+  /**
+   * matched value (terminal leaves only)
+   */
+  final Object value;
+  /**
+   * position of the first matched character after ignored characters (terminal leaves only)
+   */
+  final int textStart;
+  /**
+   * null, a single derivation or a list of derivations
+   */
+  private Object packed;
+  /**
+   * index of derivations for nodes with many derivations
+   */
+  private Set<Packed> index;
+
+  private ForestNode(Object label, int dot, int start, int end, Object value, int textStart) {
+    this.label = label;
+    this.dot = dot;
+    this.start = start;
+    this.end = end;
+    this.value = value;
+    this.textStart = textStart;
+  }
+
+  static ForestNode symbol(Nonterminal nonterminal, int start, int end) {
+    return new ForestNode(nonterminal, 0, start, end, null, start);
+  }
+
+  static ForestNode intermediate(Production production, int dot, int start, int end) {
+    return new ForestNode(production, dot, start, end, null, start);
+  }
+
+  static ForestNode terminal(Terminal terminal, int start, int textStart, int end, Object value) {
+    return new ForestNode(terminal, 0, start, end, value, textStart);
+  }
+
+  static ForestNode skip(int position) {
+    return new ForestNode(null, 0, position, position, null, position);
+  }
+
+  /**
+   * Adds a derivation to this node unless it already has it
+   * @return true if the derivation was added
+   */
+  boolean add(Production production, ForestNode left, ForestNode right) {
+    if (packed == null) {
+      packed = new Packed(production, left, right);
+      return true;
+    }
+    if (packed instanceof Packed) {
+      Packed single = (Packed) packed;
+      if (single.left == left && single.right == right) {
+        return false;
+      }
+      List<Packed> list = new ArrayList<>(2);
+      list.add(single);
+      packed = list;
+    }
+    List<Packed> list = (List<Packed>) packed;
+    Packed derivation = new Packed(production, left, right);
+    if (index != null) {
+      if (!index.add(derivation)) {
+        return false;
+      }
+    } else if (list.contains(derivation)) {
+      return false;
+    } else if (list.size() >= INDEX_THRESHOLD) {
+      index = new HashSet<>(list);
+      index.add(derivation);
+    }
+    list.add(derivation);
+    return true;
+  }
+
+  /**
+   * @return derivations of this node (empty for leaves)
+   */
+  List<Packed> packed() {
+    if (packed == null) {
+      return new ArrayList<>(0);
+    }
+    if (packed instanceof Packed) {
+      List<Packed> result = new ArrayList<>(1);
+      result.add((Packed) packed);
+      return result;
+    }
+    return (List<Packed>) packed;
+  }
+
+  /**
+   * @return the number of derivations of this node
+   */
+  int derivations() {
+    return packed == null ? 0 : packed instanceof Packed ? 1 : ((List<?>) packed).size();
+  }
+
+  boolean isSymbol() {
+    return label instanceof Nonterminal;
+  }
+
+  boolean isTerminal() {
+    return label instanceof Terminal;
+  }
+
+  boolean isSkip() {
+    return label == null;
+  }
+
+  @Override
+  public String toString() {
+    String name = label == null ? "skip" : label instanceof Production ? label + " @" + dot : label.toString();
+    return name + " (" + start + " - " + end + ")";
+  }
+}
@@ -0,0 +1,475 @@
+package com.onkiup.linker.parser.forest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.onkiup.linker.parser.ExpectedTokens;
+import com.onkiup.linker.parser.ParserLocation;
+import com.onkiup.linker.parser.ParserStatistics;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.SyntaxError;
+import com.onkiup.linker.parser.TokenMatcher;
+import com.onkiup.linker.parser.TokenTestResult;
+import com.onkiup.linker.parser.forest.ForestGrammar.Kind;
+import com.onkiup.linker.parser.forest.ForestGrammar.Nonterminal;
+import com.onkiup.linker.parser.forest.ForestGrammar.Production;
+import com.onkiup.linker.parser.forest.ForestGrammar.Terminal;
+import com.onkiup.linker.parser.util.SourceWindow;
+
+/**
+ * Earley parser for Rule-class grammars that builds a shared packed parse forest ({@link PackedForest}) of all possible
+ * parses of the source instead of backtracking over them. Parsing takes at most cubic time in the length of the source
+ * (quadratic for unambiguous grammars and linear for most LR-like grammars), which makes it suitable for highly ambiguous
+ * grammars on which the backtracking parser becomes exponential.
+ * Terminals are matched the same way as in the backtracking parser (greedily, after skipping ignored characters), but
+ * context-sensitive features ({@link com.onkiup.linker.parser.annotation.ContextAware} fields and
+ * {@link com.onkiup.linker.parser.annotation.OptionalToken} conditions on other fields) are not supported and
+ * {@link com.onkiup.linker.parser.annotation.Commit} annotations are ignored.
+ * Instances are immutable and can be shared between threads.
+ * @param <X> root rule of the grammar
+ * @see com.onkiup.linker.parser.TokenGrammar#engine(com.onkiup.linker.parser.ParserEngine)
+ */
+public class ForestParser<X extends Rule> {
+  private static final Logger logger = LoggerFactory.getLogger(ForestParser.class);
+
+  private final Class<X> type;
+  private final ForestGrammar grammar;
+
+  /**
+   * Compiles given grammar
+   * @param type root rule of the grammar
+   * @throws IllegalArgumentException when the grammar uses context-sensitive features
+   */
+  public ForestParser(Class<X> type) {
+    this.type = type;
+    this.grammar = new ForestGrammar(type);
+    logger.debug("Compiled {} into {} nonterminals", type.getName(), grammar.size());
+  }
+
+  /**
+   * @return root rule of the grammar
+   */
+  public Class<X> getTokenType() {
+    return type;
+  }
+
+  /**
+   * Builds parse forest for the whole source
+   * @param name the name of the source
+   * @param source source contents
+   * @param statistics counters to update while parsing (steps are processed Earley items, tokens are forest nodes)
+   * @return forest of all parses of the source
+   * @throws SyntaxError when the source does not match the grammar
+   */
+  public PackedForest<X> parse(String name, CharSequence source, ParserStatistics statistics) throws SyntaxError {
+    return parse(name, source, null, statistics, () -> {}, position -> {});
+  }
+
+  /**
+   * Builds parse forest for the source
+   * @param name the name of the source
+   * @param source source contents
+   * @param ignoreTrail characters that may follow the matched source or null
+   * @param statistics counters to update while parsing
+   * @param checkpoint invoked after each processed item, may throw to stop the parser
+   * @param reached receives positions that the parser reached
+   * @return forest of all parses of the source
+   * @throws SyntaxError when the source does not match the grammar
+   */
+  public PackedForest<X> parse(String name, CharSequence source, String ignoreTrail, ParserStatistics statistics,
+      Runnable checkpoint, IntConsumer reached) throws SyntaxError {
+    Run run = new Run(name, source, statistics, checkpoint);
+    run.parse();
+    int end = source.length();
+    while (end >= 0 && run.accepted.get(end) == null) {
+      end--;
+    }
+    reached.accept(run.furthest);
+    if (end < 0 || !trailing(source, end, ignoreTrail)) {
+      throw new SyntaxError(end < 0 ? "Unable to match the source" : "Failed to match trailing characters", null, source,
+          run.expected);
+    }
+    return new PackedForest<>(type, run.accepted.get(end), source);
+  }
+
+  /**
+   * @return true if all characters after the matched part of the source can be ignored
+   */
+  private boolean trailing(CharSequence source, int from, String ignoreTrail) {
+    String ignored = grammar.root().ignored;
+    for (int i = from; i < source.length(); i++) {
+      char character = source.charAt(i);
+      if (ignored.indexOf(character) < 0 && (ignoreTrail == null || ignoreTrail.indexOf(character) < 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * An Earley item: a production with matched prefix, its start position and the forest node for the prefix
+   */
+  private static final class Item {
+    private final Production production;
+    private final int dot;
+    private final int origin;
+    private final ForestNode node;
+
+    private Item(Production production, int dot, int origin, ForestNode node) {
+      this.production = production;
+      this.dot = dot;
+      this.origin = origin;
+      this.node = node;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Item)) {
+        return false;
+      }
+      Item item = (Item) other;
+      // nodes differ only for items that matched their first symbol in different ways
+      return item.production == production && item.dot == dot && item.origin == origin && item.node == node;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((System.identityHashCode(production) * 31 + dot) * 31 + origin) * 31 + System.identityHashCode(node);
+    }
+
+    @Override
+    public String toString() {
+      return production + " @" + dot + " (" + origin + ")";
+    }
+  }
+
+  /**
+   * Key of a forest node that ends at a known position
+   */
+  private static final class NodeKey {
+    private final Object label;
+    private final int dot;
+    private final int start;
+
+    private NodeKey(Object label, int dot, int start) {
+      this.label = label;
+      this.dot = dot;
+      this.start = start;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof NodeKey)) {
+        return false;
+      }
+      NodeKey key = (NodeKey) other;
+      return key.label == label && key.dot == dot && key.start == start;
+    }
+
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(label) * 31 + dot) * 31 + start;
+    }
+  }
+
+  /**
+   * Earley set: items that end at the same position
+   */
+  private static final class EarleySet {
+    private final Set<Item> items = new HashSet<>();
+    /**
+     * items that were not processed yet
+     */
+    private final List<Item> queue = new ArrayList<>();
+    /**
+     * items that wait for a terminal
+     */
+    private final List<Item> scans = new ArrayList<>();
+    /**
+     * forest nodes that end at this position
+     */
+    private final Map<NodeKey, ForestNode> nodes = new HashMap<>();
+    /**
+     * nonterminals which productions were predicted at this position
+     */
+    private final Set<Nonterminal> predicted = new HashSet<>();
+    /**
+     * nonterminals that matched an empty string at this position
+     */
+    private final Map<Nonterminal, ForestNode> empty = new IdentityHashMap<>();
+    /**
+     * terminals matched at this position
+     */
+    private final Map<Terminal, ForestNode[]> matches = new IdentityHashMap<>();
+    private ForestNode skip;
+  }
+
+  /**
+   * State of a single parse
+   */
+  private final class Run {
+    private final String name;
+    private final CharSequence source;
+    private final ParserStatistics statistics;
+    private final Runnable checkpoint;
+    private final EarleySet[] sets;
+    /**
+     * items that wait for nonterminals, per position; kept after their sets are processed for completions
+     */
+    private final List<Map<Nonterminal, List<Item>>> waiting;
+    /**
+     * symbol nodes for the root rule that start at position 0, per end position
+     */
+    private final Map<Integer, ForestNode> accepted = new HashMap<>();
+    private final Map<Terminal, TokenMatcher[]> matchers = new IdentityHashMap<>();
+    private final ExpectedTokens expected = new ExpectedTokens();
+    private ParserLocation location;
+    private int furthest;
+
+    private Run(String name, CharSequence source, ParserStatistics statistics, Runnable checkpoint) {
+      this.name = name;
+      this.source = source;
+      this.statistics = statistics;
+      this.checkpoint = checkpoint;
+      this.sets = new EarleySet[source.length() + 1];
+      this.waiting = new ArrayList<>(source.length() + 1);
+      this.location = new ParserLocation(name, 0, 0, 0);
+    }
+
+    private void parse() {
+      sets[0] = new EarleySet();
+      waiting.add(null);
+      predict(0, sets[0], grammar.root());
+      for (int position = 0; position < sets.length; position++) {
+        if (waiting.size() <= position) {
+          waiting.add(null);
+        }
+        EarleySet set = sets[position];
+        if (set == null) {
+          continue;
+        }
+        furthest = position;
+        process(position, set);
+        sets[position] = null;
+      }
+    }
+
+    private void process(int position, EarleySet set) {
+      int scanned = 0;
+      while (true) {
+        while (!set.queue.isEmpty()) {
+          Item item = set.queue.remove(set.queue.size() - 1);
+          statistics.onStep();
+          checkpoint.run();
+          if (item.dot < item.production.symbols.length) {
+            advance(position, set, item);
+          } else {
+            complete(position, set, item);
+          }
+        }
+        if (scanned >= set.scans.size()) {
+          break;
+        }
+        scan(position, set, set.scans.get(scanned++));
+      }
+    }
+
+    /**
+     * Processes an item that waits for a symbol
+     */
+    private void advance(int position, EarleySet set, Item item) {
+      Production production = item.production;
+      Object symbol = production.symbols[item.dot];
+      String skippable = production.skippable[item.dot];
+      if (skippable != null && (skippable.isEmpty() || followedBy(position, production.owner.ignored, skippable))) {
+        if (set.skip == null) {
+          set.skip = ForestNode.skip(position);
+        }
+        add(position, production, item.dot + 1, item.origin, item.node, set.skip);
+      }
+
+      if (symbol instanceof Nonterminal) {
+        Nonterminal nonterminal = (Nonterminal) symbol;
+        waiting(position).computeIfAbsent(nonterminal, key -> new ArrayList<>()).add(item);
+        predict(position, set, nonterminal);
+        ForestNode empty = set.empty.get(nonterminal);
+        if (empty != null) {
+          add(position, production, item.dot + 1, item.origin, item.node, empty);
+        }
+      } else {
+        set.scans.add(item);
+      }
+    }
+
+    private void predict(int position, EarleySet set, Nonterminal nonterminal) {
+      if (!set.predicted.add(nonterminal)) {
+        return;
+      }
+      if (nonterminal.kind == Kind.RULE) {
+        statistics.onRule(nonterminal.type);
+      } else if (nonterminal.kind == Kind.JUNCTION) {
+        statistics.onVariant();
+      }
+      for (Production production : nonterminal.productions) {
+        enqueue(position, set, new Item(production, 0, position, null));
+      }
+    }
+
+    /**
+     * Processes a completed item
+     */
+    private void complete(int position, EarleySet set, Item item) {
+      ForestNode node = item.node;
+      Nonterminal owner = item.production.owner;
+      if (node == null) {
+        // empty production
+        node = node(set, owner, 0, position, position);
+        node.add(item.production, null, null);
+      }
+      if (item.origin == position) {
+        set.empty.put(owner, node);
+      }
+      Map<Nonterminal, List<Item>> parents = waiting.get(item.origin);
+      List<Item> waiters = parents == null ? null : parents.get(owner);
+      if (waiters == null) {
+        return;
+      }
+      // the list grows when the item started at this position
+      for (int i = 0; i < waiters.size(); i++) {
+        Item parent = waiters.get(i);
+        add(position, parent.production, parent.dot + 1, parent.origin, parent.node, node);
+      }
+    }
+
+    /**
+     * Matches the terminal that given item waits for
+     */
+    private void scan(int position, EarleySet set, Item item) {
+      Terminal terminal = (Terminal) item.production.symbols[item.dot];
+      ForestNode[] tokens = set.matches.get(terminal);
+      if (tokens == null) {
+        tokens = match(position, terminal);
+        set.matches.put(terminal, tokens);
+      }
+      for (ForestNode token : tokens) {
+        add(token.end, item.production, item.dot + 1, item.origin, item.node, token);
+      }
+    }
+
+    private ForestNode[] match(int position, Terminal terminal) {
+      int start = skipIgnored(position, terminal.ignored);
+      TokenMatcher[] matchers = this.matchers.computeIfAbsent(terminal, Terminal::matchers);
+      List<ForestNode> result = new ArrayList<>(1);
+      CharSequence rest = new SourceWindow(source, start);
+      for (int i = 0; i < matchers.length; i++) {
+        statistics.onConsume();
+        TokenTestResult test = matchers[i].apply(rest);
+        if (test.isMatch() || test.isMatchContinue()) {
+          int end = start + test.getTokenLength();
+          statistics.onToken();
+          result.add(ForestNode.terminal(terminal, position, start, end, terminal.value(i, test)));
+        }
+      }
+      if (result.isEmpty()) {
+        statistics.onFail(terminal.type);
+        if (start >= expected.position()) {
+          expected.onFail(location(start), terminal.field);
+        }
+      }
+      return result.toArray(new ForestNode[result.size()]);
+    }
+
+    /**
+     * Advances an item over a symbol matched from the item's end up to given position
+     */
+    private void add(int position, Production production, int dot, int origin, ForestNode left, ForestNode right) {
+      EarleySet set = set(position);
+      ForestNode node;
+      if (dot == 1 && dot < production.symbols.length) {
+        node = right;
+      } else if (dot == production.symbols.length) {
+        node = node(set, production.owner, 0, origin, position);
+        node.add(production, left, right);
+      } else {
+        node = node(set, production, dot, origin, position);
+        node.add(production, left, right);
+      }
+      enqueue(position, set, new Item(production, dot, origin, node));
+    }
+
+    private void enqueue(int position, EarleySet set, Item item) {
+      if (set.items.add(item)) {
+        set.queue.add(item);
+      }
+    }
+
+    /**
+     * @return existing or new forest node that ends at the position of given set
+     */
+    private ForestNode node(EarleySet set, Object label, int dot, int start, int end) {
+      NodeKey key = new NodeKey(label, dot, start);
+      ForestNode result = set.nodes.get(key);
+      if (result == null) {
+        statistics.onToken();
+        result = label instanceof Nonterminal ? ForestNode.symbol((Nonterminal) label, start, end) :
+            ForestNode.intermediate((Production) label, dot, start, end);
+        set.nodes.put(key, result);
+        if (label == grammar.root() && start == 0) {
+          accepted.put(end, result);
+        }
+      }
+      return result;
+    }
+
+    private EarleySet set(int position) {
+      if (sets[position] == null) {
+        sets[position] = new EarleySet();
+      }
+      return sets[position];
+    }
+
+    private Map<Nonterminal, List<Item>> waiting(int position) {
+      Map<Nonterminal, List<Item>> result = waiting.get(position);
+      if (result == null) {
+        result = new IdentityHashMap<>();
+        waiting.set(position, result);
+      }
+      return result;
+    }
+
+    /**
+     * @return true if the source contains given text at given position (after ignored characters)
+     */
+    private boolean followedBy(int position, String ignored, String text) {
+      int start = skipIgnored(position, ignored);
+      return start + text.length() <= source.length() && Objects.equals(text, source.subSequence(start, start + text.length()).toString());
+    }
+
+    private int skipIgnored(int position, String ignored) {
+      while (position < source.length() && ignored.indexOf(source.charAt(position)) > -1) {
+        position++;
+      }
+      return position;
+    }
+
+    /**
+     * @return location of given position; positions should not decrease between calls
+     */
+    private ParserLocation location(int position) {
+      if (position > location.position()) {
+        location = location.advance(source.subSequence(location.position(), position));
+      }
+      return location;
+    }
+  }
+}
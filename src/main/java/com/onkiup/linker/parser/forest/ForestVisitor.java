@@ -0,0 +1,18 @@
+package com.onkiup.linker.parser.forest;
+
+import java.lang.reflect.Field;
+
+import com.onkiup.linker.parser.ParseListener;
+
+/**
+ * Parse listener that also receives forest-specific events
+ */
+interface ForestVisitor extends ParseListener {
+
+  /**
+   * Invoked before events for members of a matched (possibly empty) collection
+   * @param field collection field
+   */
+  default void collection(Field field) {
+  }
+}
@@ -0,0 +1,417 @@
+package com.onkiup.linker.parser.forest;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.onkiup.linker.parser.ParseListener;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.forest.ForestGrammar.Kind;
+import com.onkiup.linker.parser.forest.ForestGrammar.Nonterminal;
+import com.onkiup.linker.parser.forest.ForestGrammar.Terminal;
+import com.onkiup.linker.parser.forest.ForestNode.Packed;
+
+/**
+ * Shared packed parse forest built by {@link ForestParser}: a compact representation of all parses of a source.
+ * A single parse tree is chosen using the same priority rules as the backtracking parser:
+ * <ul>
+ *   <li>grammar junction variants with lower {@link com.onkiup.linker.parser.annotation.AdjustPriority} values are preferred
+ *   (so that operators with higher priorities end up deeper in the tree and bind tighter);</li>
+ *   <li>otherwise, derivations which last field starts later are preferred, which makes binary operators left-associative
+ *   and leaves trailing optional fields to the innermost rules;</li>
+ *   <li>matched optional fields are preferred over skipped ones;</li>
+ *   <li>remaining ties are resolved in the order in which the backtracking parser tests junction variants.</li>
+ * </ul>
+ * Rules created by {@link #tree()} are not registered with the parser, so metadata-dependent methods like {@link Rule#source()}
+ * or {@link Rule#parent()} are not available on them.
+ * Forest traversals use explicit stacks, so deeply nested sources do not require a larger thread stack.
+ * @param <X> root rule of the grammar
+ */
+public class PackedForest<X extends Rule> {
+  private final Class<X> type;
+  private final ForestNode root;
+  private final CharSequence source;
+  /**
+   * chosen derivations of forest nodes
+   */
+  private final Map<ForestNode, Packed> chosen = new IdentityHashMap<>();
+  /**
+   * minimal derivation heights, computed only for forests with cycles
+   */
+  private Map<ForestNode, Integer> heights;
+
+  PackedForest(Class<X> type, ForestNode root, CharSequence source) {
+    this.type = type;
+    this.root = root;
+    this.source = source;
+  }
+
+  /**
+   * @return root rule of the grammar
+   */
+  public Class<X> getTokenType() {
+    return type;
+  }
+
+  /**
+   * @return position immediately after the last character matched by the root rule
+   */
+  public int end() {
+    return root.end;
+  }
+
+  /**
+   * @return the number of forest nodes reachable from the root
+   */
+  public int size() {
+    return reachable().size();
+  }
+
+  /**
+   * @return the number of forest nodes that have more than one derivation (zero for unambiguous parses)
+   */
+  public int ambiguities() {
+    int result = 0;
+    for (ForestNode node : reachable()) {
+      if (node.derivations() > 1) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Builds the AST for the chosen parse tree
+   * @return the root of the AST
+   */
+  public X tree() {
+    TreeBuilder builder = new TreeBuilder();
+    walk(builder);
+    return (X) builder.result();
+  }
+
+  /**
+   * Reports the chosen parse tree to a listener, in source order
+   * @param listener events receiver
+   */
+  public void walk(ParseListener listener) {
+    Deque<Frame> stack = new ArrayDeque<>();
+    Set<ForestNode> open = Collections.newSetFromMap(new IdentityHashMap<>());
+    enter(stack, open, root, null, false, listener);
+    while (!stack.isEmpty()) {
+      Frame frame = stack.peek();
+      if (frame.next >= frame.children.length) {
+        stack.pop();
+        open.remove(frame.node);
+        Nonterminal nonterminal = (Nonterminal) frame.node.label;
+        if (nonterminal.kind == Kind.RULE) {
+          listener.exitRule((Class<? extends Rule>) nonterminal.type, frame.field, start(frame.node), frame.node.end);
+        }
+        continue;
+      }
+      int index = frame.next++;
+      ForestNode child = frame.children[index];
+      Field field = frame.fields == null ? frame.field : frame.fields[index];
+      if (child.isSymbol()) {
+        enter(stack, open, child, field, frame.minimal, listener);
+      } else if (child.isTerminal()) {
+        Terminal terminal = (Terminal) child.label;
+        if (terminal.literal) {
+          listener.terminal(field, (CharSequence) child.value, child.textStart, child.end);
+        } else {
+          listener.capture(field, child.value, child.textStart, child.end);
+        }
+      }
+    }
+  }
+
+  /**
+   * A symbol node which children are being reported
+   */
+  private static final class Frame {
+    private final ForestNode node;
+    private final Field field;
+    private final ForestNode[] children;
+    /**
+     * fields populated by children or null if children populate the same field as the node
+     */
+    private final Field[] fields;
+    /**
+     * true if the node and its children use minimal derivations to break a cycle
+     */
+    private final boolean minimal;
+    private int next;
+
+    private Frame(ForestNode node, Field field, ForestNode[] children, Field[] fields, boolean minimal) {
+      this.node = node;
+      this.field = field;
+      this.children = children;
+      this.fields = fields;
+      this.minimal = minimal;
+    }
+  }
+
+  private void enter(Deque<Frame> stack, Set<ForestNode> open, ForestNode node, Field field, boolean minimal,
+      ParseListener listener) {
+    Nonterminal nonterminal = (Nonterminal) node.label;
+    ForestNode[] children = null;
+    Packed derivation = null;
+    if (!minimal) {
+      // derivations that can be reported without a cycle are preferred over derivations that lead back to the node
+      for (Packed candidate : candidates(node)) {
+        ForestNode[] candidateChildren = children(node, candidate, false);
+        if (reopens(candidateChildren, open)) {
+          continue;
+        }
+        if (!cyclic(node, candidateChildren)) {
+          derivation = candidate;
+          children = candidateChildren;
+          break;
+        } else if (derivation == null) {
+          derivation = candidate;
+          children = candidateChildren;
+        }
+      }
+      minimal = derivation == null;
+    }
+    if (minimal) {
+      derivation = minimalDerivation(node);
+      children = children(node, derivation, true);
+    }
+
+    Field[] fields = null;
+    if (nonterminal.kind == Kind.RULE) {
+      fields = derivation.production.fields;
+      listener.enterRule((Class<? extends Rule>) nonterminal.type, field, start(node));
+    } else if (nonterminal.field != null && listener instanceof ForestVisitor) {
+      ((ForestVisitor) listener).collection(field);
+    }
+    open.add(node);
+    stack.push(new Frame(node, field, children, fields, minimal));
+  }
+
+  /**
+   * @return true if any of the children is a symbol node that is being reported
+   */
+  private static boolean reopens(ForestNode[] children, Set<ForestNode> open) {
+    for (ForestNode child : children) {
+      if (open.contains(child)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if any of the children matches the same characters as the node and has a derivation that leads back to the node
+   */
+  private boolean cyclic(ForestNode node, ForestNode[] children) {
+    Set<ForestNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<ForestNode> pending = new ArrayDeque<>();
+    for (ForestNode child : children) {
+      if (child.isSymbol() && child.start == node.start && child.end == node.end && visited.add(child)) {
+        pending.push(child);
+      }
+    }
+    while (!pending.isEmpty()) {
+      ForestNode next = pending.pop();
+      if (next == node) {
+        return true;
+      }
+      for (Packed derivation : next.packed()) {
+        for (ForestNode child : children(next, derivation, false)) {
+          if (child.isSymbol() && child.start == node.start && child.end == node.end && visited.add(child)) {
+            pending.push(child);
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return children of a symbol node in given derivation; members of collections are returned as children of the collection
+   */
+  private ForestNode[] children(ForestNode node, Packed derivation, boolean minimal) {
+    Nonterminal nonterminal = (Nonterminal) node.label;
+    if (nonterminal.kind == Kind.LIST) {
+      // flattening left-recursive lists without recursion
+      List<ForestNode> members = new ArrayList<>();
+      while (derivation.right != null) {
+        members.add(derivation.right);
+        node = derivation.left;
+        derivation = minimal ? minimalDerivation(node) : choose(node);
+      }
+      Collections.reverse(members);
+      return members.toArray(new ForestNode[members.size()]);
+    }
+
+    int length = derivation.production.symbols.length;
+    ForestNode[] result = new ForestNode[length];
+    ForestNode prefix = derivation.left;
+    if (length > 0) {
+      result[length - 1] = derivation.right;
+    }
+    for (int i = length - 2; i > 0; i--) {
+      Packed step = minimal ? minimalDerivation(prefix) : choose(prefix);
+      result[i] = step.right;
+      prefix = step.left;
+    }
+    if (length > 1) {
+      result[0] = prefix;
+    }
+    return result;
+  }
+
+  /**
+   * @return derivations of given node, most preferred first
+   */
+  private List<Packed> candidates(ForestNode node) {
+    List<Packed> result = node.packed();
+    if (result.size() > 1) {
+      result = new ArrayList<>(result);
+      result.sort(comparator(node));
+    }
+    return result;
+  }
+
+  /**
+   * @return the most preferred derivation of given node
+   */
+  private Packed choose(ForestNode node) {
+    Packed result = chosen.get(node);
+    if (result == null) {
+      List<Packed> derivations = node.packed();
+      result = derivations.get(0);
+      // guards against cycles of junctions
+      chosen.put(node, result);
+      if (derivations.size() > 1) {
+        result = Collections.min(derivations, comparator(node));
+        chosen.put(node, result);
+      }
+    }
+    return result;
+  }
+
+  private Comparator<Packed> comparator(ForestNode node) {
+    Comparator<Packed> result = Comparator.comparingInt(derivation -> -derivation.pivot(node));
+    if (node.isSymbol() && ((Nonterminal) node.label).kind == Kind.JUNCTION) {
+      result = Comparator.<Packed>comparingInt(derivation -> precedence(derivation.right))
+          .thenComparingInt(derivation -> -variantPivot(derivation.right));
+    }
+    return result
+        .thenComparingInt(derivation -> derivation.right != null && derivation.right.isSkip() ? 1 : 0)
+        .thenComparingInt(derivation -> derivation.production.rank);
+  }
+
+  /**
+   * @return precedence of the rule matched by a junction variant node
+   */
+  private static int precedence(ForestNode variant) {
+    Nonterminal nonterminal = (Nonterminal) variant.label;
+    return nonterminal.kind == Kind.LIST ? 0 : RuleIntrospector.precedence(nonterminal.type);
+  }
+
+  /**
+   * @return the position at which the last field of the preferred derivation of a junction variant starts
+   */
+  private int variantPivot(ForestNode variant) {
+    return choose(variant).pivot(variant);
+  }
+
+  /**
+   * @return the derivation of given node with the smallest height, used to break cycles
+   */
+  private Packed minimalDerivation(ForestNode node) {
+    if (heights == null) {
+      heights = computeHeights();
+    }
+    Packed result = null;
+    int best = Integer.MAX_VALUE;
+    for (Packed derivation : node.packed()) {
+      int height = Math.max(height(derivation.left), height(derivation.right));
+      if (height < best) {
+        best = height;
+        result = derivation;
+      }
+    }
+    return result;
+  }
+
+  private int height(ForestNode node) {
+    return node == null ? 0 : heights.getOrDefault(node, 0);
+  }
+
+  /**
+   * @return minimal derivation heights of all reachable nodes (symbol nodes add one level, intermediate nodes do not)
+   */
+  private Map<ForestNode, Integer> computeHeights() {
+    List<ForestNode> nodes = reachable();
+    Map<ForestNode, Integer> result = new IdentityHashMap<>();
+    for (ForestNode node : nodes) {
+      result.put(node, node.derivations() == 0 && !node.isSymbol() ? 0 : Integer.MAX_VALUE);
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (ForestNode node : nodes) {
+        for (Packed derivation : node.packed()) {
+          int left = derivation.left == null ? 0 : result.get(derivation.left);
+          int right = derivation.right == null ? 0 : result.get(derivation.right);
+          int height = Math.max(left, right);
+          if (height != Integer.MAX_VALUE && node.isSymbol()) {
+            height++;
+          }
+          if (height < result.get(node)) {
+            result.put(node, height);
+            changed = true;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return all forest nodes reachable from the root
+   */
+  private List<ForestNode> reachable() {
+    Set<ForestNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<ForestNode> result = new ArrayList<>();
+    Deque<ForestNode> queue = new ArrayDeque<>();
+    queue.push(root);
+    visited.add(root);
+    while (!queue.isEmpty()) {
+      ForestNode node = queue.pop();
+      result.add(node);
+      for (Packed derivation : node.packed()) {
+        for (ForestNode child : new ForestNode[] { derivation.left, derivation.right }) {
+          if (child != null && visited.add(child)) {
+            queue.push(child);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return position of the first character matched by a symbol node after characters ignored by its rule
+   */
+  private int start(ForestNode node) {
+    String ignored = ((Nonterminal) node.label).ignored;
+    int start = node.start;
+    while (start < node.end && ignored.indexOf(source.charAt(start)) > -1) {
+      start++;
+    }
+    return start;
+  }
+}
@@ -0,0 +1,110 @@
+package com.onkiup.linker.parser.forest;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.onkiup.linker.parser.Rule;
+
+/**
+ * Creates rule instances for the parse tree reported by {@link PackedForest#walk}
+ */
+final class TreeBuilder implements ForestVisitor {
+
+  /**
+   * A rule which fields are being populated
+   */
+  private static final class Frame {
+    private final Rule rule;
+    /**
+     * members of collection fields of the rule
+     */
+    private final Map<Field, List<Object>> collections = new HashMap<>();
+
+    private Frame(Rule rule) {
+      this.rule = rule;
+    }
+  }
+
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private Rule result;
+
+  Rule result() {
+    return result;
+  }
+
+  @Override
+  public void enterRule(Class<? extends Rule> rule, Field field, int start) {
+    try {
+      stack.push(new Frame(rule.getDeclaredConstructor().newInstance()));
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Failed to instantiate rule token " + rule, e);
+    }
+  }
+
+  @Override
+  public void exitRule(Class<? extends Rule> rule, Field field, int start, int end) {
+    Frame frame = stack.pop();
+    for (Map.Entry<Field, List<Object>> collection : frame.collections.entrySet()) {
+      Field target = collection.getKey();
+      List<Object> members = collection.getValue();
+      Object array = Array.newInstance(target.getType().getComponentType(), members.size());
+      for (int i = 0; i < members.size(); i++) {
+        Array.set(array, i, members.get(i));
+      }
+      set(frame.rule, target, array);
+    }
+    try {
+      frame.rule.onPopulated();
+    } catch (Throwable e) {
+      throw new RuntimeException("Failed to reevaluate on population: " + rule, e);
+    }
+    if (stack.isEmpty()) {
+      result = frame.rule;
+    } else {
+      value(field, frame.rule);
+    }
+  }
+
+  @Override
+  public void collection(Field field) {
+    stack.peek().collections.putIfAbsent(field, new ArrayList<>());
+  }
+
+  @Override
+  public void capture(Field field, Object value, int start, int end) {
+    value(field, value);
+  }
+
+  private void value(Field field, Object value) {
+    Frame frame = stack.peek();
+    if (field.getType().isArray()) {
+      frame.collections.computeIfAbsent(field, key -> new ArrayList<>()).add(value);
+    } else {
+      set(frame.rule, field, value);
+    }
+  }
+
+  private static void set(Rule rule, Field field, Object value) {
+    if (Modifier.isStatic(field.getModifiers())) {
+      return;
+    }
+    try {
+      field.setAccessible(true);
+      field.set(rule, value);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to populate field " + field, e);
+    }
+    try {
+      rule.reevaluate();
+    } catch (Throwable e) {
+      throw new RuntimeException("Failed to reevaluate " + rule.getClass(), e);
+    }
+  }
+}
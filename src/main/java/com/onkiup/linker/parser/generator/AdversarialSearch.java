@@ -0,0 +1,379 @@
+package com.onkiup.linker.parser.generator;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.onkiup.linker.parser.ParserLimitExceeded;
+import com.onkiup.linker.parser.ParserStatistics;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.util.LoggerLayout;
+
+/**
+ * Searches for sources that make the parser perform disproportionate amount of work for a given grammar.
+ * Starting with provided seeds and documents produced by {@link InputGenerator}, the search randomly mutates
+ * the most expensive sources found so far and scores every mutant by the amount of parser work
+ * ({@link ParserStatistics#work()}: loop iterations, consumed and re-consumed characters, created tokens and tracebacks)
+ * per source character. Both successfully parsed and rejected sources are scored, as parser has to do the work
+ * before it can reject a source. The most expensive sources are then minimized by removing parts that do not
+ * contribute to their score.
+ * Parsing of every candidate is aborted after a configurable number of parser steps (see
+ * {@link TokenGrammar#maxSteps(long)}), so sources that make the parser hang are reported as findings that exceeded the
+ * limit. Instances are not thread-safe.
+ * @param <X> root rule of the grammar
+ */
+public class AdversarialSearch<X extends Rule> {
+  private static final Logger logger = LoggerFactory.getLogger(AdversarialSearch.class);
+  /**
+   * Sources are scored as if they were at least this long so that fixed parser overhead does not dominate the score
+   * of very short sources
+   */
+  private static final int MIN_SCORED_LENGTH = 16;
+  /**
+   * Minimized sources must keep at least this share of the original score
+   */
+  private static final double MINIMIZATION_THRESHOLD = 0.9;
+
+  private final Class<X> type;
+  private final TokenGrammar<X> grammar;
+  private final List<String> seeds = new ArrayList<>();
+  private Random random = new Random();
+  private long seed;
+  private int iterations = 1000;
+  private int maxLength = 256;
+  private int corpusSize = 32;
+  private int results = 5;
+
+  /**
+   * Creates a search for given grammar
+   * @param type root rule of the grammar
+   */
+  public static <XX extends Rule> AdversarialSearch<XX> forClass(Class<XX> type) {
+    return new AdversarialSearch<>(type);
+  }
+
+  protected AdversarialSearch(Class<X> type) {
+    this.type = type;
+    this.grammar = TokenGrammar.forClass(type).maxSteps(500_000);
+  }
+
+  /**
+   * Resets the source of randomness used by the search and by the document generator
+   * @param seed the seed to use
+   * @return this search
+   */
+  public AdversarialSearch<X> seed(long seed) {
+    this.seed = seed;
+    this.random = new Random(seed);
+    return this;
+  }
+
+  /**
+   * Adds sources from which the search should start (in addition to generated documents)
+   * @param sources seed sources
+   * @return this search
+   */
+  public AdversarialSearch<X> seeds(String... sources) {
+    seeds.addAll(Arrays.asList(sources));
+    return this;
+  }
+
+  /**
+   * @param iterations number of mutants to evaluate (default: 1000)
+   * @return this search
+   */
+  public AdversarialSearch<X> iterations(int iterations) {
+    this.iterations = iterations;
+    return this;
+  }
+
+  /**
+   * @param maxLength maximal length of evaluated sources (default: 256)
+   * @return this search
+   */
+  public AdversarialSearch<X> maxLength(int maxLength) {
+    this.maxLength = maxLength;
+    return this;
+  }
+
+  /**
+   * @param corpusSize number of the most expensive sources that are kept for further mutation (default: 32)
+   * @return this search
+   */
+  public AdversarialSearch<X> corpusSize(int corpusSize) {
+    this.corpusSize = corpusSize;
+    return this;
+  }
+
+  /**
+   * @param results number of minimized findings to report (default: 5)
+   * @return this search
+   */
+  public AdversarialSearch<X> results(int results) {
+    this.results = results;
+    return this;
+  }
+
+  /**
+   * @param maxSteps number of parser steps after which parsing of a candidate is aborted (default: 500000)
+   * @return this search
+   * @see TokenGrammar#maxSteps(long)
+   */
+  public AdversarialSearch<X> maxSteps(long maxSteps) {
+    grammar.maxSteps(maxSteps);
+    return this;
+  }
+
+  /**
+   * Runs the search
+   * @return minimized findings, the most expensive first
+   */
+  public List<Finding> run() {
+    List<Finding> corpus = new ArrayList<>();
+    Set<String> evaluated = new HashSet<>();
+
+    List<String> initial = new ArrayList<>(seeds);
+    InputGenerator<X> generator = InputGenerator.forClass(type).seed(seed);
+    for (int i = 0; i < corpusSize; i++) {
+      initial.add(generator.generate(1 + random.nextInt(maxLength)));
+    }
+    for (String source : initial) {
+      if (source.length() <= maxLength && evaluated.add(source)) {
+        offer(corpus, evaluate(source));
+      }
+    }
+    if (corpus.isEmpty()) {
+      throw new IllegalStateException("No seed sources shorter than " + maxLength + " characters");
+    }
+
+    for (int i = 0; i < iterations; i++) {
+      String mutant = mutate(corpus.get(random.nextInt(corpus.size())).source(), corpus);
+      if (mutant.length() <= maxLength && evaluated.add(mutant)) {
+        offer(corpus, evaluate(mutant));
+      }
+    }
+
+    List<Finding> findings = new ArrayList<>();
+    Set<String> minimized = new HashSet<>();
+    for (Finding finding : corpus) {
+      if (findings.size() >= results) {
+        break;
+      }
+      Finding result = minimize(finding);
+      if (minimized.add(result.source())) {
+        findings.add(result);
+      }
+    }
+    findings.sort(Comparator.comparingDouble(Finding::score).reversed());
+    return findings;
+  }
+
+  /**
+   * Parses given source and measures the amount of work performed by the parser
+   * @param source source to parse
+   * @return evaluation result
+   */
+  public Finding evaluate(String source) {
+    ParserStatistics statistics = new ParserStatistics();
+    boolean parsed = false;
+    boolean limitExceeded = false;
+    try {
+      TokenGrammar.release(grammar.parse("adversarial", new StringReader(source), statistics));
+      parsed = true;
+    } catch (ParserLimitExceeded e) {
+      limitExceeded = true;
+    } catch (RuntimeException e) {
+      logger.debug("Rejected source '{}'", LoggerLayout.sanitize(source), e);
+    }
+    return new Finding(source, statistics, parsed, limitExceeded);
+  }
+
+  private void offer(List<Finding> corpus, Finding candidate) {
+    if (corpus.size() >= corpusSize && candidate.score() <= corpus.get(corpus.size() - 1).score()) {
+      return;
+    }
+    int index = 0;
+    while (index < corpus.size() && corpus.get(index).score() >= candidate.score()) {
+      index++;
+    }
+    corpus.add(index, candidate);
+    if (corpus.size() > corpusSize) {
+      corpus.remove(corpus.size() - 1);
+    }
+  }
+
+  private String mutate(String source, List<Finding> corpus) {
+    StringBuilder result = new StringBuilder(source);
+    int mutations = 1 + random.nextInt(3);
+    for (int i = 0; i < mutations; i++) {
+      int length = result.length();
+      int position = random.nextInt(length + 1);
+      switch (random.nextInt(length == 0 ? 2 : 7)) {
+        case 0:
+          // insert a character from another corpus source
+          result.insert(position, randomCharacter(corpus));
+          break;
+        case 1:
+          // splice a part of another corpus source
+          String other = corpus.get(random.nextInt(corpus.size())).source();
+          int from = random.nextInt(other.length() + 1);
+          result.insert(position, other, from, from + random.nextInt(other.length() - from + 1));
+          break;
+        case 2:
+          position = Math.min(position, length - 1);
+          result.setCharAt(position, randomCharacter(corpus));
+          break;
+        case 3:
+          position = Math.min(position, length - 1);
+          result.delete(position, position + 1 + random.nextInt(Math.min(8, length - position)));
+          break;
+        case 4:
+          // repeat a substring several times
+          int end = position + random.nextInt(Math.min(16, length - position) + 1);
+          String repeated = result.substring(position, end);
+          for (int times = 1 + random.nextInt(8); times > 0; times--) {
+            result.insert(end, repeated);
+          }
+          break;
+        case 5:
+          result.setLength(position);
+          break;
+        default:
+          // move a character to another position
+          position = Math.min(position, length - 1);
+          char moved = result.charAt(position);
+          result.deleteCharAt(position);
+          result.insert(random.nextInt(result.length() + 1), moved);
+      }
+    }
+    return result.length() > maxLength ? result.substring(0, maxLength) : result.toString();
+  }
+
+  private char randomCharacter(List<Finding> corpus) {
+    String source = corpus.get(random.nextInt(corpus.size())).source();
+    if (source.isEmpty()) {
+      return (char) (' ' + random.nextInt(95));
+    }
+    return source.charAt(random.nextInt(source.length()));
+  }
+
+  /**
+   * Greedily removes chunks of decreasing size from the finding's source as long as the result stays as expensive
+   * @param finding finding to minimize
+   * @return minimized finding
+   */
+  private Finding minimize(Finding finding) {
+    Finding current = finding;
+    for (int chunk = current.source().length() / 2; chunk > 0; chunk /= 2) {
+      int position = 0;
+      while (position + chunk <= current.source().length()) {
+        String source = current.source();
+        Finding candidate = evaluate(source.substring(0, position) + source.substring(position + chunk));
+        if (candidate.isAsExpensiveAs(finding)) {
+          current = candidate;
+        } else {
+          position += chunk;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * A source evaluated by the search
+   */
+  public static final class Finding {
+    private final String source;
+    private final ParserStatistics statistics;
+    private final boolean parsed;
+    private final boolean limitExceeded;
+
+    private Finding(String source, ParserStatistics statistics, boolean parsed, boolean limitExceeded) {
+      this.source = source;
+      this.statistics = statistics;
+      this.parsed = parsed;
+      this.limitExceeded = limitExceeded;
+    }
+
+    /**
+     * @return evaluated source
+     */
+    public String source() {
+      return source;
+    }
+
+    /**
+     * @return parser counters collected while parsing the source
+     */
+    public ParserStatistics statistics() {
+      return statistics;
+    }
+
+    /**
+     * @return true if the source was successfully parsed
+     */
+    public boolean parsed() {
+      return parsed;
+    }
+
+    /**
+     * @return true if parsing was aborted because it exceeded configured number of parser steps
+     */
+    public boolean limitExceeded() {
+      return limitExceeded;
+    }
+
+    /**
+     * @return parser work per source character
+     */
+    public double score() {
+      return (double) statistics.work() / Math.max(MIN_SCORED_LENGTH, source.length());
+    }
+
+    /**
+     * @param limit maximal number of rules to return
+     * @return rules that parser attempted to match most often while parsing the source, with attempt counts
+     */
+    public Map<Class<?>, Long> rules(int limit) {
+      Map<Class<?>, Long> result = new LinkedHashMap<>();
+      for (Map.Entry<Class<?>, Long> entry : statistics.ruleAttempts().entrySet()) {
+        if (result.size() >= limit) {
+          break;
+        }
+        result.put(entry.getKey(), entry.getValue());
+      }
+      return Collections.unmodifiableMap(result);
+    }
+
+    private boolean isAsExpensiveAs(Finding other) {
+      if (other.limitExceeded) {
+        return limitExceeded;
+      }
+      return limitExceeded || score() >= other.score() * MINIMIZATION_THRESHOLD;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+      result.append(String.format(Locale.ROOT, "%.1f work/char (%d chars, %s%s): '%s'%n",
+          score(), source.length(), parsed ? "parsed" : "rejected", limitExceeded ? ", step limit exceeded" : "",
+          LoggerLayout.sanitize(source)));
+      result.append("  ").append(statistics);
+      rules(5).forEach((rule, attempts) -> result.append(String.format(Locale.ROOT, "%n  %8d x %s", attempts, rule.getName())));
+      return result.toString();
+    }
+  }
+}
@@ -0,0 +1,477 @@
+package com.onkiup.linker.parser.generator;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.analysis.MinLength;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.CaptureLimit;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+
+/**
+ * Generates random syntactically valid sources for a grammar by walking its rule classes:
+ * static String fields are emitted as is, {@link CapturePattern} fields are sampled from their patterns,
+ * arrays are repeated within {@link CaptureLimit} bounds, {@link OptionalToken} fields are randomly skipped and
+ * grammar junctions are resolved into random variants.
+ * Requested size is used as a budget that is distributed between the parts of the document that can grow
+ * (collections, recursive rules and unbounded captures), so generated documents approximate requested size.
+ * Generators with equal seeds produce equal sequences of documents. Instances are not thread-safe.
+ * @param <X> root rule of the grammar
+ */
+public class InputGenerator<X extends Rule> {
+  private static final char[] TEXT = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+  private final Class<X> type;
+  private final Map<Class<?>, Set<Class<?>>> closures = new HashMap<>();
+  private final Map<Class<?>, Growth> growths = new HashMap<>();
+  private final Map<String, RegexSampler> samplers = new HashMap<>();
+  private final Map<String, Pattern> patterns = new HashMap<>();
+
+  private Random random = new Random();
+  private int maxDepth = 64;
+  private int maxRepetitions = Integer.MAX_VALUE;
+  private int leafBudget = 16;
+  private double optionalProbability = 0.5;
+  private double ignoredProbability = 0.2;
+  private StringBuilder result;
+
+  /**
+   * Creates a generator for given grammar
+   * @param type root rule of the grammar
+   */
+  public static <XX extends Rule> InputGenerator<XX> forClass(Class<XX> type) {
+    return new InputGenerator<>(type);
+  }
+
+  protected InputGenerator(Class<X> type) {
+    this.type = type;
+  }
+
+  /**
+   * Resets the source of randomness used by this generator
+   * @param seed the seed to use
+   * @return this generator
+   */
+  public InputGenerator<X> seed(long seed) {
+    random = new Random(seed);
+    return this;
+  }
+
+  /**
+   * Limits nesting of generated rules; rules nested deeper are generated with minimal possible length
+   * @param maxDepth maximal nesting depth (default: 64)
+   * @return this generator
+   */
+  public InputGenerator<X> maxDepth(int maxDepth) {
+    this.maxDepth = maxDepth;
+    return this;
+  }
+
+  /**
+   * Limits the number of members in generated collections (in addition to {@link CaptureLimit} limits)
+   * @param maxRepetitions maximal number of collection members (default: unlimited)
+   * @return this generator
+   */
+  public InputGenerator<X> maxRepetitions(int maxRepetitions) {
+    this.maxRepetitions = maxRepetitions;
+    return this;
+  }
+
+  /**
+   * @param probability probability to skip an optional field that is not needed to reach requested size (default: 0.5)
+   * @return this generator
+   */
+  public InputGenerator<X> optionalProbability(double probability) {
+    this.optionalProbability = probability;
+    return this;
+  }
+
+  /**
+   * @param probability probability to insert ignored characters before a token (default: 0.2)
+   * @return this generator
+   */
+  public InputGenerator<X> ignoredCharactersProbability(double probability) {
+    this.ignoredProbability = probability;
+    return this;
+  }
+
+  /**
+   * Generates a random document
+   * @param size approximate size of the document in characters
+   * @return generated document
+   */
+  public String generate(int size) {
+    result = new StringBuilder(size + 64);
+    try {
+      generate(type, size, 0, "");
+      return result.toString();
+    } finally {
+      result = null;
+    }
+  }
+
+  private void generate(Class<?> type, int budget, int depth, String ignored) {
+    if (depth > maxDepth * 4L) {
+      throw new IllegalStateException("Unable to generate a finite source for " + type.getName());
+    }
+    if (depth > maxDepth) {
+      budget = 0;
+    }
+    if (TokenGrammar.isConcrete(type)) {
+      generateRule(type, budget, depth, ignored);
+    } else {
+      generateVariant(type, budget, depth, ignored);
+    }
+  }
+
+  private void generateVariant(Class<?> junction, int budget, int depth, String ignored) {
+    List<Class<?>> variants = variants(junction).stream()
+        .filter(variant -> MinLength.of(variant) != MinLength.INFINITE)
+        .collect(Collectors.toList());
+    if (variants.isEmpty()) {
+      throw new IllegalArgumentException("Junction " + junction.getName() + " has no variants that can be generated");
+    }
+
+    List<Class<?>> candidates;
+    int shortest = MinLength.of(junction);
+    if (budget <= shortest) {
+      candidates = variants.stream().filter(variant -> MinLength.of(variant) == shortest).collect(Collectors.toList());
+    } else {
+      candidates = variants.stream().filter(variant -> MinLength.of(variant) <= budget).collect(Collectors.toList());
+      if (budget > leafBudget) {
+        // spend large budgets on variants that can grow the most
+        Growth best = candidates.stream().map(this::growth).max(Enum::compareTo).orElse(Growth.NONE);
+        candidates = candidates.stream().filter(variant -> growth(variant) == best).collect(Collectors.toList());
+      }
+    }
+    generate(candidates.get(random.nextInt(candidates.size())), budget, depth + 1, ignored);
+  }
+
+  private void generateRule(Class<?> rule, int budget, int depth, String ignored) {
+    if (rule.isAnnotationPresent(IgnoreCharacters.class)) {
+      IgnoreCharacters annotation = rule.getAnnotation(IgnoreCharacters.class);
+      ignored = (annotation.inherit() ? ignored : "") + annotation.value();
+    }
+
+    Field[] fields = RuleIntrospector.fields(rule);
+    int[] budgets = new int[fields.length];
+    boolean[] grows = new boolean[fields.length];
+    distribute(fields, budget, budgets, grows);
+
+    Map<String, Object> values = new HashMap<>();
+    for (int i = 0; i < fields.length; i++) {
+      Field field = fields[i];
+      if (!grows[i] && omittable(field, values) && (budget == 0 || random.nextDouble() < optionalProbability)) {
+        values.put(field.getName(), null);
+        continue;
+      }
+      values.put(field.getName(), generateField(field, field.getType(), budgets[i], depth + 1, ignored, values));
+    }
+  }
+
+  /**
+   * Assigns every field its minimal length and distributes the rest of the budget between the fields that can grow the most
+   */
+  private void distribute(Field[] fields, int budget, int[] budgets, boolean[] grows) {
+    long extra = budget;
+    Growth best = Growth.NONE;
+    for (int i = 0; i < fields.length; i++) {
+      budgets[i] = MinLength.of(fields[i]);
+      extra -= budgets[i];
+      Growth growth = growth(fields[i], fields[i].getType());
+      if (growth.compareTo(best) > 0) {
+        best = growth;
+      }
+    }
+    if (extra <= 0 || best == Growth.NONE) {
+      return;
+    }
+
+    double[] weights = new double[fields.length];
+    double total = 0;
+    for (int i = 0; i < fields.length; i++) {
+      if (growth(fields[i], fields[i].getType()) == best) {
+        weights[i] = 0.1 + random.nextDouble();
+        total += weights[i];
+      }
+    }
+    for (int i = 0; i < fields.length; i++) {
+      int share = (int) (extra * weights[i] / total);
+      budgets[i] += share;
+      grows[i] = share > 0;
+    }
+  }
+
+  private Object generateField(Field field, Class<?> fieldType, int budget, int depth, String ignored, Map<String, Object> values) {
+    if (fieldType.isArray()) {
+      return generateCollection(field, fieldType.getComponentType(), budget, depth, ignored, values);
+    } else if (Rule.class.isAssignableFrom(fieldType)) {
+      generate(fieldType, budget, depth, ignored);
+      return fieldType;
+    } else if (fieldType == String.class) {
+      return generateString(field, budget, ignored, values);
+    } else if (fieldType.isEnum()) {
+      return generateEnum(fieldType, ignored);
+    }
+    throw new IllegalArgumentException("Unsupported field type " + fieldType + " of field " + field);
+  }
+
+  private Object generateCollection(Field field, Class<?> member, int budget, int depth, String ignored, Map<String, Object> values) {
+    int min = minMembers(field);
+    int max = Math.max(min, Math.min(maxRepetitions, maxMembers(field)));
+    int memberLength = Math.max(1, MinLength.of(member));
+
+    int count = min;
+    if (budget > (long) min * memberLength && max > min) {
+      // log-uniform member size produces both wide and deep collections
+      double memberBudget = memberLength * Math.exp(random.nextDouble() * Math.log((double) budget / memberLength));
+      count = (int) Math.max(min, Math.min(max, budget / memberBudget));
+    }
+
+    for (int i = 0; i < count; i++) {
+      generateField(field, member, budget / Math.max(1, count), depth + 1, ignored, values);
+    }
+    return member;
+  }
+
+  private String generateString(Field field, int budget, String ignored, Map<String, Object> values) {
+    String text;
+    try {
+      if (Modifier.isStatic(field.getModifiers())) {
+        field.setAccessible(true);
+        text = (String) field.get(null);
+      } else if (field.isAnnotationPresent(CapturePattern.class)) {
+        CapturePattern capture = field.getAnnotation(CapturePattern.class);
+        String pattern = RuleIntrospector.regex(capture);
+        if (pattern.length() > 0) {
+          text = sampler(pattern).sample(random, budget);
+        } else {
+          text = untilText(capture.until(), budget);
+          if (capture.replacement().length() > 0) {
+            // with replacement the stop token is consumed together with the captured text
+            text += sampler(capture.until()).sample(random, 0);
+          }
+        }
+      } else if (field.isAnnotationPresent(ContextAware.class)) {
+        Object source = values.get(field.getAnnotation(ContextAware.class).matchField());
+        text = source instanceof String ? (String) source : null;
+      } else {
+        throw new IllegalArgumentException("Non-static String fields MUST have CapturePattern annotation: " + field);
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Failed to read terminal field " + field, e);
+    }
+
+    if (text != null) {
+      emit(text, ignored);
+    }
+    return text;
+  }
+
+  private Object generateEnum(Class<?> enumType, String ignored) {
+    Enum<?>[] constants = (Enum<?>[]) enumType.getEnumConstants();
+    if (constants.length == 0) {
+      throw new IllegalArgumentException("Enum " + enumType.getName() + " has no constants");
+    }
+    Enum<?> constant = constants[random.nextInt(constants.length)];
+    CapturePattern capture = constantPattern(constant);
+    emit(capture == null ? constant.toString() : sampler(RuleIntrospector.regex(capture)).sample(random, 0), ignored);
+    return constant;
+  }
+
+  /**
+   * Generates random text that does not contain a match of given stop pattern
+   */
+  private String untilText(String until, int length) {
+    Pattern stop = patterns.computeIfAbsent(until, Pattern::compile);
+    length = Math.max(1, length);
+    StringBuilder text = new StringBuilder(length);
+    for (int attempt = 0; attempt < 32; attempt++) {
+      text.setLength(0);
+      for (int i = 0; i < length; i++) {
+        // leading spaces would be ignored by the parser
+        text.append(i > 0 && random.nextInt(8) == 0 ? ' ' : TEXT[random.nextInt(TEXT.length)]);
+      }
+      if (!stop.matcher(text).find()) {
+        return text.toString();
+      }
+    }
+    throw new IllegalStateException("Unable to generate text that does not match stop pattern " + until);
+  }
+
+  /**
+   * Appends a token to the result, separating it from the previous token with ignored characters
+   * when they would otherwise merge or randomly
+   */
+  private void emit(String text, String ignored) {
+    if (text.isEmpty()) {
+      return;
+    }
+    if (ignored.length() > 0 && result.length() > 0) {
+      boolean merge = isWordCharacter(result.charAt(result.length() - 1)) && isWordCharacter(text.charAt(0));
+      if (merge || random.nextDouble() < ignoredProbability) {
+        int count = merge ? 1 : 1 + random.nextInt(2);
+        for (int i = 0; i < count; i++) {
+          result.append(ignored.charAt(random.nextInt(ignored.length())));
+        }
+      }
+    }
+    result.append(text);
+  }
+
+  private static boolean isWordCharacter(char character) {
+    return Character.isLetterOrDigit(character) || character == '_' || character == '.';
+  }
+
+  private boolean omittable(Field field, Map<String, Object> values) {
+    OptionalToken optional = field.getAnnotation(OptionalToken.class);
+    if (optional == null) {
+      return false;
+    } else if (optional.whenFieldIsNull().length() > 0) {
+      return values.get(optional.whenFieldIsNull()) == null;
+    } else if (optional.whenFieldNotNull().length() > 0) {
+      return values.get(optional.whenFieldNotNull()) != null;
+    }
+    return optional.whenFollowedBy().length() == 0;
+  }
+
+  private Growth growth(Field field, Class<?> fieldType) {
+    if (fieldType.isArray()) {
+      return maxMembers(field) > minMembers(field) ? Growth.STRUCTURE : growth(field, fieldType.getComponentType());
+    } else if (Rule.class.isAssignableFrom(fieldType)) {
+      return growth(fieldType);
+    } else if (fieldType == String.class && !Modifier.isStatic(field.getModifiers())
+        && field.isAnnotationPresent(CapturePattern.class)) {
+      CapturePattern capture = field.getAnnotation(CapturePattern.class);
+      String pattern = RuleIntrospector.regex(capture);
+      return pattern.length() == 0 || sampler(pattern).unbounded() ? Growth.LEAF : Growth.NONE;
+    }
+    return Growth.NONE;
+  }
+
+  /**
+   * @return how much the text generated for given rule can grow
+   */
+  private Growth growth(Class<?> rule) {
+    Growth known = growths.get(rule);
+    if (known != null) {
+      return known;
+    }
+    Set<Class<?>> closure = closure(rule);
+    Growth result = Growth.NONE;
+    if (closure.contains(rule)) {
+      result = Growth.STRUCTURE;
+    } else {
+      Set<Class<?>> reached = new HashSet<>(closure);
+      reached.add(rule);
+      for (Class<?> type : reached) {
+        if (TokenGrammar.isConcrete(type)) {
+          for (Field field : RuleIntrospector.fields(type)) {
+            Growth growth = Rule.class.isAssignableFrom(field.getType()) ? Growth.NONE : growth(field, field.getType());
+            if (growth.compareTo(result) > 0) {
+              result = growth;
+            }
+          }
+        }
+        if (type != rule && closure(type).contains(type)) {
+          result = Growth.STRUCTURE;
+        }
+      }
+    }
+    growths.put(rule, result);
+    return result;
+  }
+
+  /**
+   * @return all rules reachable from the given rule through its fields or junction variants
+   */
+  private Set<Class<?>> closure(Class<?> rule) {
+    Set<Class<?>> known = closures.get(rule);
+    if (known != null) {
+      return known;
+    }
+    Set<Class<?>> result = new LinkedHashSet<>();
+    List<Class<?>> queue = new ArrayList<>(children(rule));
+    while (!queue.isEmpty()) {
+      Class<?> next = queue.remove(queue.size() - 1);
+      if (result.add(next)) {
+        queue.addAll(children(next));
+      }
+    }
+    closures.put(rule, result);
+    return result;
+  }
+
+  private List<Class<?>> children(Class<?> rule) {
+    if (!TokenGrammar.isConcrete(rule)) {
+      return variants(rule);
+    }
+    List<Class<?>> result = new ArrayList<>();
+    for (Field field : RuleIntrospector.fields(rule)) {
+      Class<?> fieldType = field.getType().isArray() ? field.getType().getComponentType() : field.getType();
+      if (Rule.class.isAssignableFrom(fieldType)) {
+        result.add(fieldType);
+      }
+    }
+    return result;
+  }
+
+  private static List<Class<?>> variants(Class<?> junction) {
+    return (List) RuleIntrospector.variants((Class<? extends Rule>) junction);
+  }
+
+  private static int minMembers(Field field) {
+    CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+    return limit == null ? 0 : limit.min();
+  }
+
+  private static int maxMembers(Field field) {
+    CaptureLimit limit = field.getAnnotation(CaptureLimit.class);
+    return limit == null ? Integer.MAX_VALUE : limit.max();
+  }
+
+  private static CapturePattern constantPattern(Enum<?> constant) {
+    try {
+      return constant.getDeclaringClass().getDeclaredField(constant.name()).getAnnotation(CapturePattern.class);
+    } catch (NoSuchFieldException e) {
+      throw new IllegalArgumentException("Failed to read field for enum value " + constant, e);
+    }
+  }
+
+  private RegexSampler sampler(String pattern) {
+    return samplers.computeIfAbsent(pattern, RegexSampler::new);
+  }
+
+  /**
+   * Describes how much the text generated for a grammar element can grow
+   */
+  private enum Growth {
+    /**
+     * the element generates text of bounded length
+     */
+    NONE,
+    /**
+     * the element contains captures that can match text of any length
+     */
+    LEAF,
+    /**
+     * the element contains collections or recursive rules
+     */
+    STRUCTURE
+  }
+}
@@ -0,0 +1,430 @@
+package com.onkiup.linker.parser.generator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Generates random strings that match a regular expression.
+ * Supports the subset of {@link Pattern} syntax used by capture patterns: literals, escapes, character classes,
+ * groups, alternations and greedy/lazy/possessive quantifiers. Anchors and lookarounds generate nothing;
+ * generated strings are verified against the pattern, so unsupported constructs result in an error instead of
+ * invalid output.
+ */
+class RegexSampler {
+  /**
+   * Characters used to sample wildcards and negated classes
+   */
+  private static final char[] PRINTABLE;
+  /**
+   * Number of attempts made to generate a string that matches the pattern
+   */
+  private static final int ATTEMPTS = 32;
+
+  static {
+    StringBuilder printable = new StringBuilder();
+    for (char c = ' '; c < 127; c++) {
+      printable.append(c);
+    }
+    PRINTABLE = printable.toString().toCharArray();
+  }
+
+  private final String source;
+  private final Pattern pattern;
+  private final Node root;
+  private int position;
+
+  RegexSampler(String regex) {
+    this.source = regex;
+    this.pattern = Pattern.compile(regex);
+    this.root = parseAlternation();
+    if (position < source.length()) {
+      throw new IllegalArgumentException("Unexpected '" + source.charAt(position) + "' at position " + position + " in pattern " + regex);
+    }
+  }
+
+  /**
+   * @return true if the pattern can match strings of any length
+   */
+  boolean unbounded() {
+    return root.unbounded();
+  }
+
+  /**
+   * Generates a random string that matches the pattern
+   * @param random source of randomness
+   * @param budget desired length of the string; unbounded repetitions grow to approach it
+   * @return generated string
+   * @throws IllegalStateException if the pattern uses constructs that cannot be sampled
+   */
+  String sample(Random random, int budget) {
+    for (int i = 0; i < ATTEMPTS; i++) {
+      StringBuilder result = new StringBuilder();
+      root.sample(random, new int[] {Math.max(0, budget - root.minLength())}, result);
+      if (pattern.matcher(result).matches()) {
+        return result.toString();
+      }
+    }
+    throw new IllegalStateException("Unable to generate a string that matches pattern " + source);
+  }
+
+  private Node parseAlternation() {
+    List<Node> options = new ArrayList<>();
+    options.add(parseSequence());
+    while (position < source.length() && source.charAt(position) == '|') {
+      position++;
+      options.add(parseSequence());
+    }
+    return options.size() == 1 ? options.get(0) : new Alternation(options);
+  }
+
+  private Node parseSequence() {
+    List<Node> items = new ArrayList<>();
+    while (position < source.length()) {
+      char next = source.charAt(position);
+      if (next == '|' || next == ')') {
+        break;
+      }
+      Node atom = parseAtom();
+      items.add(parseQuantifier(atom));
+    }
+    return new Sequence(items);
+  }
+
+  private Node parseAtom() {
+    char next = source.charAt(position++);
+    switch (next) {
+      case '(':
+        return parseGroup();
+      case '[':
+        return parseClass();
+      case '.':
+        return new CharacterSet(all(), false);
+      case '^':
+      case '$':
+        return Sequence.EMPTY;
+      case '\\':
+        return parseEscape(null);
+      default:
+        return new CharacterSet(single(next), false);
+    }
+  }
+
+  private Node parseGroup() {
+    boolean skip = false;
+    if (source.startsWith("?", position)) {
+      position++;
+      char kind = source.charAt(position);
+      if (kind == ':' || kind == '>') {
+        position++;
+      } else if (kind == '=' || kind == '!') {
+        position++;
+        skip = true;
+      } else if (kind == '<') {
+        position++;
+        char lookbehind = source.charAt(position);
+        if (lookbehind == '=' || lookbehind == '!') {
+          position++;
+          skip = true;
+        } else {
+          // named group
+          position = source.indexOf('>', position) + 1;
+        }
+      } else {
+        // inline flags: (?i) or (?i:...)
+        while (position < source.length() && (Character.isLetter(source.charAt(position)) || source.charAt(position) == '-')) {
+          position++;
+        }
+        if (source.charAt(position) == ')') {
+          position++;
+          return Sequence.EMPTY;
+        }
+        position++;
+      }
+    }
+    Node body = parseAlternation();
+    expect(')');
+    return skip ? Sequence.EMPTY : body;
+  }
+
+  private Node parseClass() {
+    boolean negated = source.startsWith("^", position);
+    if (negated) {
+      position++;
+    }
+    BitSet chars = new BitSet(128);
+    boolean first = true;
+    while (position < source.length() && (first || source.charAt(position) != ']')) {
+      first = false;
+      char from = source.charAt(position++);
+      if (from == '[') {
+        // nested class union
+        CharacterSet nested = (CharacterSet) parseClass();
+        chars.or(nested.chars);
+        continue;
+      }
+      if (from == '\\') {
+        Node escaped = parseEscape(chars);
+        if (!(escaped instanceof CharacterSet) || ((CharacterSet) escaped).chars.cardinality() != 1) {
+          continue;
+        }
+        from = (char) ((CharacterSet) escaped).chars.nextSetBit(0);
+      }
+      if (source.startsWith("-", position) && position + 1 < source.length() && source.charAt(position + 1) != ']') {
+        position++;
+        char to = source.charAt(position++);
+        if (to == '\\') {
+          to = (char) ((CharacterSet) parseEscape(null)).chars.nextSetBit(0);
+        }
+        chars.set(from, to + 1);
+      } else {
+        chars.set(from);
+      }
+    }
+    expect(']');
+    return new CharacterSet(chars, negated);
+  }
+
+  /**
+   * Parses an escape sequence (the backslash is already consumed)
+   * @param into if not null, character classes are added into this set instead of being returned
+   */
+  private Node parseEscape(BitSet into) {
+    char escaped = source.charAt(position++);
+    BitSet chars;
+    boolean negated = false;
+    switch (escaped) {
+      case 'd': chars = range('0', '9'); break;
+      case 'D': chars = range('0', '9'); negated = true; break;
+      case 'w': chars = word(); break;
+      case 'W': chars = word(); negated = true; break;
+      case 's': chars = chars(" \t\n\r\f"); break;
+      case 'S': chars = chars(" \t\n\r\f"); negated = true; break;
+      case 't': chars = single('\t'); break;
+      case 'n': chars = single('\n'); break;
+      case 'r': chars = single('\r'); break;
+      case 'f': chars = single('\f'); break;
+      case 'b': case 'B': case 'A': case 'z': case 'Z': case 'G':
+        return Sequence.EMPTY;
+      case 'p': case 'P':
+        // unicode classes are approximated with letters
+        position = source.indexOf('}', position) + 1;
+        chars = range('a', 'z');
+        chars.or(range('A', 'Z'));
+        negated = escaped == 'P';
+        break;
+      default:
+        if (Character.isDigit(escaped)) {
+          throw new IllegalArgumentException("Back references are not supported: " + source);
+        }
+        chars = single(escaped);
+    }
+    if (into != null && (negated || chars.cardinality() > 1)) {
+      into.or(negated ? complement(chars) : chars);
+      return Sequence.EMPTY;
+    }
+    return new CharacterSet(chars, negated);
+  }
+
+  private Node parseQuantifier(Node atom) {
+    if (position >= source.length()) {
+      return atom;
+    }
+    int min, max;
+    char next = source.charAt(position);
+    if (next == '?') {
+      min = 0;
+      max = 1;
+    } else if (next == '*') {
+      min = 0;
+      max = Integer.MAX_VALUE;
+    } else if (next == '+') {
+      min = 1;
+      max = Integer.MAX_VALUE;
+    } else if (next == '{' && source.indexOf('}', position) > 0) {
+      String[] limits = source.substring(position + 1, source.indexOf('}', position)).split(",", -1);
+      min = Integer.parseInt(limits[0].trim());
+      max = limits.length == 1 ? min : limits[1].trim().isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(limits[1].trim());
+      position = source.indexOf('}', position);
+    } else {
+      return atom;
+    }
+    position++;
+    if (position < source.length() && (source.charAt(position) == '?' || source.charAt(position) == '+')) {
+      // lazy or possessive
+      position++;
+    }
+    return new Repetition(atom, min, max);
+  }
+
+  private void expect(char expected) {
+    if (position >= source.length() || source.charAt(position) != expected) {
+      throw new IllegalArgumentException("Expected '" + expected + "' at position " + position + " in pattern " + source);
+    }
+    position++;
+  }
+
+  private static BitSet single(char character) {
+    BitSet result = new BitSet(128);
+    result.set(character);
+    return result;
+  }
+
+  private static BitSet range(char from, char to) {
+    BitSet result = new BitSet(128);
+    result.set(from, to + 1);
+    return result;
+  }
+
+  private static BitSet chars(String chars) {
+    BitSet result = new BitSet(128);
+    chars.chars().forEach(result::set);
+    return result;
+  }
+
+  private static BitSet word() {
+    BitSet result = range('a', 'z');
+    result.or(range('A', 'Z'));
+    result.or(range('0', '9'));
+    result.set('_');
+    return result;
+  }
+
+  private static BitSet all() {
+    return chars(new String(PRINTABLE));
+  }
+
+  private static BitSet complement(BitSet chars) {
+    BitSet result = all();
+    result.andNot(chars);
+    return result;
+  }
+
+  private interface Node {
+    int minLength();
+    boolean unbounded();
+    void sample(Random random, int[] budget, StringBuilder result);
+  }
+
+  private static class CharacterSet implements Node {
+    private final BitSet chars;
+    private final char[] candidates;
+
+    private CharacterSet(BitSet chars, boolean negated) {
+      this.chars = negated ? complement(chars) : chars;
+      this.candidates = new char[this.chars.cardinality()];
+      for (int i = this.chars.nextSetBit(0), j = 0; i >= 0; i = this.chars.nextSetBit(i + 1)) {
+        candidates[j++] = (char) i;
+      }
+    }
+
+    @Override
+    public int minLength() {
+      return 1;
+    }
+
+    @Override
+    public boolean unbounded() {
+      return false;
+    }
+
+    @Override
+    public void sample(Random random, int[] budget, StringBuilder result) {
+      if (candidates.length == 0) {
+        throw new IllegalStateException("Empty character class");
+      }
+      result.append(candidates[random.nextInt(candidates.length)]);
+    }
+  }
+
+  private static class Sequence implements Node {
+    private static final Sequence EMPTY = new Sequence(new ArrayList<>());
+    private final List<Node> items;
+
+    private Sequence(List<Node> items) {
+      this.items = items;
+    }
+
+    @Override
+    public int minLength() {
+      long result = 0;
+      for (Node item : items) {
+        result += item.minLength();
+      }
+      return (int) Math.min(Integer.MAX_VALUE, result);
+    }
+
+    @Override
+    public boolean unbounded() {
+      return items.stream().anyMatch(Node::unbounded);
+    }
+
+    @Override
+    public void sample(Random random, int[] budget, StringBuilder result) {
+      for (Node item : items) {
+        item.sample(random, budget, result);
+      }
+    }
+  }
+
+  private static class Alternation implements Node {
+    private final List<Node> options;
+
+    private Alternation(List<Node> options) {
+      this.options = options;
+    }
+
+    @Override
+    public int minLength() {
+      return options.stream().mapToInt(Node::minLength).min().orElse(0);
+    }
+
+    @Override
+    public boolean unbounded() {
+      return options.stream().anyMatch(Node::unbounded);
+    }
+
+    @Override
+    public void sample(Random random, int[] budget, StringBuilder result) {
+      options.get(random.nextInt(options.size())).sample(random, budget, result);
+    }
+  }
+
+  private static class Repetition implements Node {
+    /**
+     * Maximal number of optional repetitions generated when there is no budget to spend
+     */
+    private static final int SPREAD = 3;
+    private final Node item;
+    private final int min, max;
+
+    private Repetition(Node item, int min, int max) {
+      this.item = item;
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    public int minLength() {
+      return (int) Math.min(Integer.MAX_VALUE, (long) min * item.minLength());
+    }
+
+    @Override
+    public boolean unbounded() {
+      return max == Integer.MAX_VALUE || item.unbounded();
+    }
+
+    @Override
+    public void sample(Random random, int[] budget, StringBuilder result) {
+      int itemLength = Math.max(1, item.minLength());
+      int spread = Math.max(SPREAD, max == Integer.MAX_VALUE ? budget[0] / itemLength : 0);
+      int count = min + random.nextInt((int) Math.min((long) max - min, spread) + 1);
+      budget[0] = Math.max(0, budget[0] - (count - min) * itemLength);
+      for (int i = 0; i < count; i++) {
+        item.sample(random, budget, result);
+      }
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.onkiup.linker.parser.token;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.Optional;
 
@@ -17,6 +19,14 @@ import com.onkiup.linker.parser.ParserLocation;
 public abstract class AbstractToken<X> implements PartialToken<X>, Serializable {
 
   private CompoundToken<?> parent;
+  /**
+   * The root token of the AST to which this token belongs
+   */
+  private PartialToken<?> root;
+  /**
+   * State of the parse shared by all tokens of the AST
+   */
+  private ParseContext context;
   /**
    * The field for which this token was created
    */
@@ -29,6 +39,19 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
    * Token status flags
    */
   private boolean optional, populated, failed;
+  /**
+   * Set when the parser was committed to this token (see {@link com.onkiup.linker.parser.annotation.Commit})
+   */
+  private boolean committed;
+  /**
+   * The number of leading children that can not be traced back anymore
+   */
+  private int frozenChildren;
+  /**
+   * Rules matched on the path from the root token to this token or null when not known yet;
+   * known paths of sub-tokens are dropped together with the path of their parent
+   */
+  private transient RulePath path;
   /**
    * Token optionality condition
    */
@@ -44,6 +67,10 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
    */
   public AbstractToken(CompoundToken<?> parent, Field targetField, ParserLocation location) {
     this.parent = parent;
+    PartialToken<?> parentRoot = parent == null ? null : parent.root();
+    this.root = parentRoot == null ? this : parentRoot;
+    this.context = parent == null ? new ParseContext() : parent.context();
+    context.statistics().onToken();
     this.field = targetField;
     this.location = location;
 
@@ -84,6 +111,38 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
     log("Dropped population flag");
   }
 
+  /**
+   * @return true if the parser was committed to this token and it can not be replaced with an alternative
+   */
+  public boolean isCommitted() {
+    return committed;
+  }
+
+  /**
+   * @return the number of leading children that can not be traced back
+   */
+  public int frozenChildren() {
+    return frozenChildren;
+  }
+
+  /**
+   * Commits the parser to this token: the token will not try its untested alternatives anymore
+   * @param frozenChildren the number of leading children that should not be traced back
+   */
+  public void commit(int frozenChildren) {
+    log("Committed (frozen children: {})", frozenChildren);
+    committed = true;
+    freeze(frozenChildren);
+  }
+
+  /**
+   * Marks leading children of this token as final without committing to the token itself
+   * @param frozenChildren the number of leading children that should not be traced back
+   */
+  public void freeze(int frozenChildren) {
+    this.frozenChildren = Math.max(this.frozenChildren, frozenChildren);
+  }
+
   /**
    * @return true if this token did not match the source
    */
@@ -106,6 +165,7 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
    */
   protected void location(ParserLocation location) {
     this.location = location;
+    onPathChanged();
   }
 
   /**
@@ -117,19 +177,117 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
   }
 
   /**
-   * @return parent token
+   * @return parent token or null
+   */
+  @Override
+  public CompoundToken<?> parentOrNull() {
+    return parent;
+  }
+
+  /**
+   * Moves this token under another parent of the same AST; used when sub-trees are re-arranged after matching
+   * @param parent new parent token
+   */
+  void parent(CompoundToken<?> parent) {
+    this.parent = parent;
+    onPathChanged();
+  }
+
+  /**
+   * Drops known paths of this token and its sub-tokens after the token was moved or relocated.
+   * Paths are always built from the root down, so sub-tokens of a token without a known path have no known paths either
+   */
+  private void onPathChanged() {
+    if (path == null) {
+      return;
+    }
+    Deque<AbstractToken<?>> outdated = new ArrayDeque<>();
+    outdated.push(this);
+    while (!outdated.isEmpty()) {
+      AbstractToken<?> token = outdated.pop();
+      token.path = null;
+      if (token instanceof CompoundToken) {
+        CompoundToken<?> compound = (CompoundToken<?>) token;
+        for (int i = 0; i < compound.childCount(); i++) {
+          PartialToken<?> child = compound.child(i);
+          if (child instanceof AbstractToken && ((AbstractToken<?>) child).path != null) {
+            outdated.push((AbstractToken<?>) child);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns rules that are being matched on the path from the root token to this token. Paths are built once per token
+   * from parent paths and are rebuilt only after the token or one of its parents is moved or relocated
+   * @return rules on the path to this token
+   */
+  RulePath rulePath() {
+    if (path != null) {
+      return path;
+    }
+    if (parent instanceof AbstractToken && ((AbstractToken<?>) parent).path != null) {
+      return path = RulePath.extend(((AbstractToken<?>) parent).path, tokenType(), position());
+    }
+    Deque<AbstractToken<?>> outdated = new ArrayDeque<>();
+    RulePath known = null;
+    PartialToken<?> current = this;
+    while (current instanceof AbstractToken) {
+      AbstractToken<?> token = (AbstractToken<?>) current;
+      if (token.path != null) {
+        known = token.path;
+        break;
+      }
+      outdated.push(token);
+      current = token.parentOrNull();
+    }
+    while (!outdated.isEmpty()) {
+      AbstractToken<?> token = outdated.pop();
+      known = token.path = RulePath.extend(known, token.tokenType(), token.position());
+    }
+    return known;
+  }
+
+  /**
+   * Moves this token to another field with the same matching configuration; used when sub-trees are handed over to
+   * another rule
+   * @param field new target field
+   */
+  void targetField(Field field) {
+    this.field = field;
+  }
+
+  /**
+   * @return root token of the AST to which this token belongs to
+   */
+  @Override
+  public PartialToken<?> root() {
+    return root;
+  }
+
+  /**
+   * @return state of the parse shared by all tokens of the AST to which this token belongs
    */
   @Override
-  public Optional<CompoundToken<?>> parent() {
-    return Optional.ofNullable(parent);
+  public ParseContext context() {
+    return context;
+  }
+
+  /**
+   * Replaces the parse state used by this token; should only be called on root tokens before they create any children
+   * @param context new parse state
+   */
+  void context(ParseContext context) {
+    this.context = context;
   }
 
   /**
-   * @return the field for which this token was created
+   * @return the field for which this token was created or null
    */
   @Override
-  public Optional<Field> targetField() {
-    return Optional.ofNullable(field);
+  public Field targetFieldOrNull() {
+    return field;
   }
 
   /**
@@ -160,25 +318,27 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
    */
   @Override
   public String tag() {
-    return targetField()
-        .map(field -> field.getDeclaringClass().getName() + "$" + field.getName() + "(" + position() + ")")
-        .orElseGet(super::toString);
+    if (field == null) {
+      return super.toString();
+    }
+    return field.getDeclaringClass().getName() + "$" + field.getName() + "(" + position() + ")";
   }
 
   @Override
   public String toString() {
+    if (field == null) {
+      return super.toString();
+    }
     ParserLocation location = location();
-    return targetField()
-        .map(field -> String.format(
-            "%50.50s || %s (%d:%d -- %d - %d)",
-            head(50),
-            field.getDeclaringClass().getName() + "$" + field.getName(),
-            location.line(),
-            location.column(),
-            location.position(),
-            end().position()
-        ))
-        .orElseGet(super::toString);
+    return String.format(
+        "%50.50s || %s (%d:%d -- %d - %d)",
+        head(50),
+        field.getDeclaringClass().getName() + "$" + field.getName(),
+        location.line(),
+        location.column(),
+        location.position(),
+        end().position()
+    );
   }
 
   /**
@@ -195,6 +355,9 @@ public abstract class AbstractToken<X> implements PartialToken<X>, Serializable
    */
   @Override
   public void onFail() {
+    if (!failed) {
+      statistics().onFail(tokenType());
+    }
     failed = true;
     populated = false;
     end = location;
@@ -3,13 +3,15 @@ package com.onkiup.linker.parser.token;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Optional;
 import java.util.function.Function;
 
 import com.onkiup.linker.parser.ParserLocation;
+import com.onkiup.linker.parser.RecoveredSyntaxError;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
 import com.onkiup.linker.parser.annotation.CaptureLimit;
+import com.onkiup.linker.parser.annotation.SyncPoint;
 import com.onkiup.linker.parser.util.ParserError;
 
 /**
@@ -28,7 +30,7 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
   /**
    * tokens that represent matched array members
    */
-  private LinkedList<PartialToken> children = new LinkedList<>();
+  private ArrayList<PartialToken<?>> children = new ArrayList<>();
   /**
    * maximum number of array members to match
    */
@@ -41,6 +43,26 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
    * index of the next member to match
    */
   private int nextMember = 0;
+  /**
+   * terminals at which parser can resume after a failed member (only when error recovery is enabled)
+   */
+  private String[] syncPoints;
+  /**
+   * the location immediately after the last skipped source fragment
+   */
+  private ParserLocation skipped;
+  /**
+   * error recovery progress that was tracked before the current member was created
+   */
+  private int savedMatched, savedFailed;
+  /**
+   * index of the member that committed the parser to this collection (see {@link com.onkiup.linker.parser.annotation.Commit}) or -1
+   */
+  private int committedMember = -1;
+  /**
+   * true when parent tokens can not choose a different grammar path for this collection; null until calculated
+   */
+  private Boolean finalPath;
 
   /**
    * Main constructor
@@ -57,6 +79,13 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
     if (field.isAnnotationPresent(CaptureLimit.class)) {
       captureLimit = field.getAnnotation(CaptureLimit.class);
     }
+    if (recovery() != null) {
+      SyncPoint syncPoint = field.isAnnotationPresent(SyncPoint.class) ? field.getAnnotation(SyncPoint.class) :
+          (SyncPoint) memberType.getAnnotation(SyncPoint.class);
+      if (syncPoint != null && syncPoint.value().length > 0) {
+        syncPoints = syncPoint.value();
+      }
+    }
   }
 
   /**
@@ -67,25 +96,103 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
     if (children.size() == 0) {
       throw new RuntimeException("OnChildPopulated called when there is no child!");
     }
-    PartialToken<?> current = children.peekLast();
+    if (syncPoints != null) {
+      restoreProgress();
+    }
+    PartialToken<?> current = lastChild();
     if (current.isMetaToken()) {
       addMetaToken(current.token());
-      children.pollLast();
+      removeLastChild();
       return;
     }
     log("Populated collection token #{}: {}", children.size(), current.tag());
     lastTokenEnd = current.end();
+    autoCommit(current);
     if (captureLimit != null && children.size() >= captureLimit.max()) {
       onPopulated(lastTokenEnd);
     }
   }
 
   /**
-   * Callback that handles end-of-input situation by marking the array populated or failed (if number of children is smaller than configured by {@link CaptureLimit} annotation on the target field)
+   * @return the last matched member
+   */
+  private PartialToken<?> lastChild() {
+    return children.get(children.size() - 1);
+  }
+
+  /**
+   * Discards the last matched member
+   * @return discarded member
+   */
+  private PartialToken<?> removeLastChild() {
+    return children.remove(children.size() - 1);
+  }
+
+  /**
+   * Freezes the populated member if it and all previous members have no alternatives left: tracing them back would fail
+   * them anyway, so parser can stop keeping their tested variants and stop walking through them on every traceback
+   * @param member populated member
+   */
+  private void autoCommit(PartialToken<?> member) {
+    if (frozenChildren() != children.size() - 1 || member.alternativesLeft()) {
+      return;
+    }
+    if (member instanceof CompoundToken) {
+      ((CompoundToken<?>) member).freezeSubtree();
+    }
+    freeze(children.size());
+    statistics().onAutoCommit();
+    if (finalPath == null) {
+      finalPath = !parentAlternativesLeft();
+    }
+    if (finalPath) {
+      VariantToken.releaseTags(root(), lastTokenEnd.position());
+    }
+  }
+
+  /**
+   * Checks whether any parent token or previous sibling of this token or of its parents can still choose a different grammar path;
+   * the result does not change while this collection is being populated
+   * @return true if tracing back this collection can lead to re-matching source before it
+   */
+  private boolean parentAlternativesLeft() {
+    PartialToken<?> child = this;
+    CompoundToken<?> parent = parentOrNull();
+    while (parent != null) {
+      if (parent.ownAlternativesLeft()) {
+        return true;
+      }
+      for (PartialToken<?> source : parent.alternativeSources()) {
+        if (source != null && source != child && source.alternativesLeft()) {
+          return true;
+        }
+      }
+      child = parent;
+      parent = parent.parentOrNull();
+    }
+    return false;
+  }
+
+  /**
+   * Remembers which member committed the parser to this collection, so that failure of that member fails the collection
+   * @param frozenChildren the number of leading members that should not be traced back
+   */
+  @Override
+  public void commit(int frozenChildren) {
+    super.commit(frozenChildren);
+    committedMember = Math.max(committedMember, frozenChildren);
+  }
+
+  /**
+   * Callback that handles end-of-input situation by marking the array populated or failed (if number of children is smaller than configured by {@link CaptureLimit} annotation on the target field);
+   * reports another member as expected at the end of the source unless the array is full
    */
   @Override
   public void atEnd() {
     log("Force-populating...");
+    if (captureLimit == null || captureLimit.max() > children.size()) {
+      expectedTokens().onFail(lastTokenEnd, targetFieldOrNull());
+    }
     if (captureLimit == null || children.size() >= captureLimit.min()) {
       onPopulated(lastTokenEnd);
     } else {
@@ -101,9 +208,15 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
     if (children.size() == 0) {
       throw new ParserError("No child is currently populated yet onChildFailed was called", this);
     }
+    if (children.size() - 1 == committedMember) {
+      log("Committed member failed -- failing the whole collection");
+      removeLastChild();
+      onFail();
+      return;
+    }
 
-    children.pollLast();
-    lastTokenEnd = children.size() > 0 ? children.peekLast().end() : location();
+    removeLastChild();
+    lastTokenEnd = afterSkipped(children.size() > 0 ? lastChild().end() : location());
     int size = children.size();
     if (captureLimit != null && size < captureLimit.min()) {
       log("Child failed and collection is underpopulated -- failing the whole collection");
@@ -114,8 +227,93 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
       }
     } else {
       log("Child failed and collection has enough elements (or no lower limit) -- marking collection as populated");
-      onPopulated(children.size() == 0 ? location() : lastTokenEnd);
+      onPopulated(lastTokenEnd);
+    }
+  }
+
+  /**
+   * Skips the source matched by failed member up to the next sync point (see {@link SyncPoint}) if the member matched
+   * at least one character; members that fail on their first character are handled by {@link #onChildFailed()} as usual
+   * @return true if the failed member was discarded and parser should continue with the next member
+   */
+  @Override
+  public boolean recoverChild() {
+    if (syncPoints == null || children.size() == 0) {
+      return false;
     }
+    Recovery recovery = recovery();
+    int start = lastTokenEnd.position();
+    boolean progressed = recovery.matched() > start;
+    int furthest = recovery.furthest();
+    restoreProgress();
+    if (!progressed) {
+      return false;
+    }
+
+    CharSequence buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root());
+    int resume = nextSyncPoint(buffer, furthest);
+    if (resume < 0) {
+      log("No sync point found after position {}", furthest);
+      return false;
+    }
+
+    ParserLocation error = lastTokenEnd.advance(buffer.subSequence(start, furthest));
+    recovery.add(new RecoveredSyntaxError(memberType, error, resume, buffer));
+    removeLastChild();
+    skipped = lastTokenEnd = error.advance(buffer.subSequence(furthest, resume));
+    nextMember = children.size();
+    log("Skipped failed member #{} ({} - {})", children.size(), start, resume);
+    return true;
+  }
+
+  /**
+   * Searches parser's buffer for the closest sync point
+   * @param buffer parser's buffer
+   * @param from position to start search at
+   * @return the position immediately after the closest sync point or -1 if none was found
+   */
+  private int nextSyncPoint(CharSequence buffer, int from) {
+    int result = -1;
+    for (String syncPoint : syncPoints) {
+      int limit = result < 0 ? buffer.length() - syncPoint.length() : Math.min(buffer.length(), result) - syncPoint.length();
+      search:
+      for (int i = from; i <= limit; i++) {
+        for (int j = 0; j < syncPoint.length(); j++) {
+          if (buffer.charAt(i + j) != syncPoint.charAt(j)) {
+            continue search;
+          }
+        }
+        result = i + syncPoint.length();
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts tracking error recovery progress for a new member
+   */
+  private void trackProgress() {
+    Recovery recovery = recovery();
+    savedMatched = recovery.matched();
+    savedFailed = recovery.failed();
+    recovery.reset(lastTokenEnd.position(), lastTokenEnd.position());
+  }
+
+  /**
+   * Merges error recovery progress tracked for the last member into the progress of enclosing members
+   */
+  private void restoreProgress() {
+    Recovery recovery = recovery();
+    recovery.reset(Math.max(savedMatched, recovery.matched()), Math.max(savedFailed, recovery.failed()));
+  }
+
+  /**
+   * @param location candidate location
+   * @return given location or the location after the last skipped fragment, whichever is further
+   */
+  private ParserLocation afterSkipped(ParserLocation location) {
+    return skipped != null && skipped.position() > location.position() ? skipped : location;
   }
 
   /**
@@ -130,15 +328,17 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
    * @return matched token
    */
   @Override
-  public Optional<X> token() {
-    if (!isPopulated()) {
-      return Optional.empty();
+  public X tokenOrNull() {
+    if (!isPopulated() || isRecognizer() && !RuleIntrospector.isContextField(targetFieldOrNull())) {
+      return null;
     }
 
-    return Optional.of((X) children.stream()
-      .map(PartialToken::token)
-        .map(o -> o.orElse(null))
-      .toArray(size -> newArray(memberType, size)));
+    Object[] result = newArray(memberType, children.size());
+    int i = 0;
+    for (PartialToken<?> child : children) {
+      result[i++] = child.tokenOrNull();
+    }
+    return (X) result;
   }
 
   /**
@@ -173,29 +373,32 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
 
   @Override
   public ParserLocation end() {
-    return isFailed() ? location() : children.size() > 0 ? children.peekLast().end() : lastTokenEnd;
+    return isFailed() ? location() : children.size() > 0 ? afterSkipped(lastChild().end()) : lastTokenEnd;
   }
 
   @Override
-  public Optional<PartialToken<?>> nextChild() {
+  public PartialToken<?> nextChildOrNull() {
     if (isFailed() || isPopulated()) {
-      return Optional.empty();
+      return null;
     }
 
     PartialToken<?> current = null;
     if (captureLimit == null || captureLimit.max() > children.size()) {
       if (nextMember == children.size()) {
         log("creating partial token for member#{}", children.size());
-        current = PartialToken.forField(this, targetField().orElse(null), memberType, lastTokenEnd);
+        if (syncPoints != null) {
+          trackProgress();
+        }
+        current = PartialToken.forField(this, targetFieldOrNull(), memberType, lastTokenEnd);
         children.add(current);
       } else if (nextMember < children.size()) {
         current = children.get(nextMember);
       }
       nextMember++;
       log("nextChild = [{}]{}", children.size(), current.tag());
-      return Optional.of(current);
+      return current;
     }
-    return Optional.empty();
+    return null;
   }
 
   @Override
@@ -203,6 +406,16 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
     return children.toArray(new PartialToken[children.size()]);
   }
 
+  @Override
+  public int childCount() {
+    return children.size();
+  }
+
+  @Override
+  public PartialToken<?> child(int index) {
+    return children.get(index);
+  }
+
   @Override
   public int unfilledChildren() {
     if (isPopulated()) {
@@ -226,23 +439,20 @@ public class CollectionToken<X> extends AbstractToken<X> implements CompoundToke
     log("next child set to {}/{} ({})", newIndex, children.size(), children.get(newIndex));
   }
 
+  /**
+   * Discards the last members in place, without copying the list of members
+   * @param size the number of members to keep
+   */
   @Override
-  public void children(PartialToken<?>[] children) {
-    this.children = new LinkedList<>(Arrays.asList(children));
+  public void truncateChildren(int size) {
+    while (children.size() > size) {
+      removeLastChild();
+    }
   }
 
   @Override
-  public boolean alternativesLeft() {
-    for (int i = children.size() - 1; i > -1; i--) {
-      PartialToken<?> child = children.get(i);
-      log("getting alternatives from [{}]{}", i, child.tag());
-      if (child.alternativesLeft()) {
-        log("found alternatives at [{}]{}", i, child.tag());
-        return true;
-      }
-    }
-
-    return false;
+  public void children(PartialToken<?>[] children) {
+    this.children = new ArrayList<>(Arrays.asList(children));
   }
 
   @Override
@@ -1,14 +1,17 @@
 package com.onkiup.linker.parser.token;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Objects;
+import java.util.Deque;
 import java.util.Optional;
 import java.util.function.Consumer;
 
+import com.onkiup.linker.parser.ParseListener;
 import com.onkiup.linker.parser.ParserLocation;
 import com.onkiup.linker.parser.Rule;
 import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
 
 /**
  * Common interface for any tokens that can contain children tokens
@@ -28,11 +31,35 @@ public interface CompoundToken<X> extends PartialToken<X>, Serializable {
     }
     if (TokenGrammar.isConcrete(type)) {
       return new RuleToken(null, null, type, position);
+    } else if (!RuleIntrospector.leftRecursive(type).isEmpty()) {
+      return new OperatorToken(null, null, type, position);
     } else {
       return new VariantToken(null, null, type, position);
     }
   }
 
+  /**
+   * Creates a root token for the given rule that will share the given parse state with all tokens of its AST
+   * @param type rule to match
+   * @param position location of the root token in parser's input
+   * @param context parse state: counters, parsing mode, error recovery and junction data
+   * @return created root token
+   */
+  static CompoundToken forClass(Class<? extends Rule> type, ParserLocation position, ParseContext context) {
+    CompoundToken result;
+    if (context.isRecognizer() && TokenGrammar.isConcrete(type)) {
+      result = new RuleToken(null, null, type, position == null ? new ParserLocation(null, 0, 0, 0) : position, true);
+    } else {
+      result = forClass(type, position);
+    }
+    ((AbstractToken<?>) result).context(context);
+    if (TokenGrammar.isConcrete(type)) {
+      context.statistics().onRule(type);
+    }
+    context.statistics().onToken();
+    return result;
+  }
+
   /**
    * Callback method invoked every time a child token is successfully populated from parser's input
    */
@@ -43,6 +70,68 @@ public interface CompoundToken<X> extends PartialToken<X>, Serializable {
    */
   void onChildFailed();
 
+  /**
+   * @return true if the parser was committed to this token (see {@link com.onkiup.linker.parser.annotation.Commit})
+   */
+  boolean isCommitted();
+
+  /**
+   * @return the number of leading children that can not be traced back because the parser was committed to them
+   */
+  int frozenChildren();
+
+  /**
+   * Commits the parser to this token: drops untested alternatives of this token and of its first children
+   * @param frozenChildren the number of leading children that should not be traced back
+   */
+  void commit(int frozenChildren);
+
+  /**
+   * Marks leading children of this token as final: they will not be traced back and their alternatives are not counted
+   * @param frozenChildren the number of leading children that should not be traced back
+   */
+  void freeze(int frozenChildren);
+
+  /**
+   * Freezes all children of this token and of its compound sub-tokens, dropping sub-tokens that are kept only to be traced back.
+   * Should be invoked only on populated tokens with no alternatives left
+   */
+  default void freezeSubtree() {
+    Deque<CompoundToken<?>> pending = new ArrayDeque<>();
+    pending.push(this);
+    while (!pending.isEmpty()) {
+      CompoundToken<?> token = pending.pop();
+      token.freeze(token.currentChild() + 1);
+      for (PartialToken<?> child : token.children()) {
+        if (child instanceof CompoundToken) {
+          pending.push((CompoundToken<?>) child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Commits the parser to this token and all its parents
+   * @param frozenChildren the number of leading children of this token that should not be traced back
+   */
+  default void commitPath(int frozenChildren) {
+    commit(frozenChildren);
+    CompoundToken<?> parent = parentOrNull();
+    while (parent != null) {
+      parent.commit(parent.currentChild());
+      parent = parent.parentOrNull();
+    }
+  }
+
+  /**
+   * Invoked before {@link #onChildFailed()} when error recovery is enabled; gives this token a chance to skip the source
+   * matched by the failed child and to continue with the next child
+   * @return true if the failed child was discarded and this token can continue matching
+   */
+  default boolean recoverChild() {
+    return false;
+  }
+
   /**
    * @return the number of children left to be filled
    */
@@ -78,6 +167,21 @@ public interface CompoundToken<X> extends PartialToken<X>, Serializable {
    */
   PartialToken<?>[] children();
 
+  /**
+   * @return the number of children returned by {@link #children()}
+   */
+  default int childCount() {
+    return children().length;
+  }
+
+  /**
+   * @param index index of the child
+   * @return the child with the given index in the array returned by {@link #children()}
+   */
+  default PartialToken<?> child(int index) {
+    return children()[index];
+  }
+
   /**
    * @param children an array of PartialToken objects to replace current token's children with
    */
@@ -86,68 +190,97 @@ public interface CompoundToken<X> extends PartialToken<X>, Serializable {
   /**
    * @return the next child of this token to be populated
    */
-  Optional<PartialToken<?>> nextChild();
+  default Optional<PartialToken<?>> nextChild() {
+    return Optional.ofNullable(nextChildOrNull());
+  }
+
+  /**
+   * Allocation-free version of {@link #nextChild()} used by the parser
+   * @return the next child of this token to be populated or null
+   */
+  PartialToken<?> nextChildOrNull();
 
   /**
    * Walks through token's children in reverse order removing them until the first child with alternativesLeft() > 0
-   * If no such child found, then returns full token source
-   * @return source for removed tokens
+   * If no such child found, then fails the token.
+   * Sub-tokens are traced back using an explicit stack (see {@link #tracebackChildren()}, {@link #onChildTracedBack(int, PartialToken)}
+   * and {@link #onTracedBack(PartialToken[], int)}), so the traceback does not fail on deeply nested ASTs
    */
+  @Override
   default void traceback() {
+    Traceback.run(this);
+  }
+
+  /**
+   * Starts tracing back this token
+   * @return children that should be traced back (in reverse order) or null if the token was traced back without tracing back its children
+   */
+  default PartialToken<?>[] tracebackChildren() {
     log("!!! TRACING BACK");
     PartialToken<?>[] children = children();
     if (children.length == 0) {
       invalidate();
       onFail();
-      return;
+      return null;
     }
-    int newSize =  0;
-    for (int i = children.length - 1; i > -1; i--) {
-      PartialToken<?> child = children[i];
-      if (child == null) {
-        continue;
-      }
-
-      child.traceback();
-
-      if (!child.isFailed()) {
-        log("found alternatives at child#{}", i);
-        newSize = i + 1;
-        break;
-      }
+    return children;
+  }
 
-      child.onFail();
+  /**
+   * Invoked after a child was traced back
+   * @param index index of the child in the array returned by {@link #tracebackChildren()}
+   * @param child traced back child
+   * @return true if remaining children should not be traced back
+   */
+  default boolean onChildTracedBack(int index, PartialToken<?> child) {
+    if (!child.isFailed()) {
+      log("found alternatives at child#{}", index);
+      return true;
     }
+    child.onFail();
+    return false;
+  }
 
+  /**
+   * Completes tracing back this token
+   * @param children children returned by {@link #tracebackChildren()}
+   * @param stoppedAt index of the child at which the traceback stopped or -1 if all children were traced back
+   */
+  default void onTracedBack(PartialToken<?>[] children, int stoppedAt) {
+    int newSize = stoppedAt + 1;
     if (newSize > 0) {
-      PartialToken<?>[] newChildren = new PartialToken<?>[newSize];
-      System.arraycopy(children, 0, newChildren, 0, newSize);
-      children(newChildren);
+      truncateChildren(newSize);
       nextChild(newSize - 1);
       dropPopulated();
-      log("Traced back to child #{}: {}", newSize - 1, newChildren[newSize-1].tag());
+      if (logger().isDebugEnabled()) {
+        log("Traced back to child #{}: {}", newSize - 1, children[newSize - 1].tag());
+      }
     } else {
       onFail();
     }
   }
 
   /**
-   * @return number of alternatives for this token, including its children
+   * Discards children that were created after the child with the given index, restoring the state this token had
+   * before that child was created; used when tracing back to a child with untested alternatives
+   * @param size the number of children to keep
+   */
+  default void truncateChildren(int size) {
+    children(Arrays.copyOf(children(), size));
+  }
+
+
+  /**
+   * @return children of this token (except for frozen ones), as alternatives of any child are alternatives of this token
    */
   @Override
-  default boolean alternativesLeft() {
+  default PartialToken<?>[] alternativeSources() {
     PartialToken<?>[] children = children();
-    for (int i = 0; i < children.length; i++) {
-      PartialToken<?> child = children[i];
-      if (child != null) {
-        log("getting alternatives from child#{} {}", i, child.tag());
-        if (child.alternativesLeft()) {
-          log("child#{} {} reported that it has alternatives", i, child.tag());
-          return true;
-        }
-      }
+    int frozen = frozenChildren();
+    if (frozen == 0) {
+      return children;
     }
-    return false;
+    return frozen < children.length ? Arrays.copyOfRange(children, frozen, children.length) : NO_TOKENS;
   }
 
   @Override
@@ -183,15 +316,46 @@ public interface CompoundToken<X> extends PartialToken<X>, Serializable {
   }
 
   /**
-   * Uses the given visitor to walk over the AST starting with this token
+   * Uses the given visitor to walk over the AST starting with this token; children are visited before their parents.
+   * Uses an explicit stack, so the walk does not fail on deeply nested ASTs
    * @param visitor token visitor
    */
   @Override
   default void visit(Consumer<PartialToken<?>> visitor) {
-    Arrays.stream(children())
-      .filter(Objects::nonNull)
-      .forEach(child -> child.visit(visitor));
-    PartialToken.super.visit(visitor);
+    Deque<PartialToken<?>> pending = new ArrayDeque<>();
+    Deque<PartialToken<?>> visited = new ArrayDeque<>();
+    pending.push(this);
+    while (!pending.isEmpty()) {
+      PartialToken<?> token = pending.pop();
+      visited.push(token);
+      if (token instanceof CompoundToken) {
+        for (PartialToken<?> child : ((CompoundToken<?>) token).children()) {
+          if (child != null) {
+            pending.push(child);
+          }
+        }
+      }
+    }
+    while (!visited.isEmpty()) {
+      visitor.accept(visited.pop());
+    }
   }
-}
 
+  /**
+   * Reports this token and all its populated sub-tokens to the listener in source order
+   * @param listener events receiver
+   */
+  default void replay(ParseListener listener) {
+    Replay.run(this, listener);
+  }
+
+  /**
+   * Creates a replay that reports parts of this AST to the listener while the AST is being populated, as soon as parser
+   * can no longer trace them back
+   * @param listener events receiver
+   * @return replay that should be flushed by the parser
+   */
+  default Replay stream(ParseListener listener) {
+    return new Replay(this, listener);
+  }
+}
@@ -12,6 +12,7 @@ import com.onkiup.linker.parser.TokenMatcher;
 import com.onkiup.linker.parser.TokenTestResult;
 import com.onkiup.linker.parser.util.LoggerLayout;
 import com.onkiup.linker.parser.util.ParserError;
+import com.onkiup.linker.parser.util.SourceWindow;
 
 /**
  * Interfacde that represents any token that can advance parser by consuming characters from parser's buffer
@@ -38,7 +39,10 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
    * @return true if consumption should continue
    */
   default boolean consume() {
-    ConsumptionState consumption = ConsumptionState.of(this).orElseThrow(() -> new ParserError("No consumption state found (call ConsumingToken::setTokenMatcher to create it first)", this));
+    ConsumptionState consumption = ConsumptionState.of(this);
+    if (consumption == null) {
+      throw new ParserError("No consumption state found (call ConsumingToken::setTokenMatcher to create it first)", this);
+    }
 
     boolean doNext = consumption.consume();
 
@@ -46,6 +50,7 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
 
     if (result.isFailed()) {
       log("failed; switching to lookahead mode");
+      consumption.onFailed();
       consumption.setFailed();
       consumption.lookahead();
       consumption.clear();
@@ -54,22 +59,48 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
     } else if (result.isMatch()) {
       consumption.trim(result.getTokenLength());
       log("matched at position {}", consumption.end().position());
+      consumption.onMatched();
       onConsumeSuccess(result.getToken());
       onPopulated(consumption.end());
+      ConsumptionState.discard(this);
       return false;
     }
 
     if (result.isMatchContinue()) {
       log("matched; continuing...");
-      onConsumeSuccess(result.getToken());
-      onPopulated(consumption.end());
+      consumption.onMatched();
+      if (!doNext) {
+        // every continued match replaces the previous one, so only the last one is reported to the token
+        onConsumeSuccess(result.getToken());
+        onPopulated(consumption.end(result.getTokenLength()));
+      }
     } else if (consumption.hitEnd()) {
+      consumption.onFailed();
       onFail();
     }
 
+    if (!doNext && isPopulated()) {
+      // consumption is complete and the state will not be used anymore
+      ConsumptionState.discard(this);
+    }
+
     return doNext;
   }
 
+  /**
+   * Fails this token after parser reached the end of its source before the token matched anything,
+   * reporting the failure to the AST's expected tokens as any other failed match
+   */
+  default void failAtEnd() {
+    ConsumptionState consumption = ConsumptionState.of(this);
+    if (consumption != null) {
+      consumption.onFailed();
+    } else {
+      expectedTokens().onFail(location(), targetFieldOrNull());
+    }
+    onFail();
+  }
+
   @Override
   default void invalidate() {
     PartialToken.super.invalidate();
@@ -78,7 +109,10 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
 
   @Override
   default void atEnd() {
-    parent().ifPresent(CompoundToken::atEnd);
+    CompoundToken<?> parent = parentOrNull();
+    if (parent != null) {
+      parent.atEnd();
+    }
   }
 
   /**
@@ -93,8 +127,8 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
      * @param token token whose ConsumptionState should be returned
      * @return ConsumptionState instance for provided token
      */
-    private static synchronized Optional<ConsumptionState> of(ConsumingToken token) {
-      return Optional.ofNullable(states.get(token));
+    private static synchronized ConsumptionState of(ConsumingToken token) {
+      return states.get(token);
     }
 
     /**
@@ -155,8 +189,10 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
       this.ignoredCharacters = token.ignoredCharacters();
       this.tester = tester;
       this.start = this.end = this.ignored = token.location();
-      this.buffer = rootBuffer(token.root()).orElseThrow(() ->
-          new RuntimeException("No root buffer registered for token " + token));
+      this.buffer = rootBufferOrNull(token.root());
+      if (buffer == null) {
+        throw new RuntimeException("No root buffer registered for token " + token);
+      }
     }
 
     ConsumptionState(ParserLocation start, ParserLocation ignored, ParserLocation end) {
@@ -182,21 +218,39 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
      * @return parser buffer used to populate given AST
      */
     public static Optional<CharSequence> rootBuffer(PartialToken<?> root) {
-      return Optional.ofNullable(buffers.get(root));
+      return Optional.ofNullable(rootBufferOrNull(root));
+    }
+
+    /**
+     * Allocation-free version of {@link #rootBuffer(PartialToken)} used by the parser
+     * @param root root token of the AST
+     * @return parser buffer used to populate given AST or null
+     */
+    public static CharSequence rootBufferOrNull(PartialToken<?> root) {
+      return buffers.get(root);
+    }
+
+    /**
+     * Discards parser buffer and any pending consumption states registered for the AST with given root
+     * @param root root token of the AST
+     */
+    public static void release(PartialToken<?> root) {
+      buffers.remove(root);
+      states.keySet().removeIf(token -> token.root() == root);
     }
 
     /**
      * @return consumed characters minus ignored prefix
      */
     protected CharSequence buffer() {
-      return buffer.subSequence(ignored.position(), end.position());
+      return new SourceWindow(buffer, ignored.position(), end.position() - ignored.position());
     }
 
     /**
      * @return consumed characters, including ignored prefix
      */
     protected CharSequence consumed() {
-      return buffer.subSequence(start.position(), end.position());
+      return new SourceWindow(buffer, start.position(), end.position() - start.position());
     }
 
     /**
@@ -206,6 +260,17 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
       return end;
     }
 
+    /**
+     * @param size the number of matched characters after ignored prefix
+     * @return location in parser's buffer immediately after the matched characters
+     */
+    protected ParserLocation end(int size) {
+      if (end.position() - ignored.position() == size) {
+        return end;
+      }
+      return ignored.advance(buffer().subSequence(0, size));
+    }
+
     /**
      * @param character character to test
      * @return true if provided character should be ignored and no non-ignorable characters were previously consumed
@@ -222,12 +287,17 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
       if (end.position() < buffer.length()) {
         char consumed = buffer.charAt(end.position());
         end = end.advance(consumed);
+        token.statistics().onConsume();
         if (end.position() - ignored.position() < 2 && ignored(consumed)) {
           ignored = ignored.advance(consumed);
-          token.log("Ignored '{}' ({} - {} - {})", LoggerLayout.sanitize(consumed), start.position(), ignored.position(), end.position());
+          if (token.logger().isDebugEnabled()) {
+            token.log("Ignored '{}' ({} - {} - {})", LoggerLayout.sanitize(consumed), start.position(), ignored.position(), end.position());
+          }
           return true;
         }
-        token.log("Consumed '{}' ({} - {} - {})", LoggerLayout.sanitize(consumed), start.position(), ignored.position(), end.position());
+        if (token.logger().isDebugEnabled()) {
+          token.log("Consumed '{}' ({} - {} - {})", LoggerLayout.sanitize(consumed), start.position(), ignored.position(), end.position());
+        }
         return true;
       } else {
         hitEnd = true;
@@ -275,6 +345,27 @@ public interface ConsumingToken<X> extends PartialToken<X>, Serializable {
       end = ignored.advance(buffer().subSequence(0, size));
     }
 
+    /**
+     * Reports successful non-empty match to the error recovery state, if any
+     */
+    private void onMatched() {
+      Recovery recovery = token.recovery();
+      if (recovery != null && end.position() > ignored.position()) {
+        recovery.matched(end.position());
+      }
+    }
+
+    /**
+     * Reports failed match to the AST's expected tokens and to the error recovery state, if any
+     */
+    private void onFailed() {
+      token.expectedTokens().onFail(ignored, token.targetFieldOrNull());
+      Recovery recovery = token.recovery();
+      if (recovery != null) {
+        recovery.failed(ignored.position());
+      }
+    }
+
     /**
      * reinitializes internal buffer pointers
      */
@@ -6,7 +6,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 import com.onkiup.linker.parser.ParserLocation;
 import com.onkiup.linker.parser.PatternMatcher;
@@ -75,8 +74,8 @@ public class EnumToken<X extends Enum & Rule> extends AbstractToken<X> implement
   }
 
   @Override
-  public Optional<X> token() {
-    return Optional.ofNullable(token);
+  public X tokenOrNull() {
+    return token;
   }
 
   @Override
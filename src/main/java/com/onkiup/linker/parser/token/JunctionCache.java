@@ -0,0 +1,42 @@
+package com.onkiup.linker.parser.token;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.analysis.PredictionTable;
+
+/**
+ * Grammar junction data shared by all parses of a {@link com.onkiup.linker.parser.TokenGrammar}: prediction tables and
+ * learned lookahead automata (ASTs created without a grammar get their own cache), so that it is released together with the parser
+ */
+public final class JunctionCache {
+
+  private final ConcurrentHashMap<Class<?>, Optional<PredictionTable>> tables = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Class<?>, Optional<PredictionTable>> operandTables = new ConcurrentHashMap<>();
+  /**
+   * lookahead automata learned for junctions which variants cannot be predicted with {@link PredictionTable}s
+   */
+  private final ConcurrentHashMap<Class<?>, LookaheadDfa> lookaheads = new ConcurrentHashMap<>();
+
+  /**
+   * @param junction grammar junction
+   * @param operands when true, the table predicts only non left-recursive variants
+   * @return cached prediction table for the junction or null if the junction is not LL(1)
+   * @see PredictionTable#forJunction(Class, boolean)
+   */
+  PredictionTable predictionTable(Class<? extends Rule> junction, boolean operands) {
+    return (operands ? operandTables : tables)
+        .computeIfAbsent(junction, type -> Optional.ofNullable(PredictionTable.forJunction(junction, operands)))
+        .orElse(null);
+  }
+
+  /**
+   * @param junction grammar junction
+   * @return lookahead automaton learned for the junction
+   */
+  LookaheadDfa lookahead(Class<?> junction) {
+    LookaheadDfa result = lookaheads.get(junction);
+    return result != null ? result : lookaheads.computeIfAbsent(junction, type -> new LookaheadDfa());
+  }
+}
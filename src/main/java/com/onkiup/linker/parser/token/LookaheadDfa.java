@@ -0,0 +1,163 @@
+package com.onkiup.linker.parser.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lookahead automaton of a grammar junction learned from previous parses: maps non-ignored characters that follow
+ * junction position to the junction variant that matched the source after them. States start as leaves that predict the
+ * variant from the first observation; when another variant matches after the same characters, the leaf is split on the
+ * next lookahead character, so the automaton grows only as deep as needed to tell observed variants apart.
+ * Predictions are hints: {@link VariantToken} tests the predicted variant first and keeps testing other variants when it fails.
+ * Automata are shared between parses of the same parser (see {@link JunctionCache}) and their threads: states are
+ * published through concurrent maps and volatile fields, so predictions never block; an observation made while another
+ * thread updates the automaton is dropped instead of waiting for it
+ */
+final class LookaheadDfa {
+
+  /**
+   * the maximum number of lookahead characters
+   */
+  static final int MAX_DEPTH = 32;
+  /**
+   * the maximum number of states per automaton; automata stop learning when they reach it
+   */
+  static final int MAX_STATES = 1024;
+
+  private static final class State {
+    private final ConcurrentHashMap<Character, State> edges = new ConcurrentHashMap<>();
+    /**
+     * predicted variant or null when the state was split or is ambiguous
+     */
+    private volatile Class<?> variant;
+    /**
+     * lookahead characters that followed this state when the variant was observed
+     */
+    private volatile String lookahead;
+    /**
+     * true when the next character should be used to predict the variant
+     */
+    private volatile boolean split;
+  }
+
+  private final State root = new State();
+  private final AtomicInteger states = new AtomicInteger(1);
+  /**
+   * set while a thread updates the automaton
+   */
+  private final AtomicBoolean updating = new AtomicBoolean();
+
+  /**
+   * Predicts junction variant
+   * @param source parser buffer
+   * @param position junction position in the buffer
+   * @param ignored characters ignored by the junction
+   * @return the variant that matched the source after the same lookahead characters or null
+   */
+  Class<?> predict(CharSequence source, int position, String ignored) {
+    State state = root;
+    int next = position;
+    while (state != null && state.split) {
+      while (next < source.length() && ignored.indexOf(source.charAt(next)) > -1) {
+        next++;
+      }
+      if (next >= source.length()) {
+        return null;
+      }
+      state = state.edges.get(source.charAt(next++));
+    }
+    return state == null ? null : state.variant;
+  }
+
+  /**
+   * Remembers junction variant that matched the source
+   * @param source parser buffer
+   * @param position junction position in the buffer
+   * @param ignored characters ignored by the junction
+   * @param variant matched variant
+   */
+  void learn(CharSequence source, int position, String ignored, Class<?> variant) {
+    if (predict(source, position, ignored) != variant && updating.compareAndSet(false, true)) {
+      try {
+        update(lookahead(source, position, ignored), variant);
+      } finally {
+        updating.set(false);
+      }
+    }
+  }
+
+  private void update(String lookahead, Class<?> variant) {
+    State state = root;
+    int depth = 0;
+    while (state.split) {
+      if (depth >= lookahead.length()) {
+        return;
+      }
+      state = child(state, lookahead.charAt(depth++));
+      if (state == null) {
+        return;
+      }
+    }
+    while (true) {
+      Class<?> known = state.variant;
+      if (known == variant) {
+        return;
+      }
+      if (known == null) {
+        // an empty leaf (ambiguous leaves are split)
+        state.lookahead = lookahead.substring(depth);
+        state.variant = variant;
+        return;
+      }
+      String previous = state.lookahead;
+      state.split = true;
+      state.variant = null;
+      if (previous.isEmpty() || depth >= lookahead.length()) {
+        // both variants matched after the same lookahead: the state stays ambiguous
+        return;
+      }
+      State moved = child(state, previous.charAt(0));
+      if (moved == null) {
+        return;
+      }
+      moved.lookahead = previous.substring(1);
+      moved.variant = known;
+      state = child(state, lookahead.charAt(depth++));
+      if (state == null) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the number of states in this automaton
+   */
+  int size() {
+    return states.get();
+  }
+
+  private State child(State parent, char character) {
+    State result = parent.edges.get(character);
+    if (result == null) {
+      if (states.get() >= MAX_STATES) {
+        return null;
+      }
+      states.incrementAndGet();
+      result = new State();
+      parent.edges.put(character, result);
+    }
+    return result;
+  }
+
+  private static String lookahead(CharSequence source, int position, String ignored) {
+    StringBuilder result = new StringBuilder();
+    for (int i = position; i < source.length() && result.length() < MAX_DEPTH; i++) {
+      char character = source.charAt(i);
+      if (ignored.indexOf(character) < 0) {
+        result.append(character);
+      }
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,372 @@
+package com.onkiup.linker.parser.token;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+import com.onkiup.linker.parser.ParserLocation;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+
+/**
+ * Token that is used to populate grammar junctions with left-recursive variants (see {@link RuleIntrospector#leftRecursive(Class)}),
+ * including binary operators (see {@link RuleIntrospector#operators(Class)}).
+ * Instead of testing such variants as junction variants and rotating populated tokens, it matches a seed operand
+ * (a junction variant that is not left-recursive) and then grows it: each left-recursive variant is matched without its
+ * left operand, and binary operators are followed by another operand. Once no variant can grow the matched sequence,
+ * properly nested tokens are built using precedence climbing: operators with higher
+ * {@link com.onkiup.linker.parser.annotation.AdjustPriority} values bind tighter, operators with equal priorities are left-associative.
+ * @param <X> type of the resulting token
+ */
+public class OperatorToken<X extends Rule> extends AbstractToken<X> implements CompoundToken<X>, Serializable {
+  /**
+   * the type of the resulting token
+   */
+  private Class<X> tokenType;
+  /**
+   * left-recursive variants of the junction
+   */
+  private List<Class<? extends X>> operators;
+  /**
+   * binary operator variants of the junction
+   */
+  private List<Class<? extends X>> binary;
+  /**
+   * matched operands and operators (left-recursive rules)
+   */
+  private ArrayList<PartialToken<?>> children = new ArrayList<>();
+  /**
+   * the position immediately after the end of the last matched token
+   */
+  private ParserLocation lastTokenEnd;
+  /**
+   * index of the next child to match
+   */
+  private int nextMember = 0;
+  /**
+   * index of the next left-recursive rule to try after the last operand
+   */
+  private int nextOperator = 0;
+  /**
+   * the root of built operator tree or null if the token was not populated yet
+   */
+  private PartialToken<?> result;
+  private String ignoreCharacters = "";
+
+  /**
+   * Main constructor
+   * @param parent parent token
+   * @param field field for which this token is constructed
+   * @param tokenType grammar junction with binary operator variants
+   * @param location location of the token in parser's buffer
+   */
+  public OperatorToken(CompoundToken parent, Field field, Class<X> tokenType, ParserLocation location) {
+    super(parent, field, location);
+    this.tokenType = tokenType;
+    this.operators = RuleIntrospector.leftRecursive(tokenType);
+    this.binary = RuleIntrospector.operators(tokenType);
+    this.lastTokenEnd = location;
+
+    if (parent != null) {
+      ignoreCharacters = parent.ignoredCharacters();
+    }
+
+    if (tokenType.isAnnotationPresent(IgnoreCharacters.class)) {
+      ignoreCharacters += tokenType.getAnnotation(IgnoreCharacters.class).value();
+    }
+  }
+
+  @Override
+  public PartialToken<?> nextChildOrNull() {
+    if (isFailed() || isPopulated()) {
+      return null;
+    }
+
+    PartialToken<?> current;
+    if (nextMember < children.size()) {
+      current = children.get(nextMember);
+    } else if (expectsOperand()) {
+      log("creating operand token #{}", children.size());
+      current = new VariantToken<>(this, targetFieldOrNull(), tokenType, lastTokenEnd, true);
+      if (children.size() > 0) {
+        current.markOptional();
+      }
+      children.add(current);
+    } else if (nextOperator < operators.size()) {
+      log("creating operator token #{}", children.size());
+      Class<? extends X> operator = operators.get(nextOperator++);
+      current = RuleToken.operator(this, operator, binary.contains(operator), lastTokenEnd);
+      current.markOptional();
+      children.add(current);
+    } else {
+      log("no more operators to try");
+      populate();
+      return null;
+    }
+    nextMember++;
+    return current;
+  }
+
+  @Override
+  public void onChildPopulated() {
+    if (children.size() == 0) {
+      throw new RuntimeException("OnChildPopulated called when there is no child!");
+    }
+    PartialToken<?> current = lastChild();
+    lastTokenEnd = current.end();
+    if (!isBinaryOperator(current)) {
+      nextOperator = 0;
+    }
+  }
+
+  /**
+   * @return true if the next child should be an operand
+   */
+  private boolean expectsOperand() {
+    return children.isEmpty() || isBinaryOperator(lastChild());
+  }
+
+  /**
+   * @return the last matched operand or operator
+   */
+  private PartialToken<?> lastChild() {
+    return children.get(children.size() - 1);
+  }
+
+  /**
+   * Discards the last matched operand or operator
+   * @return discarded token
+   */
+  private PartialToken<?> removeLastChild() {
+    return children.remove(children.size() - 1);
+  }
+
+  private static boolean isBinaryOperator(PartialToken<?> token) {
+    return token instanceof RuleToken && ((RuleToken<?>) token).isBinaryOperator();
+  }
+
+  @Override
+  public void onChildFailed() {
+    if (children.size() == 0) {
+      throw new RuntimeException("OnChildFailed called when there is no child!");
+    }
+    PartialToken<?> failed = removeLastChild();
+    nextMember = children.size();
+    if (children.size() == 0) {
+      if (!alternativesLeft()) {
+        onFail();
+      }
+      return;
+    }
+    if (!(failed instanceof RuleToken)) {
+      // the operand after a binary operator failed -- dropping the operator and trying other ones
+      failed = removeLastChild();
+      nextMember = children.size();
+      lastTokenEnd = lastChild().end();
+    }
+    nextOperator = operators.indexOf(failed.tokenType()) + 1;
+    if (nextOperator >= operators.size()) {
+      populate();
+    }
+  }
+
+  @Override
+  public void atEnd() {
+    if (isPopulated() || isFailed()) {
+      return;
+    }
+    log("Force-populating...");
+    while (children.size() > 0 && (isBinaryOperator(lastChild()) || !lastChild().isPopulated())) {
+      removeLastChild();
+    }
+    nextMember = children.size();
+    if (children.isEmpty()) {
+      onFail();
+    } else {
+      lastTokenEnd = lastChild().end();
+      populate();
+    }
+  }
+
+  /**
+   * Builds operator tree from matched operands and operators and marks this token as populated
+   */
+  private void populate() {
+    Deque<PartialToken<?>> operands = new ArrayDeque<>();
+    Deque<RuleToken<?>> pending = new ArrayDeque<>();
+    for (PartialToken<?> child : children) {
+      if (!(child instanceof RuleToken)) {
+        operands.push(child);
+        continue;
+      }
+      RuleToken<?> operator = (RuleToken<?>) child;
+      int precedence = RuleIntrospector.precedence(operator.tokenType());
+      while (!pending.isEmpty() && RuleIntrospector.precedence(pending.peek().tokenType()) >= precedence) {
+        reduce(operands, pending);
+      }
+      pending.push(operator);
+      if (!operator.isBinaryOperator()) {
+        reduce(operands, pending);
+      }
+    }
+    while (!pending.isEmpty()) {
+      reduce(operands, pending);
+    }
+    result = operands.pop();
+    if (logger().isDebugEnabled()) {
+      log("Built operator tree: {}", result.tag());
+    }
+    onPopulated(lastTokenEnd);
+  }
+
+  /**
+   * Applies the last pending operator to the last operand (or to the last two operands for binary operators)
+   * @param operands operands and already built operator sub-trees
+   * @param pending operators that were not applied yet
+   */
+  private void reduce(Deque<PartialToken<?>> operands, Deque<RuleToken<?>> pending) {
+    RuleToken<?> operator = pending.pop();
+    PartialToken<?> right = operator.isBinaryOperator() ? operands.pop() : null;
+    PartialToken<?> left = operands.pop();
+    ((AbstractToken<?>) left).parent(operator);
+    if (right != null) {
+      ((AbstractToken<?>) right).parent(operator);
+    }
+    operator.operands(left, right);
+    operands.push(operator);
+  }
+
+  /**
+   * Reverts operator tree built by {@link #populate()}, so that matched children can be traced back
+   */
+  private void dropResult() {
+    if (result == null) {
+      return;
+    }
+    result = null;
+    for (PartialToken<?> child : children) {
+      if (child instanceof RuleToken) {
+        ((RuleToken<?>) child).dropOperands();
+      }
+      ((AbstractToken<?>) child).parent(this);
+    }
+  }
+
+  @Override
+  public PartialToken<?>[] tracebackChildren() {
+    dropResult();
+    return CompoundToken.super.tracebackChildren();
+  }
+
+  @Override
+  public X tokenOrNull() {
+    return result == null ? null : (X) result.tokenOrNull();
+  }
+
+  @Override
+  public Class<X> tokenType() {
+    return tokenType;
+  }
+
+  @Override
+  public String ignoredCharacters() {
+    return ignoreCharacters;
+  }
+
+  /**
+   * @return the root of built operator tree when this token is populated, otherwise matched operands and operators
+   */
+  @Override
+  public PartialToken[] children() {
+    if (result != null) {
+      return new PartialToken[] { result };
+    }
+    return children.toArray(new PartialToken[children.size()]);
+  }
+
+  @Override
+  public void children(PartialToken<?>[] children) {
+    dropResult();
+    this.children = new ArrayList<>();
+    for (PartialToken<?> child : children) {
+      if (child != null) {
+        this.children.add(child);
+      }
+    }
+    nextMember = this.children.size();
+  }
+
+  /**
+   * @return matched operands and operators (except for frozen ones)
+   */
+  @Override
+  public PartialToken<?>[] alternativeSources() {
+    int frozen = Math.min(frozenChildren(), children.size());
+    return children.subList(frozen, children.size()).toArray(new PartialToken[children.size() - frozen]);
+  }
+
+  /**
+   * Discards the last children in place, without copying the list of children
+   * @param size the number of children to keep
+   */
+  @Override
+  public void truncateChildren(int size) {
+    dropResult();
+    while (children.size() > size) {
+      removeLastChild();
+    }
+  }
+
+  @Override
+  public int unfilledChildren() {
+    return isPopulated() ? 0 : 1;
+  }
+
+  @Override
+  public int currentChild() {
+    return children.size() - 1;
+  }
+
+  @Override
+  public void nextChild(int newIndex) {
+    nextMember = newIndex;
+    lastTokenEnd = newIndex > 0 ? children.get(newIndex - 1).end() : location();
+  }
+
+  @Override
+  public ParserLocation end() {
+    return isFailed() ? location() : children.size() > 0 ? lastChild().end() : lastTokenEnd;
+  }
+
+  @Override
+  public String tag() {
+    return "? op " + tokenType.getName() + "(" + position() + ")";
+  }
+
+  @Override
+  public String toString() {
+    ParserLocation location = location();
+    return String.format("%50.50s || %s[%d] (%d:%d -- %d - %d)", head(50), tag(), children.size(), location.line(),
+        location.column(), location.position(), end().position());
+  }
+
+  @Override
+  public CharSequence dumpTree(int offset, CharSequence prefix, CharSequence childPrefix, Function<PartialToken<?>, CharSequence> formatter) {
+    StringBuilder result = new StringBuilder(super.dumpTree(offset, prefix, childPrefix, formatter));
+    if (!isPopulated()) {
+      int last = children.size() - 1;
+      for (int i = 0; i < children.size(); i++) {
+        String marker = children.get(i).isPopulated() ? "[+]" : children.get(i).isFailed() ? "[F]" : ">>>";
+        result.append(children.get(i).dumpTree(offset + 1,
+            String.format(i == last ? "%s └─%s #%s : %s" : "%s ├─%s #%s : %s", childPrefix, marker, i, ""),
+            childPrefix + " │", formatter));
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,114 @@
+package com.onkiup.linker.parser.token;
+
+import java.io.Serializable;
+
+import com.onkiup.linker.parser.ExpectedTokens;
+import com.onkiup.linker.parser.ParserStatistics;
+
+/**
+ * State of a single parse shared by all tokens of the AST: parser counters, expected tokens, parsing mode, error
+ * recovery and grammar-wide data used to predict junction variants.
+ * Root tokens receive it from {@link CompoundToken#forClass(Class, com.onkiup.linker.parser.ParserLocation, ParseContext)}
+ * and all other tokens inherit it from their parents, so it should not be modified once the root token is created
+ */
+public final class ParseContext implements Serializable {
+
+  private ParserStatistics statistics = new ParserStatistics();
+  private final ExpectedTokens expectedTokens = new ExpectedTokens();
+  private boolean recognizer;
+  private Recovery recovery;
+  private transient VariantPredictor variantPredictor;
+  private transient JunctionCache junctions = new JunctionCache();
+
+  /**
+   * @return counters shared by all tokens of the AST
+   */
+  public ParserStatistics statistics() {
+    return statistics;
+  }
+
+  /**
+   * Sets counters to update while populating the AST
+   * @param statistics parser counters
+   * @return this context
+   */
+  public ParseContext statistics(ParserStatistics statistics) {
+    this.statistics = statistics;
+    return this;
+  }
+
+  /**
+   * @return tokens that failed to match at the furthest position
+   */
+  public ExpectedTokens expectedTokens() {
+    return expectedTokens;
+  }
+
+  /**
+   * @return true if the AST only recognizes parser input without creating Rule instances
+   */
+  public boolean isRecognizer() {
+    return recognizer;
+  }
+
+  /**
+   * Switches the AST into recognizer mode
+   * @param recognizer true to disable Rule instantiation
+   * @return this context
+   */
+  public ParseContext recognizer(boolean recognizer) {
+    this.recognizer = recognizer;
+    return this;
+  }
+
+  /**
+   * @return error recovery state or null if error recovery is disabled
+   */
+  public Recovery recovery() {
+    return recovery;
+  }
+
+  /**
+   * Enables error recovery
+   * @param recovery error recovery state or null to fail on the first syntax error
+   * @return this context
+   */
+  public ParseContext recovery(Recovery recovery) {
+    this.recovery = recovery;
+    return this;
+  }
+
+  /**
+   * @return learned junction variant predictor or null
+   */
+  public VariantPredictor variantPredictor() {
+    return variantPredictor;
+  }
+
+  /**
+   * Enables learned variant prediction
+   * @param variantPredictor learned junction variant predictor or null
+   * @return this context
+   */
+  public ParseContext variantPredictor(VariantPredictor variantPredictor) {
+    this.variantPredictor = variantPredictor;
+    return this;
+  }
+
+  /**
+   * @return grammar junction data
+   */
+  public JunctionCache junctions() {
+    return junctions;
+  }
+
+  /**
+   * Makes the AST use junction data of a grammar instead of its own
+   * @param junctions grammar junction data
+   * @return this context
+   */
+  public ParseContext junctions(JunctionCache junctions) {
+    this.junctions = junctions;
+    return this;
+  }
+}
@@ -7,6 +7,8 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
@@ -18,9 +20,12 @@ import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.onkiup.linker.parser.ExpectedTokens;
 import com.onkiup.linker.parser.ParserLocation;
+import com.onkiup.linker.parser.ParserStatistics;
 import com.onkiup.linker.parser.Rule;
 import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
 import com.onkiup.linker.parser.annotation.AdjustPriority;
 import com.onkiup.linker.parser.annotation.MetaToken;
 import com.onkiup.linker.parser.annotation.OptionalToken;
@@ -35,6 +40,11 @@ import com.onkiup.linker.parser.util.TextUtils;
  */
 public interface PartialToken<X> extends Serializable {
 
+  /**
+   * Shared empty array of tokens
+   */
+  PartialToken<?>[] NO_TOKENS = new PartialToken<?>[0];
+
   /**
    * Creates a new PartialToken for provided field
    * @param parent parent token
@@ -66,6 +76,9 @@ public interface PartialToken<X> extends Serializable {
       return new CollectionToken(parent, field, tokenType, position);
     } else if (Rule.class.isAssignableFrom(tokenType)) {
       if (!TokenGrammar.isConcrete(tokenType)) {
+        if (!RuleIntrospector.leftRecursive(tokenType).isEmpty()) {
+          return new OperatorToken(parent, field, tokenType, position);
+        }
         return new VariantToken(parent, field, tokenType, position);
       } else {
         return new RuleToken(parent, field, tokenType, position);
@@ -151,7 +164,7 @@ public interface PartialToken<X> extends Serializable {
       throws NoSuchFieldException, IllegalAccessException {
     Field targetField = owner.tokenType().getField(fieldName);
     targetField.setAccessible(true);
-    boolean result = tester.test(targetField.get(owner.token()));
+    boolean result = tester.test(targetField.get(owner.tokenOrNull()));
     return result;
   }
 
@@ -175,7 +188,15 @@ public interface PartialToken<X> extends Serializable {
   /**
    * @return Java representation of populated token
    */
-  Optional<X> token();
+  default Optional<X> token() {
+    return Optional.ofNullable(tokenOrNull());
+  }
+
+  /**
+   * Allocation-free version of {@link #token()} used by the parser
+   * @return Java representation of populated token or null
+   */
+  X tokenOrNull();
 
   /**
    * @return the type of resulting java token
@@ -207,18 +228,82 @@ public interface PartialToken<X> extends Serializable {
   /**
    * @return parent token or empty if this token is the root AST token
    */
-  Optional<CompoundToken<?>> parent();
+  default Optional<CompoundToken<?>> parent() {
+    return Optional.ofNullable(parentOrNull());
+  }
+
+  /**
+   * Allocation-free version of {@link #parent()} used by the parser
+   * @return parent token or null if this token is the root AST token
+   */
+  CompoundToken<?> parentOrNull();
 
   /**
    * @return the field for which this PartialToken was created
    */
-  Optional<Field> targetField();
+  default Optional<Field> targetField() {
+    return Optional.ofNullable(targetFieldOrNull());
+  }
+
+  /**
+   * Allocation-free version of {@link #targetField()} used by the parser
+   * @return the field for which this PartialToken was created or null
+   */
+  Field targetFieldOrNull();
 
   /**
    * @return Token's location in parser input
    */
   ParserLocation location();
 
+  /**
+   * @return state of the parse shared by all tokens of the AST to which this token belongs
+   */
+  ParseContext context();
+
+  /**
+   * @return counters shared by all tokens of the AST to which this token belongs
+   */
+  default ParserStatistics statistics() {
+    return context().statistics();
+  }
+
+  /**
+   * @return tokens that failed to match at the furthest position, shared by all tokens of the AST to which this token belongs
+   */
+  default ExpectedTokens expectedTokens() {
+    return context().expectedTokens();
+  }
+
+  /**
+   * @return true if this token only recognizes parser input: it does not create Rule instances (except for rules
+   * which fields are needed to match the input) and does not invoke Rule callbacks
+   */
+  default boolean isRecognizer() {
+    return context().isRecognizer();
+  }
+
+  /**
+   * @return error recovery state shared by all tokens of the AST or null if error recovery is disabled
+   */
+  default Recovery recovery() {
+    return context().recovery();
+  }
+
+  /**
+   * @return learned junction variant predictor shared by all parses of the grammar or null if it is disabled
+   */
+  default VariantPredictor variantPredictor() {
+    return context().variantPredictor();
+  }
+
+  /**
+   * @return grammar junction data shared by all parses of the grammar
+   */
+  default JunctionCache junctions() {
+    return context().junctions();
+  }
+
   /**
    * @return the next position in parser input immediately after the last character that matched this token
    */
@@ -275,10 +360,8 @@ public interface PartialToken<X> extends Serializable {
    * @return all characters consumed by the token and its children
    */
   default CharSequence source() {
-    PartialToken<?> root = root();
-    return ConsumingToken.ConsumptionState.rootBuffer(root)
-        .map(buffer -> buffer.subSequence(position(), end().position()))
-        .orElse("?!");
+    CharSequence buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root());
+    return buffer == null ? "?!" : buffer.subSequence(position(), end().position());
   }
 
   /**
@@ -319,39 +402,48 @@ public interface PartialToken<X> extends Serializable {
    */
   default void lookahead(CharSequence source, int from) {
     log("performing lookahead at position {}", from);
-    targetField()
-      .flatMap(PartialToken::getOptionalCondition)
-      .ifPresent(condition -> {
-        int start = TextUtils.firstNonIgnoredCharacter(this, source, from);
-        CharSequence buffer = source.subSequence(start, start + condition.length());
-        log("Loookahead '{}' on '{}'", LoggerLayout.sanitize(condition), LoggerLayout.sanitize(buffer));
-        if (!isOptional() && Objects.equals(condition, buffer)) {
-          log("Optional condition match: '{}' == '{}'", LoggerLayout.sanitize(condition), LoggerLayout.sanitize(buffer));
-          markOptional();
-        }
-      });
+    Field field = targetFieldOrNull();
+    CharSequence condition = field == null ? null : getOptionalCondition(field).orElse(null);
+    if (condition != null) {
+      int start = TextUtils.firstNonIgnoredCharacter(this, source, from);
+      CharSequence buffer = source.subSequence(start, start + condition.length());
+      log("Loookahead '{}' on '{}'", LoggerLayout.sanitize(condition), LoggerLayout.sanitize(buffer));
+      if (!isOptional() && Objects.equals(condition, buffer)) {
+        log("Optional condition match: '{}' == '{}'", LoggerLayout.sanitize(condition), LoggerLayout.sanitize(buffer));
+        markOptional();
+      }
+    }
 
-    parent()
-        .filter(CompoundToken::onlyOneUnfilledChildLeft)
-        .filter(p -> p != this)
-        .ifPresent(p -> {
-          log("Delegating lookahead to parent {}", p.tag());
-          p.lookahead(source, from);
-        });
+    CompoundToken<?> parent = parentOrNull();
+    if (parent != null && parent != this && parent.onlyOneUnfilledChildLeft()) {
+      log("Delegating lookahead to parent {}", parent.tag());
+      parent.lookahead(source, from);
+    }
   }
 
   /**
-   * Recursively passes this token and its parent tokens to provided predicate until the AST root and returnes the first token that matched the predicate
+   * Passes this token and its parent tokens to provided predicate until the AST root and returnes the first token that matched the predicate
    * @param comparator the predicate to use on path tokens
    * @return first matched token or empty
    */
   default Optional<PartialToken<?>> findInPath(Predicate<PartialToken> comparator) {
-    if (comparator.test(this)) {
-      return Optional.of(this);
-    }
+    return Optional.ofNullable(findInPathOrNull(comparator));
+  }
 
-    return parent()
-      .flatMap(parent -> parent.findInPath(comparator));
+  /**
+   * Allocation-free version of {@link #findInPath(Predicate)} used by the parser
+   * @param comparator the predicate to use on path tokens
+   * @return first matched token or null
+   */
+  default PartialToken<?> findInPathOrNull(Predicate<PartialToken> comparator) {
+    PartialToken<?> current = this;
+    while (current != null) {
+      if (comparator.test(current)) {
+        return current;
+      }
+      current = current.parentOrNull();
+    }
+    return null;
   }
 
   /**
@@ -424,23 +516,69 @@ public interface PartialToken<X> extends Serializable {
    * @return String containing all characters to ignore for this token
    */
   default String ignoredCharacters() {
-    return parent().map(CompoundToken::ignoredCharacters).orElse("");
+    CompoundToken<?> parent = parentOrNull();
+    return parent == null ? "" : parent.ignoredCharacters();
   }
 
   /**
+   * Searches this token and its sub-tokens (as reported by {@link #alternativeSources()}) for untested alternatives.
+   * Uses an explicit stack, so the search does not fail on deeply nested ASTs; the stack is only allocated for tokens
+   * that have sub-tokens
    * @return true if this token has untested alternatives
    */
   default boolean alternativesLeft() {
+    if (ownAlternativesLeft()) {
+      return true;
+    }
+    PartialToken<?>[] sources = alternativeSources();
+    if (sources.length == 0) {
+      return false;
+    }
+    boolean debug = logger().isDebugEnabled();
+    Deque<PartialToken<?>> pending = new ArrayDeque<>();
+    while (true) {
+      for (PartialToken<?> source : sources) {
+        if (source != null) {
+          if (debug) {
+            log("getting alternatives from {}", source.tag());
+          }
+          pending.push(source);
+        }
+      }
+      do {
+        if (pending.isEmpty()) {
+          return false;
+        }
+        PartialToken<?> token = pending.pop();
+        if (token.ownAlternativesLeft()) {
+          return true;
+        }
+        sources = token.alternativeSources();
+      } while (sources.length == 0);
+    }
+  }
+
+  /**
+   * @return true if this token itself (not counting its sub-tokens) has untested alternatives
+   */
+  default boolean ownAlternativesLeft() {
     return false;
   }
 
+  /**
+   * @return sub-tokens whose untested alternatives should be counted as this token's alternatives
+   */
+  default PartialToken<?>[] alternativeSources() {
+    return NO_TOKENS;
+  }
+
   /**
    * @return root token of the AST to which this token belongs to
    */
   default PartialToken<?> root() {
     PartialToken<?> current = this;
     while(true) {
-      PartialToken<?> parent = current.parent().orElse(null);
+      PartialToken<?> parent = current.parentOrNull();
       if (parent == null) {
         return current;
       }
@@ -468,10 +606,12 @@ public interface PartialToken<X> extends Serializable {
    * @return a list of tokens including this token and its parents up to the root token of the AST
    */
   default LinkedList<PartialToken<?>> path() {
-    LinkedList path = parent()
-      .map(PartialToken::path)
-      .orElseGet(LinkedList::new);
-    path.add(this);
+    LinkedList<PartialToken<?>> path = new LinkedList<>();
+    PartialToken<?> current = this;
+    while (current != null) {
+      path.addFirst(current);
+      current = current.parentOrNull();
+    }
     return path;
   }
 
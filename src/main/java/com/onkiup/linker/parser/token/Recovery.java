@@ -0,0 +1,89 @@
+package com.onkiup.linker.parser.token;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.onkiup.linker.parser.RecoveredSyntaxError;
+
+/**
+ * Error recovery state shared by all tokens of an AST that is populated with error recovery enabled.
+ * Tracks how far the parser got inside the array member that is currently being matched and collects skipped errors
+ * @see com.onkiup.linker.parser.annotation.SyncPoint
+ */
+public final class Recovery implements Serializable {
+  /**
+   * receiver of skipped errors
+   */
+  private final List<RecoveredSyntaxError> errors;
+  /**
+   * the end of the furthest non-empty match and the position of the furthest failed match inside current array member
+   */
+  private int matched, failed;
+
+  /**
+   * Main constructor
+   * @param errors list to which skipped errors will be added
+   */
+  public Recovery(List<RecoveredSyntaxError> errors) {
+    this.errors = errors;
+  }
+
+  /**
+   * Invoked by consuming tokens that matched at least one character
+   * @param end position immediately after the matched characters
+   */
+  void matched(int end) {
+    if (end > matched) {
+      matched = end;
+    }
+  }
+
+  /**
+   * Invoked by consuming tokens that failed to match
+   * @param position position of the first non-ignored character that the token failed to match
+   */
+  void failed(int position) {
+    if (position > failed) {
+      failed = position;
+    }
+  }
+
+  /**
+   * @return the end of the furthest non-empty match since the last {@link #reset(int, int)}
+   */
+  int matched() {
+    return matched;
+  }
+
+  /**
+   * @return the furthest position that parser reached since the last {@link #reset(int, int)}
+   */
+  int furthest() {
+    return Math.max(matched, failed);
+  }
+
+  /**
+   * @return the position of the furthest failed match since the last {@link #reset(int, int)}
+   */
+  int failed() {
+    return failed;
+  }
+
+  /**
+   * Restarts progress tracking
+   * @param matched new value for the end of the furthest match
+   * @param failed new value for the position of the furthest failed match
+   */
+  void reset(int matched, int failed) {
+    this.matched = matched;
+    this.failed = failed;
+  }
+
+  /**
+   * Records a skipped error
+   * @param error the error to record
+   */
+  void add(RecoveredSyntaxError error) {
+    errors.add(error);
+  }
+}
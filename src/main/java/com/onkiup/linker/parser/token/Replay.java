@@ -0,0 +1,201 @@
+package com.onkiup.linker.parser.token;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+
+import com.onkiup.linker.parser.ParseListener;
+
+/**
+ * Reports an AST to a {@link ParseListener} using an explicit stack instead of recursion.
+ * While the AST is being populated, only the parts that parser can no longer trace back are reported (see {@link #flush()}):
+ * children frozen by their parents and tokens to which the parser was committed
+ * (see {@link com.onkiup.linker.parser.annotation.Commit}); the rest is reported once the source is accepted (see {@link #finish()})
+ * @see CompoundToken#replay(ParseListener)
+ * @see CompoundToken#stream(ParseListener)
+ */
+public final class Replay {
+
+  /**
+   * A compound token which children are being reported
+   */
+  private static final class Frame {
+    private final CompoundToken<?> token;
+    /**
+     * index of the token in the children of its parent
+     */
+    private final int index;
+    /**
+     * true when neither the token nor its children can be traced back anymore
+     */
+    private boolean fixed;
+    /**
+     * index of the next child to report
+     */
+    private int next;
+
+    private Frame(CompoundToken<?> token, int index, boolean fixed) {
+      this.token = token;
+      this.index = index;
+      this.fixed = fixed;
+    }
+  }
+
+  private final ParseListener listener;
+  private final CharSequence buffer;
+  private final ArrayList<Frame> stack = new ArrayList<>();
+  /**
+   * the number of leading frames reported to the listener with {@link ParseListener#enterRule(Class, Field, int)};
+   * tokens are entered only before the first event for their children, when their start position is known
+   */
+  private int entered;
+  private boolean accepted;
+
+  /**
+   * @param root the token to report
+   * @param listener events receiver
+   */
+  Replay(CompoundToken<?> root, ParseListener listener) {
+    this.listener = listener;
+    this.buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root.root());
+    stack.add(new Frame(root, -1, false));
+  }
+
+  /**
+   * Reports given populated token and its populated sub-tokens
+   * @param root the token to report
+   * @param listener events receiver
+   */
+  static void run(CompoundToken<?> root, ParseListener listener) {
+    new Replay(root, listener).finish();
+  }
+
+  /**
+   * Reports the tokens that were not reported yet and can no longer be traced back; stops at the first token that
+   * still can be traced back, so that events are reported in source order
+   */
+  public void flush() {
+    while (!stack.isEmpty()) {
+      int depth = stack.size() - 1;
+      Frame frame = stack.get(depth);
+      CompoundToken<?> token = frame.token;
+      if (frame.next >= token.childCount()) {
+        if (!fixed(depth)) {
+          return;
+        }
+        enterPending();
+        stack.remove(depth);
+        entered--;
+        exit(token);
+        continue;
+      }
+
+      int index = frame.next;
+      PartialToken<?> child = token.child(index);
+      if (frozen(token, index) || fixed(depth)) {
+        frame.next++;
+        if (child == null || !child.isPopulated()) {
+          continue;
+        }
+        if (child instanceof CompoundToken) {
+          stack.add(new Frame((CompoundToken<?>) child, index, true));
+        } else {
+          report(child);
+        }
+      } else if (child instanceof CompoundToken && !(child instanceof OperatorToken)
+          && ((CompoundToken<?>) child).isCommitted()) {
+        // committed tokens are either accepted or fail the whole parse, but their last children still can be traced back
+        // (operator tokens rearrange their children when populated, so they are reported only when fixed)
+        frame.next++;
+        stack.add(new Frame((CompoundToken<?>) child, index, false));
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reports all tokens that were not reported yet; should be invoked after the root token is populated and the source is accepted
+   */
+  public void finish() {
+    accepted = true;
+    flush();
+  }
+
+  /**
+   * @param token a reported token
+   * @param index index of a child of the token
+   * @return true if the token does not trace back its child
+   */
+  private static boolean frozen(CompoundToken<?> token, int index) {
+    if (token instanceof VariantToken) {
+      // variant tokens report only their current variant
+      return token.frozenChildren() > token.currentChild();
+    }
+    return index < token.frozenChildren();
+  }
+
+  /**
+   * Checks whether the token at the given stack depth or any of its parents was frozen since it was pushed onto the stack
+   * @param depth stack depth of the token
+   * @return true if the token can no longer be traced back
+   */
+  private boolean fixed(int depth) {
+    if (accepted) {
+      return true;
+    }
+    for (int i = depth; i > 0; i--) {
+      Frame frame = stack.get(i);
+      if (frame.fixed || frozen(stack.get(i - 1).token, frame.index)) {
+        for (int j = i; j <= depth; j++) {
+          stack.get(j).fixed = true;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void enterPending() {
+    for (; entered < stack.size(); entered++) {
+      CompoundToken<?> token = stack.get(entered).token;
+      if (token instanceof RuleToken) {
+        listener.enterRule(((RuleToken<?>) token).tokenType(), token.targetFieldOrNull(), start(token));
+      }
+    }
+  }
+
+  private void exit(CompoundToken<?> token) {
+    if (token instanceof RuleToken) {
+      listener.exitRule(((RuleToken<?>) token).tokenType(), token.targetFieldOrNull(), start(token),
+          token.end().position());
+    }
+  }
+
+  private void report(PartialToken<?> token) {
+    enterPending();
+    Field field = token.targetFieldOrNull();
+    int start = start(token);
+    int end = token.end().position();
+    if (field != null && Modifier.isStatic(field.getModifiers())) {
+      listener.terminal(field, (CharSequence) token.tokenOrNull(), start, end);
+    } else {
+      listener.capture(field, token.tokenOrNull(), start, end);
+    }
+  }
+
+  /**
+   * @return position of the first character matched by the token after characters ignored by the token
+   */
+  private int start(PartialToken<?> token) {
+    int start = token.location().position();
+    int end = token.end().position();
+    String ignored = token.ignoredCharacters();
+    if (buffer != null && ignored != null) {
+      while (start < end && ignored.indexOf(buffer.charAt(start)) > -1) {
+        start++;
+      }
+    }
+    return start;
+  }
+}
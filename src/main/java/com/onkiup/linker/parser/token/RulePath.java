@@ -0,0 +1,67 @@
+package com.onkiup.linker.parser.token;
+
+import java.util.BitSet;
+
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+
+/**
+ * Immutable set of rules that are being matched on the path from the root of an AST to a token (including the token
+ * itself), used to answer left-recursion and in-path checks without walking up the tree.
+ * Rules are stored as bit sets over {@link RuleIntrospector#ruleId(Class)}: one for the whole path and one for the tokens
+ * that start at the same position as the token (token positions never decrease along the path, so those tokens are
+ * always the closest ancestors). Child paths share bit sets with their parents unless they add a new rule to them
+ */
+final class RulePath {
+
+  private final int position;
+  private final BitSet rules;
+  private final BitSet positionRules;
+
+  private RulePath(int position, BitSet rules, BitSet positionRules) {
+    this.position = position;
+    this.rules = rules;
+    this.positionRules = positionRules;
+  }
+
+  /**
+   * @param parent the path of the parent token or null for root tokens
+   * @param rule token type
+   * @param position token position
+   * @return the path of the token
+   */
+  static RulePath extend(RulePath parent, Class<?> rule, int position) {
+    BitSet rules = parent == null ? new BitSet() : parent.rules;
+    BitSet positionRules = parent == null || parent.position != position ? new BitSet() : parent.positionRules;
+    if (rule != null) {
+      int id = RuleIntrospector.ruleId(rule);
+      rules = with(rules, id);
+      positionRules = with(positionRules, id);
+    }
+    return new RulePath(position, rules, positionRules);
+  }
+
+  private static BitSet with(BitSet rules, int id) {
+    if (rules.get(id)) {
+      return rules;
+    }
+    BitSet result = (BitSet) rules.clone();
+    result.set(id);
+    return result;
+  }
+
+  /**
+   * @param rule rule type
+   * @return true if a token of given type is on the path
+   */
+  boolean contains(Class<?> rule) {
+    return rules.get(RuleIntrospector.ruleId(rule));
+  }
+
+  /**
+   * @param rule rule type
+   * @return true if a token of given type that starts at the same position as the last token of the path is on the path
+   */
+  boolean containsAtPosition(Class<?> rule) {
+    return positionRules.get(RuleIntrospector.ruleId(rule));
+  }
+}
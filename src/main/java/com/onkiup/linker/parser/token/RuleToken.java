@@ -6,12 +6,14 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
-import java.util.Optional;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.function.Function;
 
 import com.onkiup.linker.parser.ParserLocation;
 import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.Commit;
 import com.onkiup.linker.parser.annotation.IgnoreCharacters;
 import com.onkiup.linker.parser.util.LoggerLayout;
 
@@ -28,24 +30,47 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   private String ignoreCharacters = ""; 
   private boolean rotated = false;
   private transient ParserLocation lastTokenEnd;
+  /**
+   * the number of leading fields that should be matched before this token is populated: all fields or, for binary operators
+   * matched by {@link OperatorToken}, all fields except the right operand
+   */
+  private int matchedFields;
+  /**
+   * location of the operator if this token was created by {@link OperatorToken} or null
+   */
+  private ParserLocation operator;
+  /**
+   * true if the last field of this token is the right operand of a binary operator matched by {@link OperatorToken}
+   */
+  private boolean binary;
 
   public RuleToken(CompoundToken parent, Field field, Class<X> type, ParserLocation location) {
+    this(parent, field, type, location, parent != null && parent.isRecognizer());
+  }
+
+  /**
+   * @param recognizer when true, the Rule instance is created only if its fields are needed to match parser input
+   *                   (the rule has context fields or the token populates a context field of its parent)
+   */
+  RuleToken(CompoundToken parent, Field field, Class<X> type, ParserLocation location, boolean recognizer) {
     super(parent, field, location);
     this.tokenType = type;
     this.lastTokenEnd = location;
-
-    try {
-      this.token = type.newInstance();
-      Rule.Metadata.metadata(token, this);
-    } catch (Exception e) {
-      throw new IllegalArgumentException("Failed to instantiate rule token " + type, e);
+    statistics().onRule(type);
+
+    if (!recognizer || !RuleIntrospector.contextFields(type).isEmpty() || RuleIntrospector.isContextField(field)) {
+      try {
+        this.token = type.newInstance();
+        Rule.Metadata.metadata(token, this);
+      } catch (Exception e) {
+        throw new IllegalArgumentException("Failed to instantiate rule token " + type, e);
+      }
     }
 
-    fields = Arrays.stream(type.getDeclaredFields())
-      .filter(childField -> !Modifier.isTransient(childField.getModifiers()))
-      .toArray(Field[]::new);
+    fields = RuleIntrospector.fields(type);
 
     values = new PartialToken[fields.length];
+    matchedFields = fields.length;
 
     if (parent != null) {
       ignoreCharacters = parent.ignoredCharacters();
@@ -60,6 +85,69 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
     }
   }
 
+  /**
+   * Creates a token that matches a left-recursive rule without its left operand (the first field) and, for binary operators,
+   * without its right operand (the last field); operands are assigned by {@link OperatorToken} once the whole expression is matched
+   * @param parent expression token
+   * @param type left-recursive rule (see {@link RuleIntrospector#leftRecursive(Class)})
+   * @param binary true if the rule is a binary operator (see {@link RuleIntrospector#operators(Class)})
+   * @param location location of the operator in parser's input
+   * @return created token
+   */
+  static <X extends Rule> RuleToken<X> operator(OperatorToken<?> parent, Class<X> type, boolean binary, ParserLocation location) {
+    RuleToken<X> result = new RuleToken<>(parent, parent.targetFieldOrNull(), type, location);
+    result.operator = location;
+    result.binary = binary;
+    result.nextChild = 1;
+    result.matchedFields = binary ? result.fields.length - 1 : result.fields.length;
+    return result;
+  }
+
+  /**
+   * @return true if this token matches a binary operator for {@link OperatorToken}
+   */
+  boolean isBinaryOperator() {
+    return binary;
+  }
+
+  /**
+   * Populates operand fields of a token created by {@link #operator(OperatorToken, Class, boolean, ParserLocation)}
+   * @param left left operand
+   * @param right right operand (only for binary operators)
+   */
+  void operands(PartialToken<?> left, PartialToken<?> right) {
+    values[0] = left;
+    location(left.location());
+    set(fields[0], left.tokenOrNull());
+    if (binary) {
+      int last = fields.length - 1;
+      values[last] = right;
+      matchedFields = fields.length;
+      nextChild = fields.length;
+      set(fields[last], right.tokenOrNull());
+      lastTokenEnd = right.end();
+    }
+    onPopulated(lastTokenEnd);
+  }
+
+  /**
+   * Reverts {@link #operands(PartialToken, PartialToken)}, leaving only the operator populated
+   */
+  void dropOperands() {
+    values[0] = null;
+    location(operator);
+    set(fields[0], null);
+    if (binary) {
+      int last = fields.length - 1;
+      values[last] = null;
+      matchedFields = last;
+      nextChild = last;
+      set(fields[last], null);
+    }
+    truncateChildren(matchedFields);
+    onPopulated(lastTokenEnd);
+  }
+
   @Override
   public void sortPriorities() {
     if (rotatable()) {
@@ -79,8 +167,8 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   }
 
   @Override
-  public Optional<X> token() {
-    return Optional.ofNullable(token);
+  public X tokenOrNull() {
+    return token;
   }
 
   @Override 
@@ -94,10 +182,10 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   }
 
   @Override
-  public Optional<PartialToken<?>> nextChild() {
-    if (nextChild >= fields.length) {
-      log("No next child (nextChild = {}; fields = {})", nextChild, fields.length);
-      return Optional.empty();
+  public PartialToken<?> nextChildOrNull() {
+    if (nextChild >= matchedFields) {
+      log("No next child (nextChild = {}; fields = {})", nextChild, matchedFields);
+      return null;
     }
     if (values[nextChild] == null || values[nextChild].isFailed() || values[nextChild].isPopulated()) {
       Field childField = fields[nextChild];
@@ -105,7 +193,7 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
       values[nextChild] = PartialToken.forField(this, childField, lastTokenEnd);
     }
     log("nextChild#{} = {}", nextChild, values[nextChild].tag());
-    return Optional.of(values[nextChild++]);
+    return values[nextChild++];
   }
 
   @Override
@@ -122,13 +210,96 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
     }
 
     Field field = fields[nextChild - 1];
-    set(field, child.token().orElse(null));
+    set(field, child.tokenOrNull());
     lastTokenEnd = child.end();
-    if (nextChild >= fields.length) {
+    if (field.isAnnotationPresent(Commit.class)) {
+      commitPath(nextChild);
+    } else {
+      freezeSharedPrefix(child);
+    }
+    if (nextChild >= matchedFields) {
       onPopulated(lastTokenEnd);
     }
   }
 
+  /**
+   * Freezes the populated child if it and all previous children have no alternatives left and an untested variant of the
+   * parent junction starts with the same fields (see {@link VariantToken#sharedPrefix(Class)}): tracing them back would
+   * fail them anyway, and frozen children can be handed over to that variant if this token fails
+   * @param child populated child
+   */
+  private void freezeSharedPrefix(PartialToken<?> child) {
+    CompoundToken<?> parent = parentOrNull();
+    if (!(parent instanceof VariantToken) || frozenChildren() != nextChild - 1
+        || ((VariantToken<?>) parent).sharedPrefix(tokenType) < nextChild || child.alternativesLeft()) {
+      return;
+    }
+    if (child instanceof CompoundToken) {
+      ((CompoundToken<?>) child).freezeSubtree();
+    }
+    freeze(nextChild);
+  }
+
+  /**
+   * @param variant another variant of the junction that this token was created for
+   * @return the number of leading children of this token that the variant can take over
+   * (see {@link #adopt(RuleToken, int)})
+   */
+  int sharedChildren(Class<?> variant) {
+    int result = Math.min(frozenChildren(), RuleIntrospector.sharedPrefix(tokenType, variant));
+    for (int i = 0; i < result; i++) {
+      if (values[i] == null || !values[i].isPopulated()) {
+        return i;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Takes over populated leading children of a failed token for another variant of the same junction that starts with the
+   * same fields, so that they are not matched again. Taken children stay frozen
+   * @param donor failed token
+   * @param size the number of children to take over (see {@link #sharedChildren(Class)})
+   */
+  void adopt(RuleToken<?> donor, int size) {
+    for (int i = 0; i < size; i++) {
+      PartialToken<?> child = donor.values[i];
+      donor.values[i] = null;
+      ((AbstractToken<?>) child).parent(this);
+      retarget(child, donor.fields[i], fields[i]);
+      values[i] = child;
+      set(fields[i], child.tokenOrNull());
+      lastTokenEnd = child.end();
+    }
+    nextChild = size;
+    freeze(size);
+    if (nextChild >= matchedFields) {
+      onPopulated(lastTokenEnd);
+    }
+  }
+
+  /**
+   * Moves the token and its sub-tokens created for the same field to another field
+   */
+  private static void retarget(PartialToken<?> token, Field from, Field to) {
+    Deque<PartialToken<?>> pending = new ArrayDeque<>();
+    pending.push(token);
+    while (!pending.isEmpty()) {
+      PartialToken<?> next = pending.pop();
+      if (next.targetFieldOrNull() != from) {
+        continue;
+      }
+      ((AbstractToken<?>) next).targetField(to);
+      if (next instanceof CompoundToken) {
+        for (PartialToken<?> child : ((CompoundToken<?>) next).children()) {
+          if (child != null) {
+            pending.push(child);
+          }
+        }
+      }
+    }
+  }
+
   public Field[] fields() {
     return fields;
   }
@@ -136,8 +307,8 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   @Override
   public void onChildFailed() {
     PartialToken<?> child = values[nextChild - 1];
-    if (child.isOptional()) {
-      if (nextChild >= fields.length) {
+    if (child.isOptional() && !(child instanceof CompoundToken && ((CompoundToken<?>) child).isCommitted())) {
+      if (nextChild >= matchedFields) {
         log("Optional last child failed -- marking as populated");
         onPopulated(lastTokenEnd);
       } else {
@@ -151,19 +322,31 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   }
 
   private void set(Field field, Object value) {
-    log("Trying to set field ${} to '{}'", field.getName(), LoggerLayout.sanitize(value));
+    if (token == null || isRecognizer() && !RuleIntrospector.isContextField(field)) {
+      return;
+    }
+    boolean debug = logger().isDebugEnabled();
+    if (debug) {
+      log("Trying to set field ${} to '{}'", field.getName(), LoggerLayout.sanitize(value));
+    }
     try {
       if (!Modifier.isStatic(field.getModifiers())) {
-        log("Setting field ${} to '{}'", field.getName(), LoggerLayout.sanitize(value));
+        if (debug) {
+          log("Setting field ${} to '{}'", field.getName(), LoggerLayout.sanitize(value));
+        }
         field.setAccessible(true);
         field.set(token, convert(field.getType(), value));
-        try {
-          token.reevaluate();
-        } catch (Exception e) {
-          error("Failed to reevaluate", e);
+        if (!isRecognizer()) {
+          try {
+            token.reevaluate();
+          } catch (Exception e) {
+            error("Failed to reevaluate", e);
+          }
         }
       } else {
-        log("NOT Setting field {} to '{}' -- the field is static", field.getName(), LoggerLayout.sanitize(value));
+        if (debug) {
+          log("NOT Setting field {} to '{}' -- the field is static", field.getName(), LoggerLayout.sanitize(value));
+        }
       }
     } catch (Exception e) {
       throw new RuntimeException("Failed to populate field " + field, e);
@@ -219,9 +402,11 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   @Override
   public void atEnd() {
     log("Trying to force-populate...");
-    for (int i = Math.max(0, nextChild - 1); i < fields.length; i++) {
-      if (!PartialToken.isOptional(this, fields[i])) {
-        if (values[i] == null || !values[i].isPopulated()) {
+    for (int i = Math.max(0, nextChild - 1); i < matchedFields; i++) {
+      if (values[i] == null || !values[i].isPopulated()) {
+        // fields left unmatched at the end of the source are expected there, as if their tokens failed to match
+        expectedTokens().onFail(lastTokenEnd, fields[i]);
+        if (!PartialToken.isOptional(this, fields[i])) {
           onFail();
           return;
         }
@@ -233,6 +418,9 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   @Override
   public void onPopulated(ParserLocation end) {
     super.onPopulated(end);
+    if (isRecognizer() || operator != null && values[0] == null) {
+      return;
+    }
     try {
       token.onPopulated();
     } catch (Throwable e) {
@@ -243,6 +431,9 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   @Override
   public void onFail() {
     super.onFail();
+    if (isRecognizer()) {
+      return;
+    }
     try {
       token.reevaluate();
     } catch (Throwable e) {
@@ -305,7 +496,9 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
   @Override
   public void rotateForth() {
     log("Rotating");
-    token.invalidate();
+    if (token != null) {
+      token.invalidate();
+    }
     RuleToken wrap = new RuleToken(this, fields[0], fields[0].getType(), location());
     wrap.nextChild = nextChild;
     nextChild = 1;
@@ -313,7 +506,7 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
     wrap.values = values;
     values = wrapValues;
     values[0] = wrap;
-    X wrapToken = (X) wrap.token().orElse(null);
+    X wrapToken = (X) wrap.tokenOrNull();
     wrap.token = token;
     token = wrapToken;
   }
@@ -330,7 +523,7 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
       kiddo = (CompoundToken<X>) firstToken;
     }
 
-    Rule childToken = (Rule) kiddo.token().orElse(null);
+    Rule childToken = (Rule) kiddo.tokenOrNull();
     Class childTokenType = kiddo.tokenType();
 
     invalidate();
@@ -348,7 +541,7 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
     token = (X) childToken;
     tokenType = (Class<X>) childTokenType;
     children(values);
-    set(fields[fields.length - 1], values[values.length - 1].token().orElse(null));
+    set(fields[fields.length - 1], values[values.length - 1].tokenOrNull());
   }
 
   @Override
@@ -358,7 +551,7 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
 
   @Override
   public int unfilledChildren() {
-    return fields.length - nextChild;
+    return matchedFields - nextChild;
   }
 
   @Override
@@ -368,7 +561,9 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
 
   @Override
   public void nextChild(int newIndex) {
-    log("next child set to {}/{}", newIndex, fields.length - 1);
+    if (logger().isDebugEnabled()) {
+      log("next child set to {}/{}", newIndex, fields.length - 1);
+    }
     nextChild = newIndex;
   }
 
@@ -377,6 +572,22 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
     this.token = token;
   }
 
+  /**
+   * Discards children in place, without copying the children array
+   * @param size the number of children to keep
+   */
+  @Override
+  public void truncateChildren(int size) {
+    lastTokenEnd = location();
+    for (int i = 0; i < values.length; i++) {
+      if (i >= size) {
+        values[i] = null;
+      } else if (values[i] != null && values[i].isPopulated()) {
+        lastTokenEnd = values[i].end();
+      }
+    }
+  }
+
   @Override
   public void children(PartialToken[] children) {
     lastTokenEnd = location();
@@ -394,7 +605,9 @@ public class RuleToken<X extends Rule> extends AbstractToken<X> implements Compo
 
   @Override
   public void invalidate() {
-    token.invalidate();
+    if (token != null) {
+      token.invalidate();
+    }
   }
 
   @Override
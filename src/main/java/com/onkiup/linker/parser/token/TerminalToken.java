@@ -3,7 +3,6 @@ package com.onkiup.linker.parser.token;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.Objects;
-import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,13 +33,16 @@ public class TerminalToken extends AbstractToken<String> implements ConsumingTok
 
   @Override
   public void onConsumeSuccess(Object token) {
-    log("MATCHED '{}'", LoggerLayout.sanitize((String)token));
-    this.token = (String) token;
+    // matchers may return views of parser buffer
+    this.token = token == null ? null : token.toString();
+    if (logger().isDebugEnabled()) {
+      log("MATCHED '{}'", LoggerLayout.sanitize(this.token));
+    }
   }
 
   @Override
-  public Optional<String> token() {
-    return Optional.ofNullable(token).map(CharSequence::toString);
+  public String tokenOrNull() {
+    return token == null ? null : token.toString();
   }
 
   @Override
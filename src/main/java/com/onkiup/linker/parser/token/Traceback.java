@@ -0,0 +1,84 @@
+package com.onkiup.linker.parser.token;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Traces back a sub-tree of the AST using an explicit stack instead of recursion
+ * @see CompoundToken#traceback()
+ */
+final class Traceback {
+
+  /**
+   * A compound token that is being traced back
+   */
+  private static final class Frame {
+    private final CompoundToken<?> token;
+    private final PartialToken<?>[] children;
+    /**
+     * index of the child that is being traced back
+     */
+    private int index;
+    /**
+     * true when the child at index was traced back and the token was not notified about that yet
+     */
+    private boolean childDone;
+
+    private Frame(CompoundToken<?> token, PartialToken<?>[] children) {
+      this.token = token;
+      this.children = children;
+      this.index = children.length;
+    }
+  }
+
+  private Traceback() {
+  }
+
+  /**
+   * Traces back given token and (if needed) its sub-tokens
+   * @param root the token to trace back
+   */
+  static void run(CompoundToken<?> root) {
+    Deque<Frame> stack = new ArrayDeque<>();
+    start(stack, root);
+    while (!stack.isEmpty()) {
+      Frame frame = stack.peek();
+      if (frame.childDone) {
+        frame.childDone = false;
+        if (frame.token.onChildTracedBack(frame.index, frame.children[frame.index])) {
+          finish(stack, frame.index);
+          continue;
+        }
+      }
+
+      do {
+        frame.index--;
+      } while (frame.index > -1 && frame.children[frame.index] == null);
+
+      if (frame.index < frame.token.frozenChildren()) {
+        finish(stack, -1);
+        continue;
+      }
+
+      PartialToken<?> child = frame.children[frame.index];
+      frame.childDone = true;
+      if (child instanceof CompoundToken) {
+        start(stack, (CompoundToken<?>) child);
+      } else {
+        child.traceback();
+      }
+    }
+  }
+
+  private static void start(Deque<Frame> stack, CompoundToken<?> token) {
+    PartialToken<?>[] children = token.tracebackChildren();
+    if (children != null) {
+      stack.push(new Frame(token, children));
+    }
+  }
+
+  private static void finish(Deque<Frame> stack, int stoppedAt) {
+    Frame frame = stack.pop();
+    frame.token.onTracedBack(frame.children, stoppedAt);
+  }
+}
@@ -0,0 +1,201 @@
+package com.onkiup.linker.parser.token;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Learned grammar junction variant predictor shared by all parses of a {@link com.onkiup.linker.parser.TokenGrammar}
+ * (see {@link com.onkiup.linker.parser.TokenGrammar#variantPredictor(VariantPredictor)}).
+ * For every junction type and every prefix (up to {@link #depth()} characters long) of non-ignored characters that follow
+ * junction position, the predictor keeps a vote for the variant that most often matched the source: the vote is
+ * strengthened every time the same variant matches and weakened by other variants, which replace it once it is exhausted.
+ * Junctions test the variant voted for the longest known prefix first; other variants are still tested when it fails.
+ * The model has a fixed number of slots (keys that share a slot compete for it the same way variants do) and is updated
+ * with compare-and-set operations, so it never blocks parsers
+ */
+public final class VariantPredictor {
+
+  /**
+   * default number of slots
+   */
+  public static final int DEFAULT_SLOTS = 4096;
+  /**
+   * default number of lookahead characters
+   */
+  public static final int DEFAULT_DEPTH = 4;
+  /**
+   * the maximum strength of a vote, so that the predictor keeps adapting to changing sources
+   */
+  static final int MAX_VOTES = 8;
+
+  private static final class Vote {
+    private final Class<?> junction;
+    private final String lookahead;
+    private final Class<?> variant;
+    private final int votes;
+
+    private Vote(Class<?> junction, String lookahead, Class<?> variant, int votes) {
+      this.junction = junction;
+      this.lookahead = lookahead;
+      this.variant = variant;
+      this.votes = votes;
+    }
+
+    /**
+     * Compares this vote's key with a junction and its lookahead prefix without copying the prefix
+     * @param length the number of non-ignored characters in the prefix
+     */
+    private boolean matches(Class<?> junction, CharSequence source, int position, String ignored, int length) {
+      if (this.junction != junction || lookahead.length() != length) {
+        return false;
+      }
+      int matched = 0;
+      for (int i = position; matched < length; i++) {
+        char character = source.charAt(i);
+        if (ignored.indexOf(character) < 0 && lookahead.charAt(matched++) != character) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private Vote withVotes(int votes) {
+      return new Vote(junction, lookahead, variant, votes);
+    }
+  }
+
+  private final AtomicReferenceArray<Vote> slots;
+  private final int depth;
+
+  /**
+   * Creates a predictor with {@link #DEFAULT_SLOTS} slots that looks at up to {@link #DEFAULT_DEPTH} characters
+   */
+  public VariantPredictor() {
+    this(DEFAULT_SLOTS, DEFAULT_DEPTH);
+  }
+
+  /**
+   * @param slots the number of remembered junction and lookahead combinations
+   * @param depth the maximum number of non-ignored characters used to predict a variant
+   */
+  public VariantPredictor(int slots, int depth) {
+    if (slots < 1 || depth < 1) {
+      throw new IllegalArgumentException("Predictor needs at least one slot and one lookahead character");
+    }
+    this.slots = new AtomicReferenceArray<>(slots);
+    this.depth = depth;
+  }
+
+  /**
+   * @return the maximum number of non-ignored characters used to predict a variant
+   */
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * @return the number of remembered junction and lookahead combinations
+   */
+  public int size() {
+    int result = 0;
+    for (int i = 0; i < slots.length(); i++) {
+      if (slots.get(i) != null) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Predicts junction variant
+   * @param junction junction type
+   * @param source parser buffer
+   * @param position junction position in the buffer
+   * @param ignored characters ignored by the junction
+   * @return the variant that most often matched the source after the longest known lookahead prefix or null
+   */
+  Class<?> predict(Class<?> junction, CharSequence source, int position, String ignored) {
+    Class<?> result = null;
+    int hash = junction.hashCode();
+    int length = 0;
+    for (int i = position; i < source.length() && length < depth; i++) {
+      char character = source.charAt(i);
+      if (ignored.indexOf(character) > -1) {
+        continue;
+      }
+      // prefix hashes are computed incrementally, longer known prefixes override shorter ones
+      hash = 31 * hash + character;
+      length++;
+      Vote vote = slots.get(slot(hash));
+      if (vote != null && vote.matches(junction, source, position, ignored, length)) {
+        result = vote.variant;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Votes for the junction variant that matched the source after all lookahead prefixes
+   * @param junction junction type
+   * @param source parser buffer
+   * @param position junction position in the buffer
+   * @param ignored characters ignored by the junction
+   * @param variant matched variant
+   */
+  void learn(Class<?> junction, CharSequence source, int position, String ignored, Class<?> variant) {
+    int hash = junction.hashCode();
+    int length = 0;
+    for (int i = position; i < source.length() && length < depth; i++) {
+      char character = source.charAt(i);
+      if (ignored.indexOf(character) > -1) {
+        continue;
+      }
+      hash = 31 * hash + character;
+      length++;
+      vote(junction, source, position, ignored, length, slot(hash), variant);
+    }
+  }
+
+  /**
+   * @param length the number of non-ignored characters in the lookahead prefix
+   * @param slot the slot of the junction and lookahead prefix
+   */
+  private void vote(Class<?> junction, CharSequence source, int position, String ignored, int length, int slot,
+      Class<?> variant) {
+    while (true) {
+      Vote current = slots.get(slot);
+      boolean same = current != null && current.variant == variant
+          && current.matches(junction, source, position, ignored, length);
+      Vote next;
+      if (current == null || current.votes <= 1 && !same) {
+        next = new Vote(junction, lookahead(source, position, ignored, length), variant, 1);
+      } else if (!same) {
+        next = current.withVotes(current.votes - 1);
+      } else if (current.votes < MAX_VOTES) {
+        next = current.withVotes(current.votes + 1);
+      } else {
+        return;
+      }
+      if (slots.compareAndSet(slot, current, next)) {
+        return;
+      }
+    }
+  }
+
+  private int slot(int hash) {
+    return Math.floorMod(hash, slots.length());
+  }
+
+  /**
+   * @return the first given number of non-ignored characters that follow the position
+   */
+  private static String lookahead(CharSequence source, int position, String ignored, int length) {
+    StringBuilder result = new StringBuilder(length);
+    for (int i = position; result.length() < length; i++) {
+      char character = source.charAt(i);
+      if (ignored.indexOf(character) < 0) {
+        result.append(character);
+      }
+    }
+    return result.toString();
+  }
+}
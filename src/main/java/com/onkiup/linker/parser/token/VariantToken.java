@@ -2,29 +2,29 @@ package com.onkiup.linker.parser.token;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import com.onkiup.linker.parser.ParserLocation;
 import com.onkiup.linker.parser.Rule;
 import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.analysis.FirstSet;
+import com.onkiup.linker.parser.analysis.MinLength;
+import com.onkiup.linker.parser.analysis.PredictionTable;
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
 import com.onkiup.linker.parser.annotation.AdjustPriority;
 import com.onkiup.linker.parser.annotation.Alternatives;
 import com.onkiup.linker.parser.annotation.IgnoreCharacters;
 import com.onkiup.linker.parser.annotation.IgnoreVariant;
 import com.onkiup.linker.parser.util.ParserError;
 
-import org.reflections.Reflections;
-import org.reflections.scanners.SubTypesScanner;
-import org.reflections.util.ClasspathHelper;
-import org.reflections.util.ConfigurationBuilder;
 
 /**
  * A PartialToken used to resolve grammar junctions (non-concrete rule classes
@@ -52,8 +52,6 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
 
   private static boolean excludeMatchingParents = true;
 
-  private static final WeakHashMap<Package, Reflections> reflectionsCache = new WeakHashMap<>();
-
   /**
    * Dynamic priorities registry
    */
@@ -68,8 +66,24 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
   private transient int nextVariant = 0;
   private String ignoreCharacters = "";
   private transient List<Class<? extends X>> tried = new LinkedList<>();
+  /**
+   * junction's lookahead automaton, if it is used to order junction variants
+   */
+  private transient LookaheadDfa lookahead;
+  /**
+   * grammar's learned variant predictor, if it is used to order junction variants
+   */
+  private transient VariantPredictor predictor;
 
   public VariantToken(CompoundToken parent, Field field, Class<X> tokenType, ParserLocation location) {
+    this(parent, field, tokenType, location, false);
+  }
+
+  /**
+   * @param operands when true, left-recursive variants (see {@link RuleIntrospector#leftRecursive(Class)}) are not tested;
+   *                 used by {@link OperatorToken} to match operands
+   */
+  VariantToken(CompoundToken parent, Field field, Class<X> tokenType, ParserLocation location, boolean operands) {
     super(parent, field, location);
 
     this.tokenType = tokenType;
@@ -77,11 +91,27 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
       throw new IllegalArgumentException("Variant token cannot handle concrete type " + tokenType);
     }
 
+    if (parent != null) {
+      ignoreCharacters = parent.ignoredCharacters();
+    }
+
+    if (tokenType.isAnnotationPresent(IgnoreCharacters.class)) {
+      ignoreCharacters += tokenType.getAnnotation(IgnoreCharacters.class).value();
+    }
+
+    List<Class<? extends X>> operators = operands ? RuleIntrospector.leftRecursive(tokenType) : Collections.emptyList();
+    List<Class<? extends X>> predicted = predictedVariants(operands);
     if (tokenType.isAnnotationPresent(Alternatives.class)) {
-      variants = tokenType.getAnnotation(Alternatives.class).value();
+      variants = predicted != null ? predicted.toArray(new Class[0]) : tokenType.getAnnotation(Alternatives.class).value();
+      if (operands) {
+        variants = Arrays.stream(variants).filter(type -> !operators.contains(type)).toArray(Class[]::new);
+      }
     } else {
       final ConcurrentHashMap<Class, Integer> typePriorities = new ConcurrentHashMap<>();
-      variants = (getSubTypesOf(tokenType).filter(TokenGrammar::isConcrete).filter(type -> {
+      variants = ((predicted != null ? predicted : RuleIntrospector.subTypes(tokenType)).stream().filter(TokenGrammar::isConcrete).filter(type -> {
+        if (operators.contains(type)) {
+          return false;
+        }
         if (type.isAnnotationPresent(IgnoreVariant.class)) {
           log("Ignoring variant {} -- marked with @IgnoreVariant", type.getSimpleName());
           return false;
@@ -91,17 +121,14 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
           return false;
         }
         if (excludeMatchingParents) {
-          boolean inTree = findInPath(
-              token -> token != null && token.tokenType() == type && token.location().position() == location.position())
-                  .isPresent();
-          if (inTree) {
+          if (rulePath().containsAtPosition(type)) {
             log("Ignoring variant {} -- already in tree with same position ({})", type.getSimpleName(),
                 location.position());
             return false;
           }
         }
 
-        Boolean tagged = getTag(type).orElse(null);
+        Boolean tagged = getTag(type);
         if (tagged != null && !tagged) {
           log("Ignoring " + type + " (tagged as failed for this position)");
           return false;
@@ -122,19 +149,135 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
         return result;
       }).toArray(Class[]::new));
     }
+    if (predicted == null) {
+      pruneVariants();
+      if (!tokenType.isAnnotationPresent(Alternatives.class)) {
+        preferLearnedVariant();
+      }
+    }
     values = new PartialToken[variants.length];
+  }
 
-    if (parent != null) {
-      ignoreCharacters = parent.ignoredCharacters();
+  /**
+   * Drops variants that cannot start with the next non-ignored character (see {@link FirstSet}) or are longer than the
+   * rest of the source (see {@link MinLength}). Keeps all variants when none of them can match the source, so that their
+   * failures are reported to {@link #expectedTokens()}
+   */
+  private void pruneVariants() {
+    CharSequence buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root());
+    if (buffer == null) {
+      return;
+    }
+    int start = location().position();
+    int remaining = buffer.length() - start;
+    int next = start;
+    while (next < buffer.length() && ignoreCharacters.indexOf(buffer.charAt(next)) > -1) {
+      next++;
     }
+    if (next >= buffer.length()) {
+      return;
+    }
+    String skipped = buffer.subSequence(start, next).toString();
+    char character = buffer.charAt(next);
+    Class<? extends X>[] matching = Arrays.stream(variants)
+        .filter(variant -> canStartWith(variant, skipped, character))
+        .filter(variant -> !isTooLong(variant, remaining, character))
+        .toArray(Class[]::new);
+    if (matching.length > 0 && matching.length < variants.length) {
+      log("Ignoring {} variants that cannot match the source", variants.length - matching.length);
+      statistics().onPrunedVariants(variants.length - matching.length);
+      variants = matching;
+    }
+  }
 
-    if (tokenType.isAnnotationPresent(IgnoreCharacters.class)) {
-      ignoreCharacters += tokenType.getAnnotation(IgnoreCharacters.class).value();
+  /**
+   * @param variant junction variant
+   * @param skipped ignored characters before the next character
+   * @param character the next non-ignored character
+   * @return false if the variant's FIRST set proves that the variant cannot match the source
+   */
+  private static boolean canStartWith(Class<?> variant, String skipped, char character) {
+    FirstSet first = FirstSet.of(variant);
+    if (first.isNullable() || first.contains(character) || FirstSet.ignoredCharacters(variant).indexOf(character) > -1) {
+      return true;
+    }
+    for (int i = 0; i < skipped.length(); i++) {
+      if (first.contains(skipped.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param variant junction variant
+   * @param remaining the number of characters left in the buffer
+   * @param character the next non-ignored character
+   * @return true if the variant starts with the next character but cannot fit in the rest of the source. Variants that
+   * would fail at the next character are kept, since their failures are reported to {@link #expectedTokens()}, and so are
+   * variants that may commit the parser to their grammar path before running out of source
+   */
+  private static boolean isTooLong(Class<?> variant, int remaining, char character) {
+    return MinLength.of(variant) > remaining && FirstSet.of(variant).contains(character)
+        && !RuleIntrospector.commits(variant);
+  }
+
+  /**
+   * Moves the variant that grammar's variant predictor (see {@link VariantPredictor}) or, when the grammar has none,
+   * junction's lookahead automaton predicts for this token's position to the front of the variants list, so that it is
+   * tested first
+   */
+  private void preferLearnedVariant() {
+    CharSequence buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root());
+    if (buffer == null) {
+      return;
+    }
+    Class<?> learned;
+    predictor = variantPredictor();
+    if (predictor != null) {
+      learned = predictor.predict(tokenType, buffer, location().position(), ignoreCharacters);
+    } else {
+      lookahead = junctions().lookahead(tokenType);
+      learned = lookahead.predict(buffer, location().position(), ignoreCharacters);
+    }
+    for (int i = 0; i < variants.length; i++) {
+      if (variants[i] == learned) {
+        log("Testing variant {} first -- learned from lookahead", learned.getSimpleName());
+        System.arraycopy(variants, 0, variants, 1, i);
+        variants[0] = (Class<? extends X>) learned;
+        statistics().onAdaptivePrediction();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Uses junction's prediction table (if the junction has one) to select the only variant that can match the next
+   * non-ignored character. When no variants can match that character, all of them are still tested so that their
+   * failures are reported to {@link #expectedTokens()}
+   * @return a list with the predicted variant or null if all variants should be tested
+   */
+  private List<Class<? extends X>> predictedVariants(boolean operands) {
+    CharSequence buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root());
+    if (buffer == null) {
+      return null;
+    }
+    PredictionTable table = junctions().predictionTable(tokenType, operands);
+    if (table == null) {
+      return null;
     }
+    int prediction = table.predict(buffer, location().position(), ignoreCharacters);
+    if (prediction < 0) {
+      return null;
+    }
+    log("Predicted variant #{} for position {}", prediction, position());
+    statistics().onPrediction();
+    return Collections.singletonList((Class<? extends X>) table.variant(prediction));
   }
 
   private boolean isLeftRecursive(Class<? extends X> target) {
-    return parent().map(p -> p.tokenType() == target && p.position() == position()).orElse(false);
+    CompoundToken<?> parent = parentOrNull();
+    return parent != null && parent.tokenType() == target && parent.position() == position();
   }
 
   private boolean willLeftRecurse(Class<? extends X> target) {
@@ -143,38 +286,84 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
   }
 
   @Override
-  public Optional<PartialToken<?>> nextChild() {
+  public PartialToken<?> nextChildOrNull() {
     if (nextVariant >= variants.length) {
       log("Unable to return next child: variants exhausted (nextVariant = {}, variants total = {})", nextVariant,
           variants.length);
       onFail();
-      return Optional.empty();
+      return null;
     }
-    Boolean tag = getTag(variants[nextVariant]).orElse(null);
+    Boolean tag = getTag(variants[nextVariant]);
     while (Boolean.FALSE.equals(tag) && ++nextVariant < variants.length) {
       log("Skipping variant {} -- tagged as failed for position {}", variants[nextVariant], position());
-      tag = getTag(variants[nextVariant]).orElse(null);
+      tag = getTag(variants[nextVariant]);
     }
 
     if (nextVariant >= variants.length) {
       onFail();
-      return Optional.empty();
+      return null;
     }
 
     if (values[nextVariant] == null || values[nextVariant].isFailed() || values[nextVariant].isPopulated()) {
       log("Creating partial token for nextChild#{}", nextVariant);
       updateDynPriority(variants[nextVariant], 10);
-      tried.add(variants[nextVariant]);
-      values[nextVariant] = PartialToken.forField(this, targetField().orElse(null), variants[nextVariant], location());
+      if (logger().isDebugEnabled()) {
+        tried.add(variants[nextVariant]);
+      }
+      statistics().onVariant();
+      values[nextVariant] = PartialToken.forField(this, targetFieldOrNull(), variants[nextVariant], location());
+      adoptSharedPrefix(nextVariant);
     }
 
     log("nextChild#{} = {}", nextVariant, values[nextVariant].tag());
-    return Optional.of(values[nextVariant++]);
+    return values[nextVariant++];
+  }
+
+  /**
+   * Hands frozen leading children of a failed variant over to the token created for the given variant if both variants
+   * start with the same fields (see {@link RuleIntrospector#sharedPrefix(Class, Class)}), so that the shared prefix is
+   * matched only once
+   * @param variant index of the variant
+   */
+  private void adoptSharedPrefix(int variant) {
+    if (!(values[variant] instanceof RuleToken)) {
+      return;
+    }
+    RuleToken<?> donor = null;
+    int size = 0;
+    for (int i = 0; i < variant; i++) {
+      if (values[i] instanceof RuleToken && values[i].isFailed()) {
+        int shared = ((RuleToken<?>) values[i]).sharedChildren(variants[variant]);
+        if (shared > size) {
+          donor = (RuleToken<?>) values[i];
+          size = shared;
+        }
+      }
+    }
+    if (donor != null) {
+      log("Reusing {} fields matched by {}", size, donor.tag());
+      ((RuleToken<?>) values[variant]).adopt(donor, size);
+      statistics().onReusedFields(size);
+    }
+  }
+
+  /**
+   * @param variant tested variant of this junction
+   * @return the maximum number of leading fields that the variant shares with untested concrete variants of this junction
+   */
+  int sharedPrefix(Class<?> variant) {
+    int result = 0;
+    for (int i = nextVariant; i < variants.length; i++) {
+      if (TokenGrammar.isConcrete(variants[i])) {
+        result = Math.max(result, RuleIntrospector.sharedPrefix(variant, variants[i]));
+      }
+    }
+    return result;
   }
 
   @Override
   public PartialToken<?>[] children() {
-    if (nextVariant >= values.length) {
+    if (nextVariant == 0 || values[currentChild()] == null) {
       return new PartialToken[0];
     }
     return new PartialToken[] { values[currentChild()] };
@@ -210,6 +399,12 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
   public void onPopulated(ParserLocation end) {
     super.onPopulated(end);
     result = values[currentChild()];
+    CharSequence buffer = ConsumingToken.ConsumptionState.rootBufferOrNull(root());
+    if (predictor != null && buffer != null) {
+      predictor.learn(tokenType, buffer, location().position(), ignoreCharacters, variants[currentChild()]);
+    } else if (lookahead != null && buffer != null) {
+      lookahead.learn(buffer, location().position(), ignoreCharacters, variants[currentChild()]);
+    }
   }
 
   private void storeTag(PartialToken token, boolean result) {
@@ -229,20 +424,42 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
     }
   }
 
-  private <Z> Optional<Boolean> getTag(Class<Z> forType) {
+  /**
+   * Discards position tags collected while populating the AST with given root
+   * @param root root token of the AST
+   */
+  public static void releaseTags(PartialToken<?> root) {
+    tags.remove(root);
+  }
+
+  /**
+   * Discards position tags collected for positions before the given one; used when parser will not create tokens there anymore
+   * @param root root token of the AST
+   * @param position the first position which tags should be kept
+   */
+  static void releaseTags(PartialToken<?> root, int position) {
+    Map<Integer, ConcurrentHashMap<Class, Boolean>> rootTags = tags.get(root);
+    if (rootTags != null) {
+      rootTags.keySet().removeIf(tagged -> tagged < position);
+    }
+  }
+
+  private <Z> Boolean getTag(Class<Z> forType) {
     log("Searching for tags on {}", forType.getName());
-    return getTags().map(tags -> tags.get(forType));
+    Map<Class, Boolean> found = getTags();
+    return found == null ? null : found.get(forType);
   }
 
-  private Optional<Map<Class, Boolean>> getTags() {
+  private Map<Class, Boolean> getTags() {
     int position = location().position();
     PartialToken<?> root = root();
     log("Searching tags for position {}", position);
-    if (!tags.containsKey(root)) {
+    Map<Integer, ConcurrentHashMap<Class, Boolean>> rootTags = tags.get(root);
+    if (rootTags == null) {
       log("Did not find tags for root token");
-      return Optional.empty();
+      return null;
     }
-    return Optional.ofNullable(tags.get(root).get(position));
+    return rootTags.get(position);
   }
 
   @Override
@@ -252,7 +469,7 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
     if (TokenGrammar.isConcrete(variants[current])) {
       storeTag(values[current], false);
     }
-    if (nextVariant >= variants.length) {
+    if (nextVariant >= variants.length || isCommitted()) {
       onFail();
     } else {
       dropPopulated();
@@ -260,15 +477,15 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
   }
 
   @Override
-  public Optional<X> token() {
+  public X tokenOrNull() {
     if (result != null) {
-      return (Optional<X>) result.token();
+      return result.tokenOrNull();
     }
     int current = currentChild();
     if (values[current] == null) {
-      return Optional.empty();
+      return null;
     }
-    return (Optional<X>) values[current].token();
+    return values[current].tokenOrNull();
   }
 
   @Override
@@ -278,35 +495,42 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
 
   @Override
   public void onFail() {
-    log("Tried: {}", tried.stream().map(Class::getSimpleName).collect(Collectors.joining(", ")));
+    if (logger().isDebugEnabled()) {
+      log("Tried: {}", tried.stream().map(Class::getSimpleName).collect(Collectors.joining(", ")));
+    }
     result = null;
     super.onFail();
   }
 
   @Override
-  public void traceback() {
+  public PartialToken<?>[] tracebackChildren() {
     log("!!! TRACING BACK");
     if (variants.length == 0) {
       onFail();
-      return;
-    }
-    int current = currentChild();
-    for (int i = currentChild(); i > -1; i--) {
-      PartialToken<?> token = values[i];
-      if (token != null) {
-        token.traceback();
-        dropPopulated();
-        if (token.alternativesLeft()) {
-          nextVariant = i;
-          break;
-        }
-      }
-      nextVariant = i;
+      return null;
     }
+    return Arrays.copyOf(values, currentChild() + 1);
+  }
 
-    if (nextVariant == 0) {
-      nextVariant = current + 1;
+  @Override
+  public boolean onChildTracedBack(int index, PartialToken<?> child) {
+    dropPopulated();
+    return child.alternativesLeft();
+  }
+
+  @Override
+  public void onTracedBack(PartialToken<?>[] children, int stoppedAt) {
+    int current = children.length - 1;
+    if (isCommitted()) {
+      if (stoppedAt == current) {
+        nextVariant = current;
+        log("Traced back to committed variant#{}", current);
+      } else {
+        onFail();
+      }
+      return;
     }
+    nextVariant = stoppedAt > 0 ? stoppedAt : current + 1;
 
     if (nextVariant >= variants.length) {
       onFail();
@@ -315,13 +539,27 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
     log("Traced back fro variant#{} to variant#{}: {}", current, nextVariant, values[nextVariant]);
   }
 
+  /**
+   * Discards frozen variants that were tested before the current one
+   * @param frozenChildren the number of leading variants that should not be traced back
+   */
+  @Override
+  public void freeze(int frozenChildren) {
+    super.freeze(frozenChildren);
+    int last = Math.min(frozenChildren, currentChild());
+    for (int i = 0; i < last; i++) {
+      values[i] = null;
+    }
+    tried.clear();
+  }
+
   private int calculatePriority(Class<? extends X> type) {
     int result = dynPriorities.getOrDefault(type, 0);
     if (!TokenGrammar.isConcrete(type)) {
       result += 1000;
     }
 
-    if (findInPath(other -> type == other.tokenType()).isPresent()) {
+    if (rulePath().contains(type)) {
       result += 1000;
     }
 
@@ -373,8 +611,8 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
   }
 
   @Override
-  public boolean alternativesLeft() {
-    if (isFailed() || variants.length == 0) {
+  public boolean ownAlternativesLeft() {
+    if (isFailed() || variants.length == 0 || isCommitted() || frozenChildren() > currentChild()) {
       log("failed -- no alternatives");
       return false;
     }
@@ -383,20 +621,23 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
       return true;
     }
     for (int i = currentChild(); i > -1; i--) {
-      if (values[i] != null) {
-        if (values[i].alternativesLeft()) {
-          log("found alternatives at value#{}: {}", i, values[i]);
-          return true;
-        }
-      } else {
+      if (values[i] == null) {
         log("value#{} is null -- counting as an alternative", i);
         return true;
       }
     }
-    log("-- no alternatives left in any of {} variants", variants.length);
     return false;
   }
 
+  @Override
+  public PartialToken<?>[] alternativeSources() {
+    if (isFailed() || variants.length == 0) {
+      return NO_TOKENS;
+    }
+    return Arrays.copyOf(values, currentChild() + 1);
+  }
+
+
   @Override
   public void sortPriorities() {
     int current = currentChild();
@@ -490,17 +731,4 @@ public class VariantToken<X extends Rule> extends AbstractToken<X> implements Co
     }
     return result;
   }
-
-  private static Reflections reflections(Class from) {
-    if (!reflectionsCache.containsKey(from.getPackage())) {
-      Reflections reflections = new Reflections(from.getPackageName(), new SubTypesScanner());
-      reflectionsCache.put(from.getPackage(), reflections);
-    }
-
-    return reflectionsCache.get(from.getPackage());
-  }
-
-  private static <T> Stream<Class<? extends T>> getSubTypesOf(Class<T> of) {
-    return reflections(of).getSubTypesOf(of).stream();
-  }
 }
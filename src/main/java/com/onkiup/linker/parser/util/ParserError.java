@@ -39,7 +39,7 @@ public class ParserError extends RuntimeException {
       result.append("\t")
         .append(parent.toString())
         .append("\n");
-      parent = (PartialToken) parent.parent().orElse(null);
+      parent = (PartialToken) parent.parentOrNull();
     }
     return result.toString();
   }
@@ -0,0 +1,49 @@
+package com.onkiup.linker.parser.util;
+
+/**
+ * A part of parser source that is passed to matchers without copying its characters
+ */
+public final class SourceWindow implements CharSequence {
+  private final CharSequence source;
+  private final int offset;
+  private final int length;
+
+  /**
+   * @param source parser source
+   * @param offset position of the first character of the window in the source
+   */
+  public SourceWindow(CharSequence source, int offset) {
+    this(source, offset, source.length() - offset);
+  }
+
+  /**
+   * @param source parser source
+   * @param offset position of the first character of the window in the source
+   * @param length the number of characters in the window
+   */
+  public SourceWindow(CharSequence source, int offset, int length) {
+    this.source = source;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return source.charAt(offset + index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return new SourceWindow(source, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    return source.subSequence(offset, offset + length).toString();
+  }
+}
@@ -0,0 +1,92 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+
+public class AdaptivePredictionTest {
+
+  /**
+   * Not LL(1): all commands start with "l"
+   */
+  public interface Command extends Rule {
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Let implements Command {
+    private static final String LET = "let ";
+    @CapturePattern("[a-z]+")
+    private String name;
+  }
+
+  public static class Loop implements Command {
+    private static final String LOOP = "loop;";
+  }
+
+  public static class Label implements Command {
+    @CapturePattern("[a-z]+")
+    private String name;
+    private static final String COLON = ":";
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Script implements Rule {
+    private static final String OPEN = "{";
+    private Command[] commands;
+    private static final String CLOSE = "}";
+  }
+
+  @Test
+  public void testLearnedLookahead() throws Exception {
+    String source = "{ let a loop; lbl: let b loop; lbl: loop; let c lbl: }";
+    TokenGrammar<Script> parser = TokenGrammar.forClass(Script.class);
+    parser.parse("warmup", new StringReader(source), new ParserStatistics());
+
+    ParserStatistics statistics = new ParserStatistics();
+    Script script = parser.parse("test", new StringReader(source), statistics);
+    Class<?>[] expected = {Let.class, Loop.class, Label.class, Let.class, Loop.class, Label.class, Loop.class, Let.class,
+        Label.class};
+    assertEquals(expected.length, script.commands.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], script.commands[i].getClass());
+    }
+    assertEquals("c", ((Let) script.commands[7]).name);
+    assertEquals(expected.length, statistics.adaptivePredictions());
+    // every learned variant matches; all variants fail only before the closing brace
+    assertEquals(expected.length + 3, statistics.variants());
+  }
+
+  @Test
+  public void testConflictingLookahead() throws Exception {
+    TokenGrammar<Script> parser = TokenGrammar.forClass(Script.class);
+    // same first characters, different variants
+    Script script = parser.parse("test", new StringReader("{ lo: loop; loo: loop; }"), new ParserStatistics());
+    assertTrue(script.commands[0] instanceof Label);
+    assertTrue(script.commands[1] instanceof Loop);
+    assertTrue(script.commands[2] instanceof Label);
+    assertTrue(script.commands[3] instanceof Loop);
+    assertEquals("loo", ((Label) script.commands[2]).name);
+  }
+
+  @Test
+  public void testParserLookahead() throws Exception {
+    String source = "{ let a }";
+    TokenGrammar<Script> parser = TokenGrammar.forClass(Script.class);
+    ParserStatistics first = new ParserStatistics();
+    parser.parse("first", new StringReader(source), first);
+    ParserStatistics second = new ParserStatistics();
+    parser.parse("second", new StringReader(source), second);
+    assertTrue(second.adaptivePredictions() > first.adaptivePredictions());
+
+    // lookahead learned by another parser is not used
+    ParserStatistics other = new ParserStatistics();
+    TokenGrammar.forClass(Script.class).parse("other", new StringReader(source), other);
+    assertEquals(first.adaptivePredictions(), other.adaptivePredictions());
+  }
+}
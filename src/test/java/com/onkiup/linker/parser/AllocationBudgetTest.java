@@ -0,0 +1,172 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.MultilineComment;
+import com.onkiup.linker.parser.grammars.TaggedBlock;
+import com.onkiup.linker.parser.util.SourceWindow;
+
+/**
+ * Fails when parsing reference grammars or applying matchers allocates too many bytes per input character:
+ * <ul>
+ *   <li>more than the case's budget times {@link #TOLERANCE}; budgets were measured on OpenJDK 17 (HotSpot) and the
+ *   tolerance absorbs differences between JVMs and JIT compilers, so a new fixed per-character allocation in hot paths
+ *   (ConsumingToken.consume, TokenMatcher implementations, VariantToken.nextChild) breaks the budget;</li>
+ *   <li>more than {@link #GROWTH} times the rate measured on a single copy of the source fragment when parsing
+ *   {@link #REPETITIONS} copies of it, which catches allocations that grow with the number of consumed characters or
+ *   matched tokens (copies of growing buffers, walks over growing lists) even when they are small.</li>
+ * </ul>
+ * When an optimization lowers the allocation rate, lower the budgets accordingly.
+ */
+public class AllocationBudgetTest {
+
+  private static final int REPETITIONS = 4;
+  private static final double GROWTH = 1.5;
+  private static final double TOLERANCE = 1.5;
+
+  private static final String JSON = "{\"id\": 42, \"name\": \"allocation budget\", \"ratio\": -1.5e3, "
+      + "\"tags\": [true, false, null], \"nested\": {\"list\": [1, 2, 3], \"empty\": {}}}";
+  private static final String ARITHMETIC = "(1 + 2 * 3) - 4 / (5 * 6 + 7) + 10 * (2 + 3 * (4 - 1)) / 7";
+  private static final String BLOCKS = "<list><item><name></name><value></value></item><item></item></list>";
+  private static final String LETTERS;
+
+  static {
+    StringBuilder letters = new StringBuilder();
+    for (int i = 0; i < 250; i++) {
+      letters.append((char) ('a' + i % 26));
+    }
+    LETTERS = letters.toString();
+  }
+
+  private static com.sun.management.ThreadMXBean threads;
+
+  @BeforeClass
+  public static void setup() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      threads = (com.sun.management.ThreadMXBean) bean;
+      if (threads.isThreadAllocatedMemorySupported()) {
+        threads.setThreadAllocatedMemoryEnabled(true);
+      } else {
+        threads = null;
+      }
+    }
+  }
+
+  @Test
+  public void testJson() {
+    assertBudget("json", 1_500, count -> repeat("[", JSON, ", ", "]", count),
+        parse(TokenGrammar.forClass(JsonGrammar.JsonValue.class)));
+  }
+
+  @Test
+  public void testArithmetic() {
+    assertBudget("arithmetic", 3_100, count -> repeat("", ARITHMETIC, " + ", "", count),
+        parse(TokenGrammar.forClass(ArithmeticGrammar.Expression.class)));
+  }
+
+  @Test
+  public void testComment() {
+    assertBudget("comment", 125, count -> repeat("/* ", LETTERS, "", " */", count),
+        parse(TokenGrammar.forClass(MultilineComment.class)));
+  }
+
+  /**
+   * Every closing tag is matched only after an attempt to match another child block fails and is traced back
+   */
+  @Test
+  public void testBacktracking() {
+    assertBudget("backtracking", 1_100, count -> repeat("<root>", BLOCKS, "", "</root>", count),
+        parse(TokenGrammar.forClass(TaggedBlock.class)));
+  }
+
+  @Test
+  public void testJsonValidation() {
+    TokenGrammar<?> grammar = TokenGrammar.forClass(JsonGrammar.JsonValue.class);
+    assertBudget("json validation", 1_400, count -> repeat("[", JSON, ", ", "]", count),
+        input -> assertEquals(-1, grammar.validate(input.toString())));
+  }
+
+  @Test
+  public void testTerminalMatcher() {
+    assertBudget("TerminalMatcher", 52, count -> repeat("", "volatile", "", "", count),
+        terminal -> consume(new TerminalMatcher(terminal.toString()), terminal));
+  }
+
+  @Test
+  public void testPatternMatcher() {
+    PatternMatcher matcher = new PatternMatcher("[a-z]+");
+    assertBudget("PatternMatcher", 48, count -> repeat("", "allocation", "", "", count),
+        input -> consume(matcher, input));
+  }
+
+  private static Consumer<CharSequence> parse(TokenGrammar<?> grammar) {
+    return input -> TokenGrammar.release(grammar.parse(input.toString()));
+  }
+
+  /**
+   * Applies given matcher to every prefix of given source, as parser does while consuming characters
+   */
+  private static void consume(TokenMatcher matcher, CharSequence source) {
+    for (int i = 1; i <= source.length(); i++) {
+      matcher.apply(new SourceWindow(source, 0, i));
+    }
+  }
+
+  private static String repeat(String prefix, String fragment, String separator, String suffix, int count) {
+    StringBuilder result = new StringBuilder(prefix);
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        result.append(separator);
+      }
+      result.append(fragment);
+    }
+    return result.append(suffix).toString();
+  }
+
+  /**
+   * @param bytesPerCharacter allocation budget of the case
+   * @param source produces sources made of the given number of copies of the case's fragment
+   */
+  private static void assertBudget(String name, long bytesPerCharacter, IntFunction<String> source,
+      Consumer<CharSequence> subject) {
+    assumeTrue("Thread allocation counters are not supported by this JVM", threads != null);
+
+    double single = perCharacter(source.apply(1), subject);
+    double repeated = perCharacter(source.apply(REPETITIONS), subject);
+    assertTrue(String.format("%s allocated %.1f bytes per input character (budget: %d)", name, repeated,
+        bytesPerCharacter), repeated <= bytesPerCharacter * TOLERANCE);
+    assertTrue(String.format("%s allocated %.1f bytes per input character on %d repetitions and %.1f on one", name,
+        repeated, REPETITIONS, single), repeated <= single * GROWTH);
+  }
+
+  /**
+   * Measures average number of bytes allocated per input character by given consumer
+   * after JIT compiler had a chance to eliminate temporary allocations
+   */
+  private static double perCharacter(String source, Consumer<CharSequence> subject) {
+    for (int i = 0; i < 200; i++) {
+      subject.accept(source);
+    }
+
+    int repetitions = 50;
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < repetitions; i++) {
+      subject.accept(source);
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    return (double) allocated / ((long) repetitions * source.length());
+  }
+}
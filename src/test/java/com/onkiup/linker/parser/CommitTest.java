@@ -0,0 +1,92 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.Commit;
+import com.onkiup.linker.parser.annotation.SyncPoint;
+
+public class CommitTest {
+
+  @SyncPoint(";")
+  @Alternatives({Conditional.class, Call.class})
+  public interface Statement extends Rule {
+  }
+
+  /**
+   * "if(name);" -- the parser commits to this rule once "if" is matched
+   */
+  public static class Conditional implements Statement {
+    @Commit
+    private static final String IF = "if";
+    private static final String OPEN = "(";
+    @CapturePattern("[a-z]+")
+    private String condition;
+    private static final String CLOSE = ")";
+    private static final String END = ";";
+  }
+
+  /**
+   * "name();"
+   */
+  public static class Call implements Statement {
+    @CapturePattern("[a-z]+")
+    private String name;
+    private static final String ARGUMENTS = "()";
+    private static final String END = ";";
+  }
+
+  public static class Program implements Rule {
+    private Statement[] statements;
+  }
+
+  @Test
+  public void testCommittedRule() {
+    TokenGrammar<Statement> parser = TokenGrammar.forClass(Statement.class);
+    assertTrue(parser.parse("if(x);") instanceof Conditional);
+    assertTrue(parser.parse("foo();") instanceof Call);
+    // "if();" is a valid Call, but the parser is committed to Conditional after matching "if"
+    assertEquals(3, parser.validate("if();"));
+  }
+
+  @Test
+  public void testCommittedMember() {
+    TokenGrammar<Program> parser = TokenGrammar.forClass(Program.class);
+    assertEquals(2, parser.parse("foo();if(x);").statements.length);
+    try {
+      parser.parse("foo();if(x);if();");
+      fail("Parser did not fail after committing to a Conditional");
+    } catch (RuntimeException e) {
+      SyntaxError error = (SyntaxError) e.getCause();
+      assertEquals(15, error.expectedTokens().position());
+      assertEquals("[/[a-z]+/]", error.expectedTokens().terminals().toString());
+    }
+  }
+
+  @Test
+  public void testAutoCommit() {
+    ParserStatistics statistics = new ParserStatistics();
+    Program program = TokenGrammar.forClass(Program.class).parse("test", new StringReader("foo();if(x);bar();"), statistics);
+    assertEquals(3, program.statements.length);
+    // neither Call (the last variant) nor committed Conditional members have alternatives left
+    assertEquals(3, statistics.autoCommits());
+  }
+
+  @Test
+  public void testRecovery() {
+    List<RecoveredSyntaxError> errors = new ArrayList<>();
+    Program program = TokenGrammar.forClass(Program.class).parse("test", new StringReader("if();foo();if(x);"), errors);
+    assertEquals(2, program.statements.length);
+    assertEquals(1, errors.size());
+    assertEquals(3, errors.get(0).location().position());
+  }
+}
@@ -0,0 +1,75 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+
+/**
+ * Parses deeply nested sources on a thread with a small stack to make sure that parser stack depth does not grow with
+ * source nesting
+ */
+public class DeepNestingTest {
+
+  private static final long STACK_SIZE = 256 * 1024;
+
+  @Test
+  public void testBalanced() throws Throwable {
+    int depth = 50_000;
+    NestedBrackets result = onSmallStack(() -> {
+      NestedBrackets parsed = TokenGrammar.forClass(NestedBrackets.class).parse(brackets(depth, depth));
+      TokenGrammar.release(parsed);
+      return parsed;
+    });
+    assertEquals(depth, result.depth());
+  }
+
+  @Test
+  public void testUnbalanced() throws Throwable {
+    Throwable error = onSmallStack(() -> {
+      try {
+        TokenGrammar.forClass(NestedBrackets.class).parse(brackets(3_000, 0));
+        return null;
+      } catch (RuntimeException e) {
+        return e;
+      }
+    });
+    assertNotNull(error);
+    assertTrue(error.getCause() instanceof SyntaxError);
+  }
+
+  private static String brackets(int open, int close) {
+    StringBuilder result = new StringBuilder(open + close);
+    for (int i = 0; i < open; i++) {
+      result.append('[');
+    }
+    for (int i = 0; i < close; i++) {
+      result.append(']');
+    }
+    return result.toString();
+  }
+
+  private static <X> X onSmallStack(Supplier<X> task) throws Throwable {
+    AtomicReference<X> result = new AtomicReference<>();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread thread = new Thread(null, () -> {
+      try {
+        result.set(task.get());
+      } catch (Throwable e) {
+        error.set(e);
+      }
+    }, "deep-nesting", STACK_SIZE);
+    thread.start();
+    thread.join();
+    if (error.get() != null) {
+      throw error.get();
+    }
+    return result.get();
+  }
+}
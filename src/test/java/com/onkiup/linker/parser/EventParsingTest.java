@@ -0,0 +1,166 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.generator.InputGenerator;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+
+public class EventParsingTest {
+
+  /**
+   * Records received events as strings
+   */
+  private static class Recorder implements ParseListener {
+    private final List<String> events = new ArrayList<>();
+    private final List<String> captures = new ArrayList<>();
+    private final CharSequence source;
+    private int depth;
+
+    private Recorder(CharSequence source) {
+      this.source = source;
+    }
+
+    @Override
+    public void enterRule(Class<? extends Rule> rule, Field field, int start) {
+      depth++;
+      events.add("enter " + rule.getSimpleName() + " " + start);
+    }
+
+    @Override
+    public void exitRule(Class<? extends Rule> rule, Field field, int start, int end) {
+      depth--;
+      events.add("exit " + rule.getSimpleName() + " " + start + "-" + end);
+    }
+
+    @Override
+    public void terminal(Field field, CharSequence text, int start, int end) {
+      assertEquals(text.toString(), source.subSequence(start, end).toString());
+      events.add("terminal " + field.getName() + " " + start + "-" + end);
+    }
+
+    @Override
+    public void capture(Field field, Object value, int start, int end) {
+      captures.add(field.getDeclaringClass().getSimpleName() + "." + field.getName() + "=" + value);
+      events.add("capture " + field.getName() + " " + start + "-" + end);
+    }
+  }
+
+  @Alternatives(Name.class)
+  public interface Named extends Rule {
+  }
+
+  public static class Name implements Named {
+    @CapturePattern("[a-z]+")
+    private String value;
+  }
+
+  public static class Wrapper implements Rule {
+    private static final String OPEN = "[";
+    private Named named;
+    private static final String CLOSE = "]";
+  }
+
+  @Test
+  public void testNesting() {
+    Recorder recorder = new Recorder("[[]]");
+    TokenGrammar.forClass(NestedBrackets.class).parse(new StringReader("[[]]"), recorder);
+    assertEquals(Arrays.asList(
+        "enter NestedBrackets 0",
+        "terminal OPEN 0-1",
+        "enter NestedBrackets 1",
+        "terminal OPEN 1-2",
+        "terminal CLOSE 2-3",
+        "exit NestedBrackets 1-3",
+        "terminal CLOSE 3-4",
+        "exit NestedBrackets 0-4"
+    ), recorder.events);
+  }
+
+  @Test
+  public void testCaptures() {
+    String source = "[1, \"two\", {\"three\": false}]";
+    Recorder recorder = new Recorder(source);
+    TokenGrammar.forClass(JsonGrammar.JsonValue.class).parse(new StringReader(source), recorder);
+    assertEquals(Arrays.asList(
+        "JsonNumber.value=1",
+        "JsonStringContent.value=two",
+        "JsonStringContent.value=three",
+        "JsonLiteral.keyword=" + JsonGrammar.JsonKeyword.FALSE
+    ), recorder.captures);
+    assertEquals(0, recorder.depth);
+  }
+
+  @Test
+  public void testLastVariant() {
+    // the only variant of a junction is also its last variant
+    Recorder recorder = new Recorder("[x]");
+    TokenGrammar.forClass(Wrapper.class).parse(new StringReader("[x]"), recorder);
+    assertEquals(Arrays.asList(
+        "enter Wrapper 0",
+        "terminal OPEN 0-1",
+        "enter Name 1",
+        "capture value 1-2",
+        "exit Name 1-2",
+        "terminal CLOSE 2-3",
+        "exit Wrapper 0-3"
+    ), recorder.events);
+  }
+
+  @Test
+  public void testCommittedPrefix() {
+    // statements commit the parser on "if", so they are reported before the parser fails on the unfinished last statement
+    String source = "if(a);if(b);if(";
+    Recorder recorder = new Recorder(source);
+    try {
+      TokenGrammar.forClass(CommitTest.Program.class).parse(new StringReader(source), recorder);
+      fail("Syntax error expected");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof SyntaxError);
+    }
+    assertEquals(Arrays.asList(
+        "enter Program 0",
+        "enter Conditional 0",
+        "terminal IF 0-2",
+        "terminal OPEN 2-3",
+        "capture condition 3-4",
+        "terminal CLOSE 4-5",
+        "terminal END 5-6",
+        "exit Conditional 0-6",
+        "enter Conditional 6",
+        "terminal IF 6-8",
+        "terminal OPEN 8-9",
+        "capture condition 9-10",
+        "terminal CLOSE 10-11",
+        "terminal END 11-12",
+        "exit Conditional 6-12",
+        "enter Conditional 12",
+        "terminal IF 12-14"
+    ), recorder.events);
+  }
+
+  @Test
+  public void testGenerated() {
+    InputGenerator<JsonGrammar.JsonValue> generator = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1);
+    TokenGrammar<JsonGrammar.JsonValue> parser = TokenGrammar.forClass(JsonGrammar.JsonValue.class);
+    for (int i = 0; i < 10; i++) {
+      String source = generator.generate(1024);
+      Recorder recorder = new Recorder(source);
+      parser.parse(new StringReader(source), recorder);
+      assertEquals(0, recorder.depth);
+      assertTrue(recorder.events.get(0).startsWith("enter "));
+    }
+  }
+}
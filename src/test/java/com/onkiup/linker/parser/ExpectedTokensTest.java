@@ -0,0 +1,94 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+import com.onkiup.linker.parser.grammars.Statements;
+
+public class ExpectedTokensTest {
+
+  @Test
+  public void testTerminals() {
+    ExpectedTokens expected = expectError(TokenGrammar.forClass(NestedBrackets.class), "[[x]]");
+    assertEquals(2, expected.position());
+    assertEquals(new HashSet<>(Arrays.asList("'['", "']'")), new HashSet<>(expected.terminals()));
+    assertEquals(new HashSet<>(Arrays.asList(NestedBrackets.class)), expected.rules());
+  }
+
+  @Test
+  public void testPatternsAndEnums() {
+    ExpectedTokens expected = expectError(TokenGrammar.forClass(JsonGrammar.JsonValue.class), "{\"a\": [1, 2,, 3]}");
+    assertEquals(12, expected.position());
+    assertEquals(0, expected.location().line());
+    assertEquals(12, expected.location().column());
+    assertTrue(expected.terminals().toString(), expected.terminals().containsAll(Arrays.asList("'\"'", "'{'", "'['", "JsonKeyword")));
+    assertTrue(expected.rules().contains(JsonGrammar.JsonNumber.class));
+  }
+
+  @Test
+  public void testTruncatedJson() {
+    ExpectedTokens expected = expectError(TokenGrammar.forClass(JsonGrammar.JsonValue.class), "{\"a\": [1, 2");
+    assertEquals(11, expected.position());
+    assertEquals(0, expected.location().line());
+    assertEquals(11, expected.location().column());
+    assertTrue(expected.terminals().toString(), expected.terminals().containsAll(Arrays.asList("','", "']'")));
+  }
+
+  @Test
+  public void testTruncatedBrackets() {
+    ExpectedTokens expected = expectError(TokenGrammar.forClass(NestedBrackets.class), "[[");
+    assertEquals(2, expected.position());
+    assertEquals(new HashSet<>(Arrays.asList("'['", "']'")), new HashSet<>(expected.terminals()));
+  }
+
+  @Test
+  public void testMessage() {
+    try {
+      TokenGrammar.forClass(Statements.class).parse("a = 1;\nb 2;");
+      fail("Parser accepted an assignment without '='");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof SyntaxError);
+      assertTrue(e.getMessage(), e.getMessage().endsWith("expected '=' at unknown - 1:2"));
+      ExpectedTokens expected = ((SyntaxError) e.getCause()).expectedTokens();
+      assertEquals(9, expected.position());
+      assertEquals(Arrays.asList(Statements.Assignment.class), Arrays.asList(expected.rules().toArray()));
+    }
+  }
+
+  @Test
+  public void testLongSource() {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      source.append("a = ").append(i).append(";\n");
+    }
+    source.append("b = ;");
+    try {
+      TokenGrammar.forClass(Statements.class).parse(source.toString());
+      fail("Parser accepted an assignment without value");
+    } catch (RuntimeException e) {
+      SyntaxError error = (SyntaxError) e.getCause();
+      assertEquals(source.length() - 1, error.expectedTokens().position());
+      assertEquals(2000, error.expectedTokens().location().line());
+      assertTrue(error.toString().length() < 2000);
+    }
+  }
+
+  private static ExpectedTokens expectError(TokenGrammar<?> parser, String source) {
+    try {
+      TokenGrammar.release(parser.parse(source));
+    } catch (RuntimeException e) {
+      assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SyntaxError);
+      return ((SyntaxError) e.getCause()).expectedTokens();
+    }
+    fail("Parser accepted invalid source");
+    return null;
+  }
+}
@@ -0,0 +1,113 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+
+public class LeftRecursionTest {
+
+  @Alternatives({Name.class, Call.class, Member.class, Concatenation.class})
+  public interface Expression extends Rule {
+  }
+
+  public static class Name implements Expression {
+    @CapturePattern("[a-z]+")
+    private String value;
+
+    @Override
+    public String toString() {
+      return value;
+    }
+  }
+
+  /**
+   * Postfix rule: "Expression -> Expression ()"
+   */
+  public static class Call implements Expression {
+    private Expression target;
+    private static final String ARGUMENTS = "()";
+
+    @Override
+    public String toString() {
+      return target + "()";
+    }
+  }
+
+  /**
+   * "Expression -> Expression . Name"
+   */
+  public static class Member implements Expression {
+    private Expression target;
+    private static final String DOT = ".";
+    private Name name;
+
+    @Override
+    public String toString() {
+      return "[" + target + "." + name + "]";
+    }
+  }
+
+  /**
+   * "Expression -> Expression + Name"
+   */
+  public static class Concatenation implements Expression {
+    private Expression left;
+    private static final String PLUS = "+";
+    private Name right;
+
+    @Override
+    public String toString() {
+      return "[" + left + " + " + right + "]";
+    }
+  }
+
+  private static final TokenGrammar<Expression> PARSER = TokenGrammar.forClass(Expression.class);
+
+  @Test
+  public void testLeftRecursive() {
+    assertEquals(3, RuleIntrospector.leftRecursive(Expression.class).size());
+    assertEquals(0, RuleIntrospector.operators(Expression.class).size());
+  }
+
+  @Test
+  public void testSeedGrowing() {
+    assertEquals("a", PARSER.parse("a").toString());
+    assertEquals("a()()", PARSER.parse("a()()").toString());
+    assertEquals("[[a.b]() + c]", PARSER.parse("a.b()+c").toString());
+    assertEquals("[[[a + b] + c].d]()", PARSER.parse("a+b+c.d()").toString());
+  }
+
+  @Test
+  public void testTree() {
+    Call call = (Call) PARSER.parse("a.b()");
+    Member member = (Member) call.target;
+    assertSame(call, member.parent().get());
+    assertEquals("a.b", member.source().toString());
+    assertEquals("a.b()", call.source().toString());
+  }
+
+  @Test
+  public void testLinearWork() {
+    StringBuilder source = new StringBuilder("a");
+    for (int i = 0; i < 100; i++) {
+      source.append(".b()");
+    }
+    ParserStatistics statistics = new ParserStatistics();
+    PARSER.parse("test", new StringReader(source.toString()), statistics);
+    // every member access and call is matched once
+    assertEquals(100, (long) statistics.ruleAttempts().get(Member.class));
+  }
+
+  @Test
+  public void testValidation() {
+    assertEquals(-1, PARSER.validate("a.b().c+d"));
+    assertEquals(2, PARSER.validate("a.(b)"));
+  }
+}
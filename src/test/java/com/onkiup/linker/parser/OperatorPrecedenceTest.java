@@ -0,0 +1,80 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar.Addition;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar.Expression;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar.Multiplication;
+
+public class OperatorPrecedenceTest {
+
+  private static final TokenGrammar<Expression> PARSER = TokenGrammar.forClass(Expression.class);
+
+  @Test
+  public void testOperators() {
+    assertEquals(4, RuleIntrospector.operators(Expression.class).size());
+    assertTrue(RuleIntrospector.operators(ArithmeticGrammar.Parenthesized.class).isEmpty());
+  }
+
+  @Test
+  public void testPrecedence() {
+    assertEquals("[1 + [2 * 3]]", PARSER.parse("1 + 2 * 3").toString());
+    assertEquals("[[1 * 2] + 3]", PARSER.parse("1 * 2 + 3").toString());
+    assertEquals("[[1 * 2] + [3 * 4]]", PARSER.parse("1 * 2 + 3 * 4").toString());
+    assertEquals("[([1 + 2]) * 3]", PARSER.parse("(1 + 2) * 3").toString());
+  }
+
+  @Test
+  public void testAssociativity() {
+    assertEquals("[[1 - 2] - 3]", PARSER.parse("1 - 2 - 3").toString());
+    assertEquals("[[[[1 + 2] + 3] + 4] + 5]", PARSER.parse("1 + 2 + 3 + 4 + 5").toString());
+    assertEquals("[[1 / 2] * 3]", PARSER.parse("1 / 2 * 3").toString());
+  }
+
+  @Test
+  public void testNoRotations() {
+    ParserStatistics statistics = new ParserStatistics();
+    PARSER.parse("test", new StringReader("1 + 2 + 3 + 4 + 5 + 6 + 7 + 8"), statistics);
+    // every operand and operator is matched once
+    assertEquals(0, statistics.tracebacks());
+    assertEquals(7, (long) statistics.ruleAttempts().get(Addition.class));
+  }
+
+  @Test
+  public void testTree() {
+    Addition addition = (Addition) PARSER.parse("1 + 2 * 3");
+    Multiplication multiplication = (Multiplication) addition.right();
+    assertSame(addition, multiplication.parent().get());
+    assertEquals(" 2 * 3", multiplication.source().toString());
+    assertEquals("1 + 2 * 3", addition.source().toString());
+  }
+
+  @Test
+  public void testEvents() {
+    List<String> events = new ArrayList<>();
+    PARSER.parse(new StringReader("1+2*3"), new ParseListener() {
+      @Override
+      public void enterRule(Class<? extends Rule> rule, Field field, int start) {
+        events.add(rule.getSimpleName() + " " + start);
+      }
+    });
+    assertEquals("[Addition 0, Number 0, Multiplication 2, Number 2, Number 4]", events.toString());
+  }
+
+  @Test
+  public void testValidation() {
+    assertEquals(-1, PARSER.validate("(1 + 2) * 3 - 4"));
+    assertEquals(9, PARSER.validate("(1 + 2) * ) - 4"));
+  }
+}
@@ -0,0 +1,92 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.generator.InputGenerator;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+
+public class ParserLimitsTest {
+
+  @Test
+  public void testWithinLimits() {
+    String source = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1).generate(1024);
+    TokenGrammar<JsonGrammar.JsonValue> parser = TokenGrammar.forClass(JsonGrammar.JsonValue.class)
+        .timeout(1, TimeUnit.MINUTES)
+        .maxSteps(1_000_000)
+        .maxReconsumed(1_000_000)
+        .maxTokens(1_000_000);
+    TokenGrammar.release(parser.parse(source));
+  }
+
+  @Test
+  public void testSteps() {
+    String source = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1).generate(1024);
+    ParserLimitExceeded error = expectLimit(TokenGrammar.forClass(JsonGrammar.JsonValue.class).maxSteps(10), source);
+    assertEquals(ParserLimitExceeded.Limit.STEPS, error.limit());
+    assertEquals(11, error.statistics().steps());
+    assertTrue(error.position() > 0);
+  }
+
+  @Test
+  public void testTokens() {
+    String source = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1).generate(1024);
+    ParserLimitExceeded error = expectLimit(TokenGrammar.forClass(JsonGrammar.JsonValue.class).maxTokens(20), source);
+    assertEquals(ParserLimitExceeded.Limit.TOKENS, error.limit());
+    assertTrue(error.statistics().tokens() > 20);
+  }
+
+  @Test
+  public void testReconsumed() {
+    ParserLimitExceeded error = expectLimit(TokenGrammar.forClass(NestedBrackets.class).maxReconsumed(50), brackets(200));
+    assertEquals(ParserLimitExceeded.Limit.RECONSUMED, error.limit());
+    assertEquals(200, error.position());
+    assertEquals(251, error.statistics().consumed());
+  }
+
+  @Test
+  public void testTimeout() {
+    long started = System.nanoTime();
+    ParserLimitExceeded error = expectLimit(TokenGrammar.forClass(NestedBrackets.class).timeout(200, TimeUnit.MILLISECONDS),
+        brackets(20_000));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    assertEquals(ParserLimitExceeded.Limit.TIMEOUT, error.limit());
+    assertTrue("Parser stopped after " + elapsed + "ms", elapsed < 10_000);
+  }
+
+  @Test
+  public void testInterrupt() {
+    Thread.currentThread().interrupt();
+    try {
+      ParserLimitExceeded error = expectLimit(TokenGrammar.forClass(NestedBrackets.class), brackets(10));
+      assertEquals(ParserLimitExceeded.Limit.INTERRUPTED, error.limit());
+      assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  private static ParserLimitExceeded expectLimit(TokenGrammar<?> parser, String source) {
+    try {
+      TokenGrammar.release(parser.parse(source));
+    } catch (ParserLimitExceeded e) {
+      return e;
+    }
+    fail("Parser limit was not reached");
+    return null;
+  }
+
+  private static String brackets(int count) {
+    StringBuilder result = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      result.append('[');
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,47 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.CapturePattern;
+
+public class PatternMatcherTest {
+
+  private static final String NUMBER = "-?\\d+(?:\\.\\d+)?";
+
+  public static class Sentence implements Rule {
+    @CapturePattern(NUMBER)
+    private String number;
+    private static final String DOT = ".";
+  }
+
+  @Test
+  public void testIncompletePrefix() {
+    PatternMatcher matcher = new PatternMatcher(NUMBER);
+    assertTrue(matcher.apply("-").isContinue());
+
+    TokenTestResult result = matcher.apply("1.");
+    assertTrue(result.isMatchContinue());
+    assertEquals(1, result.getTokenLength());
+    assertEquals("1", result.getToken());
+
+    result = matcher.apply("1.5");
+    assertTrue(result.isMatchContinue());
+    assertEquals(3, result.getTokenLength());
+
+    result = matcher.apply("1.x");
+    assertTrue(result.isMatch());
+    assertEquals(1, result.getTokenLength());
+  }
+
+  @Test
+  public void testShorterMatchAtEnd() {
+    Sentence sentence = TokenGrammar.forClass(Sentence.class).parse("1.");
+    assertEquals("1", sentence.number);
+
+    sentence = TokenGrammar.forClass(Sentence.class).parse("-1.5.");
+    assertEquals("-1.5", sentence.number);
+  }
+}
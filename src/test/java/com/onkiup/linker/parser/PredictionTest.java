@@ -0,0 +1,233 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.analysis.FirstSet;
+import com.onkiup.linker.parser.analysis.MinLength;
+import com.onkiup.linker.parser.analysis.PredictionTable;
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+
+public class PredictionTest {
+
+  /**
+   * Not LL(1): both variants start with "a"
+   */
+  @Alternatives({Ab.class, Ac.class})
+  public interface Pair extends Rule {
+  }
+
+  public static class Ab implements Pair {
+    private static final String A = "a";
+    private static final String B = "b";
+  }
+
+  public static class Ac implements Pair {
+    private static final String A = "a";
+    private static final String C = "c";
+  }
+
+  public static class Pairs implements Rule {
+    private static final String OPEN = "(";
+    private Pair[] pairs;
+    private static final String CLOSE = ")";
+  }
+
+  /**
+   * LL(1), but one of the variants ignores a character that starts the other one
+   */
+  @Alternatives({Dashed.class, Dash.class})
+  public interface Item extends Rule {
+  }
+
+  @IgnoreCharacters("-")
+  public static class Dashed implements Item {
+    @CapturePattern("[a-z]+")
+    private String name;
+  }
+
+  public static class Dash implements Item {
+    private static final String DASH = "-";
+  }
+
+  public static class Items implements Rule {
+    private static final String OPEN = "(";
+    private Item[] items;
+    private static final String CLOSE = ")";
+  }
+
+  /**
+   * Not LL(1): assignments may start with any keyword's first character
+   */
+  public interface Statement extends Rule {
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class If implements Statement {
+    private static final String IF = "if ";
+    @CapturePattern("[a-z]+")
+    private String condition;
+    private static final String END = ";";
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class While implements Statement {
+    private static final String WHILE = "while ";
+    @CapturePattern("[a-z]+")
+    private String condition;
+    private static final String END = ";";
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class Print implements Statement {
+    private static final String PRINT = "print ";
+    @CapturePattern("[a-z]+")
+    private String value;
+    private static final String END = ";";
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class Assign implements Statement {
+    @CapturePattern("[a-z]+")
+    private String name;
+    private static final String ASSIGN = "=";
+    @CapturePattern("[0-9]+")
+    private String value;
+    private static final String END = ";";
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Program implements Rule {
+    private Statement[] statements;
+  }
+
+  @Test
+  public void testFirstSets() {
+    assertEquals("[{]", FirstSet.of(JsonGrammar.JsonObject.class).toString());
+    assertEquals("[fnt]", FirstSet.of(JsonGrammar.JsonLiteral.class).toString());
+    FirstSet number = FirstSet.of(JsonGrammar.JsonNumber.class);
+    assertTrue(number.contains('-'));
+    assertTrue(number.contains('7'));
+    assertFalse(number.contains('+'));
+    assertFalse(number.isNullable());
+    assertTrue(FirstSet.of(JsonGrammar.JsonValue.class).contains('"'));
+    assertEquals("[(0123456789...]", FirstSet.of(ArithmeticGrammar.Expression.class).toString());
+  }
+
+  @Test
+  public void testPredict() {
+    PredictionTable table = PredictionTable.forJunction(JsonGrammar.JsonValue.class, false);
+    assertNotNull(table);
+    assertEquals(JsonGrammar.JsonArray.class, table.variant(table.predict(" \n [1]", 0, " \t\r\n")));
+    assertEquals(JsonGrammar.JsonLiteral.class, table.variant(table.predict("[null]", 1, " \t\r\n")));
+    assertEquals(PredictionTable.NONE, table.predict("]", 0, " \t\r\n"));
+    assertEquals(PredictionTable.UNKNOWN, table.predict("  ", 0, " \t\r\n"));
+    assertEquals(PredictionTable.UNKNOWN, table.predict("é", 0, " \t\r\n"));
+    // characters that may be ignored by junction variants are not predicted
+    assertEquals(PredictionTable.UNKNOWN, table.predict(" [1]", 0, ""));
+  }
+
+  @Test
+  public void testPredictiveGrammars() {
+    assertTrue(TokenGrammar.forClass(JsonGrammar.JsonValue.class).isPredictive());
+    assertTrue(TokenGrammar.forClass(ArithmeticGrammar.Expression.class).isPredictive());
+    assertNull(PredictionTable.forJunction(ArithmeticGrammar.Expression.class, false));
+    assertNull(PredictionTable.forJunction(Pair.class, false));
+    assertFalse(TokenGrammar.forClass(Pairs.class).isPredictive());
+  }
+
+  @Test
+  public void testPredictiveParsing() throws Exception {
+    String source = "[{\"a\": [1, -2, {\"b\": true}], \"c\": null}, \"d\", false]";
+    ParserStatistics statistics = new ParserStatistics();
+    JsonGrammar.JsonValue result = TokenGrammar.forClass(JsonGrammar.JsonValue.class)
+        .parse("test", new StringReader(source), statistics);
+    assertTrue(result instanceof JsonGrammar.JsonArray);
+    // every value except for the root one
+    assertEquals(9, statistics.predictions());
+    JsonGrammar.JsonValue[] values = new JsonGrammar.JsonValue[3];
+    JsonGrammar.JsonElements elements = ((JsonGrammar.JsonArray) result).elements();
+    values[0] = elements.first();
+    for (int i = 0; i < elements.rest().length; i++) {
+      values[i + 1] = elements.rest()[i].value();
+    }
+    assertTrue(values[0] instanceof JsonGrammar.JsonObject);
+    assertEquals("d", ((JsonGrammar.JsonString) values[1]).value());
+    assertEquals(JsonGrammar.JsonKeyword.FALSE, ((JsonGrammar.JsonLiteral) values[2]).keyword());
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    ParserStatistics statistics = new ParserStatistics();
+    TokenGrammar.forClass(Pairs.class).parse("test", new StringReader("(abacab)"), statistics);
+    assertEquals(0, statistics.predictions());
+    assertEquals(6, statistics.variants());
+
+    statistics = new ParserStatistics();
+    Items items = TokenGrammar.forClass(Items.class).parse("test", new StringReader("(a-b-)"), statistics);
+    // only the first item is predicted: "-" may be ignored by Dashed
+    assertEquals(1, statistics.predictions());
+    assertEquals(3, items.items.length);
+    assertEquals("b", ((Dashed) items.items[1]).name);
+    assertTrue(items.items[2] instanceof Dash);
+  }
+
+  @Test
+  public void testPruning() throws Exception {
+    assertNull(PredictionTable.forJunction(Statement.class, false));
+    ParserStatistics statistics = new ParserStatistics();
+    Program program = TokenGrammar.forClass(Program.class)
+        .parse("test", new StringReader("if a; x = 1; while b; print c;"), statistics);
+    assertTrue(program.statements[0] instanceof If);
+    assertTrue(program.statements[1] instanceof Assign);
+    assertTrue(program.statements[2] instanceof While);
+    assertTrue(program.statements[3] instanceof Print);
+    // "if", "while" and "print" leave two candidates each, "x" leaves only the assignment
+    assertEquals(2 + 3 + 2 + 2, statistics.prunedVariants());
+  }
+
+  @Test
+  public void testMinLength() {
+    assertEquals(4, MinLength.of(JsonGrammar.JsonLiteral.class));
+    assertEquals(1, MinLength.of(JsonGrammar.JsonValue.class));
+    assertEquals(8, MinLength.of(While.class));
+    assertEquals(4, MinLength.of(Statement.class));
+    assertEquals(0, MinLength.of(Program.class));
+  }
+
+  @Test
+  public void testShortRemainder() throws Exception {
+    ParserStatistics statistics = new ParserStatistics();
+    Program program = TokenGrammar.forClass(Program.class)
+        .parse("test", new StringReader("x = 1; wh=2;"), statistics);
+    assertTrue(program.statements[1] instanceof Assign);
+    // "x" leaves only the assignment, " wh=2;" is too short for "while"
+    assertEquals(3 + 3, statistics.prunedVariants());
+  }
+
+  @Test
+  public void testPrunedSyntaxError() throws Exception {
+    try {
+      TokenGrammar.forClass(Program.class).parse("x = 1; 2 = 3;");
+    } catch (RuntimeException e) {
+      ExpectedTokens expected = ((SyntaxError) e.getCause()).expectedTokens();
+      assertEquals(7, expected.position());
+      // none of the variants can start with "2", so all of them are reported
+      assertEquals(4, expected.rules().size());
+      return;
+    }
+    fail("Parser accepted a number instead of a statement");
+  }
+}
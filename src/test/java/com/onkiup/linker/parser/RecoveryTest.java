@@ -0,0 +1,107 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.SyncPoint;
+import com.onkiup.linker.parser.grammars.Statements;
+
+public class RecoveryTest {
+
+  /**
+   * Words separated by commas with sync point declared on the collection field
+   */
+  public static class Words implements Rule {
+    @SyncPoint({",", "."})
+    private Word[] words;
+  }
+
+  public static class Word implements Rule {
+    @CapturePattern("[a-z]+")
+    private String letters;
+    private static final String SEPARATOR = ",";
+  }
+
+  @Test
+  public void testValid() {
+    List<RecoveredSyntaxError> errors = new ArrayList<>();
+    Statements result = parse("a = 1; b = 2;", errors);
+    assertEquals(0, errors.size());
+    assertEquals("a=1 b=2", names(result));
+  }
+
+  @Test
+  public void testRecovery() {
+    List<RecoveredSyntaxError> errors = new ArrayList<>();
+    Statements result = parse("a = 1;\nb = ;\nc = 3;\nd 4;\ne = 5;", errors);
+    assertEquals("a=1 c=3 e=5", names(result));
+    assertEquals(2, errors.size());
+
+    RecoveredSyntaxError first = errors.get(0);
+    assertEquals(Statements.Assignment.class, first.rule());
+    assertEquals(11, first.location().position());
+    assertEquals(1, first.location().line());
+    assertEquals(4, first.location().column());
+    assertEquals(12, first.resumed());
+    assertTrue(first.excerpt().startsWith(";\nc = 3;"));
+
+    RecoveredSyntaxError second = errors.get(1);
+    assertEquals(22, second.location().position());
+    assertEquals(3, second.location().line());
+    assertEquals(2, second.location().column());
+    assertEquals(24, second.resumed());
+  }
+
+  @Test
+  public void testFieldSyncPoints() {
+    List<RecoveredSyntaxError> errors = new ArrayList<>();
+    Words result = TokenGrammar.forClass(Words.class).parse("test", new StringReader("ab,c1d,ef.gh,"), errors);
+    assertEquals(2, result.words.length);
+    assertEquals(Arrays.asList(4, 9), errors.stream().map(error -> error.location().position()).collect(Collectors.toList()));
+    assertEquals(Arrays.asList(7, 10), errors.stream().map(RecoveredSyntaxError::resumed).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testExcerpt() {
+    StringBuilder source = new StringBuilder("a = ;");
+    for (int i = 0; i < 100; i++) {
+      source.append("b = 1;");
+    }
+    List<RecoveredSyntaxError> errors = new ArrayList<>();
+    parse(source.toString(), errors);
+    assertEquals(1, errors.size());
+    assertEquals(4, errors.get(0).location().position());
+    assertEquals(RecoveredSyntaxError.EXCERPT_LENGTH, errors.get(0).excerpt().length());
+  }
+
+  @Test
+  public void testUnrecoverable() {
+    List<RecoveredSyntaxError> errors = new ArrayList<>();
+    try {
+      parse("a = ; = 2;", errors);
+      fail("Parser accepted a statement without name");
+    } catch (RuntimeException e) {
+      assertEquals(1, errors.size());
+    }
+  }
+
+  private static Statements parse(String source, List<RecoveredSyntaxError> errors) {
+    return TokenGrammar.forClass(Statements.class).parse("test", new StringReader(source), errors);
+  }
+
+  private static String names(Statements statements) {
+    return Arrays.stream(statements.statements())
+        .map(statement -> statement.name() + "=" + statement.value())
+        .collect(Collectors.joining(" "));
+  }
+}
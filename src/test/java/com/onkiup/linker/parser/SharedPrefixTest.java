@@ -0,0 +1,143 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.analysis.RuleIntrospector;
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+
+public class SharedPrefixTest {
+
+  @Alternatives({IfElse.class, If.class, Print.class})
+  public interface Statement extends Rule {
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class IfElse implements Statement {
+    private static final String IF = "if";
+    private Condition condition;
+    private Block then;
+    private static final String ELSE = "else";
+    private Block otherwise;
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class If implements Statement {
+    private static final String IF = "if";
+    private Condition condition;
+    private Block then;
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class Print implements Statement {
+    private static final String PRINT = "print ";
+    @CapturePattern("[a-z]+")
+    private String value;
+    private static final String END = ";";
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class Condition implements Rule {
+    private static final String OPEN = "(";
+    @CapturePattern("[a-z]+")
+    private String name;
+    private static final String CLOSE = ")";
+  }
+
+  @IgnoreCharacters(value = " ", inherit = true)
+  public static class Block implements Rule {
+    private static final String OPEN = "{";
+    private Statement[] statements;
+    private static final String CLOSE = "}";
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Program implements Rule {
+    private Statement[] statements;
+  }
+
+  public static class Tagged implements Rule {
+    private static final String IF = "if";
+    @OptionalToken
+    private Condition condition;
+  }
+
+  @Test
+  public void testSharedPrefix() {
+    assertEquals(3, RuleIntrospector.sharedPrefix(IfElse.class, If.class));
+    assertEquals(3, RuleIntrospector.sharedPrefix(If.class, IfElse.class));
+    assertEquals(0, RuleIntrospector.sharedPrefix(If.class, Print.class));
+    // different ignored characters
+    assertEquals(0, RuleIntrospector.sharedPrefix(If.class, Tagged.class));
+  }
+
+  @Test
+  public void testReusedPrefix() throws Exception {
+    ParserStatistics statistics = new ParserStatistics();
+    Program program = TokenGrammar.forClass(Program.class)
+        .parse("test", new StringReader("if (a) { if (b) { print c; } } print d;"), statistics);
+    assertEquals(2, program.statements.length);
+    If outer = (If) program.statements[0];
+    assertEquals("a", outer.condition.name);
+    If inner = (If) outer.then.statements[0];
+    assertEquals("b", inner.condition.name);
+    assertEquals("c", ((Print) inner.then.statements[0]).value);
+    assertEquals("d", ((Print) program.statements[1]).value);
+    // both statements take over the keyword, the condition and the block matched by IfElse
+    assertEquals(3 + 3, statistics.reusedFields());
+    assertEquals(2, (long) statistics.ruleAttempts().get(Condition.class));
+  }
+
+  @Test
+  public void testLongerVariant() throws Exception {
+    ParserStatistics statistics = new ParserStatistics();
+    Program program = TokenGrammar.forClass(Program.class)
+        .parse("test", new StringReader("if (a) { print b; } else { print c; }"), statistics);
+    IfElse statement = (IfElse) program.statements[0];
+    assertEquals("c", ((Print) statement.otherwise.statements[0]).value);
+    assertEquals(0, statistics.reusedFields());
+  }
+
+  @Test
+  public void testReusedFieldEvents() throws Exception {
+    boolean[] ifElse = new boolean[1];
+    int[] conditions = new int[1];
+    TokenGrammar.forClass(Program.class).parse("test", new StringReader("if (a) { print b; }"), new ParseListener() {
+      @Override
+      public void enterRule(Class<? extends Rule> rule, Field field, int start) {
+        if (rule == Condition.class) {
+          conditions[0]++;
+          assertNotNull(field);
+          assertEquals(If.class, field.getDeclaringClass());
+        }
+        ifElse[0] |= rule == IfElse.class || field != null && field.getDeclaringClass() == IfElse.class;
+      }
+
+      @Override
+      public void terminal(Field field, CharSequence text, int start, int end) {
+        ifElse[0] |= field.getDeclaringClass() == IfElse.class;
+      }
+    });
+    assertEquals(1, conditions[0]);
+    assertFalse(ifElse[0]);
+  }
+
+  @Test(expected = SyntaxError.class)
+  public void testNotSharedSyntaxError() throws Throwable {
+    try {
+      TokenGrammar.forClass(Program.class).parse("if (a) { print b; } else");
+    } catch (RuntimeException e) {
+      // parser reports syntax errors wrapped into runtime exceptions
+      throw e.getCause();
+    }
+  }
+}
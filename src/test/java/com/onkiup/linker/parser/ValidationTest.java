@@ -0,0 +1,64 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.OptionalToken;
+import com.onkiup.linker.parser.generator.InputGenerator;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.NestedBrackets;
+import com.onkiup.linker.parser.grammars.TaggedBlock;
+
+public class ValidationTest {
+
+  /**
+   * A chain of "a" characters that counts created instances
+   */
+  public static class Chain implements Rule {
+    private static transient int instances;
+    private static final String LINK = "a";
+    @OptionalToken
+    private Chain next;
+
+    public Chain() {
+      instances++;
+    }
+  }
+
+  @Test
+  public void testValid() {
+    InputGenerator<JsonGrammar.JsonValue> generator = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1);
+    TokenGrammar<JsonGrammar.JsonValue> parser = TokenGrammar.forClass(JsonGrammar.JsonValue.class);
+    for (int i = 0; i < 10; i++) {
+      String source = generator.generate(1024);
+      assertEquals(source, -1, parser.validate(source));
+    }
+    assertEquals(-1, TokenGrammar.forClass(NestedBrackets.class).validate("[[[]]]"));
+  }
+
+  @Test
+  public void testInvalid() {
+    TokenGrammar<NestedBrackets> parser = TokenGrammar.forClass(NestedBrackets.class);
+    assertEquals(0, parser.validate("x"));
+    assertEquals(1, parser.validate("[x]"));
+    assertEquals(3, parser.validate("[[["));
+  }
+
+  @Test
+  public void testNoRuleInstances() {
+    TokenGrammar<Chain> parser = TokenGrammar.forClass(Chain.class);
+    TokenGrammar.release(parser.parse("aaaa"));
+    int parsed = Chain.instances;
+    assertEquals(-1, parser.validate("aaaa"));
+    assertEquals(parsed, Chain.instances);
+  }
+
+  @Test
+  public void testContextAware() {
+    TokenGrammar<TaggedBlock> parser = TokenGrammar.forClass(TaggedBlock.class);
+    assertEquals(-1, parser.validate("<a><b></b><c></c></a>"));
+    assertEquals(5, parser.validate("<a></b>"));
+    assertEquals(8, parser.validate("<a><b></a></b>"));
+  }
+}
@@ -0,0 +1,123 @@
+package com.onkiup.linker.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.token.VariantPredictor;
+
+public class VariantPredictorTest {
+
+  /**
+   * Not LL(1): all actions start with "s"
+   */
+  public interface Action extends Rule {
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Set implements Action {
+    private static final String SET = "set ";
+    @CapturePattern("[a-z]+")
+    private String name;
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Send implements Action {
+    private static final String SEND = "send ";
+    @CapturePattern("[a-z]+")
+    private String name;
+  }
+
+  public static class Step implements Action {
+    @CapturePattern("[a-z]+")
+    private String name;
+    private static final String COLON = ":";
+  }
+
+  @IgnoreCharacters(" ")
+  public static class Plan implements Rule {
+    private static final String OPEN = "{";
+    private Action[] actions;
+    private static final String CLOSE = "}";
+  }
+
+  private static final String SOURCE = "{ send a set b stop: send c step: set d send e }";
+
+  @Test
+  public void testLearnedVariants() throws Exception {
+    TokenGrammar<Plan> parser = TokenGrammar.forClass(Plan.class).variantPredictor(new VariantPredictor());
+    ParserStatistics statistics = new ParserStatistics();
+    parser.parse("cold", new StringReader(SOURCE), statistics);
+    long cold = statistics.variants();
+
+    statistics = new ParserStatistics();
+    Plan plan = parser.parse("test", new StringReader(SOURCE), statistics);
+    Class<?>[] expected = {Send.class, Set.class, Step.class, Send.class, Step.class, Set.class, Send.class};
+    assertEquals(expected.length, plan.actions.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], plan.actions[i].getClass());
+    }
+    assertEquals(expected.length, statistics.adaptivePredictions());
+    // every predicted variant matches; all variants fail only before the closing brace
+    assertEquals(expected.length + 3, statistics.variants());
+    assertTrue(statistics.variants() < cold);
+  }
+
+  @Test
+  public void testPerGrammarModel() throws Exception {
+    VariantPredictor predictor = new VariantPredictor();
+    TokenGrammar<Plan> parser = TokenGrammar.forClass(Plan.class).variantPredictor(predictor);
+    ParserStatistics cold = new ParserStatistics();
+    parser.parse("cold", new StringReader(SOURCE), cold);
+    assertTrue(predictor.size() > 0);
+    // within a single parse, every action after the first one is predicted from the previous ones
+    assertEquals(6, cold.adaptivePredictions());
+
+    // another parser does not share the model
+    ParserStatistics statistics = new ParserStatistics();
+    TokenGrammar.forClass(Plan.class).variantPredictor(new VariantPredictor())
+        .parse("test", new StringReader(SOURCE), statistics);
+    assertEquals(cold.adaptivePredictions(), statistics.adaptivePredictions());
+  }
+
+  @Test
+  public void testBoundedModel() throws Exception {
+    VariantPredictor predictor = new VariantPredictor(2, 3);
+    TokenGrammar<Plan> parser = TokenGrammar.forClass(Plan.class).variantPredictor(predictor);
+    for (int i = 0; i < 3; i++) {
+      Plan plan = parser.parse(SOURCE);
+      assertEquals(7, plan.actions.length);
+      assertEquals("e", ((Send) plan.actions[6]).name);
+    }
+    assertTrue(predictor.size() <= 2);
+  }
+
+  @Test
+  public void testConcurrentParses() throws Exception {
+    TokenGrammar<Plan> parser = TokenGrammar.forClass(Plan.class).variantPredictor(new VariantPredictor(64, 4));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Plan>> results = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        String source = i % 2 == 0 ? SOURCE : "{ step: set a sent: send b }";
+        results.add(executor.submit(() -> parser.parse(source)));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        Plan plan = results.get(i).get();
+        assertEquals(i % 2 == 0 ? 7 : 4, plan.actions.length);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
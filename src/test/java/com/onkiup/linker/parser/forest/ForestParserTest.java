@@ -0,0 +1,199 @@
+package com.onkiup.linker.parser.forest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.ParseListener;
+import com.onkiup.linker.parser.ParserEngine;
+import com.onkiup.linker.parser.ParserStatistics;
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.SyntaxError;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.annotation.Alternatives;
+import com.onkiup.linker.parser.generator.InputGenerator;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.TaggedBlock;
+
+public class ForestParserTest {
+
+  /**
+   * Highly ambiguous grammar: "S -> S S | a"
+   */
+  @Alternatives({Pair.class, Letter.class})
+  public interface Sequence extends Rule {
+  }
+
+  public static class Pair implements Sequence {
+    private Sequence left;
+    private Sequence right;
+
+    @Override
+    public String toString() {
+      return "[" + left + right + "]";
+    }
+  }
+
+  public static class Letter implements Sequence {
+    private static final String A = "a";
+
+    @Override
+    public String toString() {
+      return "a";
+    }
+  }
+
+  /**
+   * Cyclic grammar: "C -> ( C ) | C | a"
+   */
+  @Alternatives({Same.class, Parens.class, Atom.class})
+  public interface Cyclic extends Rule {
+  }
+
+  public static class Same implements Cyclic {
+    private Cyclic inner;
+
+    @Override
+    public String toString() {
+      return "{" + inner + "}";
+    }
+  }
+
+  public static class Parens implements Cyclic {
+    private static final String OPEN = "(";
+    private Cyclic inner;
+    private static final String CLOSE = ")";
+
+    @Override
+    public String toString() {
+      return "(" + inner + ")";
+    }
+  }
+
+  public static class Atom implements Cyclic {
+    private static final String A = "a";
+
+    @Override
+    public String toString() {
+      return "a";
+    }
+  }
+
+  /**
+   * Records received events as strings
+   */
+  private static class Recorder implements ParseListener {
+    private final List<String> events = new ArrayList<>();
+
+    @Override
+    public void enterRule(Class<? extends Rule> rule, Field field, int start) {
+      events.add("enter " + rule.getSimpleName() + " " + start);
+    }
+
+    @Override
+    public void exitRule(Class<? extends Rule> rule, Field field, int start, int end) {
+      events.add("exit " + rule.getSimpleName() + " " + start + "-" + end);
+    }
+
+    @Override
+    public void terminal(Field field, CharSequence text, int start, int end) {
+      events.add("terminal " + field.getName() + " " + start + "-" + end);
+    }
+
+    @Override
+    public void capture(Field field, Object value, int start, int end) {
+      events.add("capture " + field.getName() + "=" + value + " " + start + "-" + end);
+    }
+  }
+
+  private static final TokenGrammar<ArithmeticGrammar.Expression> ARITHMETIC =
+      TokenGrammar.forClass(ArithmeticGrammar.Expression.class).engine(ParserEngine.EARLEY);
+
+  @Test
+  public void testPrecedence() {
+    assertEquals("[1 + [2 * 3]]", ARITHMETIC.parse("1 + 2 * 3").toString());
+    assertEquals("[[1 * 2] + 3]", ARITHMETIC.parse("1 * 2 + 3").toString());
+    assertEquals("[[1 * 2] + [3 * 4]]", ARITHMETIC.parse("1 * 2 + 3 * 4").toString());
+    assertEquals("[([1 + 2]) * 3]", ARITHMETIC.parse("(1 + 2) * 3").toString());
+  }
+
+  @Test
+  public void testAssociativity() {
+    assertEquals("[[1 - 2] - 3]", ARITHMETIC.parse("1 - 2 - 3").toString());
+    assertEquals("[[1 + 2] - 3]", ARITHMETIC.parse("1 + 2 - 3").toString());
+    assertEquals("[[[[1 + 2] + 3] + 4] + 5]", ARITHMETIC.parse("1 + 2 + 3 + 4 + 5").toString());
+    assertEquals("[[1 / 2] * 3]", ARITHMETIC.parse("1 / 2 * 3").toString());
+  }
+
+  @Test
+  public void testSameEvents() {
+    TokenGrammar<JsonGrammar.JsonValue> backtracking = TokenGrammar.forClass(JsonGrammar.JsonValue.class);
+    TokenGrammar<JsonGrammar.JsonValue> earley = TokenGrammar.forClass(JsonGrammar.JsonValue.class).engine(ParserEngine.EARLEY);
+    InputGenerator<JsonGrammar.JsonValue> generator = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1);
+    for (int i = 0; i < 10; i++) {
+      String source = generator.generate(512);
+      Recorder expected = new Recorder();
+      Recorder actual = new Recorder();
+      backtracking.parse(new StringReader(source), expected);
+      earley.parse(new StringReader(source), actual);
+      assertEquals(source, expected.events, actual.events);
+    }
+  }
+
+  @Test
+  public void testValidation() {
+    TokenGrammar<JsonGrammar.JsonValue> parser = TokenGrammar.forClass(JsonGrammar.JsonValue.class).engine(ParserEngine.EARLEY);
+    assertEquals(-1, parser.validate("{\"a\": [1, 2, {\"b\": null}]}"));
+    assertEquals(9, parser.validate("{\"a\": [1, }"));
+    assertEquals(-1, ARITHMETIC.validate("(1 + 2) * 3 / 4"));
+  }
+
+  @Test
+  public void testSyntaxError() {
+    try {
+      ARITHMETIC.parse("1 + * 3");
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof SyntaxError);
+      assertEquals(4, ((SyntaxError) e.getCause()).expectedTokens().position());
+    }
+  }
+
+  @Test
+  public void testAmbiguousGrammar() {
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < 60; i++) {
+      source.append('a');
+    }
+    TokenGrammar<Sequence> parser = TokenGrammar.forClass(Sequence.class).engine(ParserEngine.EARLEY);
+    ParserStatistics statistics = new ParserStatistics();
+    // the number of parse trees is the 59th Catalan number
+    PackedForest<Sequence> forest = parser.forest("test", new StringReader(source.toString()));
+    assertTrue(forest.ambiguities() > 0);
+    assertEquals(60, forest.end());
+    assertEquals("[[[aa]a]a]", parser.parse("aaaa").toString());
+    parser.tokenize("test", new StringReader(source.toString()), statistics);
+    // cubic bound on processed items
+    assertTrue(statistics.toString(), statistics.steps() < 60L * 60 * 60);
+  }
+
+  @Test
+  public void testCycles() {
+    TokenGrammar<Cyclic> parser = TokenGrammar.forClass(Cyclic.class).engine(ParserEngine.EARLEY);
+    assertEquals("a", parser.parse("a").toString());
+    assertEquals("((a))", parser.parse("((a))").toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testContextSensitive() {
+    new ForestParser<>(TaggedBlock.class);
+  }
+}
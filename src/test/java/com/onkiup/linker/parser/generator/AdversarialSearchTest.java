@@ -0,0 +1,52 @@
+package com.onkiup.linker.parser.generator;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+
+public class AdversarialSearchTest {
+
+  @Test
+  public void testSearch() {
+    List<AdversarialSearch.Finding> findings = AdversarialSearch.forClass(JsonGrammar.JsonValue.class)
+        .seed(1)
+        .seeds("{\"a\": [1, 2, {\"b\": null}]}")
+        .iterations(50)
+        .maxLength(64)
+        .results(3)
+        .run();
+
+    assertFalse(findings.isEmpty());
+    assertTrue(findings.size() <= 3);
+    for (int i = 0; i < findings.size(); i++) {
+      AdversarialSearch.Finding finding = findings.get(i);
+      assertTrue(finding.source().length() <= 64);
+      assertTrue(finding.score() > 0);
+      assertFalse(finding.rules(5).isEmpty());
+      if (i > 0) {
+        assertTrue(finding.score() <= findings.get(i - 1).score());
+      }
+    }
+  }
+
+  @Test
+  public void testStepLimit() {
+    AdversarialSearch<JsonGrammar.JsonValue> search = AdversarialSearch.forClass(JsonGrammar.JsonValue.class)
+        .maxSteps(20);
+
+    AdversarialSearch.Finding finding = search.evaluate("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16]");
+    assertTrue(finding.limitExceeded());
+    assertFalse(finding.parsed());
+    assertTrue(finding.statistics().steps() > 20);
+
+    finding = search.maxSteps(100_000).evaluate("[1, 2, 3]");
+    assertFalse(finding.limitExceeded());
+    assertTrue(finding.parsed());
+    assertTrue(finding.statistics().consumed() >= 9);
+  }
+}
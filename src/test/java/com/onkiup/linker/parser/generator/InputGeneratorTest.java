@@ -0,0 +1,76 @@
+package com.onkiup.linker.parser.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+import com.onkiup.linker.parser.grammars.JsonGrammar;
+import com.onkiup.linker.parser.grammars.MultilineComment;
+
+public class InputGeneratorTest {
+
+  @Test
+  public void testSeeds() {
+    String first = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(7).generate(512);
+    String second = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(7).generate(512);
+    String third = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(8).generate(512);
+
+    assertEquals(first, second);
+    assertNotEquals(first, third);
+  }
+
+  @Test
+  public void testJson() {
+    InputGenerator<JsonGrammar.JsonValue> generator = InputGenerator.forClass(JsonGrammar.JsonValue.class).seed(1);
+    TokenGrammar<JsonGrammar.JsonValue> parser = TokenGrammar.forClass(JsonGrammar.JsonValue.class);
+
+    for (int i = 0; i < 10; i++) {
+      String source = generator.generate(1024);
+      assertTrue("Generated " + source.length() + " characters", source.length() > 512 && source.length() < 4096);
+      TokenGrammar.release(parser.parse(source));
+    }
+  }
+
+  @Test
+  public void testComment() {
+    String source = InputGenerator.forClass(MultilineComment.class).seed(1).generate(100);
+
+    assertEquals(100, source.length());
+    assertTrue(source.startsWith("/*"));
+    assertEquals(source.length() - 2, source.indexOf("*/"));
+    TokenGrammar.release(TokenGrammar.forClass(MultilineComment.class).parse(source));
+  }
+
+  @Test
+  public void testArithmetic() {
+    Pattern expression = Pattern.compile("[\\d+\\-*/() \\t\\n]+");
+    InputGenerator<ArithmeticGrammar.Expression> generator = InputGenerator.forClass(ArithmeticGrammar.Expression.class)
+        .seed(1)
+        .maxDepth(8);
+
+    for (int i = 0; i < 10; i++) {
+      String source = generator.generate(64);
+      assertTrue(source, expression.matcher(source).matches());
+      assertEquals(source, source.chars().filter(c -> c == '(').count(), source.chars().filter(c -> c == ')').count());
+    }
+  }
+
+  @Test
+  public void testRegexSampler() {
+    String[] patterns = {"\\d+", "-?\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?", "[a-zA-Z_][\\w]*", "(?:ab|cd){2,4}", "[^\"\\\\]+"};
+    Random random = new Random(1);
+    for (String pattern : patterns) {
+      RegexSampler sampler = new RegexSampler(pattern);
+      for (int i = 0; i < 20; i++) {
+        assertTrue(pattern, Pattern.matches(pattern, sampler.sample(random, 8)));
+      }
+    }
+  }
+}
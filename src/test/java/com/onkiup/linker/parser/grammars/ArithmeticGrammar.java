@@ -0,0 +1,134 @@
+package com.onkiup.linker.parser.grammars;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.annotation.AdjustPriority;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+
+/**
+ * Reference grammar for arithmetic expressions that relies on {@link AdjustPriority} and token rotations
+ * to build properly nested binary operator trees
+ */
+public final class ArithmeticGrammar {
+
+  private ArithmeticGrammar() {
+  }
+
+  public interface Expression extends Rule {
+  }
+
+  @IgnoreCharacters(value = " \t\n", inherit = true)
+  public static class Number implements Expression {
+    @CapturePattern("\\d+")
+    private String value;
+
+    public String value() {
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return value;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\n", inherit = true)
+  public static class Parenthesized implements Expression {
+    private static final String OPEN = "(";
+    private Expression expression;
+    private static final String CLOSE = ")";
+
+    public Expression expression() {
+      return expression;
+    }
+
+    @Override
+    public String toString() {
+      return "(" + expression + ")";
+    }
+  }
+
+  @AdjustPriority(value = 100, propagate = true)
+  @IgnoreCharacters(value = " \t\n", inherit = true)
+  public static class Addition implements Expression {
+    private Expression left;
+    private static final String OPERATOR = "+";
+    private Expression right;
+
+    public Expression left() {
+      return left;
+    }
+
+    public Expression right() {
+      return right;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + left + " + " + right + "]";
+    }
+  }
+
+  @AdjustPriority(value = 100, propagate = true)
+  @IgnoreCharacters(value = " \t\n", inherit = true)
+  public static class Subtraction implements Expression {
+    private Expression left;
+    private static final String OPERATOR = "-";
+    private Expression right;
+
+    public Expression left() {
+      return left;
+    }
+
+    public Expression right() {
+      return right;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + left + " - " + right + "]";
+    }
+  }
+
+  @AdjustPriority(value = 200, propagate = true)
+  @IgnoreCharacters(value = " \t\n", inherit = true)
+  public static class Multiplication implements Expression {
+    private Expression left;
+    private static final String OPERATOR = "*";
+    private Expression right;
+
+    public Expression left() {
+      return left;
+    }
+
+    public Expression right() {
+      return right;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + left + " * " + right + "]";
+    }
+  }
+
+  @AdjustPriority(value = 200, propagate = true)
+  @IgnoreCharacters(value = " \t\n", inherit = true)
+  public static class Division implements Expression {
+    private Expression left;
+    private static final String OPERATOR = "/";
+    private Expression right;
+
+    public Expression left() {
+      return left;
+    }
+
+    public Expression right() {
+      return right;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + left + " / " + right + "]";
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.onkiup.linker.parser.grammars;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+
+/**
+ * Reference JSON-like grammar: objects, arrays, strings, numbers and keyword literals
+ */
+public final class JsonGrammar {
+
+  private JsonGrammar() {
+  }
+
+  public interface JsonValue extends Rule {
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonObject implements JsonValue {
+    private static final String OPEN = "{";
+    @OptionalToken
+    private JsonMembers members;
+    private static final String CLOSE = "}";
+
+    public JsonMembers members() {
+      return members;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonMembers implements Rule {
+    private JsonMember first;
+    private JsonNextMember[] rest;
+
+    public JsonMember first() {
+      return first;
+    }
+
+    public JsonNextMember[] rest() {
+      return rest;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonNextMember implements Rule {
+    private static final String SEPARATOR = ",";
+    private JsonMember member;
+
+    public JsonMember member() {
+      return member;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonMember implements Rule {
+    private JsonString key;
+    private static final String COLON = ":";
+    private JsonValue value;
+
+    public JsonString key() {
+      return key;
+    }
+
+    public JsonValue value() {
+      return value;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonArray implements JsonValue {
+    private static final String OPEN = "[";
+    @OptionalToken
+    private JsonElements elements;
+    private static final String CLOSE = "]";
+
+    public JsonElements elements() {
+      return elements;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonElements implements Rule {
+    private JsonValue first;
+    private JsonNextElement[] rest;
+
+    public JsonValue first() {
+      return first;
+    }
+
+    public JsonNextElement[] rest() {
+      return rest;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonNextElement implements Rule {
+    private static final String SEPARATOR = ",";
+    private JsonValue value;
+
+    public JsonValue value() {
+      return value;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonString implements JsonValue {
+    private static final String OPEN = "\"";
+    private JsonStringContent content;
+
+    public String value() {
+      return content.value;
+    }
+  }
+
+  /**
+   * String contents are matched without ignoring any characters
+   */
+  @IgnoreCharacters
+  public static class JsonStringContent implements Rule {
+    @CapturePattern(until = "(?<!\\\\)\"")
+    private String value;
+    private static final String CLOSE = "\"";
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonNumber implements JsonValue {
+    @CapturePattern("-?\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?")
+    private String value;
+
+    public String value() {
+      return value;
+    }
+  }
+
+  @IgnoreCharacters(value = " \t\r\n", inherit = true)
+  public static class JsonLiteral implements JsonValue {
+    private JsonKeyword keyword;
+
+    public JsonKeyword keyword() {
+      return keyword;
+    }
+  }
+
+  public enum JsonKeyword {
+    TRUE, FALSE, NULL;
+
+    @Override
+    public String toString() {
+      return name().toLowerCase();
+    }
+  }
+}
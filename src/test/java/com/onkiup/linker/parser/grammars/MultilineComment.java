@@ -0,0 +1,20 @@
+package com.onkiup.linker.parser.grammars;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+
+/**
+ * Java multiline comment grammar from the README
+ */
+public class MultilineComment implements Rule {
+  private static final String OPEN_MARKER = "/*";
+
+  @CapturePattern(until="\\*/")
+  private String comment;
+
+  private static final String CLOSE_MARKER = "*/";
+
+  public String comment() {
+    return comment;
+  }
+}
@@ -0,0 +1,29 @@
+package com.onkiup.linker.parser.grammars;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+
+/**
+ * Reference grammar for deeply nested sources: balanced square brackets, like "[[[]]]"
+ */
+public class NestedBrackets implements Rule {
+  private static final String OPEN = "[";
+  @OptionalToken
+  private NestedBrackets inner;
+  private static final String CLOSE = "]";
+
+  public NestedBrackets inner() {
+    return inner;
+  }
+
+  /**
+   * @return nesting depth of this rule
+   */
+  public int depth() {
+    int depth = 0;
+    for (NestedBrackets current = this; current != null; current = current.inner) {
+      depth++;
+    }
+    return depth;
+  }
+}
@@ -0,0 +1,36 @@
+package com.onkiup.linker.parser.grammars;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.IgnoreCharacters;
+import com.onkiup.linker.parser.annotation.SyncPoint;
+
+/**
+ * Reference grammar for error recovery: assignments terminated with semicolons, like "a = 1; b = 2;"
+ */
+public class Statements implements Rule {
+  private Assignment[] statements;
+
+  public Assignment[] statements() {
+    return statements;
+  }
+
+  @SyncPoint(";")
+  @IgnoreCharacters(" \t\r\n")
+  public static class Assignment implements Rule {
+    @CapturePattern("[a-z]+")
+    private String name;
+    private static final String ASSIGN = "=";
+    @CapturePattern("[0-9]+")
+    private String value;
+    private static final String END = ";";
+
+    public String name() {
+      return name;
+    }
+
+    public String value() {
+      return value;
+    }
+  }
+}
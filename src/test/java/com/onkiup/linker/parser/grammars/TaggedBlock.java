@@ -0,0 +1,30 @@
+package com.onkiup.linker.parser.grammars;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.annotation.CapturePattern;
+import com.onkiup.linker.parser.annotation.ContextAware;
+import com.onkiup.linker.parser.annotation.OptionalToken;
+
+/**
+ * Reference grammar for context-aware matching: named blocks closed with the same name, like "&lt;a&gt;&lt;b&gt;&lt;/b&gt;&lt;/a&gt;"
+ */
+public class TaggedBlock implements Rule {
+  private static final String OPEN = "<";
+  @CapturePattern("[a-z]+")
+  private String name;
+  private static final String OPEN_END = ">";
+  @OptionalToken
+  private TaggedBlock[] children;
+  private static final String CLOSE = "</";
+  @ContextAware(matchField = "name")
+  private String closingName;
+  private static final String CLOSE_END = ">";
+
+  public String name() {
+    return name;
+  }
+
+  public TaggedBlock[] children() {
+    return children;
+  }
+}
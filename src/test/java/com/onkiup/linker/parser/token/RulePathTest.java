@@ -0,0 +1,72 @@
+package com.onkiup.linker.parser.token;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.onkiup.linker.parser.Rule;
+import com.onkiup.linker.parser.TokenGrammar;
+import com.onkiup.linker.parser.grammars.ArithmeticGrammar;
+
+public class RulePathTest {
+
+  @Test
+  public void testContains() {
+    RulePath root = RulePath.extend(null, Object.class, 0);
+    RulePath child = RulePath.extend(root, String.class, 0);
+    RulePath grandChild = RulePath.extend(child, Integer.class, 5);
+
+    assertTrue(grandChild.contains(Object.class));
+    assertTrue(grandChild.contains(String.class));
+    assertTrue(grandChild.contains(Integer.class));
+    assertFalse(grandChild.contains(Long.class));
+    // parent paths are not modified
+    assertFalse(child.contains(Integer.class));
+    assertFalse(root.contains(String.class));
+  }
+
+  @Test
+  public void testContainsAtPosition() {
+    RulePath root = RulePath.extend(null, Object.class, 0);
+    RulePath child = RulePath.extend(root, String.class, 0);
+    RulePath grandChild = RulePath.extend(child, Integer.class, 5);
+    RulePath greatGrandChild = RulePath.extend(grandChild, Long.class, 5);
+
+    assertTrue(child.containsAtPosition(Object.class));
+    assertTrue(child.containsAtPosition(String.class));
+    assertFalse(grandChild.containsAtPosition(Object.class));
+    assertFalse(grandChild.containsAtPosition(String.class));
+    assertTrue(greatGrandChild.containsAtPosition(Integer.class));
+    assertTrue(greatGrandChild.containsAtPosition(Long.class));
+    assertFalse(grandChild.containsAtPosition(Long.class));
+  }
+
+  /**
+   * Operand junctions are created under operator tokens and are moved under operator rules once both operands are matched
+   */
+  @Test
+  public void testOperatorOperands() {
+    TokenGrammar<ArithmeticGrammar.Expression> grammar = TokenGrammar.forClass(ArithmeticGrammar.Expression.class);
+    ArithmeticGrammar.Addition addition = (ArithmeticGrammar.Addition) grammar.parse("1 + 2 * 3");
+    ArithmeticGrammar.Multiplication multiplication = (ArithmeticGrammar.Multiplication) addition.right();
+    RuleToken<?> operator = (RuleToken<?>) Rule.Metadata.metadata(multiplication).get();
+    AbstractToken<?> left = (AbstractToken<?>) operator.child(0);
+    AbstractToken<?> number = (AbstractToken<?>) ((CompoundToken<?>) left).child(0);
+
+    RulePath path = number.rulePath();
+    assertTrue(path.contains(ArithmeticGrammar.Addition.class));
+    assertTrue(path.contains(ArithmeticGrammar.Multiplication.class));
+    assertTrue(path.containsAtPosition(ArithmeticGrammar.Multiplication.class));
+    assertFalse(path.containsAtPosition(ArithmeticGrammar.Addition.class));
+
+    // moving the operand back under its operator token drops known paths of the operand and its sub-tokens
+    CompoundToken<?> operands = left.parentOrNull();
+    left.parent((CompoundToken<?>) operator.parentOrNull());
+    path = number.rulePath();
+    assertTrue(path.contains(ArithmeticGrammar.Addition.class));
+    assertFalse(path.contains(ArithmeticGrammar.Multiplication.class));
+    left.parent(operands);
+    assertTrue(number.rulePath().containsAtPosition(ArithmeticGrammar.Multiplication.class));
+  }
+}